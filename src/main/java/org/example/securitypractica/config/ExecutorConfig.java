@@ -0,0 +1,87 @@
+package org.example.securitypractica.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableConfigurationProperties(StorageLimitsProperties.class)
+public class ExecutorConfig {
+
+    @Value("${storage.executor.pool-size:16}")
+    private int poolSize;
+
+    @Value("${storage.executor.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${storage.jobs.workers:4}")
+    private int jobWorkers;
+
+    @Value("${auth.password-hashing.threads:0}")
+    private int hashingThreads;
+
+    @Value("${auth.password-hashing.queue-capacity:32}")
+    private int hashingQueueCapacity;
+
+    @Value("${storage.minio.read-threads:64}")
+    private int minioReadThreads;
+
+    @Bean
+    public ThreadPoolTaskExecutor storageTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("storage-");
+        // Carries the request's observation, so work fanned out to the pool shows up in its trace.
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        // When the queue is full the request thread does the work itself instead of failing the upload.
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor storageJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobWorkers);
+        executor.setMaxPoolSize(jobWorkers);
+        executor.setQueueCapacity(jobWorkers);
+        executor.setThreadNamePrefix("storage-job-");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashingExecutor() {
+        // By default hashing may use at most half of the cores, the rest stays with storage traffic.
+        int threads = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(hashingQueueCapacity);
+        executor.setThreadNamePrefix("password-hash-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor minioReadExecutor() {
+        // No queue: a read that cannot get a thread right away runs on the caller without hedging.
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(minioReadThreads);
+        executor.setMaxPoolSize(minioReadThreads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("minio-read-");
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,36 +1,77 @@
 package org.example.securitypractica.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import io.minio.BucketExistsArgs;
 import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
 import lombok.extern.log4j.Log4j2;
-import org.springframework.beans.factory.annotation.Value;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.example.securitypractica.repository.MinioShard;
+import org.example.securitypractica.repository.MinioShards;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Log4j2
 @Configuration
+@EnableConfigurationProperties(MinioProperties.class)
 public class MinioConfig {
 
-    @Value("${minio.endpoint}")
-    private String endpoint;
+    @Bean
+    public OkHttpClient minioHttpClient(MinioProperties properties, MeterRegistry meterRegistry,
+                                        ObservationRegistry observationRegistry) {
+        MinioProperties.Http http = properties.http();
+        MinioProperties.Timeouts timeouts = properties.timeouts();
 
-    @Value("${minio.access-key}")
-    private String accessKey;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(http.maxRequests());
+        dispatcher.setMaxRequestsPerHost(http.maxRequestsPerHost());
+        ConnectionPool pool = new ConnectionPool(http.maxIdleConnections(), http.keepAlive().toMillis(), TimeUnit.MILLISECONDS);
+        MinioHttpMetrics.bind(meterRegistry, dispatcher, pool, http.maxIdleConnections());
 
-    @Value("${minio.secret-key}")
-    private String secretKey;
+        // HTTP/2 is negotiated over TLS only; plain-http endpoints keep using HTTP/1.1.
+        List<Protocol> protocols = http.http2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(pool)
+                .protocols(protocols)
+                // Ceilings for a stalled connection; reads are usually cut much earlier by MinioCalls.
+                .connectTimeout(timeouts.connect())
+                .writeTimeout(timeouts.write())
+                .readTimeout(timeouts.read())
+                .eventListener(new MinioHttpMetrics(meterRegistry, observationRegistry))
+                .build();
+    }
 
-    @Value("${minio.bucket-name}")
-    private String bucketName;
+    @Bean
+    public MinioShards minioShards(MinioProperties properties, OkHttpClient minioHttpClient) {
+        List<MinioShard> shards = new ArrayList<>();
+        for (MinioProperties.Shard shard : properties.effectiveShards()) {
+            MinioClient client = MinioClient.builder()
+                    .endpoint(shard.endpoint())
+                    .credentials(shard.accessKey(), shard.secretKey())
+                    .httpClient(minioHttpClient)
+                    .build();
+            ensureBucket(client, shard.bucketName());
+            shards.add(new MinioShard(shard.name(), shard.endpoint(), shard.bucketName(), client));
+        }
+        return new MinioShards(shards);
+    }
 
     @Bean
-    public MinioClient minioClient() {
-        MinioClient client = MinioClient.builder()
-                .endpoint(endpoint)
-                .credentials(accessKey, secretKey)
-                .build();
+    public MinioClient minioClient(MinioShards minioShards) {
+        return minioShards.defaultShard().client();
+    }
 
+    private void ensureBucket(MinioClient client, String bucketName) {
         try {
             boolean found = client.bucketExists(
                     BucketExistsArgs.builder().bucket(bucketName).build()
@@ -44,7 +85,5 @@ public class MinioConfig {
         } catch (Exception e) {
             throw new RuntimeException("Error while initialization minio bucket", e);
         }
-
-        return client;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package org.example.securitypractica.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpMetricsEventListener;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import org.example.securitypractica.tracing.StorageStats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the HTTP client behind MinIO. On top of Micrometer's request timer and pool gauges it records how long
+ * calls wait in the dispatcher for a free per-host slot and whether they got a pooled connection, which is what
+ * the pool and dispatcher limits should be sized from. Calls and transferred bytes are also added to the
+ * {@link StorageStats} of the request that issued them.
+ */
+public class MinioHttpMetrics extends OkHttpMetricsEventListener {
+
+    private static final String PREFIX = "minio.http";
+
+    private final ObservationRegistry observationRegistry;
+    private final Timer queueWait;
+    private final Counter reused;
+    private final Counter opened;
+    private final Map<Call, CallTiming> calls = new ConcurrentHashMap<>();
+
+    private static final class CallTiming {
+        final long startedAt = System.nanoTime();
+        final StorageStats stats;
+        boolean dispatched;
+        boolean connecting;
+
+        CallTiming(StorageStats stats) {
+            this.stats = stats;
+        }
+    }
+
+    public MinioHttpMetrics(MeterRegistry registry, ObservationRegistry observationRegistry) {
+        // Object keys are in the URL, so requests are not tagged by URI.
+        super(registry, PREFIX + ".requests", request -> "none", Tags.empty(), List.of());
+        this.observationRegistry = observationRegistry;
+        this.queueWait = Timer.builder(PREFIX + ".queue.wait")
+                .description("Time a MinIO call waited in the dispatcher before it was sent")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        this.reused = Counter.builder(PREFIX + ".connections.acquired").tag("reused", "true").register(registry);
+        this.opened = Counter.builder(PREFIX + ".connections.acquired").tag("reused", "false").register(registry);
+    }
+
+    public static void bind(MeterRegistry registry, Dispatcher dispatcher, ConnectionPool pool, int maxIdleConnections) {
+        new OkHttpConnectionPoolMetrics(pool, PREFIX + ".pool", Tags.empty(), maxIdleConnections).bindTo(registry);
+        Gauge.builder(PREFIX + ".dispatcher.calls", dispatcher, Dispatcher::runningCallsCount)
+                .tag("state", "running").register(registry);
+        Gauge.builder(PREFIX + ".dispatcher.calls", dispatcher, Dispatcher::queuedCallsCount)
+                .tag("state", "queued").register(registry);
+        Gauge.builder(PREFIX + ".dispatcher.limit", dispatcher, Dispatcher::getMaxRequests)
+                .tag("scope", "total").register(registry);
+        Gauge.builder(PREFIX + ".dispatcher.limit", dispatcher, Dispatcher::getMaxRequestsPerHost)
+                .tag("scope", "host").register(registry);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        super.callStart(call);
+        // MinioClient enqueues on the caller's thread, so this is still inside the request's observation.
+        StorageStats stats = StorageStats.current(observationRegistry);
+        if (stats != null) stats.minioCall();
+        calls.put(call, new CallTiming(stats));
+    }
+
+    @Override
+    public void proxySelectStart(Call call, HttpUrl url) {
+        dispatched(call);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        CallTiming timing = dispatched(call);
+        if (timing != null) timing.connecting = true;
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        CallTiming timing = dispatched(call);
+        if (timing == null) return;
+        (timing.connecting ? opened : reused).increment();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        addBytes(call, byteCount);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        addBytes(call, byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        calls.remove(call);
+        super.callEnd(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        calls.remove(call);
+        super.callFailed(call, ioe);
+    }
+
+    @Override
+    public void canceled(Call call) {
+        calls.remove(call);
+    }
+
+    private void addBytes(Call call, long byteCount) {
+        CallTiming timing = calls.get(call);
+        if (timing != null && timing.stats != null) timing.stats.minioBytes(byteCount);
+    }
+
+    // The first network event of a call marks the moment the dispatcher let it through.
+    private CallTiming dispatched(Call call) {
+        CallTiming timing = calls.get(call);
+        if (timing != null && !timing.dispatched) {
+            timing.dispatched = true;
+            queueWait.record(System.nanoTime() - timing.startedAt, TimeUnit.NANOSECONDS);
+        }
+        return timing;
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.securitypractica.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Without {@code minio.shards} the top-level endpoint and bucket form a single shard named "default".
+ * Shards may leave out credentials to inherit the top-level ones.
+ */
+@ConfigurationProperties(prefix = "minio")
+public record MinioProperties(
+        String endpoint,
+        String accessKey,
+        String secretKey,
+        String bucketName,
+        List<Shard> shards,
+        @DefaultValue Http http,
+        @DefaultValue Timeouts timeouts
+) {
+
+    public record Shard(String name, String endpoint, String accessKey, String secretKey, String bucketName) {
+    }
+
+    /**
+     * One HTTP client is shared by all shards. OkHttp's own defaults (5 idle connections, 5 requests per host)
+     * are far below what parallel deletes, moves and archive fan-out need against a single MinIO host.
+     */
+    public record Http(
+            @DefaultValue("64") int maxIdleConnections,
+            @DefaultValue("5m") Duration keepAlive,
+            @DefaultValue("256") int maxRequests,
+            @DefaultValue("64") int maxRequestsPerHost,
+            @DefaultValue("false") boolean http2
+    ) {
+    }
+
+    public record Timeouts(
+            @DefaultValue("5s") Duration connect,
+            @DefaultValue("60s") Duration write,
+            @DefaultValue("60s") Duration read
+    ) {
+    }
+
+    public List<Shard> effectiveShards() {
+        if (shards == null || shards.isEmpty()) {
+            return List.of(new Shard("default", endpoint, accessKey, secretKey, bucketName));
+        }
+        return shards.stream()
+                .map(shard -> new Shard(shard.name(),
+                        shard.endpoint() != null ? shard.endpoint() : endpoint,
+                        shard.accessKey() != null ? shard.accessKey() : accessKey,
+                        shard.secretKey() != null ? shard.secretKey() : secretKey,
+                        shard.bucketName() != null ? shard.bucketName() : bucketName))
+                .toList();
+    }
+}
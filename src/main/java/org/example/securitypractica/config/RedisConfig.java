@@ -1,9 +1,91 @@
 package org.example.securitypractica.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.security.NearCacheSessionRepository;
+import org.example.securitypractica.service.PendingTrashPaths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.jackson2.SecurityJackson2Modules;
+import org.springframework.session.data.redis.RedisSessionRepository;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
 
+import java.time.Duration;
+
+@Slf4j
 @Configuration
 @EnableRedisHttpSession
 public class RedisConfig {
-}
\ No newline at end of file
+
+    @Bean
+    public RedisSerializer<Object> springSessionDefaultRedisSerializer() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModules(SecurityJackson2Modules.getModules(getClass().getClassLoader()));
+        return new LenientSessionSerializer(new GenericJackson2JsonRedisSerializer(mapper));
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "storage.session.near-cache.enabled", havingValue = "true", matchIfMissing = true)
+    public NearCacheSessionRepository nearCacheSessionRepository(
+            RedisSessionRepository sessionRepository, StringRedisTemplate redisTemplate,
+            ObservationRegistry observationRegistry,
+            @Value("${storage.session.near-cache.ttl:5s}") Duration ttl,
+            @Value("${storage.session.near-cache.max-entries:10000}") int maxEntries) {
+        return new NearCacheSessionRepository(sessionRepository, redisTemplate, observationRegistry, ttl, maxEntries);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.session.near-cache.enabled", havingValue = "true", matchIfMissing = true)
+    public RedisMessageListenerContainer sessionInvalidationListener(
+            RedisConnectionFactory connectionFactory, NearCacheSessionRepository nearCacheSessionRepository) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(nearCacheSessionRepository,
+                new ChannelTopic(NearCacheSessionRepository.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.trash.pending-cache.enabled", havingValue = "true", matchIfMissing = true)
+    public RedisMessageListenerContainer pendingTrashInvalidationListener(
+            RedisConnectionFactory connectionFactory, PendingTrashPaths pendingTrashPaths) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(pendingTrashPaths, new ChannelTopic(PendingTrashPaths.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    /**
+     * Sessions written before the switch to JSON cannot be read back; dropping such an attribute
+     * logs the user out instead of failing every request that carries the old cookie.
+     */
+    private record LenientSessionSerializer(RedisSerializer<Object> delegate) implements RedisSerializer<Object> {
+
+        @Override
+        public byte[] serialize(Object value) throws SerializationException {
+            return delegate.serialize(value);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) throws SerializationException {
+            try {
+                return delegate.deserialize(bytes);
+            } catch (SerializationException e) {
+                log.debug("Ignoring unreadable session attribute", e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.securitypractica.config;
+
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.FSDirectory;
+import org.example.securitypractica.repository.ContentIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Every node keeps its own content index on local disk, under {@code storage.search.index-dir};
+ * with a blank directory the index lives in memory and is rebuilt from nothing on restart.
+ */
+@Configuration
+public class SearchConfig {
+
+    @Bean(destroyMethod = "close")
+    public ContentIndex contentIndex(@Value("${storage.search.index-dir:data/search-index}") String indexDir) throws IOException {
+        return new ContentIndex(indexDir.isBlank() ? new ByteBuffersDirectory() : FSDirectory.open(Path.of(indexDir)));
+    }
+}
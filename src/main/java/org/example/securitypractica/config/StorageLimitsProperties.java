@@ -0,0 +1,32 @@
+package org.example.securitypractica.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Per-user limits, chosen by role ({@code storage.limits.roles.ROLE_USER.*}); roles without an entry use
+ * {@code storage.limits.defaults.*}. A zero rate means the direction is not throttled.
+ */
+@ConfigurationProperties(prefix = "storage.limits")
+public record StorageLimitsProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("8") int nodeHeavySlots,
+        @DefaultValue("30s") Duration queueTimeout,
+        @DefaultValue("10m") Duration backgroundQueueTimeout,
+        @DefaultValue("5m") Duration leaseTtl,
+        @DefaultValue RoleLimits defaults,
+        Map<String, RoleLimits> roles
+) {
+
+    public record RoleLimits(
+            @DefaultValue("0") DataSize downloadPerSecond,
+            @DefaultValue("0") DataSize uploadPerSecond,
+            @DefaultValue("8MB") DataSize burst,
+            @DefaultValue("2") int maxHeavyOperations
+    ) {
+    }
+}
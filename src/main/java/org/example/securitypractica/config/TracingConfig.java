@@ -0,0 +1,33 @@
+package org.example.securitypractica.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.example.securitypractica.tracing.JsonLinesSpanExporter;
+import org.example.securitypractica.tracing.StorageStatsObservationFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Spans are exported over OTLP when {@code management.otlp.tracing.endpoint} is set, and to a JSON-lines file
+ * when {@code storage.tracing.file} is; both may be active at once.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public StorageStatsObservationFilter storageStatsObservationFilter() {
+        return new StorageStatsObservationFilter();
+    }
+
+    @Bean
+    @ConditionalOnProperty("storage.tracing.file")
+    public SpanExporter jsonLinesSpanExporter(@Value("${storage.tracing.file}") Path file, ObjectMapper objectMapper)
+            throws IOException {
+        return new JsonLinesSpanExporter(file, objectMapper);
+    }
+}
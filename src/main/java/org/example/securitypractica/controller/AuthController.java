@@ -12,6 +12,8 @@ import org.example.securitypractica.dto.RegistrationResponseDto;
 import org.example.securitypractica.dto.UserMeResponseDto;
 import org.example.securitypractica.entity.User;
 import org.example.securitypractica.exception.InvalidCredentialsException;
+import org.example.securitypractica.security.LoginRateLimiter;
+import org.example.securitypractica.security.SessionUser;
 import org.example.securitypractica.service.AuthService;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -31,21 +33,27 @@ public class AuthController {
 
     private final AuthService authService;
     private final AuthenticationManager authenticationManager;
+    private final LoginRateLimiter loginRateLimiter;
 
-    public AuthController(AuthService authService, AuthenticationManager authenticationManager) {
+    public AuthController(AuthService authService, AuthenticationManager authenticationManager,
+                          LoginRateLimiter loginRateLimiter) {
         this.authService = authService;
         this.authenticationManager = authenticationManager;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
 
     @Operation(summary = "Регистрация нового пользователя")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Пользователь успешно создан"),
-            @ApiResponse(responseCode = "400", description = "Ошибка валидации или пользователь уже существует")
+            @ApiResponse(responseCode = "400", description = "Ошибка валидации или пользователь уже существует"),
+            @ApiResponse(responseCode = "429", description = "Слишком много попыток, повторите позже")
     })
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("/sign-up")
-    public RegistrationResponseDto registration(@RequestBody @Valid RegistrationDto registrationDto) {
+    public RegistrationResponseDto registration(@RequestBody @Valid RegistrationDto registrationDto,
+                                                HttpServletRequest request) {
+        loginRateLimiter.checkSignUp(request.getRemoteAddr());
         User user = new User(registrationDto.getUsername(), registrationDto.getPassword());
         User savedUser = authService.register(user);
         return new RegistrationResponseDto(savedUser.getUsername());
@@ -55,17 +63,22 @@ public class AuthController {
     @Operation(summary = "Вход в систему (получение сессии)")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Успешный вход"),
-            @ApiResponse(responseCode = "401", description = "Неверные учетные данные")
+            @ApiResponse(responseCode = "401", description = "Неверные учетные данные"),
+            @ApiResponse(responseCode = "429", description = "Слишком много попыток, повторите позже")
     })
     @PostMapping("/sign-in")
     public RegistrationResponseDto signIn(@RequestBody RegistrationDto registrationDto, HttpServletRequest request) {
+        loginRateLimiter.checkSignIn(request.getRemoteAddr(), registrationDto.getUsername());
         try {
             UsernamePasswordAuthenticationToken authenticationToken =
                     new UsernamePasswordAuthenticationToken(registrationDto.getUsername(), registrationDto.getPassword());
 
             Authentication authentication = authenticationManager.authenticate(authenticationToken);
 
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+            // Only the slim principal goes into the session, never the entity with its password hash.
+            SessionUser sessionUser = SessionUser.from((User) authentication.getPrincipal());
+            SecurityContextHolder.getContext().setAuthentication(
+                    UsernamePasswordAuthenticationToken.authenticated(sessionUser, null, sessionUser.authorities()));
 
             HttpSession session = request.getSession(true);
             session.setAttribute("SPRING_SECURITY_CONTEXT", SecurityContextHolder.getContext());
@@ -0,0 +1,49 @@
+package org.example.securitypractica.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.ChangesDto;
+import org.example.securitypractica.service.ChangeFeedService;
+import org.example.securitypractica.service.UserService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.security.Principal;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/api/changes")
+@RequiredArgsConstructor
+@Tag(name = "Change Feed", description = "Журнал изменений для инкрементальной синхронизации клиентов")
+public class ChangeController {
+
+    private final ChangeFeedService changeFeedService;
+    private final UserService userService;
+
+    @Operation(
+            summary = "Изменения после указанной позиции",
+            description = "Возвращает изменения с номером больше since по порядку. Значение sequence из ответа передается "
+                    + "как since в следующем запросе. Если wait > 0 и изменений нет, запрос ждет их появления до wait секунд. "
+                    + "snapshotRequired=true означает, что позиция удалена при компактификации и нужно заново получить дерево."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Изменения получены"),
+            @ApiResponse(responseCode = "400", description = "Недопустимая позиция")
+    })
+    @GetMapping
+    public DeferredResult<ChangesDto> getChanges(
+            @Parameter(description = "Последний обработанный номер изменения", example = "0")
+            @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Время ожидания новых изменений в секундах", example = "30")
+            @RequestParam(defaultValue = "0") long wait,
+            Principal principal) {
+        return changeFeedService.poll(userService.getUserId(principal), since, Duration.ofSeconds(wait));
+    }
+}
@@ -6,11 +6,13 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.DirectoryTreeDto;
 import org.example.securitypractica.dto.ResourceDto;
 import org.example.securitypractica.service.StorageService;
 import org.example.securitypractica.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.security.Principal;
 import java.util.List;
@@ -43,19 +45,50 @@ public class DirectoryController {
         return storageService.createDirectory(path, getUserId(principal));
     }
 
-    @Operation(summary = "Просмотр содержимого папки", description = "Возвращает список файлов и папок по указанному пути.")
+    @Operation(
+            summary = "Просмотр содержимого папки",
+            description = "Возвращает список файлов и папок по указанному пути. Ответ содержит ETag версии папки; "
+                    + "при совпадении If-None-Match возвращается 304 без повторного чтения хранилища."
+    )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Список успешно получен"),
+            @ApiResponse(responseCode = "304", description = "Содержимое не изменилось"),
             @ApiResponse(responseCode = "404", description = "Папка не найдена")
     })
     @GetMapping
     public List<ResourceDto> getDirectoryContent(
             @RequestParam(required = false, defaultValue = "") String path,
+            Principal principal,
+            WebRequest request) {
+        Long userId = getUserId(principal);
+        // The version is read before listing, so a change racing with the listing can only cause an extra refetch.
+        if (request.checkNotModified(storageService.getDirectoryETag(path, userId))) {
+            return null;
+        }
+        return storageService.listItems(path, userId);
+    }
+
+    @Operation(
+            summary = "Дерево папки",
+            description = "Возвращает вложенную структуру папки до указанной глубины за один запрос. "
+                    + "Папки на последнем уровне возвращаются без children. "
+                    + "При превышении лимита узлов дерево обрезается и помечается truncated=true."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Дерево успешно получено"),
+            @ApiResponse(responseCode = "400", description = "Недопустимая глубина"),
+            @ApiResponse(responseCode = "404", description = "Папка не найдена")
+    })
+    @GetMapping("/tree")
+    public DirectoryTreeDto getDirectoryTree(
+            @RequestParam(required = false, defaultValue = "") String path,
+            @Parameter(description = "Глубина дерева", example = "2")
+            @RequestParam(defaultValue = "2") int depth,
             Principal principal) {
-        return storageService.listItems(path, getUserId(principal));
+        return storageService.getTree(path, depth, getUserId(principal));
     }
 
     private Long getUserId(Principal principal) {
-        return userService.findByUsername(principal.getName()).getId();
+        return userService.getUserId(principal);
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package org.example.securitypractica.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.JobDto;
+import org.example.securitypractica.service.JobService;
+import org.example.securitypractica.service.UserService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Tag(name = "Background Jobs", description = "Фоновые операции: рекурсивное удаление, перемещение и архивация папок")
+public class JobController {
+
+    private final JobService jobService;
+    private final UserService userService;
+
+    @Operation(summary = "Фоновое удаление", description = "Ставит в очередь рекурсивное удаление файла или папки.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Задача поставлена в очередь"),
+            @ApiResponse(responseCode = "404", description = "Ресурс не найден")
+    })
+    @PostMapping("/delete")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public JobDto delete(@RequestParam String path, Principal principal) {
+        return jobService.submitDelete(path, getUserId(principal));
+    }
+
+    @Operation(summary = "Фоновое перемещение", description = "Ставит в очередь перемещение или переименование ресурса.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Задача поставлена в очередь"),
+            @ApiResponse(responseCode = "404", description = "Ресурс не найден"),
+            @ApiResponse(responseCode = "409", description = "Ресурс по новому пути уже существует")
+    })
+    @PostMapping("/move")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public JobDto move(@RequestParam String from, @RequestParam String to, Principal principal) {
+        return jobService.submitMove(from, to, getUserId(principal));
+    }
+
+    @Operation(summary = "Фоновая архивация", description = "Собирает ZIP-архив папки; результат доступен по /api/jobs/{id}/result.")
+    @PostMapping("/archive")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public JobDto archive(@RequestParam String path, Principal principal) {
+        return jobService.submitArchive(path, getUserId(principal));
+    }
+
+    @Operation(summary = "Список задач пользователя")
+    @GetMapping
+    public List<JobDto> list(Principal principal) {
+        return jobService.listJobs(getUserId(principal));
+    }
+
+    @Operation(summary = "Статус и прогресс задачи")
+    @GetMapping("/{id}")
+    public JobDto get(@PathVariable UUID id, Principal principal) {
+        return jobService.getJob(id, getUserId(principal));
+    }
+
+    @Operation(summary = "Отмена задачи")
+    @PostMapping("/{id}/cancel")
+    public JobDto cancel(@PathVariable UUID id, Principal principal) {
+        return jobService.cancel(id, getUserId(principal));
+    }
+
+    @Operation(summary = "Скачивание результата архивации")
+    @GetMapping("/{id}/result")
+    public ResponseEntity<StreamingResponseBody> result(@PathVariable UUID id, Principal principal) {
+        InputStream result = jobService.openResult(id, getUserId(principal));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + ".zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(outputStream -> {
+                    try (result) {
+                        result.transferTo(outputStream);
+                    }
+                });
+    }
+
+    private Long getUserId(Principal principal) {
+        return userService.getUserId(principal);
+    }
+}
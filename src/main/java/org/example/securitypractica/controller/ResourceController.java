@@ -5,24 +5,34 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.ArchiveFormat;
+import org.example.securitypractica.dto.ContentSearchDto;
+import org.example.securitypractica.dto.DeltaManifestDto;
+import org.example.securitypractica.dto.DownloadSelectionDto;
+import org.example.securitypractica.dto.FileSignatureDto;
 import org.example.securitypractica.dto.ResourceDto;
 import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.service.ContentIndexService;
 import org.example.securitypractica.service.StorageService;
+import org.example.securitypractica.service.TrashService;
 import org.example.securitypractica.service.UserService;
+import org.example.securitypractica.service.ZipService;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriUtils;
 
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -32,6 +42,8 @@ import java.util.List;
 public class ResourceController {
 
     private final StorageService storageService;
+    private final TrashService trashService;
+    private final ContentIndexService contentIndexService;
     private final UserService userService;
 
     @Operation(
@@ -65,54 +77,215 @@ public class ResourceController {
         return storageService.search(query, getUserId(principal));
     }
 
-    @Operation(summary = "Загрузка файлов", description = "Позволяет загрузить один или несколько файлов в указанную папку.")
+    @Operation(summary = "Поиск по содержимому", description = "Ищет документы (текст, PDF, офисные форматы) по их содержимому. " +
+            "Возвращает страницу результатов с выделенными фрагментами текста. Новые файлы попадают в индекс в течение нескольких секунд.")
+    @GetMapping("/search/content")
+    public ContentSearchDto searchContent(
+            @RequestParam String query,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false, defaultValue = "20") int size,
+            Principal principal) {
+        return contentIndexService.search(query, page, size, getUserId(principal));
+    }
+
+    @Operation(summary = "Загрузка файлов", description = "Позволяет загрузить один или несколько файлов в указанную папку. " +
+            "Имя файла может содержать относительный путь (например, webkitRelativePath) — недостающие папки будут созданы. " +
+            "С extract=true загруженные ZIP-архивы распаковываются на сервере прямо во время чтения.")
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
     public List<ResourceDto> uploadFiles(
             @RequestParam(required = false, defaultValue = "") String path,
             @RequestPart("files") List<MultipartFile> files,
+            @Parameter(description = "Распаковать ZIP-архивы в указанную папку вместо сохранения самих архивов")
+            @RequestParam(required = false, defaultValue = "false") boolean extract,
             Principal principal) {
 
         if (files == null || files.isEmpty()) {
             throw new MyBadRequestException("No files selected for upload");
         }
-        return storageService.uploadFiles(path, files, getUserId(principal));
+        Long userId = getUserId(principal);
+        if (!extract) {
+            return storageService.uploadFiles(path, files, userId);
+        }
+        List<ResourceDto> extracted = new ArrayList<>();
+        for (MultipartFile archive : files) {
+            extracted.addAll(storageService.extractArchive(path, archive, userId));
+        }
+        return extracted;
     }
 
-    @Operation(summary = "Удаление", description = "Удаляет файл или папку рекурсивно.")
+    @Operation(summary = "Сигнатура файла", description = "Возвращает хэши блоков текущей версии файла (content-defined chunking). " +
+            "Клиент разбивает изменённый файл тем же способом и отправляет через /delta только новые блоки.")
+    @GetMapping("/signature")
+    public FileSignatureDto getSignature(@RequestParam String path, Principal principal) {
+        return storageService.getFileSignature(path, getUserId(principal));
+    }
+
+    @Operation(summary = "Обновление файла по дельте", description = "Собирает новую версию файла из диапазонов текущей версии (COPY) " +
+            "и переданных байтов (DATA, по порядку в части data). Если baseEtag не совпадает с текущей версией, возвращается 412.")
+    @PutMapping(value = "/delta", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResourceDto applyDelta(
+            @RequestParam String path,
+            @Valid @RequestPart("manifest") DeltaManifestDto manifest,
+            @RequestPart(value = "data", required = false) MultipartFile data,
+            Principal principal) {
+        return storageService.applyDelta(path, manifest, data, getUserId(principal));
+    }
+
+    @Operation(summary = "Удаление", description = "Перемещает файл или папку в корзину. Ресурс сразу пропадает из папки, "
+            + "содержимое папки переносится в корзину в фоне. Восстановление и очистка — через /api/trash.")
     @DeleteMapping
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void delete(@RequestParam String path, Principal principal) {
-        storageService.deleteResource(path, getUserId(principal));
+        trashService.moveToTrash(path, getUserId(principal));
     }
 
-    @Operation(summary = "Скачивание", description = "Скачивает файл или папку (в виде ZIP-архива).")
+    @Operation(summary = "Скачивание", description = "Скачивает файл или папку (в виде ZIP-архива). " +
+            "Для ранее собранных ZIP-архивов и для формата tar поддерживаются заголовки Range и If-Range.")
     @GetMapping("/download")
     public ResponseEntity<StreamingResponseBody> downloadResource(
             @RequestParam String path,
-            @AuthenticationPrincipal UserDetails userDetails
+            @Parameter(description = "Формат архива для папки: zip, tar, tar.gz или tar.zst", example = "zip")
+            @RequestParam(required = false, defaultValue = "zip") String format,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            Principal principal
     ) {
-        Long userId = userService.findByUsername(userDetails.getUsername()).getId();
+        Long userId = getUserId(principal);
 
         storageService.checkResourceExists(path, userId);
+        ArchiveFormat archiveFormat = ArchiveFormat.fromValue(format);
 
-        String fileName = determineFileName(path);
+        String fileName = determineFileName(path, archiveFormat);
         String encodedFileName = UriUtils.encode(fileName, StandardCharsets.UTF_8);
+        String contentDisposition = "attachment; filename=\"" + encodedFileName + "\"";
+
+        if (!path.endsWith("/")) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(outputStream -> storageService.downloadResource(path, userId, outputStream));
+        }
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + encodedFileName + "\"")
+        if (archiveFormat != ArchiveFormat.ZIP) {
+            ZipService.ArchivePlan snapshot = storageService.snapshotFolder(path, userId);
+            if (archiveFormat == ArchiveFormat.TAR) {
+                // An uncompressed TAR is laid out by names and sizes alone, so any byte range can be produced again.
+                return rangeResponse(contentDisposition, snapshot.fingerprint(), storageService.tarContentLength(snapshot),
+                        range, ifRange, (start, length, outputStream) ->
+                                storageService.downloadTarRange(snapshot, start, length, outputStream));
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .eTag(snapshot.fingerprint())
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(outputStream -> storageService.downloadFolderArchive(snapshot, archiveFormat, outputStream));
+        }
+
+        ZipService.ArchivePlan plan = storageService.planFolderArchive(path, userId);
+        if (!plan.isCached()) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .eTag(plan.fingerprint())
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(outputStream -> storageService.downloadFolderArchive(plan, outputStream));
+        }
+        return rangeResponse(contentDisposition, plan.fingerprint(), plan.cachedSize(), range, ifRange,
+                (start, length, outputStream) -> storageService.downloadCachedArchive(plan, start, length, outputStream));
+    }
+
+    private ResponseEntity<StreamingResponseBody> rangeResponse(String contentDisposition, String etag, long size,
+                                                                String range, String ifRange, RangeWriter writer) {
+        HttpRange httpRange = resolveRange(range, ifRange, etag);
+        if (httpRange == null) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .eTag(etag)
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(size)
+                    .body(outputStream -> writer.write(0, size, outputStream));
+        }
+
+        long start;
+        long end;
+        try {
+            start = httpRange.getRangeStart(size);
+            end = httpRange.getRangeEnd(size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+        long length = end - start + 1;
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                .eTag(etag)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(outputStream -> storageService.downloadResource(path, userId, outputStream));
+                .contentLength(length)
+                .body(outputStream -> writer.write(start, length, outputStream));
+    }
+
+    private interface RangeWriter {
+        void write(long start, long length, OutputStream outputStream);
+    }
+
+    @Operation(summary = "Скачивание нескольких ресурсов", description = "Скачивает выбранные файлы и папки одним архивом. " +
+            "Пути внутри архива отсчитываются от общей родительской папки; вложенные и повторяющиеся пути попадают в архив один раз.")
+    @PostMapping(value = "/download", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> downloadSelection(
+            @RequestBody @Valid DownloadSelectionDto selection,
+            @Parameter(description = "Формат архива: zip, tar, tar.gz или tar.zst", example = "zip")
+            @RequestParam(required = false, defaultValue = "zip") String format,
+            Principal principal
+    ) {
+        Long userId = getUserId(principal);
+        ArchiveFormat archiveFormat = ArchiveFormat.fromValue(format);
+        ZipService.ArchivePlan plan = archiveFormat == ArchiveFormat.ZIP
+                ? storageService.planSelectionArchive(selection.paths(), userId)
+                : storageService.snapshotSelection(selection.paths(), userId);
+
+        String fileName = determineSelectionFileName(selection.paths(), archiveFormat);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + UriUtils.encode(fileName, StandardCharsets.UTF_8) + "\"")
+                .eTag(plan.fingerprint())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (plan.isCached()) {
+            response.contentLength(plan.cachedSize());
+        } else if (archiveFormat == ArchiveFormat.TAR) {
+            response.contentLength(storageService.tarContentLength(plan));
+        }
+        return response.body(outputStream -> storageService.downloadFolderArchive(plan, archiveFormat, outputStream));
+    }
+
+    private HttpRange resolveRange(String range, String ifRange, String etag) {
+        if (range == null) return null;
+        if (ifRange != null && !ifRange.replace("W/", "").replace("\"", "").equals(etag)) return null;
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
-    private String determineFileName(String path) {
-        if (path == null || path.isEmpty() || path.equals("/")) return "root.zip";
+    private String determineFileName(String path, ArchiveFormat format) {
+        if (path == null || path.isEmpty() || path.equals("/")) return "root" + format.extension();
         String cleanPath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
         String name = cleanPath.substring(cleanPath.lastIndexOf("/") + 1);
-        return path.endsWith("/") ? name + ".zip" : name;
+        return path.endsWith("/") ? name + format.extension() : name;
+    }
+
+    private String determineSelectionFileName(List<String> paths, ArchiveFormat format) {
+        if (paths.size() != 1) return "download" + format.extension();
+        String path = paths.get(0);
+        // Even a single file is sent as an archive here, so it is named like a folder.
+        return determineFileName(path.endsWith("/") ? path : path + "/", format);
     }
 
     private Long getUserId(Principal principal) {
-        return userService.findByUsername(principal.getName()).getId();
+        return userService.getUserId(principal);
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package org.example.securitypractica.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.RebalanceDto;
+import org.example.securitypractica.dto.ShardDto;
+import org.example.securitypractica.service.ShardRebalanceService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/shards")
+@RequiredArgsConstructor
+@Tag(name = "Shard Administration", description = "Шарды хранилища и перебалансировка пользователей")
+public class ShardAdminController {
+
+    private final ShardRebalanceService rebalanceService;
+
+    @Operation(summary = "Состояние шардов", description = "Список шардов с количеством назначенных и переносимых пользователей.")
+    @GetMapping
+    public List<ShardDto> getShards() {
+        return rebalanceService.status();
+    }
+
+    @Operation(
+            summary = "Перебалансировка",
+            description = "Запускает фоновый перенос пользователей, чьи данные лежат не на шарде по consistent hashing. "
+                    + "Пользователи продолжают работать; запись блокируется только на время финального копирования."
+    )
+    @PostMapping("/rebalance")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public RebalanceDto rebalance() {
+        return rebalanceService.rebalance();
+    }
+}
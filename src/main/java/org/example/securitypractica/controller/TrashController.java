@@ -0,0 +1,64 @@
+package org.example.securitypractica.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.dto.ResourceDto;
+import org.example.securitypractica.dto.TrashItemDto;
+import org.example.securitypractica.service.TrashService;
+import org.example.securitypractica.service.UserService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/trash")
+@RequiredArgsConstructor
+@Tag(name = "Trash", description = "Корзина: просмотр, восстановление и окончательное удаление")
+public class TrashController {
+
+    private final TrashService trashService;
+    private final UserService userService;
+
+    @Operation(summary = "Содержимое корзины", description = "Удалённые ресурсы, от новых к старым, с датой автоматической очистки.")
+    @GetMapping
+    public List<TrashItemDto> list(Principal principal) {
+        return trashService.list(getUserId(principal));
+    }
+
+    @Operation(summary = "Восстановление", description = "Возвращает ресурс на прежнее место. "
+            + "Файл восстанавливается сразу, папка — в фоне и появляется после переноса всего содержимого.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Восстановление выполнено или начато"),
+            @ApiResponse(responseCode = "400", description = "Ресурс ещё переносится в корзину или уже удаляется"),
+            @ApiResponse(responseCode = "404", description = "Ресурс в корзине не найден"),
+            @ApiResponse(responseCode = "409", description = "По прежнему пути уже есть ресурс")
+    })
+    @PostMapping("/{id}/restore")
+    public ResourceDto restore(@PathVariable UUID id, Principal principal) {
+        return trashService.restore(id, getUserId(principal));
+    }
+
+    @Operation(summary = "Окончательное удаление", description = "Ставит ресурс из корзины в очередь на окончательное удаление.")
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void purge(@PathVariable UUID id, Principal principal) {
+        trashService.purge(id, getUserId(principal));
+    }
+
+    @Operation(summary = "Очистка корзины", description = "Ставит в очередь окончательное удаление всего содержимого корзины.")
+    @DeleteMapping
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void empty(Principal principal) {
+        trashService.emptyTrash(getUserId(principal));
+    }
+
+    private Long getUserId(Principal principal) {
+        return userService.getUserId(principal);
+    }
+}
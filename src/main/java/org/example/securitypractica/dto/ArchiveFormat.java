@@ -0,0 +1,27 @@
+package org.example.securitypractica.dto;
+
+import org.example.securitypractica.exception.MyBadRequestException;
+
+public enum ArchiveFormat {
+    ZIP("zip"),
+    TAR("tar"),
+    TAR_GZ("tar.gz"),
+    TAR_ZST("tar.zst");
+
+    private final String value;
+
+    ArchiveFormat(String value) {
+        this.value = value;
+    }
+
+    public String extension() {
+        return "." + value;
+    }
+
+    public static ArchiveFormat fromValue(String value) {
+        for (ArchiveFormat format : values()) {
+            if (format.value.equalsIgnoreCase(value)) return format;
+        }
+        throw new MyBadRequestException("Unsupported archive format: " + value);
+    }
+}
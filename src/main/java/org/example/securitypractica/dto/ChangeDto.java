@@ -0,0 +1,18 @@
+package org.example.securitypractica.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.example.securitypractica.entity.ChangeType;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChangeDto(
+        long seq,
+        ChangeType type,
+        String path,
+        String targetPath,
+        Long size,
+        ResourceType resourceType,
+        Instant createdAt
+) {
+}
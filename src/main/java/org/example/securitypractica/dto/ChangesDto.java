@@ -0,0 +1,15 @@
+package org.example.securitypractica.dto;
+
+import java.util.List;
+
+/**
+ * {@code sequence} is the cursor to pass as {@code since} on the next call. When {@code snapshotRequired}
+ * is set the requested position has been compacted away and the client has to re-list its tree first.
+ */
+public record ChangesDto(
+        List<ChangeDto> changes,
+        long sequence,
+        boolean hasMore,
+        boolean snapshotRequired
+) {
+}
@@ -0,0 +1,11 @@
+package org.example.securitypractica.dto;
+
+import java.util.List;
+
+public record ContentSearchDto(
+        List<ContentSearchHitDto> hits,
+        long total,
+        int page,
+        int size
+) {
+}
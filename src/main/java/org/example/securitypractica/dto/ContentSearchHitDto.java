@@ -0,0 +1,12 @@
+package org.example.securitypractica.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ContentSearchHitDto(
+        String path,
+        String name,
+        Long size,
+        String highlight
+) {
+}
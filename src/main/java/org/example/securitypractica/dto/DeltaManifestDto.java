@@ -0,0 +1,36 @@
+package org.example.securitypractica.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+import java.util.List;
+
+/**
+ * The new version of a file as a sequence of segments: COPY takes {@code length} bytes at {@code offset} of the
+ * version identified by {@code baseEtag}, DATA takes the next {@code length} bytes of the uploaded data part.
+ */
+public record DeltaManifestDto(
+        @NotBlank
+        String baseEtag,
+        @NotEmpty
+        List<@Valid Segment> segments
+) {
+
+    public enum Op {
+        COPY,
+        DATA
+    }
+
+    public record Segment(
+            @NotNull
+            Op op,
+            @PositiveOrZero
+            long offset,
+            @PositiveOrZero
+            long length
+    ) {
+    }
+}
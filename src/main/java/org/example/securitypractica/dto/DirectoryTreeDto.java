@@ -0,0 +1,19 @@
+package org.example.securitypractica.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * A folder node has {@code children == null} when it lies at the requested depth and was not expanded.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DirectoryTreeDto(
+        String path,
+        String name,
+        Long size,
+        ResourceType type,
+        List<DirectoryTreeDto> children,
+        Boolean truncated
+) {
+}
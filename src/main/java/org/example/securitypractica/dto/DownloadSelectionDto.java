@@ -0,0 +1,11 @@
+package org.example.securitypractica.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record DownloadSelectionDto(
+        @NotEmpty
+        List<String> paths
+) {
+}
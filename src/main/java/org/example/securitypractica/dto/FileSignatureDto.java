@@ -0,0 +1,22 @@
+package org.example.securitypractica.dto;
+
+import java.util.List;
+
+/**
+ * Block signature of one version of a file, identified by its {@code etag}. Chunk boundaries follow
+ * {@code algorithm} with the given sizes; a client chunks its edited copy the same way and reuses every chunk
+ * whose hash appears here.
+ */
+public record FileSignatureDto(
+        String etag,
+        long size,
+        String algorithm,
+        int minChunkSize,
+        int avgChunkSize,
+        int maxChunkSize,
+        List<Chunk> chunks
+) {
+
+    public record Chunk(long offset, int length, String sha256) {
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.securitypractica.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.example.securitypractica.entity.JobStatus;
+import org.example.securitypractica.entity.JobType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JobDto(
+        UUID id,
+        JobType type,
+        JobStatus status,
+        String sourcePath,
+        String targetPath,
+        long processedItems,
+        String error,
+        Instant createdAt,
+        Instant updatedAt
+) {
+}
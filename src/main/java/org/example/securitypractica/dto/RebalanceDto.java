@@ -0,0 +1,9 @@
+package org.example.securitypractica.dto;
+
+import java.util.List;
+
+public record RebalanceDto(
+        boolean started,
+        List<Long> users
+) {
+}
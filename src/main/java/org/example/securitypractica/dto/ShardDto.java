@@ -0,0 +1,10 @@
+package org.example.securitypractica.dto;
+
+public record ShardDto(
+        String name,
+        String endpoint,
+        String bucket,
+        long users,
+        long migratingUsers
+) {
+}
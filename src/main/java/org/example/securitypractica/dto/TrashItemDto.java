@@ -0,0 +1,20 @@
+package org.example.securitypractica.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.example.securitypractica.entity.TrashStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TrashItemDto(
+        UUID id,
+        String path,
+        String name,
+        Long size,
+        ResourceType type,
+        TrashStatus status,
+        Instant deletedAt,
+        Instant purgeAfter
+) {
+}
@@ -0,0 +1,23 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Per-user head of the change feed. {@code compactedSeq} is the last sequence number that has been
+ * compacted away; clients behind it have to start over from a full listing.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_change_cursors")
+public class ChangeCursor {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+    @Column(name = "compacted_seq", nullable = false)
+    private long compactedSeq;
+}
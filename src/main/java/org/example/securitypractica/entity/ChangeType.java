@@ -0,0 +1,5 @@
+package org.example.securitypractica.entity;
+
+public enum ChangeType {
+    CREATE, UPLOAD, MOVE, DELETE
+}
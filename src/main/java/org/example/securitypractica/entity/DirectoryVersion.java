@@ -0,0 +1,30 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Entity
+@NoArgsConstructor
+@IdClass(DirectoryVersion.Key.class)
+@Table(name = "directory_versions")
+public class DirectoryVersion {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    @Id
+    @Column(name = "path", length = 1024)
+    private String path;
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Data
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private String path;
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.securitypractica.entity;
+
+public enum JobType {
+    DELETE, MOVE, ARCHIVE, TRASH, RESTORE, PURGE;
+
+    public boolean isTrashOperation() {
+        return this == TRASH || this == RESTORE || this == PURGE;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One name in the namespace layout. A folder's name ends with '/' and it has no blob; it exists while anything
+ * is below it or while it is a {@code marker}, the counterpart of a folder marker object. A file points at the
+ * blob holding its bytes, which keeps its key however often the file is renamed or moved.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "namespace_nodes", uniqueConstraints = @UniqueConstraint(name = "uq_namespace_nodes_child",
+        columnNames = {"parent_id", "name"}))
+public class NamespaceNode {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+    @Column(name = "parent_id", nullable = false)
+    private Long parentId;
+    @Column(name = "name", nullable = false, columnDefinition = "varchar(1024) collate \"C\"")
+    private String name;
+    @Column(name = "blob_key", columnDefinition = "varchar(1024) collate \"C\"")
+    private String blobKey;
+    @Column(name = "size", nullable = false)
+    private long size;
+    @Column(name = "etag", length = 64)
+    private String etag;
+    @Column(name = "marker", nullable = false)
+    private boolean marker;
+    @Column(name = "modified_at", nullable = false)
+    private Instant modifiedAt;
+
+    public boolean isFolder() {
+        return name.endsWith("/");
+    }
+}
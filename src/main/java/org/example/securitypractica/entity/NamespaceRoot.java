@@ -0,0 +1,27 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A top-level prefix such as {@code user-7-files/} and whether it is served from the namespace yet.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "namespace_roots")
+public class NamespaceRoot {
+    @Id
+    @Column(name = "name", length = 255)
+    private String name;
+    @Column(name = "node_id", nullable = false)
+    private Long nodeId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 32)
+    private NamespaceRootState state;
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,16 @@
+package org.example.securitypractica.entity;
+
+public enum NamespaceRootState {
+    /**
+     * Existing objects are being indexed; the root is still served by its object keys.
+     */
+    MIGRATING,
+    /**
+     * The final catch-up pass is running, so writes are refused for a moment.
+     */
+    FROZEN,
+    /**
+     * Served from the namespace.
+     */
+    READY
+}
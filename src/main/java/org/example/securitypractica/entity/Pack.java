@@ -0,0 +1,42 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One object holding many small files back to back. {@code liveBytes} counts the bytes referenced by
+ * {@link PackedObject}s and starts at zero until the entries are indexed. A pack nobody references is first marked
+ * {@code retiredAt} and deleted a grace period later, so reads that looked up an entry just before it moved can
+ * still finish.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "packs")
+public class Pack {
+    @Id
+    @Column(name = "pack_key", length = 255)
+    private String packKey;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @Column(name = "size", nullable = false)
+    private long size;
+    @Column(name = "live_bytes", nullable = false)
+    private long liveBytes;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+    @Column(name = "retired_at")
+    private Instant retiredAt;
+    @Column(name = "claimed_until")
+    private Instant claimedUntil;
+
+    public Pack(String packKey, Long userId, long size) {
+        this.packKey = packKey;
+        this.userId = userId;
+        this.size = size;
+        this.createdAt = Instant.now();
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A file stored as the byte range {@code [packOffset, packOffset + length)} of a {@link Pack} instead of as an
+ * object of its own. {@code objectKey} is the key the file would otherwise have.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "packed_objects")
+public class PackedObject {
+    @Id
+    @Column(name = "object_key", columnDefinition = "varchar(1024) collate \"C\"")
+    private String objectKey;
+    @Column(name = "pack_key", nullable = false, length = 255)
+    private String packKey;
+    @Column(name = "pack_offset", nullable = false)
+    private long packOffset;
+    @Column(name = "length", nullable = false)
+    private long length;
+    @Column(name = "etag", nullable = false, length = 64)
+    private String etag;
+    @Column(name = "content_type", length = 255)
+    private String contentType;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public PackedObject(String objectKey, String packKey, long packOffset, long length, String etag, String contentType) {
+        this.objectKey = objectKey;
+        this.packKey = packKey;
+        this.packOffset = packOffset;
+        this.length = length;
+        this.etag = etag;
+        this.contentType = contentType;
+        this.createdAt = Instant.now();
+    }
+}
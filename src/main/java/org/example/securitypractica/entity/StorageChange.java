@@ -0,0 +1,36 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_changes",
+        uniqueConstraints = @UniqueConstraint(name = "uq_storage_changes_user_seq", columnNames = {"user_id", "seq"}))
+public class StorageChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @Column(name = "seq", nullable = false)
+    private long seq;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private ChangeType type;
+    @Column(name = "path", nullable = false, length = 1024)
+    private String path;
+    @Column(name = "target_path", length = 1024)
+    private String targetPath;
+    @Column(name = "size")
+    private Long size;
+    @Column(name = "directory", nullable = false)
+    private boolean directory;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
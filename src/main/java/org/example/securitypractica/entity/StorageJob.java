@@ -0,0 +1,63 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "storage_jobs")
+public class StorageJob {
+    @Id
+    @Column(name = "id")
+    private UUID id;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private JobType type;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 32)
+    private JobStatus status;
+    @Column(name = "source_path", nullable = false, length = 1024)
+    private String sourcePath;
+    @Column(name = "target_path", length = 1024)
+    private String targetPath;
+    @Column(name = "processed_items", nullable = false)
+    private long processedItems;
+    @Column(name = "checkpoint", length = 1024)
+    private String checkpoint;
+    @Column(name = "result_key", length = 1024)
+    private String resultKey;
+    @Column(name = "error", length = 1024)
+    private String error;
+    @Column(name = "owner")
+    private String owner;
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested;
+    @Column(name = "heartbeat_at")
+    private Instant heartbeatAt;
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    @Column(name = "not_before")
+    private Instant notBefore;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public StorageJob(Long userId, JobType type, String sourcePath, String targetPath) {
+        this.id = UUID.randomUUID();
+        this.userId = userId;
+        this.type = type;
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.status = JobStatus.QUEUED;
+        this.createdAt = Instant.now();
+        this.updatedAt = this.createdAt;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "trash_items")
+public class TrashItem {
+    @Id
+    @Column(name = "id")
+    private UUID id;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @Column(name = "original_path", nullable = false, length = 1024)
+    private String originalPath;
+    @Column(name = "trash_key", nullable = false, length = 1024)
+    private String trashKey;
+    @Column(name = "size")
+    private Long size;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 32)
+    private TrashStatus status;
+    @Column(name = "deleted_at", nullable = false)
+    private Instant deletedAt;
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public TrashItem(Long userId, String originalPath, Long size, TrashStatus status) {
+        this.id = UUID.randomUUID();
+        this.userId = userId;
+        this.originalPath = originalPath;
+        // The item keeps its name inside the trash, under a folder of its own so equal names never collide.
+        String name = originalPath.endsWith("/") ? originalPath.substring(0, originalPath.length() - 1) : originalPath;
+        this.trashKey = id + "/" + originalPath.substring(name.lastIndexOf('/') + 1);
+        this.size = size;
+        this.status = status;
+        this.deletedAt = Instant.now();
+        this.updatedAt = this.deletedAt;
+    }
+
+    public boolean isDirectory() {
+        return originalPath.endsWith("/");
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.securitypractica.entity;
+
+public enum TrashStatus {
+    MOVING, TRASHED, RESTORING, PURGING;
+
+    /**
+     * Objects are on their way between the user's files and the trash, so the original path is hidden and locked.
+     */
+    public boolean isPending() {
+        return this == MOVING || this == RESTORING;
+    }
+}
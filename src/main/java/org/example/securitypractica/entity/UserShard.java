@@ -0,0 +1,29 @@
+package org.example.securitypractica.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Where a user's objects live. {@code targetShard} is set while the rebalancer copies the user elsewhere,
+ * and {@code frozen} blocks writes during the final catch-up copy.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@Table(name = "user_shards")
+public class UserShard {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    @Column(name = "shard", nullable = false, length = 64)
+    private String shard;
+    @Column(name = "target_shard", length = 64)
+    private String targetShard;
+    @Column(name = "frozen", nullable = false)
+    private boolean frozen;
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,13 @@
+package org.example.securitypractica.exception;
+
+import lombok.Getter;
+
+@Getter
+public class StorageUnavailableException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public StorageUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
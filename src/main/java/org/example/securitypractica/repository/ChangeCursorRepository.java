@@ -0,0 +1,47 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.ChangeCursor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface ChangeCursorRepository extends JpaRepository<ChangeCursor, Long> {
+
+    /**
+     * Reserves {@code count} sequence numbers and returns the last one. The row lock taken here is held
+     * until commit, so one user's changes always become visible in sequence order.
+     */
+    @Query(value = "INSERT INTO storage_change_cursors (user_id, last_seq, compacted_seq) VALUES (:userId, :count, 0) " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = storage_change_cursors.last_seq + :count " +
+            "RETURNING last_seq", nativeQuery = true)
+    long allocate(@Param("userId") Long userId, @Param("count") int count);
+
+    /**
+     * Skips one sequence number and compacts the feed up to it, so every reader sends its user back to a snapshot.
+     * Used when changes were lost before they could be recorded.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO storage_change_cursors (user_id, last_seq, compacted_seq) VALUES (:userId, 1, 1) " +
+            "ON CONFLICT (user_id) DO UPDATE SET last_seq = storage_change_cursors.last_seq + 1, " +
+            "compacted_seq = storage_change_cursors.last_seq + 1", nativeQuery = true)
+    int markLost(@Param("userId") Long userId);
+
+    List<ChangeCursor> findByUserIdIn(Collection<Long> userIds);
+
+    List<ChangeCursor> findByUserIdGreaterThanOrderByUserId(Long userId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE storage_change_cursors cur SET compacted_seq = old.max_seq " +
+            "FROM (SELECT user_id, MAX(seq) AS max_seq FROM storage_changes WHERE created_at < :cutoff GROUP BY user_id) old " +
+            "WHERE cur.user_id = old.user_id", nativeQuery = true)
+    int markCompacted(@Param("cutoff") Instant cutoff);
+}
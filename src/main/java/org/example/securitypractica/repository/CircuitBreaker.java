@@ -0,0 +1,73 @@
+package org.example.securitypractica.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Opens after a run of consecutive failures and rejects calls until the open period is over.
+ * Then a single probe is let through: its success closes the breaker, its failure opens it again.
+ */
+@Slf4j
+class CircuitBreaker {
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Returns 0 when the call may proceed, otherwise how many nanoseconds remain until the next probe.
+     */
+    synchronized long tryAcquire() {
+        if (state == State.CLOSED) return 0;
+        long remaining = openedAt + openNanos - System.nanoTime();
+        if (state == State.OPEN && remaining <= 0) {
+            state = State.HALF_OPEN;
+            return 0;
+        }
+        // While the probe is in flight everyone else keeps failing fast.
+        return Math.max(remaining, 1);
+    }
+
+    /**
+     * Like {@link #tryAcquire()} but never takes the probe slot, for calls whose outcome is not reported back.
+     * Once the open period is over they go through and leave the probe to the next reported call.
+     */
+    synchronized long check() {
+        if (state == State.CLOSED) return 0;
+        long remaining = openedAt + openNanos - System.nanoTime();
+        if (state == State.OPEN) return Math.max(remaining, 0);
+        return Math.max(remaining, 1);
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) log.info("MinIO circuit for {} closed", name);
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            if (state == State.CLOSED) log.warn("MinIO circuit for {} opened after {} failures", name, consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.securitypractica.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Maps users onto shards so that adding a shard only moves roughly 1/n of the users, all of them to the new shard.
+ * Each shard owns many virtual points on the ring to even out the distribution.
+ */
+public class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(List<String> shardNames, int virtualNodes) {
+        if (shardNames.isEmpty()) throw new IllegalArgumentException("Ring needs at least one shard");
+        for (String name : shardNames) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(name + "#" + i), name);
+            }
+        }
+    }
+
+    public String shardFor(Long userId) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash("user-" + userId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.example.securitypractica.repository;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local Lucene index of extracted document text, one document per file, keyed by user and path.
+ * Writes become visible to searches on {@link #refresh()} and durable on {@link #commit()}, both of which
+ * the caller runs periodically, so a burst of uploads costs one refresh and one commit.
+ */
+public class ContentIndex implements Closeable {
+
+    private static final String ID = "id";
+    private static final String USER = "user";
+    private static final String PATH = "path";
+    private static final String NAME = "name";
+    private static final String SIZE = "size";
+    private static final String CONTENT = "content";
+    private static final String CURSOR = "cursor:";
+    private static final String SEQ = "seq";
+    private static final int MAX_PASSAGES = 3;
+
+    public record Hit(String path, long size, String highlight) {
+    }
+
+    public record Page(long total, List<Hit> hits) {
+    }
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    public ContentIndex(Directory directory) {
+        this.directory = directory;
+        try {
+            IndexWriterConfig config = new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            this.writer = new IndexWriter(directory, config);
+            this.searcherManager = new SearcherManager(writer, new SearcherFactory());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search index", e);
+        }
+    }
+
+    public void index(Long userId, String path, long size, String text) {
+        try {
+            writer.updateDocument(new Term(ID, key(userId, path)), document(userId, path, size, text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes a file, or everything below a folder when the path ends with a slash.
+     */
+    public void delete(Long userId, String path) {
+        try {
+            writer.deleteDocuments(select(userId, path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Re-keys the documents of a moved file or folder from their stored fields, without extracting the text again.
+     */
+    public void move(Long userId, String from, String to) {
+        try {
+            // Earlier writes for the same user must be visible, or a file uploaded just before the move is left behind.
+            searcherManager.maybeRefreshBlocking();
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                Query query = select(userId, from);
+                int count = searcher.count(query);
+                if (count == 0) return;
+                StoredFields storedFields = searcher.storedFields();
+                for (ScoreDoc scoreDoc : searcher.search(query, count).scoreDocs) {
+                    Document stored = storedFields.document(scoreDoc.doc);
+                    String path = to + stored.get(PATH).substring(from.length());
+                    writer.updateDocument(new Term(ID, key(userId, path)), document(userId, path,
+                            stored.getField(SIZE).numericValue().longValue(), stored.get(CONTENT)));
+                }
+                writer.deleteDocuments(query);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that the user's changes up to {@code seq} are in the index. It is stored as a document of its own,
+     * so it becomes durable in the same commit as the changes it covers.
+     */
+    public void markApplied(Long userId, long seq) {
+        Document document = new Document();
+        document.add(new StringField(ID, CURSOR + userId, Field.Store.YES));
+        document.add(new StoredField(SEQ, seq));
+        try {
+            writer.updateDocument(new Term(ID, CURSOR + userId), document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the last applied sequence number by user, as of the last {@link #markApplied} calls
+     */
+    public Map<Long, Long> applied() {
+        try {
+            searcherManager.maybeRefreshBlocking();
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                Query query = new PrefixQuery(new Term(ID, CURSOR));
+                int count = searcher.count(query);
+                Map<Long, Long> applied = new HashMap<>(count);
+                if (count == 0) return applied;
+                StoredFields storedFields = searcher.storedFields();
+                for (ScoreDoc scoreDoc : searcher.search(query, count).scoreDocs) {
+                    Document stored = storedFields.document(scoreDoc.doc);
+                    applied.put(Long.valueOf(stored.get(ID).substring(CURSOR.length())),
+                            stored.getField(SEQ).numericValue().longValue());
+                }
+                return applied;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Page search(Long userId, String text, int offset, int limit) {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, Map.of(CONTENT, 1f, NAME, 2f));
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query parsed = parser.parse(text);
+        if (parsed == null) return new Page(0, List.of());
+        Query query = new BooleanQuery.Builder()
+                .add(parsed, BooleanClause.Occur.MUST)
+                .add(new TermQuery(new Term(USER, userId.toString())), BooleanClause.Occur.FILTER)
+                .build();
+
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs top = searcher.search(query, offset + limit);
+                ScoreDoc[] page = Arrays.copyOfRange(top.scoreDocs, Math.min(offset, top.scoreDocs.length), top.scoreDocs.length);
+                if (page.length == 0) return new Page(searcher.count(query), List.of());
+
+                UnifiedHighlighter highlighter = UnifiedHighlighter.builder(searcher, analyzer)
+                        .withFormatter(new DefaultPassageFormatter("<b>", "</b>", " … ", true))
+                        .build();
+                String[] highlights = highlighter.highlight(CONTENT, query, new TopDocs(top.totalHits, page), MAX_PASSAGES);
+                StoredFields storedFields = searcher.storedFields();
+                List<Hit> hits = new ArrayList<>(page.length);
+                for (int i = 0; i < page.length; i++) {
+                    Document stored = storedFields.document(page[i].doc, Set.of(PATH, SIZE));
+                    hits.add(new Hit(stored.get(PATH), stored.getField(SIZE).numericValue().longValue(), highlights[i]));
+                }
+                return new Page(searcher.count(query), hits);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) writer.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcherManager.close();
+        // Closing the writer commits whatever the last periodic commit did not cover.
+        writer.close();
+        directory.close();
+    }
+
+    private Query select(Long userId, String path) {
+        Term term = new Term(ID, key(userId, path));
+        return path.isEmpty() || path.endsWith("/") ? new PrefixQuery(term) : new TermQuery(term);
+    }
+
+    private Document document(Long userId, String path, long size, String text) {
+        Document document = new Document();
+        document.add(new StringField(ID, key(userId, path), Field.Store.NO));
+        document.add(new StringField(USER, userId.toString(), Field.Store.NO));
+        document.add(new StoredField(PATH, path));
+        document.add(new StoredField(SIZE, size));
+        document.add(new TextField(NAME, path.substring(path.lastIndexOf('/') + 1), Field.Store.NO));
+        document.add(new TextField(CONTENT, text, Field.Store.YES));
+        return document;
+    }
+
+    private static String key(Long userId, String path) {
+        return userId + ":" + path;
+    }
+}
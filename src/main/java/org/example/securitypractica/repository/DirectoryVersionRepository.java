@@ -0,0 +1,22 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.DirectoryVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface DirectoryVersionRepository extends JpaRepository<DirectoryVersion, DirectoryVersion.Key> {
+
+    List<DirectoryVersion> findByUserIdAndPathIn(Long userId, Collection<String> paths);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO directory_versions (user_id, path, version) VALUES (:userId, :path, 1) " +
+            "ON CONFLICT (user_id, path) DO UPDATE SET version = directory_versions.version + 1", nativeQuery = true)
+    int bump(@Param("userId") Long userId, @Param("path") String path);
+}
@@ -0,0 +1,54 @@
+package org.example.securitypractica.repository;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent calls of one operation. Percentiles are recomputed every few samples
+ * rather than on every read, so asking for them stays cheap on the request path.
+ */
+class LatencyWindow {
+
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final long[] samples;
+    private final double[] percentiles;
+    private long[] cached;
+    private boolean computed;
+    private int next;
+    private int size;
+    private int sinceRecompute;
+
+    LatencyWindow(int capacity, double... percentiles) {
+        this.samples = new long[capacity];
+        this.percentiles = percentiles;
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) size++;
+        sinceRecompute++;
+    }
+
+    /**
+     * Value of the {@code index}-th percentile passed to the constructor, or -1 while there are too few samples.
+     */
+    synchronized long percentile(int index, int minSamples) {
+        if (size < minSamples) return -1;
+        if (!computed || sinceRecompute >= RECOMPUTE_EVERY) recompute();
+        return cached[index];
+    }
+
+    private void recompute() {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] * sorted.length) - 1;
+            values[i] = sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+        cached = values;
+        computed = true;
+        sinceRecompute = 0;
+    }
+}
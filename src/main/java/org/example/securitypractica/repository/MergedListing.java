@@ -0,0 +1,86 @@
+package org.example.securitypractica.repository;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges a MinIO listing with the packed files under the same prefix into one listing in key order.
+ * A name listed by both, such as a folder holding files of either kind, appears once.
+ */
+final class MergedListing implements Iterator<Result<Item>> {
+
+    private final Iterator<Result<Item>> stored;
+    private final Iterator<Item> packed;
+    private Item storedHead;
+    private Item packedHead;
+    private Result<Item> next;
+    private String last;
+
+    MergedListing(Iterator<Result<Item>> stored, Iterator<Item> packed) {
+        this.stored = stored;
+        this.packed = packed;
+    }
+
+    @Override
+    public boolean hasNext() {
+        advance();
+        return next != null;
+    }
+
+    @Override
+    public Result<Item> next() {
+        advance();
+        if (next == null) throw new NoSuchElementException();
+        Result<Item> result = next;
+        next = null;
+        return result;
+    }
+
+    private void advance() {
+        while (next == null) {
+            if (storedHead == null && stored.hasNext()) {
+                Result<Item> result = stored.next();
+                try {
+                    storedHead = result.get();
+                } catch (Exception e) {
+                    // Failures are handed to the caller as they are, exactly where MinIO reported them.
+                    next = result;
+                    return;
+                }
+            }
+            if (packedHead == null && packed.hasNext()) packedHead = packed.next();
+            if (storedHead == null && packedHead == null) return;
+
+            Item item;
+            if (storedHead == null || (packedHead != null && compareKeys(packedHead.objectName(), storedHead.objectName()) <= 0)) {
+                item = packedHead;
+                packedHead = null;
+            } else {
+                item = storedHead;
+                storedHead = null;
+            }
+            if (item.objectName().equals(last)) continue;
+            last = item.objectName();
+            next = new Result<>(item);
+        }
+    }
+
+    /**
+     * Orders keys by code point, which is the UTF-8 byte order both S3 and the {@code "C"} collation use.
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) return Integer.compare(x, y);
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
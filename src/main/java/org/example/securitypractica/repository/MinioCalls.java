@@ -0,0 +1,243 @@
+package org.example.securitypractica.repository;
+
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.InternalException;
+import io.minio.errors.InvalidResponseException;
+import io.minio.errors.ServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.exception.StorageUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs MinIO calls with a per-shard circuit breaker. Idempotent reads additionally get a timeout derived from
+ * the observed latency of that operation and, once they run longer than usual, a hedged duplicate request;
+ * whichever answers first wins and the other one is cancelled.
+ */
+@Slf4j
+@Component
+public class MinioCalls {
+
+    private static final int WINDOW_SIZE = 512;
+    private static final int MIN_SAMPLES = 20;
+    private static final int HEDGE_PERCENTILE = 0;
+    private static final int TIMEOUT_PERCENTILE = 1;
+
+    @FunctionalInterface
+    public interface MinioCall<T> {
+        T call() throws Exception;
+    }
+
+    private final ThreadPoolTaskExecutor executor;
+    private final boolean hedgingEnabled;
+    private final double hedgePercentile;
+    private final int maxHedgePercent;
+    private final double timeoutMultiplier;
+    private final Duration minTimeout;
+    private final Duration maxTimeout;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+    public MinioCalls(ThreadPoolTaskExecutor minioReadExecutor,
+                      @Value("${storage.minio.hedging.enabled:true}") boolean hedgingEnabled,
+                      @Value("${storage.minio.hedging.percentile:0.95}") double hedgePercentile,
+                      @Value("${storage.minio.hedging.max-percent:10}") int maxHedgePercent,
+                      @Value("${storage.minio.timeouts.multiplier:3}") double timeoutMultiplier,
+                      @Value("${storage.minio.timeouts.min:500ms}") Duration minTimeout,
+                      @Value("${storage.minio.timeouts.max:10s}") Duration maxTimeout,
+                      @Value("${storage.minio.breaker.failure-threshold:5}") int failureThreshold,
+                      @Value("${storage.minio.breaker.open-duration:10s}") Duration openDuration) {
+        this.executor = minioReadExecutor;
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.maxHedgePercent = maxHedgePercent;
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * For calls that must not be repeated or whose duration depends on the payload: only the breaker applies,
+     * time limits are left to the HTTP client.
+     */
+    public <T> T execute(MinioShard shard, String operation, MinioCall<T> call) throws Exception {
+        return callDirect(acquire(shard), call);
+    }
+
+    /**
+     * For idempotent requests with a small response: stat, a bounded listing page, a short ranged GET.
+     * A result that loses the race is closed if it is closeable.
+     */
+    public <T> T read(MinioShard shard, String operation, MinioCall<T> call) throws Exception {
+        CircuitBreaker breaker = acquire(shard);
+        LatencyWindow window = latencies.computeIfAbsent(shard.name() + ":" + operation,
+                key -> new LatencyWindow(WINDOW_SIZE, hedgePercentile, 0.99));
+        reads.incrementAndGet();
+
+        long hedgeAfter = hedgingEnabled ? window.percentile(HEDGE_PERCENTILE, MIN_SAMPLES) : -1;
+        long timeout = timeoutFor(window);
+
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<Future<?>> attempts = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        if (!launch(call, winner, pending, attempts, window, breaker)) {
+            return callDirect(breaker, call);
+        }
+
+        try {
+            if (hedgeAfter > 0 && hedgeAfter < timeout) {
+                try {
+                    return winner.get(hedgeAfter, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (allowHedge()) {
+                        pending.incrementAndGet();
+                        if (launch(call, winner, pending, attempts, window, breaker)) {
+                            hedges.incrementAndGet();
+                        } else {
+                            pending.decrementAndGet();
+                        }
+                    }
+                }
+            }
+            return winner.get(Math.max(0, timeout - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        } catch (TimeoutException e) {
+            // Counting the timeout as a sample lets the limit grow when the backend is slow across the board.
+            window.record(timeout);
+            breaker.recordFailure();
+            throw new StorageUnavailableException("Storage is not responding, try again shortly", 1);
+        } finally {
+            winner.cancel(false);
+            attempts.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    /**
+     * Fails fast while the shard's breaker is open. Used directly by lazily iterated listings, which report no
+     * outcome and therefore never act as the probe that closes the breaker again.
+     */
+    public void checkAvailable(MinioShard shard) {
+        reject(breaker(shard).check());
+    }
+
+    public long hedgeCount() {
+        return hedges.get();
+    }
+
+    private CircuitBreaker acquire(MinioShard shard) {
+        CircuitBreaker breaker = breaker(shard);
+        reject(breaker.tryAcquire());
+        return breaker;
+    }
+
+    private CircuitBreaker breaker(MinioShard shard) {
+        return breakers.computeIfAbsent(shard.name(), name -> new CircuitBreaker(name, failureThreshold, openDuration));
+    }
+
+    private static void reject(long waitNanos) {
+        if (waitNanos > 0) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos));
+            throw new StorageUnavailableException("Storage is temporarily unavailable", retryAfter);
+        }
+    }
+
+    private <T> T callDirect(CircuitBreaker breaker, MinioCall<T> call) throws Exception {
+        try {
+            T result = call.call();
+            breaker.recordSuccess();
+            return result;
+        } catch (Exception e) {
+            if (isBackendFailure(e)) breaker.recordFailure(); else breaker.recordSuccess();
+            throw e;
+        }
+    }
+
+    private <T> boolean launch(MinioCall<T> call, CompletableFuture<T> winner, AtomicInteger pending,
+                               List<Future<?>> attempts, LatencyWindow window, CircuitBreaker breaker) {
+        try {
+            attempts.add(executor.submit(() -> attempt(call, winner, pending, window, breaker)));
+            return true;
+        } catch (TaskRejectedException e) {
+            return false;
+        }
+    }
+
+    private <T> void attempt(MinioCall<T> call, CompletableFuture<T> winner, AtomicInteger pending,
+                             LatencyWindow window, CircuitBreaker breaker) {
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            window.record(System.nanoTime() - start);
+            breaker.recordSuccess();
+            if (!winner.complete(result)) closeQuietly(result);
+        } catch (Exception e) {
+            // A cancelled loser is not evidence of an unhealthy backend.
+            if (winner.isDone()) return;
+            boolean failure = isBackendFailure(e);
+            if (failure) {
+                breaker.recordFailure();
+            } else {
+                window.record(System.nanoTime() - start);
+                breaker.recordSuccess();
+            }
+            // A definite answer such as "no such key" ends the race; a transport failure waits for the other attempt.
+            if (!failure || pending.decrementAndGet() == 0) winner.completeExceptionally(e);
+        }
+    }
+
+    private long timeoutFor(LatencyWindow window) {
+        long p99 = window.percentile(TIMEOUT_PERCENTILE, MIN_SAMPLES);
+        if (p99 < 0) return maxTimeout.toNanos();
+        long adaptive = (long) (p99 * timeoutMultiplier);
+        return Math.max(minTimeout.toNanos(), Math.min(maxTimeout.toNanos(), adaptive));
+    }
+
+    private boolean allowHedge() {
+        return hedges.get() * 100 < reads.get() * maxHedgePercent;
+    }
+
+    private static boolean isBackendFailure(Exception e) {
+        if (e instanceof ErrorResponseException error) {
+            return error.response() != null && error.response().code() >= 500;
+        }
+        // A non-XML answer usually comes from a proxy in front of a node that is down.
+        return e instanceof IOException || e instanceof ServerException || e instanceof InternalException
+                || e instanceof InvalidResponseException;
+    }
+
+    private static void closeQuietly(Object result) {
+        if (result instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.debug("Failed to close losing hedged response", e);
+            }
+        }
+    }
+}
@@ -1,135 +1,645 @@
 package org.example.securitypractica.repository;
 
+import io.micrometer.observation.annotation.Observed;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.entity.NamespaceNode;
+import org.example.securitypractica.entity.Pack;
+import org.example.securitypractica.entity.PackedObject;
+import org.example.securitypractica.exception.PreconditionFailedException;
+import org.example.securitypractica.exception.StorageUnavailableException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Repository;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
+/**
+ * Object storage as the services see it. With {@code storage.namespace.enabled} the user's files and trash are
+ * names in the {@link Namespace} that point at blobs under {@code user-<id>-blobs/}; with {@code storage.pack.enabled}
+ * small files may live inside pack objects (see {@link PackIndex}). The methods taking a key list, read, copy and
+ * delete such files like any other object. The methods taking a {@link MinioShard} work on the physical objects only.
+ */
 @Repository
+@Observed(name = "storage.minio")
 @RequiredArgsConstructor
 public class MinioRepository {
 
-    private final MinioClient minioClient;
+    private static final long STREAM_PART_SIZE = 10L * 1024 * 1024;
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int PACKED_PAGE_SIZE = 1000;
+    private static final int NAMESPACE_PAGE_SIZE = 1000;
 
-    @Value("${minio.bucket-name:test-backet}")
-    private String bucketName;
+    private final ShardRouter shardRouter;
+    private final MinioShards shards;
+    private final MinioCalls calls;
+    private final PackIndex packIndex;
+    private final Namespace namespace;
 
+    @Value("${storage.minio.hedging.max-range-bytes:1048576}")
+    private long maxHedgedRangeBytes;
+
+    /**
+     * A folder exists when anything is stored under it, a file when its exact key does.
+     * Both are answered by a one-key listing, so a miss costs no more than a hit.
+     */
     public boolean exists(String path) {
+        if (path.endsWith("/")) return !peek(path, true, 1).isEmpty();
+        return findObject(path) != null;
+    }
+
+    public Item findObject(String path) {
+        // The exact key is the shortest one with this prefix, so if it exists it is listed first.
+        List<Item> items = peek(path, true, 1);
+        return !items.isEmpty() && items.get(0).objectName().equals(path) ? items.get(0) : null;
+    }
+
+    /**
+     * Returns at most {@code maxKeys} entries under the prefix from a single listing request.
+     */
+    public List<Item> peek(String prefix, boolean recursive, int maxKeys) {
+        if (named(prefix)) return namespace.peek(prefix, recursive, maxKeys);
+        return storedPeek(prefix, recursive, maxKeys);
+    }
+
+    private List<Item> storedPeek(String prefix, boolean recursive, int maxKeys) {
+        MinioShard shard = shardRouter.forRead(prefix);
         try {
-            minioClient.statObject(
-                    StatObjectArgs
-                            .builder()
-                            .bucket(bucketName)
-                            .object(path)
-                            .build());
-            return true;
-        } catch (ErrorResponseException e) {
-            if ("NoSuchKey".equals(e.errorResponse().code())) return false;
-            throw new RuntimeException("MinIO stat error", e);
+            return peekPacked(prefix, recursive, maxKeys, calls.read(shard, "list", () -> {
+                Iterable<Result<Item>> results = shard.client().listObjects(
+                        ListObjectsArgs.builder()
+                                .bucket(shard.bucket())
+                                .prefix(prefix)
+                                .recursive(recursive)
+                                .maxKeys(maxKeys)
+                                .build()
+                );
+                List<Item> items = new ArrayList<>(maxKeys);
+                for (Result<Item> result : results) {
+                    items.add(result.get());
+                    if (items.size() == maxKeys) break;
+                }
+                return items;
+            }));
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
-            return false;
+            throw new RuntimeException("MinIO list error", e);
         }
     }
 
+    private List<Item> peekPacked(String prefix, boolean recursive, int maxKeys, List<Item> stored) {
+        if (!packIndex.covers(prefix)) return stored;
+        Iterator<Result<Item>> merged = new MergedListing(stored.stream().map(Result::new).iterator(),
+                packIndex.list(prefix, recursive, null, maxKeys));
+        List<Item> items = new ArrayList<>(maxKeys);
+        try {
+            while (merged.hasNext() && items.size() < maxKeys) {
+                items.add(merged.next().get());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
+        }
+        return items;
+    }
+
     public Iterable<Result<Item>> list(String prefix, boolean recursive) {
-        return minioClient.listObjects(
+        return list(prefix, recursive, null);
+    }
+
+    public Iterable<Result<Item>> list(String prefix, boolean recursive, String startAfter) {
+        if (named(prefix)) {
+            return () -> {
+                Iterator<Item> items = namespace.list(prefix, recursive, startAfter, NAMESPACE_PAGE_SIZE);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return items.hasNext();
+                    }
+
+                    @Override
+                    public Result<Item> next() {
+                        return new Result<>(items.next());
+                    }
+                };
+            };
+        }
+        return listStored(prefix, recursive, startAfter);
+    }
+
+    /**
+     * Lists by object key, bypassing the namespace; this is what the namespace migration indexes.
+     */
+    public Iterable<Result<Item>> listStored(String prefix, boolean recursive, String startAfter) {
+        Iterable<Result<Item>> stored = list(shardRouter.forRead(prefix), prefix, recursive, startAfter);
+        if (!packIndex.covers(prefix)) return stored;
+        return () -> new MergedListing(stored.iterator(), packIndex.list(prefix, recursive, startAfter, PACKED_PAGE_SIZE));
+    }
+
+    public Iterable<Result<Item>> list(MinioShard shard, String prefix, boolean recursive, String startAfter) {
+        // Pages are fetched lazily while iterating, so only the breaker can be checked up front.
+        calls.checkAvailable(shard);
+        return shard.client().listObjects(
                 ListObjectsArgs.builder()
-                        .bucket(bucketName)
+                        .bucket(shard.bucket())
                         .prefix(prefix)
                         .recursive(recursive)
+                        .startAfter(startAfter)
                         .build()
         );
     }
 
+    public List<MinioShard> shards() {
+        return shards.all();
+    }
+
     public void createFolder(String path) {
+        if (namedForWrite(path)) {
+            namespace.createFolder(path);
+            return;
+        }
+        MinioShard shard = shardRouter.forWrite(path);
         try {
-            minioClient.putObject(
+            calls.execute(shard, "put", () -> shard.client().putObject(
                     PutObjectArgs.builder()
-                            .bucket(bucketName)
+                            .bucket(shard.bucket())
                             .object(path)
                             .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
                             .build()
-            );
+            ));
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Failed to create folder", e);
         }
     }
 
-    public void putFile(String objectName, InputStream inputStream, long size, String contentType) {
+    /**
+     * @return the ETag of the stored object
+     */
+    public String putFile(String objectName, InputStream inputStream, long size, String contentType) {
+        if (namedForWrite(objectName)) {
+            String blobKey = newBlobKey(objectName);
+            String etag = putFile(shardRouter.forWrite(blobKey), blobKey, inputStream, size, contentType);
+            replaced(namespace.put(objectName, blobKey, size, unquote(etag)));
+            return etag;
+        }
+        String etag = putFile(shardRouter.forWrite(objectName), objectName, inputStream, size, contentType);
+        packIndex.removeAll(List.of(objectName));
+        return etag;
+    }
+
+    public String putFile(MinioShard shard, String objectName, InputStream inputStream, long size, String contentType) {
         try {
-            minioClient.putObject(
+            return calls.execute(shard, "put", () -> shard.client().putObject(
                     PutObjectArgs.builder()
-                            .bucket(bucketName)
+                            .bucket(shard.bucket())
                             .object(objectName)
                             .stream(inputStream, size, -1)
                             .contentType(contentType)
                             .build()
-            );
+            )).etag();
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("MinIO upload error", e);
         }
     }
 
+    public void putStream(String objectName, InputStream inputStream, String contentType) {
+        if (namedForWrite(objectName)) {
+            String blobKey = newBlobKey(objectName);
+            putStream(blobKey, inputStream, contentType);
+            Item blob = storedFind(blobKey);
+            replaced(namespace.put(objectName, blobKey, blob.size(), unquote(blob.etag())));
+            return;
+        }
+        MinioShard shard = shardRouter.forWrite(objectName);
+        try {
+            calls.execute(shard, "put", () -> shard.client().putObject(
+                    PutObjectArgs.builder()
+                            .bucket(shard.bucket())
+                            .object(objectName)
+                            .stream(inputStream, -1, STREAM_PART_SIZE)
+                            .contentType(contentType)
+                            .build()
+            ));
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO upload error", e);
+        }
+        packIndex.removeAll(List.of(objectName));
+    }
+
+    /**
+     * A small file to be stored inside a pack; {@code size} must be exact.
+     */
+    public record PackedFile(String key, InputStreamSource content, long size, String contentType) {
+    }
+
+    public boolean isPackable(String key, long size) {
+        return packIndex.accepts(key, size);
+    }
+
+    public long packTargetSize() {
+        return packIndex.targetSize();
+    }
+
+    /**
+     * Stores the files back to back in one new pack, written with a single request, and indexes them.
+     * All keys must belong to the same user.
+     */
+    public void putPacked(List<PackedFile> files) {
+        if (files.isEmpty()) return;
+        if (!namedForWrite(files.get(0).key())) {
+            storePacked(files);
+            return;
+        }
+        Map<String, String> keysByBlob = new LinkedHashMap<>();
+        List<PackedFile> blobs = new ArrayList<>(files.size());
+        for (PackedFile file : files) {
+            String blobKey = newBlobKey(file.key());
+            keysByBlob.put(blobKey, file.key());
+            blobs.add(new PackedFile(blobKey, file.content(), file.size(), file.contentType()));
+        }
+        for (PackedObject entry : storePacked(blobs)) {
+            replaced(namespace.put(keysByBlob.get(entry.getObjectKey()), entry.getObjectKey(), entry.getLength(), entry.getEtag()));
+        }
+    }
+
+    private List<PackedObject> storePacked(List<PackedFile> files) {
+        Long userId = ShardRouter.userIdOf(files.get(0).key());
+        long size = files.stream().mapToLong(PackedFile::size).sum();
+        try (PackStream content = new PackStream(files)) {
+            String packKey = putPack(userId, content, size);
+            List<PackedObject> entries = content.entries(packKey);
+            packIndex.add(packKey, entries);
+            return entries;
+        } catch (IOException e) {
+            throw new RuntimeException("MinIO upload error", e);
+        }
+    }
+
+    /**
+     * Writes a pack object. It is registered before it is written, so a pack whose entries never make it into
+     * the index is still found and removed by compaction.
+     */
+    public String putPack(Long userId, InputStream content, long size) {
+        String packKey = "user-" + userId + "-packs/" + UUID.randomUUID();
+        packIndex.register(new Pack(packKey, userId, size));
+        MinioShard shard = shardRouter.forWrite(packKey);
+        try {
+            // A single part, so the whole pack costs one request.
+            calls.execute(shard, "put", () -> shard.client().putObject(
+                    PutObjectArgs.builder()
+                            .bucket(shard.bucket())
+                            .object(packKey)
+                            .stream(content, size, Math.max(size, MIN_PART_SIZE))
+                            .contentType("application/octet-stream")
+                            .build()
+            ));
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO upload error", e);
+        }
+        return packKey;
+    }
+
     public InputStream getObject(String path) {
+        return storedGet(named(path) ? file(path).getBlobKey() : path);
+    }
+
+    private InputStream storedGet(String path) {
+        PackedObject packed = packIndex.find(path);
+        if (packed != null) return getRange(packed.getPackKey(), packed.getPackOffset(), packed.getLength());
+        return getObject(shardRouter.forRead(path), path);
+    }
+
+    public InputStream getObject(MinioShard shard, String path) {
         try {
-            return minioClient.getObject(
+            return calls.execute(shard, "get", () -> shard.client().getObject(
                     GetObjectArgs
                             .builder()
-                            .bucket(bucketName)
+                            .bucket(shard.bucket())
                             .object(path)
                             .build()
-            );
+            ));
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO download error", e);
+        }
+    }
+
+    public InputStream getObject(String path, long offset, long length) {
+        return storedGet(named(path) ? file(path).getBlobKey() : path, offset, length);
+    }
+
+    private InputStream storedGet(String path, long offset, long length) {
+        PackedObject packed = packIndex.find(path);
+        if (packed != null) {
+            long available = Math.max(0, packed.getLength() - offset);
+            return getRange(packed.getPackKey(), packed.getPackOffset() + offset, Math.min(length, available));
+        }
+        return getRange(path, offset, length);
+    }
+
+    private InputStream getRange(String path, long offset, long length) {
+        if (length == 0) return InputStream.nullInputStream();
+        MinioShard shard = shardRouter.forRead(path);
+        MinioCalls.MinioCall<InputStream> call = () -> shard.client().getObject(
+                GetObjectArgs
+                        .builder()
+                        .bucket(shard.bucket())
+                        .object(path)
+                        .offset(offset)
+                        .length(length)
+                        .build()
+        );
+        try {
+            // Only short ranges are worth racing; a large body would be transferred twice.
+            return length <= maxHedgedRangeBytes ? calls.read(shard, "get-range", call) : calls.execute(shard, "get", call);
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("MinIO download error", e);
         }
     }
 
     public void copy(String sourcePath, String destinationPath) {
+        boolean fromNamespace = named(sourcePath);
+        boolean toNamespace = namedForWrite(destinationPath);
+        if (!fromNamespace && !toNamespace) {
+            storedCopy(sourcePath, destinationPath);
+            return;
+        }
+        // A folder marker in the namespace is a flag rather than an object.
+        if (sourcePath.endsWith("/")) {
+            createFolder(destinationPath);
+            return;
+        }
+        NamespaceNode source = fromNamespace ? file(sourcePath) : null;
+        String sourceKey = source != null ? source.getBlobKey() : sourcePath;
+        if (!toNamespace) {
+            storedCopy(sourceKey, destinationPath);
+            return;
+        }
+        String blobKey = newBlobKey(destinationPath);
+        String etag = storedCopy(sourceKey, blobKey);
+        long size = source != null ? source.getSize() : storedFind(blobKey).size();
+        replaced(namespace.put(destinationPath, blobKey, size, unquote(etag)));
+    }
+
+    /**
+     * Gives a file, or a folder with everything below it, a new name in a single step. Only the namespace can do
+     * that; otherwise nothing happens and the caller copies the objects instead.
+     *
+     * @return whether the resource was renamed
+     */
+    public boolean rename(String from, String to) {
+        if (!namedForWrite(from) || !namedForWrite(to)) return false;
+        namespace.rename(from, to);
+        return true;
+    }
+
+    private String storedCopy(String sourcePath, String destinationPath) {
+        // A packed file is copied by pointing the new key at the same bytes.
+        String etag = packIndex.copy(sourcePath, destinationPath);
+        if (etag != null) return etag;
+        etag = copy(shardRouter.forRead(sourcePath), sourcePath, shardRouter.forWrite(destinationPath), destinationPath);
+        packIndex.removeAll(List.of(destinationPath));
+        return etag;
+    }
+
+    /**
+     * Server-side copy within a shard; between shards the object is streamed through this node.
+     *
+     * @return the ETag of the copy
+     */
+    public String copy(MinioShard from, String sourcePath, MinioShard to, String destinationPath) {
+        if (!from.name().equals(to.name())) {
+            return transfer(from, sourcePath, to, destinationPath);
+        }
         try {
-            minioClient.copyObject(
+            return calls.execute(to, "copy", () -> to.client().copyObject(
                     CopyObjectArgs.builder()
-                            .bucket(bucketName)
+                            .bucket(to.bucket())
                             .object(destinationPath)
                             .source(CopySource.builder()
-                                    .bucket(bucketName)
+                                    .bucket(from.bucket())
                                     .object(sourcePath)
                                     .build())
                             .build()
-            );
+            )).etag();
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("MinIO copy error", e);
         }
     }
 
+    /**
+     * A byte range of an existing object; a null offset and length stand for the whole object.
+     * With {@code matchETag} set the compose fails if the object has changed in the meantime.
+     */
+    public record ComposePart(String key, Long offset, Long length, String matchETag) {
+    }
+
+    /**
+     * Writes {@code target} as the concatenation of the parts without moving their bytes through this node.
+     * Every part except the last must be at least 5 MiB; parts and target are on the target's shard.
+     *
+     * @return the ETag of the composed object
+     */
+    public String compose(String target, List<ComposePart> parts, String contentType) {
+        List<ComposePart> stored = parts.stream()
+                .map(part -> named(part.key())
+                        ? new ComposePart(file(part.key()).getBlobKey(), part.offset(), part.length(), part.matchETag())
+                        : part)
+                .toList();
+        if (!namedForWrite(target)) return storedCompose(target, stored, contentType);
+        String blobKey = newBlobKey(target);
+        String etag = storedCompose(blobKey, stored, contentType);
+        replaced(namespace.put(target, blobKey, storedFind(blobKey).size(), unquote(etag)));
+        return etag;
+    }
+
+    private String storedCompose(String target, List<ComposePart> parts, String contentType) {
+        MinioShard shard = shardRouter.forWrite(target);
+        List<ComposeSource> sources = parts.stream()
+                .map(part -> ComposeSource.builder()
+                        .bucket(shard.bucket())
+                        .object(part.key())
+                        .offset(part.offset())
+                        .length(part.length())
+                        .matchETag(part.matchETag())
+                        .build())
+                .toList();
+        String etag;
+        try {
+            etag = calls.execute(shard, "compose", () -> shard.client().composeObject(
+                    ComposeObjectArgs.builder()
+                            .bucket(shard.bucket())
+                            .object(target)
+                            .sources(sources)
+                            .headers(Map.of("Content-Type", contentType))
+                            .build()
+            )).etag();
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (ErrorResponseException e) {
+            if ("PreconditionFailed".equals(e.errorResponse().code())) {
+                throw new PreconditionFailedException("Source object changed while composing " + target);
+            }
+            throw new RuntimeException("MinIO compose error", e);
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO compose error", e);
+        }
+        packIndex.removeAll(List.of(target));
+        return etag;
+    }
+
     public void delete(String path) {
+        if (namedForWrite(path)) {
+            storedDeleteAll(namespace.remove(List.of(path)));
+            return;
+        }
+        storedDelete(path);
+    }
+
+    private void storedDelete(String path) {
+        if (!packIndex.removeAll(List.of(path)).isEmpty()) return;
+        MinioShard shard = shardRouter.forWrite(path);
         try {
-            minioClient.removeObject(
-                    RemoveObjectArgs
-                            .builder()
-                            .bucket(bucketName)
-                            .object(path)
-                            .build());
+            calls.execute(shard, "delete", () -> {
+                shard.client().removeObject(
+                        RemoveObjectArgs
+                                .builder()
+                                .bucket(shard.bucket())
+                                .object(path)
+                                .build());
+                return null;
+            });
+        } catch (StorageUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("MinIO delete error", e);
         }
     }
 
-    public StatObjectResponse getMetadata(String path) {
+    public void deleteAll(Collection<String> paths) {
+        List<String> stored = new ArrayList<>(paths.size());
+        List<String> names = new ArrayList<>();
+        for (String path : paths) {
+            (namedForWrite(path) ? names : stored).add(path);
+        }
+        if (!names.isEmpty()) stored.addAll(namespace.remove(names));
+        storedDeleteAll(stored);
+    }
+
+    private void storedDeleteAll(Collection<String> paths) {
+        Set<String> unpacked = packIndex.removeAll(paths);
+        Map<MinioShard, List<String>> byShard = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (unpacked.contains(path)) continue;
+            byShard.computeIfAbsent(shardRouter.forWrite(path), shard -> new ArrayList<>()).add(path);
+        }
+        byShard.forEach(this::deleteAll);
+    }
+
+    public void deleteAll(MinioShard shard, Collection<String> paths) {
+        if (paths.isEmpty()) return;
+        List<DeleteObject> objects = paths.stream().map(DeleteObject::new).toList();
         try {
-            return minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(path)
-                            .build()
-            );
+            DeleteError deleteError = calls.execute(shard, "delete", () -> {
+                Iterable<Result<DeleteError>> errors = shard.client().removeObjects(
+                        RemoveObjectsArgs.builder()
+                                .bucket(shard.bucket())
+                                .objects(objects)
+                                .build());
+                for (Result<DeleteError> error : errors) {
+                    return error.get();
+                }
+                return null;
+            });
+            if (deleteError != null) {
+                throw new RuntimeException("MinIO delete error: " + deleteError.objectName() + " " + deleteError.message());
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO delete error", e);
+        }
+    }
+
+    private String transfer(MinioShard from, String sourcePath, MinioShard to, String destinationPath) {
+        try {
+            StatObjectResponse stat = calls.read(from, "stat", () -> from.client().statObject(
+                    StatObjectArgs.builder().bucket(from.bucket()).object(sourcePath).build()));
+            try (InputStream is = getObject(from, sourcePath)) {
+                return putFile(to, destinationPath, is, stat.size(), stat.contentType());
+            }
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            return null;
+            throw new RuntimeException("MinIO copy error", e);
         }
     }
 
-}
\ No newline at end of file
+    private boolean named(String key) {
+        return namespace.serves(key, false, this::storedEmpty);
+    }
+
+    private boolean namedForWrite(String key) {
+        return namespace.serves(key, true, this::storedEmpty);
+    }
+
+    private boolean storedEmpty(String root) {
+        return storedPeek(root, true, 1).isEmpty();
+    }
+
+    private NamespaceNode file(String key) {
+        NamespaceNode node = namespace.findFile(key);
+        if (node == null) throw new RuntimeException("MinIO object not found: " + key);
+        return node;
+    }
+
+    private Item storedFind(String key) {
+        List<Item> items = storedPeek(key, true, 1);
+        if (items.isEmpty() || !items.get(0).objectName().equals(key)) {
+            throw new RuntimeException("MinIO object not found: " + key);
+        }
+        return items.get(0);
+    }
+
+    /**
+     * Deletes the blob a name pointed at before it was overwritten.
+     */
+    private void replaced(String oldBlobKey) {
+        if (oldBlobKey != null) storedDelete(oldBlobKey);
+    }
+
+    private static String newBlobKey(String key) {
+        return "user-" + ShardRouter.userIdOf(key) + "-blobs/" + UUID.randomUUID();
+    }
+
+    private static String unquote(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+}
@@ -0,0 +1,6 @@
+package org.example.securitypractica.repository;
+
+import io.minio.MinioClient;
+
+public record MinioShard(String name, String endpoint, String bucket, MinioClient client) {
+}
@@ -0,0 +1,47 @@
+package org.example.securitypractica.repository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configured shards in declaration order. The first one also holds everything that does not belong
+ * to a user, such as the archive cache.
+ */
+public class MinioShards {
+
+    private final List<MinioShard> shards;
+    private final Map<String, MinioShard> byName = new LinkedHashMap<>();
+
+    public MinioShards(List<MinioShard> shards) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("At least one MinIO shard is required");
+        this.shards = List.copyOf(shards);
+        for (MinioShard shard : shards) {
+            if (byName.put(shard.name(), shard) != null) {
+                throw new IllegalArgumentException("Duplicate MinIO shard name: " + shard.name());
+            }
+        }
+    }
+
+    public List<MinioShard> all() {
+        return shards;
+    }
+
+    public MinioShard defaultShard() {
+        return shards.get(0);
+    }
+
+    public MinioShard get(String name) {
+        MinioShard shard = byName.get(name);
+        if (shard == null) throw new IllegalStateException("Unknown MinIO shard: " + name);
+        return shard;
+    }
+
+    public List<String> names() {
+        return List.copyOf(byName.keySet());
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+}
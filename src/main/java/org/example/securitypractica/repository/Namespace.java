@@ -0,0 +1,479 @@
+package org.example.securitypractica.repository;
+
+import io.minio.Result;
+import io.minio.messages.Contents;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.entity.NamespaceNode;
+import org.example.securitypractica.entity.NamespaceRoot;
+import org.example.securitypractica.entity.NamespaceRootState;
+import org.example.securitypractica.exception.FileAlreadyExistsException;
+import org.example.securitypractica.exception.StorageUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The namespace layout: the user's files and trash as a tree of names in {@code namespace_nodes}, each file
+ * pointing at a blob stored under a key that never changes. Renaming or moving a folder therefore updates one row,
+ * however much is below it. Each top-level prefix switches over on its own, see {@link NamespaceRootState}.
+ */
+@Component
+@RequiredArgsConstructor
+public class Namespace {
+
+    static final long TOP_LEVEL = 0L;
+    private static final Pattern ROOT_KEY = Pattern.compile("^user-\\d+-(files|trash)/");
+    private static final String EMPTY_ETAG = "d41d8cd98f00b204e9800998ecf8427e";
+    private static final int PAGE_SIZE = 1000;
+
+    private final NamespaceNodeRepository nodes;
+    private final NamespaceRootRepository roots;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, CachedState> states = new ConcurrentHashMap<>();
+
+    @Value("${storage.namespace.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.namespace.state-ttl:5s}")
+    private Duration stateTtl;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String rootOf(String key) {
+        Matcher matcher = ROOT_KEY.matcher(key);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    /**
+     * Whether the key is served from the namespace. A prefix that has never been seen starts out in the namespace
+     * when nothing is stored under it yet; otherwise it keeps its object keys until the migration has indexed it.
+     *
+     * @param write      refuse the call while the prefix is frozen for the migration's final pass
+     * @param storedEmpty whether nothing is stored under a prefix in the key-based layout
+     */
+    public boolean serves(String key, boolean write, Predicate<String> storedEmpty) {
+        if (!enabled) return false;
+        String root = rootOf(key);
+        if (root == null) return false;
+        NamespaceRootState state = state(root, storedEmpty);
+        if (write && state == NamespaceRootState.FROZEN) {
+            throw new StorageUnavailableException("Storage is being reorganized, try again shortly", 5);
+        }
+        return state == NamespaceRootState.READY;
+    }
+
+    private NamespaceRootState state(String root, Predicate<String> storedEmpty) {
+        CachedState cached = states.get(root);
+        if (cached != null && (cached.state() == NamespaceRootState.READY || System.nanoTime() < cached.expiresAt())) {
+            return cached.state();
+        }
+        NamespaceRoot row = roots.findById(root).orElse(null);
+        if (row == null && storedEmpty.test(root)) row = register(root, NamespaceRootState.READY);
+        return remember(root, row == null ? null : row.getState());
+    }
+
+    private NamespaceRootState remember(String root, NamespaceRootState state) {
+        states.put(root, new CachedState(state, System.nanoTime() + stateTtl.toNanos()));
+        return state;
+    }
+
+    private NamespaceRoot register(String root, NamespaceRootState state) {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            nodes.insertFolder(TOP_LEVEL, root, now);
+            Long nodeId = nodes.findByParentIdAndName(TOP_LEVEL, root).orElseThrow().getId();
+            roots.insertIfAbsent(root, nodeId, state.name(), now);
+            return roots.findById(root).orElseThrow();
+        });
+    }
+
+    /**
+     * @return the state the prefix is in now; only a prefix left {@code MIGRATING} is the caller's to migrate
+     */
+    public NamespaceRootState startMigration(String root) {
+        return remember(root, register(root, NamespaceRootState.MIGRATING).getState());
+    }
+
+    public boolean transition(String root, NamespaceRootState from, NamespaceRootState to) {
+        boolean changed = roots.transition(root, from, to, Instant.now()) == 1;
+        if (changed) remember(root, to);
+        return changed;
+    }
+
+    public List<Item> peek(String prefix, boolean recursive, int maxKeys) {
+        Iterator<Item> listing = list(prefix, recursive, null, maxKeys);
+        List<Item> items = new ArrayList<>(maxKeys);
+        while (items.size() < maxKeys && listing.hasNext()) items.add(listing.next());
+        return items;
+    }
+
+    /**
+     * Lists the names under the prefix in key order, like a MinIO listing: without {@code recursive} every
+     * subfolder shows up once as a directory entry, with it folders only appear when they are markers.
+     */
+    public Iterator<Item> list(String prefix, boolean recursive, String startAfter, int pageSize) {
+        return new Listing(prefix, recursive, startAfter, pageSize);
+    }
+
+    public NamespaceNode findFile(String key) {
+        if (key.endsWith("/")) return null;
+        List<String> names = split(key);
+        Long parent = resolve(names, names.size() - 1);
+        if (parent == null) return null;
+        return nodes.findByParentIdAndName(parent, names.get(names.size() - 1)).orElse(null);
+    }
+
+    /**
+     * Points the file at a new blob, creating it and its folders if needed.
+     *
+     * @return the blob the file pointed at before, which is no longer referenced
+     */
+    public String put(String key, String blobKey, long size, String etag) {
+        List<String> names = split(key);
+        String name = names.get(names.size() - 1);
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            Long parent = ensureFolders(names, names.size() - 1, now);
+            while (true) {
+                NamespaceNode existing = nodes.findAndLock(parent, name).orElse(null);
+                if (existing != null) {
+                    nodes.replaceBlob(existing.getId(), blobKey, size, etag, now);
+                    return existing.getBlobKey();
+                }
+                if (nodes.insertFile(parent, name, blobKey, size, etag, now) == 1) return null;
+            }
+        });
+    }
+
+    public void createFolder(String key) {
+        List<String> names = split(key);
+        if (names.size() < 2) return;
+        transactionTemplate.executeWithoutResult(status ->
+                nodes.setMarker(ensureFolders(names, names.size(), Instant.now()), true));
+    }
+
+    /**
+     * Removes files and the marker flag of folders; a folder that is left empty and unmarked goes away with its
+     * last entry, as an implicit folder does.
+     *
+     * @return the blobs of the removed files
+     */
+    public List<String> remove(Collection<String> keys) {
+        Set<Long> emptied = new HashSet<>();
+        List<String> blobs = transactionTemplate.execute(status -> {
+            Map<String, Long> folders = new HashMap<>();
+            List<String> removed = new ArrayList<>();
+            for (String key : keys) {
+                List<String> names = split(key);
+                if (names.size() < 2) continue;
+                String parentPath = key.substring(0, key.length() - names.get(names.size() - 1).length());
+                Long parent = folders.computeIfAbsent(parentPath, path -> resolve(names, names.size() - 1));
+                if (parent == null) continue;
+                NamespaceNode node = nodes.findAndLock(parent, names.get(names.size() - 1)).orElse(null);
+                if (node == null) continue;
+                if (node.isFolder()) {
+                    nodes.setMarker(node.getId(), false);
+                    emptied.add(node.getId());
+                } else {
+                    nodes.deleteNode(node.getId());
+                    removed.add(node.getBlobKey());
+                    emptied.add(parent);
+                }
+            }
+            return removed;
+        });
+        emptied.forEach(this::prune);
+        return blobs;
+    }
+
+    /**
+     * Gives a file or a folder with everything below it a new name; nothing is copied.
+     */
+    public void rename(String from, String to) {
+        if (from.endsWith("/") != to.endsWith("/")) throw new IllegalArgumentException("Cannot rename " + from + " to " + to);
+        if (from.endsWith("/") && to.startsWith(from)) throw new IllegalArgumentException("Cannot move " + from + " into itself");
+        List<String> source = split(from);
+        List<String> target = split(to);
+        Long previousParent = transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            Long parent = resolve(source, source.size() - 1);
+            NamespaceNode node = parent == null ? null : nodes.findAndLock(parent, source.get(source.size() - 1)).orElse(null);
+            if (node == null) return null;
+            String name = target.get(target.size() - 1);
+            Long targetParent = ensureFolders(target, target.size() - 1, now);
+            if (nodes.findAndLock(targetParent, name).isPresent()) throw new FileAlreadyExistsException("Target exists");
+            nodes.move(node.getId(), targetParent, name, now);
+            return parent;
+        });
+        if (previousParent != null) prune(previousParent);
+    }
+
+    /**
+     * Brings the names under {@code root} in line with the objects stored there, which keep their keys as blob keys.
+     * Both listings are in key order, so this is one merge pass; the stored objects themselves are never touched.
+     *
+     * @return how many names were added, changed or removed
+     */
+    public long reconcile(String root, Iterable<Result<Item>> stored) {
+        Iterator<Result<Item>> objects = stored.iterator();
+        Iterator<Item> indexed = list(root, true, null, PAGE_SIZE);
+        Item object = nextObject(objects);
+        Item name = indexed.hasNext() ? indexed.next() : null;
+        String lastObject = null;
+        long changed = 0;
+        while (object != null || name != null) {
+            int order = object == null ? 1 : name == null ? -1 : MergedListing.compareKeys(object.objectName(), name.objectName());
+            if (order < 0 || (order == 0 && !matches(object, (NodeItem) name))) {
+                index(object);
+                changed++;
+            } else if (order > 0 && (lastObject == null || MergedListing.compareKeys(name.objectName(), lastObject) > 0)) {
+                // Names at or before the last object were added by this pass, in folders the listing had not reached.
+                remove(List.of(name.objectName()));
+                changed++;
+            }
+            if (order <= 0) {
+                lastObject = object.objectName();
+                object = nextObject(objects);
+            }
+            if (order >= 0) name = indexed.hasNext() ? indexed.next() : null;
+        }
+        return changed;
+    }
+
+    private void index(Item object) {
+        String key = object.objectName();
+        if (key.endsWith("/")) {
+            createFolder(key);
+        } else {
+            put(key, key, object.size(), unquote(object.etag()));
+        }
+    }
+
+    private static boolean matches(Item object, NodeItem name) {
+        if (object.objectName().endsWith("/")) return true;
+        return object.objectName().equals(name.blobKey()) && object.size() == name.size()
+                && unquote(object.etag()).equals(unquote(name.etag()));
+    }
+
+    private static Item nextObject(Iterator<Result<Item>> objects) {
+        if (!objects.hasNext()) return null;
+        try {
+            return objects.next().get();
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
+        }
+    }
+
+    private static String unquote(String etag) {
+        return etag.replace("\"", "");
+    }
+
+    /**
+     * Returns the id of the folder made of the first {@code count} names, creating what is missing. Each folder is
+     * share-locked, so it cannot be pruned before the caller's transaction has added to it.
+     */
+    private Long ensureFolders(List<String> names, int count, Instant now) {
+        Long parent = nodes.findByParentIdAndName(TOP_LEVEL, names.get(0))
+                .orElseThrow(() -> new IllegalStateException("Unknown namespace root " + names.get(0)))
+                .getId();
+        for (int i = 1; i < count; i++) {
+            String name = names.get(i);
+            NamespaceNode folder;
+            while ((folder = nodes.findAndShare(parent, name).orElse(null)) == null) {
+                nodes.insertFolder(parent, name, now);
+            }
+            parent = folder.getId();
+        }
+        return parent;
+    }
+
+    private Long resolve(List<String> names, int count) {
+        NamespaceNode node = nodes.findByParentIdAndName(TOP_LEVEL, names.get(0)).orElse(null);
+        for (int i = 1; i < count && node != null; i++) {
+            node = nodes.findByParentIdAndName(node.getId(), names.get(i)).orElse(null);
+        }
+        return node == null ? null : node.getId();
+    }
+
+    /**
+     * Deletes the folder and then its parents for as long as they are empty and unmarked, one short transaction
+     * per level so this never holds locks in the opposite order of {@link #ensureFolders}.
+     */
+    private void prune(Long folderId) {
+        Long id = folderId;
+        while (id != null) {
+            Long current = id;
+            id = transactionTemplate.execute(status -> {
+                NamespaceNode folder = nodes.lock(current).orElse(null);
+                if (folder == null || folder.getParentId() == TOP_LEVEL || folder.isMarker()) return null;
+                if (nodes.existsByParentId(current)) return null;
+                nodes.deleteNode(current);
+                return folder.getParentId();
+            });
+        }
+    }
+
+    /**
+     * Splits a key into the top-level prefix and one name per level; folder names keep their trailing '/'.
+     */
+    static List<String> split(String key) {
+        String root = rootOf(key);
+        if (root == null) throw new IllegalArgumentException("Not a namespace key: " + key);
+        List<String> names = new ArrayList<>();
+        names.add(root);
+        int start = root.length();
+        while (start < key.length()) {
+            int slash = key.indexOf('/', start);
+            int end = slash == -1 ? key.length() : slash + 1;
+            names.add(key.substring(start, end));
+            start = end;
+        }
+        return names;
+    }
+
+    private record CachedState(NamespaceRootState state, long expiresAt) {
+    }
+
+    private final class Listing implements Iterator<Item> {
+        private final boolean recursive;
+        private final int pageSize;
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private final Deque<Item> ready = new ArrayDeque<>();
+
+        private Listing(String prefix, boolean recursive, String startAfter, int pageSize) {
+            this.recursive = recursive;
+            this.pageSize = pageSize;
+            String folderPath = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+            String pattern = PackIndex.likePrefix(prefix.substring(folderPath.length()));
+            List<String> names = split(folderPath);
+            NamespaceNode folder = nodes.findByParentIdAndName(TOP_LEVEL, names.get(0)).orElse(null);
+            for (int i = 1; i < names.size() && folder != null; i++) {
+                folder = nodes.findByParentIdAndName(folder.getId(), names.get(i)).orElse(null);
+            }
+            if (folder == null) return;
+
+            if (startAfter == null || MergedListing.compareKeys(startAfter, prefix) < 0) {
+                if (folderPath.equals(prefix) && folder.isMarker()) ready.add(new NodeItem(folderPath, folder));
+                frames.push(new Frame(folder.getId(), folderPath, pattern, ""));
+                return;
+            }
+            if (!startAfter.startsWith(folderPath)) return;
+            // Resume inside the folders the last key was in: each level continues behind the name on that path.
+            Frame frame = new Frame(folder.getId(), folderPath, pattern, "");
+            String rest = startAfter.substring(folderPath.length());
+            while (true) {
+                int slash = rest.indexOf('/');
+                String name = slash == -1 ? rest : rest.substring(0, slash + 1);
+                frame.after = name;
+                frames.push(frame);
+                if (slash == -1 || !recursive) return;
+                NamespaceNode child = nodes.findByParentIdAndName(frame.folderId, name).orElse(null);
+                if (child == null) return;
+                frame = new Frame(child.getId(), frame.path + name, "%", "");
+                rest = rest.substring(slash + 1);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty() && !frames.isEmpty()) fetch();
+            return !ready.isEmpty();
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return ready.poll();
+        }
+
+        private void fetch() {
+            Frame frame = frames.peek();
+            List<NamespaceNode> children = nodes.children(frame.folderId, frame.pattern, frame.after, PageRequest.of(0, pageSize));
+            for (NamespaceNode child : children) {
+                frame.after = child.getName();
+                String key = frame.path + child.getName();
+                if (!child.isFolder()) {
+                    ready.add(new NodeItem(key, child));
+                } else if (!recursive) {
+                    ready.add(new Contents(key));
+                } else {
+                    // Depth first, so keys come out in the same order as from a MinIO listing.
+                    if (child.isMarker()) ready.add(new NodeItem(key, child));
+                    frames.push(new Frame(child.getId(), key, "%", ""));
+                    return;
+                }
+            }
+            if (children.size() < pageSize) frames.pop();
+        }
+    }
+
+    private static final class Frame {
+        private final Long folderId;
+        private final String path;
+        private final String pattern;
+        private String after;
+
+        private Frame(Long folderId, String path, String pattern, String after) {
+            this.folderId = folderId;
+            this.path = path;
+            this.pattern = pattern;
+            this.after = after;
+        }
+    }
+
+    /**
+     * A file or folder marker of the namespace as it would appear in a MinIO listing.
+     */
+    public static final class NodeItem extends Item {
+        private final String key;
+        private final NamespaceNode node;
+
+        NodeItem(String key, NamespaceNode node) {
+            this.key = key;
+            this.node = node;
+        }
+
+        public String blobKey() {
+            return node.getBlobKey();
+        }
+
+        @Override
+        public String objectName() {
+            return key;
+        }
+
+        @Override
+        public long size() {
+            return node.getSize();
+        }
+
+        @Override
+        public String etag() {
+            return "\"" + (node.getEtag() == null ? EMPTY_ETAG : node.getEtag()) + "\"";
+        }
+
+        @Override
+        public ZonedDateTime lastModified() {
+            return node.getModifiedAt().atZone(ZoneOffset.UTC);
+        }
+
+        @Override
+        public boolean isDir() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.NamespaceNode;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface NamespaceNodeRepository extends JpaRepository<NamespaceNode, Long> {
+
+    Optional<NamespaceNode> findByParentIdAndName(Long parentId, String name);
+
+    @Query("select n from NamespaceNode n where n.parentId = :parentId and n.name like :pattern escape '\\' " +
+            "and n.name > :after order by n.name")
+    List<NamespaceNode> children(@Param("parentId") Long parentId, @Param("pattern") String pattern,
+                                 @Param("after") String after, Pageable pageable);
+
+    boolean existsByParentId(Long parentId);
+
+    /**
+     * Holds a folder in place while a child is added, so it cannot be pruned underneath the new entry.
+     */
+    @Query(value = "SELECT * FROM namespace_nodes WHERE parent_id = :parentId AND name = :name FOR SHARE", nativeQuery = true)
+    Optional<NamespaceNode> findAndShare(@Param("parentId") Long parentId, @Param("name") String name);
+
+    @Query(value = "SELECT * FROM namespace_nodes WHERE parent_id = :parentId AND name = :name FOR UPDATE", nativeQuery = true)
+    Optional<NamespaceNode> findAndLock(@Param("parentId") Long parentId, @Param("name") String name);
+
+    @Query(value = "SELECT * FROM namespace_nodes WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<NamespaceNode> lock(@Param("id") Long id);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO namespace_nodes (parent_id, name, size, marker, modified_at) " +
+            "VALUES (:parentId, :name, 0, false, :now) ON CONFLICT (parent_id, name) DO NOTHING", nativeQuery = true)
+    int insertFolder(@Param("parentId") Long parentId, @Param("name") String name, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO namespace_nodes (parent_id, name, blob_key, size, etag, marker, modified_at) " +
+            "VALUES (:parentId, :name, :blobKey, :size, :etag, false, :now) ON CONFLICT (parent_id, name) DO NOTHING",
+            nativeQuery = true)
+    int insertFile(@Param("parentId") Long parentId, @Param("name") String name, @Param("blobKey") String blobKey,
+                   @Param("size") long size, @Param("etag") String etag, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update NamespaceNode n set n.blobKey = :blobKey, n.size = :size, n.etag = :etag, n.modifiedAt = :now " +
+            "where n.id = :id")
+    int replaceBlob(@Param("id") Long id, @Param("blobKey") String blobKey, @Param("size") long size,
+                    @Param("etag") String etag, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update NamespaceNode n set n.marker = :marker where n.id = :id")
+    int setMarker(@Param("id") Long id, @Param("marker") boolean marker);
+
+    @Modifying
+    @Transactional
+    @Query("update NamespaceNode n set n.parentId = :parentId, n.name = :name, n.modifiedAt = :now where n.id = :id")
+    int move(@Param("id") Long id, @Param("parentId") Long parentId, @Param("name") String name, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("delete from NamespaceNode n where n.id = :id")
+    int deleteNode(@Param("id") Long id);
+}
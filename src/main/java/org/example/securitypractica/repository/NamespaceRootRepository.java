@@ -0,0 +1,27 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.NamespaceRoot;
+import org.example.securitypractica.entity.NamespaceRootState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+
+public interface NamespaceRootRepository extends JpaRepository<NamespaceRoot, String> {
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO namespace_roots (name, node_id, state, updated_at) VALUES (:name, :nodeId, :state, :now) " +
+            "ON CONFLICT (name) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name, @Param("nodeId") Long nodeId, @Param("state") String state,
+                       @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update NamespaceRoot r set r.state = :to, r.updatedAt = :now where r.name = :name and r.state = :from")
+    int transition(@Param("name") String name, @Param("from") NamespaceRootState from, @Param("to") NamespaceRootState to,
+                   @Param("now") Instant now);
+}
@@ -0,0 +1,256 @@
+package org.example.securitypractica.repository;
+
+import io.minio.messages.Contents;
+import io.minio.messages.Item;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.entity.Pack;
+import org.example.securitypractica.entity.PackedObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Where packed files are: one row per file in {@code packed_objects}, pointing into a {@link Pack}.
+ * Only the user's files, trash and blobs are packed; for any other key, or with packing disabled, every method returns
+ * without touching the database.
+ */
+@Component
+@RequiredArgsConstructor
+public class PackIndex {
+
+    private static final Pattern PACKED_KEY = Pattern.compile("^user-\\d+-(files|trash|blobs)/");
+
+    private final PackRepository packRepository;
+    private final PackedObjectRepository packedObjectRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.pack.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.pack.max-file-size:64KB}")
+    private DataSize maxFileSize;
+
+    @Value("${storage.pack.target-size:8MB}")
+    private DataSize targetSize;
+
+    public boolean covers(String key) {
+        return enabled && PACKED_KEY.matcher(key).find();
+    }
+
+    public boolean accepts(String key, long size) {
+        return size <= maxFileSize.toBytes() && covers(key);
+    }
+
+    public long targetSize() {
+        return targetSize.toBytes();
+    }
+
+    public PackedObject find(String key) {
+        return covers(key) ? packedObjectRepository.findById(key).orElse(null) : null;
+    }
+
+    /**
+     * Lists packed files under the prefix in key order, like a MinIO listing: without {@code recursive} every
+     * subfolder shows up once as a directory entry.
+     */
+    public Iterator<Item> list(String prefix, boolean recursive, String startAfter, int pageSize) {
+        if (!covers(prefix)) return Collections.emptyIterator();
+        return new Listing(prefix, recursive, startAfter, pageSize);
+    }
+
+    public void register(Pack pack) {
+        packRepository.save(pack);
+    }
+
+    /**
+     * Indexes the files of a freshly written pack, replacing older packed versions of the same keys.
+     */
+    public void add(String packKey, List<PackedObject> entries) {
+        transactionTemplate.executeWithoutResult(status -> {
+            remove(entries.stream().map(PackedObject::getObjectKey).toList());
+            long bytes = 0;
+            for (PackedObject entry : entries) {
+                entityManager.persist(entry);
+                bytes += entry.getLength();
+            }
+            packRepository.retain(packKey, bytes);
+        });
+    }
+
+    /**
+     * Points {@code target} at the bytes of {@code source} if that is a packed file; nothing is copied.
+     *
+     * @return the ETag of the copy, or null if {@code source} was not packed
+     */
+    public String copy(String source, String target) {
+        if (!covers(source) || !covers(target)) return null;
+        return transactionTemplate.execute(status -> {
+            PackedObject entry = packedObjectRepository.findById(source).orElse(null);
+            if (entry == null) return null;
+            remove(List.of(target));
+            entityManager.persist(new PackedObject(target, entry.getPackKey(), entry.getPackOffset(), entry.getLength(),
+                    entry.getEtag(), entry.getContentType()));
+            if (packRepository.retain(entry.getPackKey(), entry.getLength()) == 0) {
+                throw new IllegalStateException("Pack " + entry.getPackKey() + " has been removed");
+            }
+            return entry.getEtag();
+        });
+    }
+
+    /**
+     * @return the keys that were packed and are now gone
+     */
+    public Set<String> removeAll(Collection<String> keys) {
+        List<String> covered = keys.stream().filter(this::covers).toList();
+        if (covered.isEmpty()) return Set.of();
+        return transactionTemplate.execute(status -> remove(covered));
+    }
+
+    private Set<String> remove(List<String> keys) {
+        Set<String> removed = new HashSet<>();
+        Map<String, Long> released = new TreeMap<>();
+        for (Object[] row : packedObjectRepository.lockRanges(keys)) {
+            removed.add((String) row[0]);
+            released.merge((String) row[1], ((Number) row[2]).longValue(), Long::sum);
+        }
+        if (removed.isEmpty()) return removed;
+        packedObjectRepository.deleteByKeys(removed);
+        released.forEach(packRepository::release);
+        return removed;
+    }
+
+    public record Move(String key, String fromPack, long fromOffset, long toOffset, long length) {
+    }
+
+    /**
+     * Points entries at their copy in {@code toPack}. An entry deleted or moved since it was read keeps its row,
+     * so compaction never resurrects or overwrites anything.
+     */
+    public void relocate(String toPack, List<Move> moves) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Long> released = new TreeMap<>();
+            long retained = 0;
+            for (Move move : moves) {
+                if (packedObjectRepository.repoint(move.key(), move.fromPack(), move.fromOffset(), toPack, move.toOffset()) == 1) {
+                    released.merge(move.fromPack(), move.length(), Long::sum);
+                    retained += move.length();
+                }
+            }
+            released.forEach(packRepository::release);
+            packRepository.retain(toPack, retained);
+        });
+    }
+
+    static String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * The smallest key greater than every key inside {@code folder}, which ends with '/'.
+     */
+    static String after(String folder) {
+        return folder.substring(0, folder.length() - 1) + (char) ('/' + 1);
+    }
+
+    private final class Listing implements Iterator<Item> {
+        private final String prefix;
+        private final String pattern;
+        private final boolean recursive;
+        private final int pageSize;
+        private final Deque<Item> ready = new ArrayDeque<>();
+        private String from;
+        private boolean inclusive;
+        private boolean done;
+
+        private Listing(String prefix, boolean recursive, String startAfter, int pageSize) {
+            this.prefix = prefix;
+            this.pattern = likePrefix(prefix);
+            this.recursive = recursive;
+            this.pageSize = pageSize;
+            this.from = startAfter == null ? prefix : startAfter;
+            this.inclusive = startAfter == null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty() && !done) fetch();
+            return !ready.isEmpty();
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return ready.poll();
+        }
+
+        private void fetch() {
+            PageRequest page = PageRequest.of(0, pageSize);
+            List<PackedObject> entries = inclusive
+                    ? packedObjectRepository.listFrom(pattern, from, page)
+                    : packedObjectRepository.listAfter(pattern, from, page);
+            done = entries.size() < pageSize;
+            for (PackedObject entry : entries) {
+                String key = entry.getObjectKey();
+                int slash = recursive ? -1 : key.indexOf('/', prefix.length());
+                if (slash == -1) {
+                    ready.add(new PackedItem(entry));
+                    from = key;
+                    inclusive = false;
+                    continue;
+                }
+                // The rest of the subfolder would only repeat it, so the next page starts behind it.
+                String folder = key.substring(0, slash + 1);
+                ready.add(new Contents(folder));
+                from = after(folder);
+                inclusive = true;
+                done = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * A packed file as it would appear in a MinIO listing.
+     */
+    static final class PackedItem extends Item {
+        private final PackedObject entry;
+
+        PackedItem(PackedObject entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String objectName() {
+            return entry.getObjectKey();
+        }
+
+        @Override
+        public long size() {
+            return entry.getLength();
+        }
+
+        @Override
+        public String etag() {
+            return "\"" + entry.getEtag() + "\"";
+        }
+
+        @Override
+        public ZonedDateTime lastModified() {
+            return entry.getCreatedAt().atZone(ZoneOffset.UTC);
+        }
+
+        @Override
+        public boolean isDir() {
+            return false;
+        }
+    }
+}
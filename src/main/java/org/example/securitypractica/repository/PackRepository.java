@@ -0,0 +1,46 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.Pack;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface PackRepository extends JpaRepository<Pack, String> {
+
+    @Modifying
+    @Transactional
+    @Query("update Pack p set p.liveBytes = p.liveBytes + :bytes, p.retiredAt = null where p.packKey = :packKey")
+    int retain(@Param("packKey") String packKey, @Param("bytes") long bytes);
+
+    @Modifying
+    @Transactional
+    @Query("update Pack p set p.liveBytes = p.liveBytes - :bytes where p.packKey = :packKey")
+    int release(@Param("packKey") String packKey, @Param("bytes") long bytes);
+
+    @Modifying
+    @Transactional
+    @Query("update Pack p set p.retiredAt = :now where p.retiredAt is null and p.liveBytes <= 0 and p.createdAt < :cutoff")
+    int retireUnused(@Param("now") Instant now, @Param("cutoff") Instant cutoff);
+
+    List<Pack> findByRetiredAtBefore(Instant cutoff, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from Pack p where p.packKey = :packKey and p.retiredAt is not null and p.liveBytes <= 0")
+    int deleteRetired(@Param("packKey") String packKey);
+
+    @Query("select p from Pack p where p.retiredAt is null and p.createdAt < :cutoff and p.liveBytes > 0 " +
+            "and p.liveBytes < p.size * :ratio and (p.claimedUntil is null or p.claimedUntil < :now) order by p.userId")
+    List<Pack> findSparse(@Param("cutoff") Instant cutoff, @Param("ratio") double ratio, @Param("now") Instant now, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("update Pack p set p.claimedUntil = :until where p.packKey = :packKey and (p.claimedUntil is null or p.claimedUntil < :now)")
+    int claim(@Param("packKey") String packKey, @Param("now") Instant now, @Param("until") Instant until);
+}
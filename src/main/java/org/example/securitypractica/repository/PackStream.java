@@ -0,0 +1,99 @@
+package org.example.securitypractica.repository;
+
+import org.example.securitypractica.entity.PackedObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The body of a new pack: the files one after another, each opened only when the previous one is used up.
+ * Records where each file landed and its MD5, which serves as its ETag.
+ */
+final class PackStream extends InputStream {
+
+    private record Range(MinioRepository.PackedFile file, long offset, String etag) {
+    }
+
+    private final Iterator<MinioRepository.PackedFile> files;
+    private final List<Range> ranges = new ArrayList<>();
+    private final MessageDigest md5 = md5();
+    private MinioRepository.PackedFile current;
+    private InputStream in;
+    private long offset;
+    private long remaining;
+
+    PackStream(List<MinioRepository.PackedFile> files) {
+        this.files = files.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (current == null || remaining == 0) {
+            if (current != null) finish();
+            if (!files.hasNext()) return -1;
+            open(files.next());
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n == -1) throw new IOException(current.key() + " is shorter than " + current.size() + " bytes");
+        md5.update(b, off, n);
+        remaining -= n;
+        return n;
+    }
+
+    /**
+     * The index entries of the files, once the whole stream has been read.
+     */
+    List<PackedObject> entries(String packKey) throws IOException {
+        if (current != null && remaining == 0) finish();
+        // The upload stops after the last byte, so empty files at the end are never opened by read().
+        while (current == null && files.hasNext()) {
+            open(files.next());
+            if (remaining == 0) finish();
+        }
+        if (current != null) throw new IllegalStateException("Pack has not been read to the end");
+        return ranges.stream()
+                .map(range -> new PackedObject(range.file().key(), packKey, range.offset(), range.file().size(),
+                        range.etag(), range.file().contentType()))
+                .toList();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+    }
+
+    private void open(MinioRepository.PackedFile file) throws IOException {
+        current = file;
+        remaining = file.size();
+        in = file.content().getInputStream();
+    }
+
+    private void finish() throws IOException {
+        ranges.add(new Range(current, offset, HexFormat.of().formatHex(md5.digest())));
+        offset += current.size();
+        in.close();
+        in = null;
+        current = null;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.PackedObject;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PackedObjectRepository extends JpaRepository<PackedObject, String> {
+
+    @Query("select o from PackedObject o where o.objectKey like :pattern escape '\\' and o.objectKey >= :from order by o.objectKey")
+    List<PackedObject> listFrom(@Param("pattern") String pattern, @Param("from") String from, Pageable pageable);
+
+    @Query("select o from PackedObject o where o.objectKey like :pattern escape '\\' and o.objectKey > :after order by o.objectKey")
+    List<PackedObject> listAfter(@Param("pattern") String pattern, @Param("after") String after, Pageable pageable);
+
+    List<PackedObject> findByPackKeyOrderByPackOffset(String packKey);
+
+    /**
+     * Locks the entries in key order, so concurrent removals of overlapping batches cannot deadlock.
+     */
+    @Query(value = "SELECT object_key, pack_key, length FROM packed_objects WHERE object_key IN (:keys) " +
+            "ORDER BY object_key FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockRanges(@Param("keys") Collection<String> keys);
+
+    @Modifying
+    @Transactional
+    @Query("delete from PackedObject o where o.objectKey in :keys")
+    int deleteByKeys(@Param("keys") Collection<String> keys);
+
+    @Modifying
+    @Transactional
+    @Query("update PackedObject o set o.packKey = :toPack, o.packOffset = :toOffset " +
+            "where o.objectKey = :key and o.packKey = :fromPack and o.packOffset = :fromOffset")
+    int repoint(@Param("key") String key, @Param("fromPack") String fromPack, @Param("fromOffset") long fromOffset,
+                @Param("toPack") String toPack, @Param("toOffset") long toOffset);
+}
@@ -0,0 +1,106 @@
+package org.example.securitypractica.repository;
+
+import io.minio.ListObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.entity.UserShard;
+import org.example.securitypractica.exception.StorageUnavailableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which shard an object key lives on. Keys of the form {@code user-<id>-...} follow the user's
+ * assignment in {@code user_shards}; everything else stays on the default shard. A user is assigned on first use
+ * by the consistent hash ring and keeps that shard until the rebalancer moves them.
+ */
+@Slf4j
+@Component
+public class ShardRouter {
+
+    private static final Pattern USER_KEY = Pattern.compile("^user-(\\d+)-");
+
+    private final MinioShards shards;
+    private final UserShardRepository userShardRepository;
+    private final ConsistentHashRing ring;
+    private final Duration assignmentTtl;
+    private final Map<Long, Assignment> assignments = new ConcurrentHashMap<>();
+
+    public ShardRouter(MinioShards shards, UserShardRepository userShardRepository,
+                       @Value("${storage.shards.virtual-nodes:128}") int virtualNodes,
+                       @Value("${storage.shards.assignment-ttl:5s}") Duration assignmentTtl) {
+        this.shards = shards;
+        this.userShardRepository = userShardRepository;
+        this.ring = new ConsistentHashRing(shards.names(), virtualNodes);
+        this.assignmentTtl = assignmentTtl;
+    }
+
+    public MinioShard forRead(String key) {
+        Long userId = userIdOf(key);
+        return userId == null ? shards.defaultShard() : shards.get(assignment(userId).shard());
+    }
+
+    public MinioShard forWrite(String key) {
+        Long userId = userIdOf(key);
+        if (userId == null) return shards.defaultShard();
+        Assignment assignment = assignment(userId);
+        if (assignment.frozen()) {
+            throw new StorageUnavailableException("Storage is being moved, try again shortly", 5);
+        }
+        return shards.get(assignment.shard());
+    }
+
+    public String ringShardFor(Long userId) {
+        return ring.shardFor(userId);
+    }
+
+    public void invalidate(Long userId) {
+        assignments.remove(userId);
+    }
+
+    public static Long userIdOf(String key) {
+        Matcher matcher = USER_KEY.matcher(key);
+        return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private Assignment assignment(Long userId) {
+        if (!shards.isSharded()) return new Assignment(shards.defaultShard().name(), false, Long.MAX_VALUE);
+
+        Assignment cached = assignments.get(userId);
+        if (cached != null && System.nanoTime() < cached.expiresAt()) return cached;
+
+        UserShard row = userShardRepository.findById(userId).orElse(null);
+        if (row == null) {
+            userShardRepository.insertIfAbsent(userId, initialShard(userId), Instant.now());
+            row = userShardRepository.findById(userId).orElseThrow();
+        }
+        Assignment assignment = new Assignment(row.getShard(), row.isFrozen(), System.nanoTime() + assignmentTtl.toNanos());
+        assignments.put(userId, assignment);
+        return assignment;
+    }
+
+    /**
+     * Objects written before sharding was configured all sit on the default shard, so such users stay there
+     * until the rebalancer moves them; new users go straight to their ring position.
+     */
+    private String initialShard(Long userId) {
+        MinioShard legacy = shards.defaultShard();
+        Iterator<Result<Item>> existing = legacy.client().listObjects(ListObjectsArgs.builder()
+                .bucket(legacy.bucket())
+                .prefix("user-" + userId + "-")
+                .maxKeys(1)
+                .build()).iterator();
+        return existing.hasNext() ? legacy.name() : ring.shardFor(userId);
+    }
+
+    private record Assignment(String shard, boolean frozen, long expiresAt) {
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.StorageChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface StorageChangeRepository extends JpaRepository<StorageChange, Long> {
+
+    List<StorageChange> findByUserIdAndSeqGreaterThanOrderBySeq(Long userId, long seq, Pageable pageable);
+
+    @Query("select distinct c.userId from StorageChange c where c.createdAt > :since")
+    List<Long> findUserIdsChangedSince(@Param("since") Instant since);
+
+    @Modifying
+    @Transactional
+    @Query("delete from StorageChange c where c.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
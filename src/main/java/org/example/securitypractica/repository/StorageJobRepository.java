@@ -0,0 +1,100 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.JobStatus;
+import org.example.securitypractica.entity.StorageJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface StorageJobRepository extends JpaRepository<StorageJob, UUID> {
+
+    Optional<StorageJob> findByIdAndUserId(UUID id, Long userId);
+
+    List<StorageJob> findByUserIdOrderByCreatedAtDesc(Long userId);
+
+    /**
+     * Jobs that may be claimed now, skipping users who already run {@code maxPerUser} jobs so that their backlog
+     * cannot fill the page and hold up everyone else.
+     */
+    @Query("select j from StorageJob j where j.cancelRequested = false " +
+            "and ((j.status = 'QUEUED' and (j.notBefore is null or j.notBefore <= :now)) " +
+            "or (j.status = 'RUNNING' and j.heartbeatAt < :staleBefore)) " +
+            "and (select count(a) from StorageJob a where a.userId = j.userId and a.status = 'RUNNING' " +
+            "and a.heartbeatAt >= :staleBefore) < :maxPerUser " +
+            "order by j.createdAt")
+    List<StorageJob> findRunnable(@Param("now") Instant now, @Param("staleBefore") Instant staleBefore,
+                                  @Param("maxPerUser") long maxPerUser, Pageable pageable);
+
+    @Query("select count(j) from StorageJob j where j.userId = :userId and j.status = 'RUNNING' " +
+            "and j.heartbeatAt >= :staleBefore")
+    long countActive(@Param("userId") Long userId, @Param("staleBefore") Instant staleBefore);
+
+    @Query("select j.id from StorageJob j where j.id in :ids and j.cancelRequested = true")
+    List<UUID> findCancelled(@Param("ids") Collection<UUID> ids);
+
+    List<StorageJob> findByStatusInAndUpdatedAtBefore(Collection<JobStatus> statuses, Instant updatedBefore);
+
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.status = 'RUNNING', j.owner = :owner, j.heartbeatAt = :now, j.updatedAt = :now " +
+            "where j.id = :id and j.cancelRequested = false " +
+            "and (j.status = 'QUEUED' or (j.status = 'RUNNING' and j.heartbeatAt < :staleBefore))")
+    int claim(@Param("id") UUID id, @Param("owner") String owner,
+              @Param("now") Instant now, @Param("staleBefore") Instant staleBefore);
+
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.processedItems = :processed, j.checkpoint = :checkpoint, " +
+            "j.heartbeatAt = :now, j.updatedAt = :now " +
+            "where j.id = :id and j.owner = :owner and j.status = 'RUNNING' and j.cancelRequested = false")
+    int saveCheckpoint(@Param("id") UUID id, @Param("owner") String owner, @Param("processed") long processed,
+                       @Param("checkpoint") String checkpoint, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.heartbeatAt = :now where j.id in :ids and j.owner = :owner and j.status = 'RUNNING'")
+    int heartbeat(@Param("ids") Collection<UUID> ids, @Param("owner") String owner, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.status = :status, j.error = :error, j.resultKey = :resultKey, j.updatedAt = :now " +
+            "where j.id = :id and j.owner = :owner and j.status = 'RUNNING'")
+    int finish(@Param("id") UUID id, @Param("owner") String owner, @Param("status") JobStatus status,
+               @Param("error") String error, @Param("resultKey") String resultKey, @Param("now") Instant now);
+
+    /**
+     * Finishes jobs whose cancellation was requested while they ran on a node that has since gone away.
+     */
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.status = 'CANCELLED', j.updatedAt = :now " +
+            "where j.status = 'RUNNING' and j.cancelRequested = true and j.heartbeatAt < :staleBefore")
+    int cancelAbandoned(@Param("staleBefore") Instant staleBefore, @Param("now") Instant now);
+
+    /**
+     * Puts a failed job back in the queue; it resumes from its checkpoint once {@code notBefore} has passed.
+     */
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.status = 'QUEUED', j.owner = null, j.attempts = j.attempts + 1, " +
+            "j.notBefore = :notBefore, j.error = :error, j.updatedAt = :now " +
+            "where j.id = :id and j.owner = :owner and j.status = 'RUNNING'")
+    int retry(@Param("id") UUID id, @Param("owner") String owner, @Param("error") String error,
+              @Param("notBefore") Instant notBefore, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update StorageJob j set j.cancelRequested = true, j.updatedAt = :now, " +
+            "j.status = case when j.status = 'QUEUED' then 'CANCELLED' else j.status end " +
+            "where j.id = :id and j.status in ('QUEUED', 'RUNNING')")
+    int requestCancel(@Param("id") UUID id, @Param("now") Instant now);
+}
@@ -0,0 +1,41 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.TrashItem;
+import org.example.securitypractica.entity.TrashStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TrashItemRepository extends JpaRepository<TrashItem, UUID> {
+
+    Optional<TrashItem> findByIdAndUserId(UUID id, Long userId);
+
+    List<TrashItem> findByUserIdOrderByDeletedAtDesc(Long userId);
+
+    List<TrashItem> findByUserIdAndStatus(Long userId, TrashStatus status);
+
+    List<TrashItem> findByStatusAndDeletedAtBefore(TrashStatus status, Instant deletedBefore, Pageable pageable);
+
+    @Query("select t.originalPath from TrashItem t where t.userId = :userId and t.status in ('MOVING', 'RESTORING')")
+    List<String> findPendingPaths(@Param("userId") Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("update TrashItem t set t.status = :to, t.updatedAt = :now " +
+            "where t.userId = :userId and t.trashKey = :trashKey and t.status = :from")
+    int transition(@Param("userId") Long userId, @Param("trashKey") String trashKey,
+                   @Param("from") TrashStatus from, @Param("to") TrashStatus to, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("delete from TrashItem t where t.userId = :userId and t.trashKey = :trashKey")
+    int deleteByTrashKey(@Param("userId") Long userId, @Param("trashKey") String trashKey);
+}
@@ -1,10 +1,17 @@
 package org.example.securitypractica.repository;
 
 import org.example.securitypractica.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+
+    @Query("select u.id from User u where u.id > :after order by u.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
 }
\ No newline at end of file
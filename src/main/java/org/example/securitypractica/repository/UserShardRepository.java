@@ -0,0 +1,45 @@
+package org.example.securitypractica.repository;
+
+import jakarta.transaction.Transactional;
+import org.example.securitypractica.entity.UserShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UserShardRepository extends JpaRepository<UserShard, Long> {
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO user_shards (user_id, shard, frozen, updated_at) VALUES (:userId, :shard, false, :now) " +
+            "ON CONFLICT (user_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId, @Param("shard") String shard, @Param("now") Instant now);
+
+    @Query("select s.shard, count(s), count(s.targetShard) from UserShard s group by s.shard")
+    List<Object[]> countByShard();
+
+    @Modifying
+    @Transactional
+    @Query("update UserShard s set s.targetShard = :target, s.updatedAt = :now " +
+            "where s.userId = :userId and s.targetShard is null and s.shard <> :target")
+    int startMigration(@Param("userId") Long userId, @Param("target") String target, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update UserShard s set s.frozen = true, s.updatedAt = :now where s.userId = :userId")
+    int freeze(@Param("userId") Long userId, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update UserShard s set s.shard = s.targetShard, s.targetShard = null, s.frozen = false, s.updatedAt = :now " +
+            "where s.userId = :userId and s.targetShard is not null")
+    int completeMigration(@Param("userId") Long userId, @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("update UserShard s set s.targetShard = null, s.frozen = false, s.updatedAt = :now where s.userId = :userId")
+    int abortMigration(@Param("userId") Long userId, @Param("now") Instant now);
+}
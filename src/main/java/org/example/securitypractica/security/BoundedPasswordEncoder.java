@@ -0,0 +1,71 @@
+package org.example.securitypractica.security;
+
+import org.example.securitypractica.exception.TooManyRequestsException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing on a small dedicated pool so a burst of sign-ins can only burn a fixed number of cores.
+ * When the pool and its queue are full the caller is rejected immediately instead of piling up on request threads.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final Executor executor;
+    private final Duration timeout;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, Executor executor, Duration timeout) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Supplier<T> task) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            throw overloaded();
+        }
+
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw overloaded();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private TooManyRequestsException overloaded() {
+        return new TooManyRequestsException("Authentication service is busy, try again later", 1);
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.securitypractica.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Token buckets kept in Redis so every node shares the same budget. A request takes one token from each bucket
+ * it touches (client IP, and the username on sign-in) and is refused without consuming anything if any bucket is empty.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoginRateLimiter {
+
+    private static final String KEY_PREFIX = "auth:throttle:";
+
+    // ARGV holds a (capacity, tokens per millisecond) pair per key; returns 0 or the wait in milliseconds.
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local tokens = {}
+            local wait = 0
+            for i, key in ipairs(KEYS) do
+                local capacity = tonumber(ARGV[i * 2 - 1])
+                local rate = tonumber(ARGV[i * 2])
+                local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+                local available = tonumber(bucket[1]) or capacity
+                local ts = tonumber(bucket[2]) or now
+                available = math.min(capacity, available + math.max(0, now - ts) * rate)
+                tokens[i] = available
+                if available < 1 then
+                    wait = math.max(wait, math.ceil((1 - available) / rate))
+                end
+            end
+            for i, key in ipairs(KEYS) do
+                local capacity = tonumber(ARGV[i * 2 - 1])
+                local rate = tonumber(ARGV[i * 2])
+                local left = tokens[i]
+                if wait == 0 then left = left - 1 end
+                redis.call('HSET', key, 'tokens', tostring(left), 'ts', now)
+                redis.call('PEXPIRE', key, math.ceil(capacity / rate))
+            end
+            return wait
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${auth.throttle.enabled:true}")
+    private boolean enabled;
+
+    @Value("${auth.throttle.ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${auth.throttle.ip.refill-per-minute:20}")
+    private int ipRefillPerMinute;
+
+    @Value("${auth.throttle.username.capacity:5}")
+    private int usernameCapacity;
+
+    @Value("${auth.throttle.username.refill-per-minute:5}")
+    private int usernameRefillPerMinute;
+
+    public void checkSignIn(String clientIp, String username) {
+        List<Bucket> buckets = new ArrayList<>(2);
+        buckets.add(new Bucket("ip:" + clientIp, ipCapacity, ipRefillPerMinute));
+        if (username != null && !username.isBlank()) {
+            buckets.add(new Bucket("user:" + username.toLowerCase(Locale.ROOT), usernameCapacity, usernameRefillPerMinute));
+        }
+        acquire(buckets);
+    }
+
+    public void checkSignUp(String clientIp) {
+        acquire(List.of(new Bucket("ip:" + clientIp, ipCapacity, ipRefillPerMinute)));
+    }
+
+    private void acquire(List<Bucket> buckets) {
+        if (!enabled) return;
+
+        List<String> keys = new ArrayList<>(buckets.size());
+        List<String> args = new ArrayList<>(buckets.size() * 2);
+        for (Bucket bucket : buckets) {
+            keys.add(KEY_PREFIX + bucket.name());
+            args.add(String.valueOf(bucket.capacity()));
+            args.add(String.valueOf(bucket.refillPerMinute() / 60_000.0));
+        }
+
+        Long waitMillis;
+        try {
+            waitMillis = redisTemplate.execute(ACQUIRE_SCRIPT, keys, args.toArray());
+        } catch (DataAccessException e) {
+            // Losing Redis must not lock everybody out; the hashing pool still bounds the damage.
+            log.warn("Login throttling unavailable, letting request through", e);
+            return;
+        }
+
+        if (waitMillis != null && waitMillis > 0) {
+            throw new TooManyRequestsException("Too many authentication attempts, try again later",
+                    Math.max(1, (waitMillis + 999) / 1000));
+        }
+    }
+
+    private record Bucket(String name, int capacity, int refillPerMinute) {
+    }
+}
@@ -0,0 +1,296 @@
+package org.example.securitypractica.security;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.tracing.StorageStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.session.data.redis.RedisSessionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps recently used sessions in memory in front of {@link RedisSessionRepository}.
+ * Requests that only touch the session are served locally and their lastAccessedTime is written back in batches;
+ * attribute changes are saved synchronously and announced to the other nodes over Redis pub/sub.
+ */
+@Slf4j
+public class NearCacheSessionRepository implements SessionRepository<NearCacheSessionRepository.CachedSession>,
+        MessageListener, DisposableBean {
+
+    public static final String INVALIDATION_CHANNEL = "storage:session:invalidate";
+
+    private static final String SESSION_KEY_PREFIX = RedisSessionRepository.DEFAULT_KEY_NAMESPACE + ":sessions:";
+
+    // Only touches sessions that still exist, so a late write can never resurrect a deleted session as a partial hash.
+    private static final RedisScript<Long> TOUCH_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('HSET', KEYS[1], 'lastAccessedTime', ARGV[1])
+                redis.call('PEXPIREAT', KEYS[1], ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private final SessionRepository<Session> delegate;
+    private final RedisOperations<String, Object> sessionRedisOperations;
+    private final StringRedisTemplate redisTemplate;
+    private final ObservationRegistry observationRegistry;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, CachedSession> cache = new ConcurrentHashMap<>();
+    private final Map<String, CachedSession> pendingTouches = new ConcurrentHashMap<>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public NearCacheSessionRepository(RedisSessionRepository delegate, StringRedisTemplate redisTemplate,
+                                      ObservationRegistry observationRegistry, Duration ttl, int maxEntries) {
+        this((SessionRepository) delegate, delegate.getSessionRedisOperations(), redisTemplate, observationRegistry,
+                ttl, maxEntries);
+    }
+
+    NearCacheSessionRepository(SessionRepository<Session> delegate, RedisOperations<String, Object> sessionRedisOperations,
+                               StringRedisTemplate redisTemplate, ObservationRegistry observationRegistry,
+                               Duration ttl, int maxEntries) {
+        this.delegate = delegate;
+        this.sessionRedisOperations = sessionRedisOperations;
+        this.redisTemplate = redisTemplate;
+        this.observationRegistry = observationRegistry;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public CachedSession createSession() {
+        return new CachedSession(delegate.createSession(), true);
+    }
+
+    @Override
+    public void save(CachedSession session) {
+        String originalId;
+        boolean wasNew;
+        // Concurrent requests share the cached session; a change made while this save runs stays dirty for its own save.
+        synchronized (session) {
+            if (!session.isNew && !session.dirty) {
+                pendingTouches.put(session.getId(), session);
+                return;
+            }
+            originalId = session.originalId;
+            wasNew = session.isNew;
+            session.delegate.setLastAccessedTime(session.lastAccessedTime);
+            delegate.save(session.delegate);
+            session.markSaved();
+        }
+        pendingTouches.remove(originalId);
+        if (!originalId.equals(session.getId())) {
+            cache.remove(originalId);
+            publish(originalId);
+        }
+        if (!wasNew) publish(session.getId());
+        cache(session);
+    }
+
+    @Override
+    public CachedSession findById(String id) {
+        CachedSession cached = cache.get(id);
+        if (cached != null) {
+            if (!cached.isStale(ttl) && !cached.isExpired()) {
+                StorageStats.cacheHit(observationRegistry);
+                return cached;
+            }
+            cache.remove(id, cached);
+        }
+
+        Session loaded = Observation.createNotStarted("session.load", observationRegistry)
+                .observe(() -> delegate.findById(id));
+        if (loaded == null) return null;
+
+        CachedSession session = new CachedSession(loaded, false);
+        CachedSession pending = pendingTouches.get(id);
+        if (pending != null && pending.lastAccessedTime.isAfter(session.lastAccessedTime)) {
+            session.lastAccessedTime = pending.lastAccessedTime;
+        }
+        cache(session);
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        cache.remove(id);
+        pendingTouches.remove(id);
+        delegate.deleteById(id);
+        publish(id);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) return;
+
+        String sessionId = body.substring(separator + 1);
+        cache.remove(sessionId);
+        pendingTouches.remove(sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.session.near-cache.flush-interval:5000}")
+    public void flush() {
+        cache.values().removeIf(session -> session.isStale(ttl));
+        if (pendingTouches.isEmpty()) return;
+
+        List<CachedSession> batch = new ArrayList<>(pendingTouches.values());
+        batch.forEach(session -> pendingTouches.remove(session.getId(), session));
+        try {
+            sessionRedisOperations.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    for (CachedSession session : batch) {
+                        long lastAccessed = session.lastAccessedTime.toEpochMilli();
+                        long expireAt = lastAccessed + session.getMaxInactiveInterval().toMillis();
+                        ops.execute(TOUCH_SCRIPT, List.of(SESSION_KEY_PREFIX + session.getId()), lastAccessed, expireAt);
+                    }
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Failed to write back last access time for {} sessions", batch.size(), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flush();
+    }
+
+    private void cache(CachedSession session) {
+        if (cache.size() < maxEntries || cache.containsKey(session.getId())) {
+            cache.put(session.getId(), session);
+        }
+    }
+
+    private void publish(String sessionId) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + ":" + sessionId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to publish session invalidation for {}", sessionId, e);
+        }
+    }
+
+    /**
+     * Session view handed to the request. Touching it only updates the local access time;
+     * any other mutation marks it dirty so the next save goes straight to Redis.
+     * Requests for the same session share one instance, so access to the delegate is synchronized.
+     */
+    public static final class CachedSession implements Session {
+        private final Session delegate;
+        private final long loadedAt = System.nanoTime();
+        private volatile String originalId;
+        private volatile Instant lastAccessedTime;
+        private volatile boolean isNew;
+        private volatile boolean dirty;
+
+        private CachedSession(Session delegate, boolean isNew) {
+            this.delegate = delegate;
+            this.originalId = delegate.getId();
+            this.lastAccessedTime = delegate.getLastAccessedTime();
+            this.isNew = isNew;
+        }
+
+        private boolean isStale(Duration ttl) {
+            return System.nanoTime() - loadedAt > ttl.toNanos();
+        }
+
+        private void markSaved() {
+            originalId = delegate.getId();
+            isNew = false;
+            dirty = false;
+        }
+
+        @Override
+        public synchronized String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public synchronized String changeSessionId() {
+            dirty = true;
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public synchronized <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public synchronized Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public synchronized void setAttribute(String attributeName, Object attributeValue) {
+            delegate.setAttribute(attributeName, attributeValue);
+            dirty = true;
+        }
+
+        @Override
+        public synchronized void removeAttribute(String attributeName) {
+            delegate.removeAttribute(attributeName);
+            dirty = true;
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            this.lastAccessedTime = lastAccessedTime;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        @Override
+        public synchronized void setMaxInactiveInterval(Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+            dirty = true;
+        }
+
+        @Override
+        public synchronized Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            Duration maxInactive = getMaxInactiveInterval();
+            return !maxInactive.isNegative() && Instant.now().minus(maxInactive).isAfter(lastAccessedTime);
+        }
+    }
+}
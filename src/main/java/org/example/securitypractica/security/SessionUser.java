@@ -0,0 +1,38 @@
+package org.example.securitypractica.security;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.example.securitypractica.entity.User;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Principal kept in the HTTP session: just enough to identify the user without a database lookup.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SessionUser(Long id, String username, List<String> roles) implements AuthenticatedPrincipal, Serializable {
+
+    public SessionUser {
+        roles = roles == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(roles));
+    }
+
+    public static SessionUser from(User user) {
+        return new SessionUser(user.getId(), user.getUsername(), List.of(user.getRole()));
+    }
+
+    @Override
+    @JsonIgnore
+    public String getName() {
+        return username;
+    }
+
+    public List<GrantedAuthority> authorities() {
+        return roles.stream().<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+    }
+}
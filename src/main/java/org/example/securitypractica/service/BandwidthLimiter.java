@@ -0,0 +1,170 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.config.StorageLimitsProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Shapes upload and download streams with a token bucket per user and direction, kept in Redis so that
+ * all of a user's transfers on all nodes share one budget. Streams take tokens in chunks, a few dozen
+ * Redis calls per second at most, and sleep for as long as the bucket tells them to.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BandwidthLimiter {
+
+    private static final String KEY_PREFIX = "storage:bandwidth:";
+    private static final long MIN_CHUNK = 64 * 1024;
+    private static final long MAX_CHUNK = 4 * 1024 * 1024;
+
+    // Reserves ARGV[3] bytes even if that drives the bucket negative and returns how long the caller must wait,
+    // so concurrent streams of one user queue behind each other instead of polling.
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local rate = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(bucket[1]) or burst
+            local ts = tonumber(bucket[2]) or now
+            tokens = math.min(burst, tokens + math.max(0, now - ts) * rate) - tonumber(ARGV[3])
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil((burst - tokens) / rate) + 1000)
+            if tokens >= 0 then return 0 end
+            return math.ceil(-tokens / rate)
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final StorageLimitsProperties properties;
+    private final UserLimits userLimits;
+
+    public InputStream limitUpload(InputStream in, Long userId) {
+        StorageLimitsProperties.RoleLimits limits = userLimits.forUser(userId);
+        Throttle throttle = throttle("up:" + userId, limits.uploadPerSecond().toBytes(), limits.burst().toBytes());
+        return throttle == null ? in : new ThrottledInputStream(in, throttle);
+    }
+
+    public OutputStream limitDownload(OutputStream out, Long userId) {
+        StorageLimitsProperties.RoleLimits limits = userLimits.forUser(userId);
+        Throttle throttle = throttle("down:" + userId, limits.downloadPerSecond().toBytes(), limits.burst().toBytes());
+        return throttle == null ? out : new ThrottledOutputStream(out, throttle);
+    }
+
+    private Throttle throttle(String key, long bytesPerSecond, long burst) {
+        if (!properties.enabled() || bytesPerSecond <= 0) return null;
+        long chunk = Math.min(Math.max(bytesPerSecond / 20, MIN_CHUNK), Math.min(MAX_CHUNK, Math.max(burst, MIN_CHUNK)));
+        return new Throttle(KEY_PREFIX + key, bytesPerSecond / 1000.0, Math.max(burst, chunk), chunk);
+    }
+
+    private final class Throttle {
+        private final String key;
+        private final double bytesPerMilli;
+        private final long burst;
+        private final long chunk;
+        private long credit;
+        private boolean bypass;
+
+        private Throttle(String key, double bytesPerMilli, long burst, long chunk) {
+            this.key = key;
+            this.bytesPerMilli = bytesPerMilli;
+            this.burst = burst;
+            this.chunk = chunk;
+        }
+
+        void consume(long bytes) throws IOException {
+            credit -= bytes;
+            while (credit < 0 && !bypass) {
+                long wait = reserve();
+                credit += chunk;
+                if (wait > 0) sleep(wait);
+            }
+        }
+
+        private long reserve() {
+            try {
+                Long wait = redisTemplate.execute(RESERVE_SCRIPT, List.of(key),
+                        String.valueOf(bytesPerMilli), String.valueOf(burst), String.valueOf(chunk));
+                return wait == null ? 0 : wait;
+            } catch (DataAccessException e) {
+                // Without Redis the transfer runs unshaped rather than failing.
+                log.warn("Bandwidth limiting unavailable for {}, continuing without it", key, e);
+                bypass = true;
+                return 0;
+            }
+        }
+
+        private void sleep(long millis) throws InterruptedIOException {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+        private final Throttle throttle;
+
+        private ThrottledOutputStream(OutputStream out, Throttle throttle) {
+            super(out);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            throttle.consume(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            throttle.consume(len);
+            out.write(b, off, len);
+        }
+    }
+
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final Throttle throttle;
+
+        private ThrottledInputStream(InputStream in, Throttle throttle) {
+            super(in);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) throttle.consume(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) throttle.consume(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            if (skipped > 0) throttle.consume(skipped);
+            return skipped;
+        }
+    }
+}
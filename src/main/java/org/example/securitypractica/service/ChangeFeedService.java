@@ -0,0 +1,316 @@
+package org.example.securitypractica.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.ChangeDto;
+import org.example.securitypractica.dto.ChangesDto;
+import org.example.securitypractica.dto.ResourceType;
+import org.example.securitypractica.entity.ChangeCursor;
+import org.example.securitypractica.entity.StorageChange;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.repository.ChangeCursorRepository;
+import org.example.securitypractica.repository.StorageChangeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-user feed of storage changes. Entries are recorded after the write has been applied to storage, so a
+ * failure to record one must not fail the write: the change is queued in a Redis list of the user and retried,
+ * and later changes of the same user queue up behind it so the feed keeps the order in which they happened.
+ * The list outlives a restart and is drained by whichever node gets to it. Changes that cannot be queued, or
+ * that overflow the list, are given up and the user's feed readers are sent back to a snapshot instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChangeFeedService {
+
+    private static final String BACKLOG_USERS = "storage:changes:unrecorded";
+    private static final String BACKLOG_PREFIX = "storage:changes:unrecorded:";
+    private static final String DRAIN_LOCK_PREFIX = "storage:changes:draining:";
+    private static final Duration DRAIN_LOCK_TTL = Duration.ofMinutes(5);
+    // Stands in the backlog for changes that were given up, and resets the feed when it is reached.
+    private static final String LOST = "lost";
+
+    private final StorageChangeRepository changeRepository;
+    private final ChangeCursorRepository cursorRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, List<Waiter>> waiters = new ConcurrentHashMap<>();
+    // Users this node knows to have a backlog; their new changes go behind it.
+    private final Set<Long> backlogged = ConcurrentHashMap.newKeySet();
+    // Users whose changes could not even be queued; their feed is compacted once the database is back.
+    private final Set<Long> lost = ConcurrentHashMap.newKeySet();
+
+    @Value("${storage.changes.page-size:500}")
+    private int pageSize;
+
+    @Value("${storage.changes.max-wait:60s}")
+    private Duration maxWait;
+
+    @Value("${storage.changes.retention:30d}")
+    private Duration retention;
+
+    @Value("${storage.changes.max-unrecorded-per-user:10000}")
+    private int maxUnrecorded;
+
+    /**
+     * Runs first among the listeners of {@link StorageChangeEvent}: the directory versions follow, and the content
+     * index reads its changes from this feed.
+     */
+    @Order(0)
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (event.changes().isEmpty()) return;
+        if (backlogged.contains(event.userId())) {
+            defer(event);
+            return;
+        }
+        try {
+            record(event);
+        } catch (RuntimeException e) {
+            log.warn("Failed to record {} changes of user {}, will retry", event.changes().size(), event.userId(), e);
+            defer(event);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.changes.retry-interval:5000}")
+    public void retryUnrecorded() {
+        for (Long userId : List.copyOf(lost)) {
+            try {
+                markLost(userId);
+                lost.remove(userId);
+            } catch (RuntimeException e) {
+                log.warn("Still failing to reset the change feed of user {}", userId, e);
+            }
+        }
+
+        Set<Long> userIds = new TreeSet<>(backlogged);
+        try {
+            Set<String> queued = redisTemplate.opsForSet().members(BACKLOG_USERS);
+            if (queued != null) queued.forEach(id -> userIds.add(Long.valueOf(id)));
+        } catch (DataAccessException e) {
+            log.warn("Failed to read the users with unrecorded changes", e);
+            return;
+        }
+        userIds.forEach(this::drain);
+    }
+
+    /**
+     * Queues the event behind earlier unrecorded changes of the user, starting the queue if there is none.
+     */
+    private void defer(StorageChangeEvent event) {
+        Long userId = event.userId();
+        String key = BACKLOG_PREFIX + userId;
+        try {
+            Long size = redisTemplate.opsForList().rightPush(key, objectMapper.writeValueAsString(event));
+            if (size != null && size > maxUnrecorded) {
+                log.error("Dropping {} unrecorded changes of user {}, its feed will start over from a snapshot", size, userId);
+                redisTemplate.delete(key);
+                redisTemplate.opsForList().rightPush(key, LOST);
+            }
+            redisTemplate.opsForSet().add(BACKLOG_USERS, userId.toString());
+            backlogged.add(userId);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Failed to queue {} changes of user {}, its feed will start over from a snapshot",
+                    event.changes().size(), userId, e);
+            lost.add(userId);
+        }
+    }
+
+    private void drain(Long userId) {
+        String key = BACKLOG_PREFIX + userId;
+        String lock = DRAIN_LOCK_PREFIX + userId;
+        try {
+            // Two nodes draining the same list would both record its head.
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lock, "1", DRAIN_LOCK_TTL))) return;
+        } catch (DataAccessException e) {
+            log.warn("Failed to lock the unrecorded changes of user {}", userId, e);
+            return;
+        }
+        try {
+            String next;
+            while ((next = redisTemplate.opsForList().index(key, 0)) != null) {
+                StorageChangeEvent event = read(next, userId);
+                if (event == null) {
+                    markLost(userId);
+                } else {
+                    record(event);
+                }
+                redisTemplate.opsForList().leftPop(key);
+            }
+            redisTemplate.opsForSet().remove(BACKLOG_USERS, userId.toString());
+            backlogged.remove(userId);
+            // A change queued after the last read but before the removal above would be left with nobody to drain it.
+            Long size = redisTemplate.opsForList().size(key);
+            if (size != null && size > 0) {
+                redisTemplate.opsForSet().add(BACKLOG_USERS, userId.toString());
+                backlogged.add(userId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Still failing to record changes of user {}", userId, e);
+        } finally {
+            try {
+                redisTemplate.delete(lock);
+            } catch (DataAccessException e) {
+                log.warn("Failed to unlock the unrecorded changes of user {}, the lock expires in {}", userId, DRAIN_LOCK_TTL, e);
+            }
+        }
+    }
+
+    private StorageChangeEvent read(String entry, Long userId) {
+        if (LOST.equals(entry)) return null;
+        try {
+            return objectMapper.readValue(entry, StorageChangeEvent.class);
+        } catch (JsonProcessingException e) {
+            log.error("Unreadable unrecorded change of user {}, its feed will start over from a snapshot", userId, e);
+            return null;
+        }
+    }
+
+    private void markLost(Long userId) {
+        cursorRepository.markLost(userId);
+        wake(userId);
+    }
+
+    private void record(StorageChangeEvent event) {
+        transactionTemplate.executeWithoutResult(status -> insert(event));
+        wake(event.userId());
+    }
+
+    private void insert(StorageChangeEvent event) {
+        List<StorageChangeEvent.Change> changes = event.changes();
+        long last = cursorRepository.allocate(event.userId(), changes.size());
+        long seq = last - changes.size();
+        Instant now = Instant.now();
+        List<StorageChange> entries = new ArrayList<>(changes.size());
+        for (StorageChangeEvent.Change change : changes) {
+            StorageChange entry = new StorageChange();
+            entry.setUserId(event.userId());
+            entry.setSeq(++seq);
+            entry.setType(change.type());
+            entry.setPath(change.path());
+            entry.setTargetPath(change.targetPath());
+            entry.setSize(change.size());
+            entry.setDirectory(change.isDirectory());
+            entry.setCreatedAt(now);
+            entries.add(entry);
+        }
+        changeRepository.saveAll(entries);
+    }
+
+    public ChangesDto getChanges(Long userId, long since) {
+        if (since < 0) throw new MyBadRequestException("since must not be negative");
+        ChangeCursor cursor = cursorRepository.findById(userId).orElse(null);
+        long head = cursor != null ? cursor.getLastSeq() : 0;
+        if (since > head) throw new MyBadRequestException("since is ahead of the change feed");
+        if (cursor != null && since < cursor.getCompactedSeq()) {
+            return new ChangesDto(List.of(), head, false, true);
+        }
+        if (since == head) return new ChangesDto(List.of(), head, false, false);
+
+        List<StorageChange> page = changeRepository.findByUserIdAndSeqGreaterThanOrderBySeq(
+                userId, since, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) page = page.subList(0, pageSize);
+        long sequence = page.isEmpty() ? since : page.get(page.size() - 1).getSeq();
+        return new ChangesDto(page.stream().map(this::toDto).toList(), sequence, hasMore, false);
+    }
+
+    /**
+     * Answers immediately when there is something newer than {@code since}, otherwise parks the request
+     * until a change arrives or the wait runs out.
+     */
+    public DeferredResult<ChangesDto> poll(Long userId, long since, Duration wait) {
+        ChangesDto current = getChanges(userId, since);
+        Duration timeout = wait.compareTo(maxWait) > 0 ? maxWait : wait;
+        if (!current.changes().isEmpty() || current.snapshotRequired() || timeout.isZero() || timeout.isNegative()) {
+            DeferredResult<ChangesDto> result = new DeferredResult<>();
+            result.setResult(current);
+            return result;
+        }
+
+        DeferredResult<ChangesDto> result = new DeferredResult<>(timeout.toMillis(), current);
+        Waiter waiter = new Waiter(userId, since, result);
+        waiters.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(waiter);
+        result.onCompletion(() -> remove(waiter));
+        // A change committed between the read above and the registration would otherwise be missed until the sweep.
+        wake(userId);
+        return result;
+    }
+
+    /**
+     * Changes written by other nodes do not wake local waiters directly, so parked requests re-check the cursors.
+     */
+    @Scheduled(fixedDelayString = "${storage.changes.poll-interval:1000}")
+    public void sweep() {
+        Set<Long> userIds = waiters.keySet();
+        if (userIds.isEmpty()) return;
+        for (ChangeCursor cursor : cursorRepository.findByUserIdIn(List.copyOf(userIds))) {
+            for (Waiter waiter : waiters.getOrDefault(cursor.getUserId(), List.of())) {
+                if (cursor.getLastSeq() > waiter.since()) complete(waiter);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.changes.compaction-interval:3600000}")
+    public void compact() {
+        Instant cutoff = Instant.now().minus(retention);
+        cursorRepository.markCompacted(cutoff);
+        int removed = changeRepository.deleteCreatedBefore(cutoff);
+        if (removed > 0) log.info("Compacted {} change feed entries", removed);
+    }
+
+    private void wake(Long userId) {
+        for (Waiter waiter : waiters.getOrDefault(userId, List.of())) {
+            complete(waiter);
+        }
+    }
+
+    private void complete(Waiter waiter) {
+        if (waiter.result().isSetOrExpired()) return;
+        try {
+            ChangesDto changes = getChanges(waiter.userId(), waiter.since());
+            if (!changes.changes().isEmpty() || changes.snapshotRequired()) waiter.result().setResult(changes);
+        } catch (RuntimeException e) {
+            waiter.result().setErrorResult(e);
+        }
+    }
+
+    private void remove(Waiter waiter) {
+        waiters.computeIfPresent(waiter.userId(), (id, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private ChangeDto toDto(StorageChange change) {
+        return new ChangeDto(change.getSeq(), change.getType(), change.getPath(), change.getTargetPath(), change.getSize(),
+                change.isDirectory() ? ResourceType.DIRECTORY : ResourceType.FILE, change.getCreatedAt());
+    }
+
+    private record Waiter(Long userId, long since, DeferredResult<ChangesDto> result) {
+    }
+}
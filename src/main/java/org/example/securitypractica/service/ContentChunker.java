@@ -0,0 +1,154 @@
+package org.example.securitypractica.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Content-defined chunking: a chunk ends where a rolling hash of the last bytes hits a fixed pattern, so an edit
+ * only moves the boundaries next to it and the chunks around it keep their hashes.
+ * <p>
+ * The hash is a gear hash, {@code h = (h << 1) + GEAR[b]} over unsigned bytes, reset at every chunk start.
+ * A boundary follows the current byte when the chunk is at least {@code minSize} long and the top
+ * {@code log2(avgSize)} bits of {@code h} are zero, or when it reaches {@code maxSize}. {@code GEAR} holds
+ * 256 consecutive outputs of SplitMix64 seeded with 0. Clients must chunk the same way to reuse blocks.
+ */
+public final class ContentChunker {
+
+    public static final String ALGORITHM = "gear64-sha256";
+
+    private static final long[] GEAR = gearTable();
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long mask;
+
+    public record Chunk(long offset, int length, String sha256) {
+    }
+
+    public ContentChunker(int minSize, int avgSize, int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max, with avg a power of two");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        this.mask = -1L << (64 - Integer.numberOfTrailingZeros(avgSize));
+    }
+
+    public int minSize() {
+        return minSize;
+    }
+
+    public int avgSize() {
+        return avgSize;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public Signature newSignature() {
+        return new Signature();
+    }
+
+    public List<Chunk> chunk(InputStream content) throws IOException {
+        Signature signature = newSignature();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            signature.update(buffer, 0, read);
+        }
+        return signature.finish();
+    }
+
+    /**
+     * Chunks a stream incrementally, e.g. while it is being uploaded.
+     */
+    public final class Signature {
+        private final MessageDigest digest = sha256();
+        private final List<Chunk> chunks = new ArrayList<>();
+        private long chunkStart;
+        private int chunkLength;
+        private long hash;
+
+        public void update(byte[] bytes, int offset, int length) {
+            int start = offset;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                hash = (hash << 1) + GEAR[bytes[i] & 0xff];
+                chunkLength++;
+                if ((chunkLength >= minSize && (hash & mask) == 0) || chunkLength >= maxSize) {
+                    digest.update(bytes, start, i + 1 - start);
+                    cut();
+                    start = i + 1;
+                }
+            }
+            digest.update(bytes, start, end - start);
+        }
+
+        public List<Chunk> finish() {
+            if (chunkLength > 0) cut();
+            return List.copyOf(chunks);
+        }
+
+        public long size() {
+            return chunkStart + chunkLength;
+        }
+
+        /**
+         * Chunks whatever is read through the returned stream.
+         */
+        public InputStream tee(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) update(new byte[]{(byte) b}, 0, 1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) update(b, off, n);
+                    return n;
+                }
+            };
+        }
+
+        private void cut() {
+            chunks.add(new Chunk(chunkStart, chunkLength, HexFormat.of().formatHex(digest.digest())));
+            chunkStart += chunkLength;
+            chunkLength = 0;
+            hash = 0;
+        }
+    }
+
+    private static long[] gearTable() {
+        long[] table = new long[256];
+        long state = 0;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.example.securitypractica.service;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.ContentSearchDto;
+import org.example.securitypractica.dto.ContentSearchHitDto;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.entity.ChangeCursor;
+import org.example.securitypractica.entity.StorageChange;
+import org.example.securitypractica.repository.ChangeCursorRepository;
+import org.example.securitypractica.repository.ContentIndex;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.StorageChangeRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps this node's content index in step with storage by following the change feed, so files written through
+ * any node are found. Each user is caught up on one of a few single-threaded lanes, picked by user, in feed order;
+ * the last applied sequence number is kept in the index itself. A user whose changes were compacted away before
+ * this node applied them is indexed again from a full listing. A full lane only postpones the user to the next poll.
+ */
+@Slf4j
+@Service
+public class ContentIndexService implements DisposableBean {
+
+    private static final int MAX_RESULTS = 1000;
+    private static final int PAGE_SIZE = 500;
+
+    private final ContentIndex contentIndex;
+    private final TextExtractor textExtractor;
+    private final MinioRepository minioRepository;
+    private final StorageChangeRepository changeRepository;
+    private final ChangeCursorRepository cursorRepository;
+    private final boolean enabled;
+    private final long maxFileSize;
+    private final Duration lookback;
+    private final List<ThreadPoolTaskExecutor> lanes = new ArrayList<>();
+    private final Map<Long, Long> appliedSeqs = new ConcurrentHashMap<>();
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private volatile Instant lastPoll;
+
+    public ContentIndexService(ContentIndex contentIndex, TextExtractor textExtractor, MinioRepository minioRepository,
+                               StorageChangeRepository changeRepository, ChangeCursorRepository cursorRepository,
+                               @Value("${storage.search.content.enabled:true}") boolean enabled,
+                               @Value("${storage.search.max-file-size:20MB}") DataSize maxFileSize,
+                               @Value("${storage.search.poll-lookback:1m}") Duration lookback,
+                               @Value("${storage.search.workers:2}") int workers,
+                               @Value("${storage.search.queue-capacity:10000}") int queueCapacity) {
+        this.contentIndex = contentIndex;
+        this.textExtractor = textExtractor;
+        this.minioRepository = minioRepository;
+        this.changeRepository = changeRepository;
+        this.cursorRepository = cursorRepository;
+        this.enabled = enabled;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.lookback = lookback;
+        if (enabled) appliedSeqs.putAll(contentIndex.applied());
+        for (int i = 0; i < workers; i++) {
+            ThreadPoolTaskExecutor lane = new ThreadPoolTaskExecutor();
+            lane.setCorePoolSize(1);
+            lane.setMaxPoolSize(1);
+            lane.setQueueCapacity(queueCapacity);
+            lane.setThreadNamePrefix("search-index-" + i + "-");
+            lane.setWaitForTasksToCompleteOnShutdown(true);
+            lane.initialize();
+            lanes.add(lane);
+        }
+    }
+
+    /**
+     * Changes made on this node are picked up at once instead of on the next poll.
+     */
+    @Order(2)
+    @EventListener
+    public void onStorageChange(StorageChangeEvent event) {
+        if (enabled) schedule(event.userId());
+    }
+
+    @Scheduled(fixedDelayString = "${storage.search.poll-interval:1000}")
+    public void poll() {
+        if (!enabled) return;
+        Instant started = Instant.now();
+        if (lastPoll == null) {
+            sweep();
+        } else {
+            // A change is stamped before its transaction commits, so it may show up a little after its time.
+            List<Long> userIds = changeRepository.findUserIdsChangedSince(lastPoll.minus(lookback));
+            if (!userIds.isEmpty()) cursorRepository.findByUserIdIn(userIds).forEach(this::scheduleIfBehind);
+        }
+        lastPoll = started;
+    }
+
+    /**
+     * Catches up users that were missed while their lane was full.
+     */
+    @Scheduled(fixedDelayString = "${storage.search.sweep-interval:600000}",
+            initialDelayString = "${storage.search.sweep-interval:600000}")
+    public void sweep() {
+        if (!enabled) return;
+        Long after = 0L;
+        List<ChangeCursor> cursors;
+        do {
+            cursors = cursorRepository.findByUserIdGreaterThanOrderByUserId(after, PageRequest.of(0, PAGE_SIZE));
+            if (cursors.isEmpty()) break;
+            cursors.forEach(this::scheduleIfBehind);
+            after = cursors.get(cursors.size() - 1).getUserId();
+        } while (cursors.size() == PAGE_SIZE);
+    }
+
+    public ContentSearchDto search(String query, int page, int size, Long userId) {
+        if (!enabled) throw new MyBadRequestException("Content search is disabled");
+        if (query == null || query.isBlank()) throw new MyBadRequestException("Query must not be empty");
+        if (page < 0 || size < 1 || size > 100) throw new MyBadRequestException("page must be >= 0 and size between 1 and 100");
+        if ((long) (page + 1) * size > MAX_RESULTS) throw new MyBadRequestException("Only the first " + MAX_RESULTS + " results can be paged through");
+
+        ContentIndex.Page result = contentIndex.search(userId, query, page * size, size);
+        List<ContentSearchHitDto> hits = result.hits().stream().map(hit -> {
+            int slash = hit.path().lastIndexOf('/');
+            return new ContentSearchHitDto(hit.path().substring(0, slash + 1), hit.path().substring(slash + 1), hit.size(), hit.highlight());
+        }).toList();
+        return new ContentSearchDto(hits, result.total(), page, size);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.search.refresh-interval:1000}")
+    public void refresh() {
+        contentIndex.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${storage.search.commit-interval:30000}")
+    public void commit() {
+        contentIndex.commit();
+    }
+
+    @Override
+    public void destroy() {
+        lanes.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    private void scheduleIfBehind(ChangeCursor cursor) {
+        if (cursor.getLastSeq() > appliedSeqs.getOrDefault(cursor.getUserId(), 0L)) schedule(cursor.getUserId());
+    }
+
+    private void schedule(Long userId) {
+        if (!scheduled.add(userId)) return;
+        try {
+            lanes.get(Math.floorMod(userId.hashCode(), lanes.size())).execute(() -> catchUp(userId));
+        } catch (TaskRejectedException e) {
+            scheduled.remove(userId);
+            log.debug("Search index queue is full, user {} is caught up later", userId);
+        }
+    }
+
+    void catchUp(Long userId) {
+        try {
+            long applied = appliedSeqs.getOrDefault(userId, 0L);
+            ChangeCursor cursor = cursorRepository.findById(userId).orElse(null);
+            if (cursor == null) return;
+            if (applied < cursor.getCompactedSeq()) applied = reindex(userId, cursor.getCompactedSeq());
+            List<StorageChange> changes;
+            do {
+                changes = changeRepository.findByUserIdAndSeqGreaterThanOrderBySeq(userId, applied, PageRequest.of(0, PAGE_SIZE));
+                for (StorageChange change : changes) {
+                    // Sequence numbers become visible without gaps, so a gap means the feed was compacted meanwhile.
+                    if (change.getSeq() > applied + 1) reindex(userId, change.getSeq() - 1);
+                    apply(userId, new StorageChangeEvent.Change(change.getType(), change.getPath(),
+                            change.getTargetPath(), change.getSize()));
+                    applied = change.getSeq();
+                }
+                contentIndex.markApplied(userId, applied);
+                appliedSeqs.put(userId, applied);
+            } while (changes.size() == PAGE_SIZE);
+        } catch (RuntimeException e) {
+            log.warn("Failed to catch up the search index of user {}, retrying on next poll", userId, e);
+        } finally {
+            scheduled.remove(userId);
+        }
+    }
+
+    /**
+     * Rebuilds the user's documents from a listing. The changes after {@code seq} that are still in the feed are
+     * applied on top of it afterwards, which they survive: each one re-reads or re-keys what is there now.
+     */
+    private long reindex(Long userId, long seq) {
+        log.info("Change feed of user {} was compacted past the search index, indexing all files again", userId);
+        contentIndex.delete(userId, "");
+        indexFolder(userId, "");
+        contentIndex.markApplied(userId, seq);
+        appliedSeqs.put(userId, seq);
+        return seq;
+    }
+
+    private void apply(Long userId, StorageChangeEvent.Change change) {
+        try {
+            switch (change.type()) {
+                case UPLOAD, CREATE -> {
+                    if (change.isDirectory()) {
+                        indexFolder(userId, change.path());
+                    } else {
+                        indexFile(userId, change.path(), change.size());
+                    }
+                }
+                case MOVE -> contentIndex.move(userId, change.path(), change.targetPath());
+                case DELETE -> contentIndex.delete(userId, change.path());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to index {} {} of user {}", change.type(), change.path(), userId, e);
+        }
+    }
+
+    /**
+     * A folder appears at once when it is restored from the trash; a newly created one is empty and costs one listing.
+     */
+    private void indexFolder(Long userId, String folder) {
+        String rootPath = StorageService.getUserRootPath(userId);
+        for (Result<Item> result : minioRepository.list(rootPath + folder, true)) {
+            Item item;
+            try {
+                item = result.get();
+            } catch (Exception e) {
+                throw new RuntimeException("MinIO list error", e);
+            }
+            if (!item.objectName().endsWith("/")) {
+                indexFile(userId, item.objectName().substring(rootPath.length()), item.size());
+            }
+        }
+    }
+
+    private void indexFile(Long userId, String path, Long size) {
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        if (!textExtractor.supports(fileName)) return;
+        String key = StorageService.getUserRootPath(userId) + path;
+        if (size == null) {
+            Item item = minioRepository.findObject(key);
+            if (item == null) return;
+            size = item.size();
+        }
+        if (size > maxFileSize) {
+            // A file overwritten with something too large must not keep matching its old content.
+            contentIndex.delete(userId, path);
+            return;
+        }
+
+        String text;
+        try (InputStream is = minioRepository.getObject(key)) {
+            text = textExtractor.extract(is, fileName);
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot read " + path + " for indexing", e);
+        }
+        if (text == null) {
+            contentIndex.delete(userId, path);
+        } else {
+            contentIndex.index(userId, path, size, text);
+        }
+    }
+}
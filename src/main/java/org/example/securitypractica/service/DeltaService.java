@@ -0,0 +1,386 @@
+package org.example.securitypractica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.DeltaManifestDto;
+import org.example.securitypractica.dto.FileSignatureDto;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.exception.PreconditionFailedException;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.ShardRouter;
+import org.example.securitypractica.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * rsync-style updates of large files. Each version of a file has a block signature, stored under
+ * {@code user-<id>-signatures/<etag>.json}; a client sends only the blocks it changed, and the new version is
+ * composed on the storage side from ranges of the old one and the uploaded bytes.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeltaService {
+
+    /**
+     * S3 compose accepts nothing smaller for any but the last part.
+     */
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * S3 compose accepts no more source parts than this.
+     */
+    static final int MAX_PARTS = 10_000;
+
+    private static final int MAX_SEGMENTS = 100_000;
+    private static final int PAGE_SIZE = 100;
+    private static final String SIGNATURE_SUFFIX = ".json";
+
+    private final MinioRepository minioRepository;
+    private final ObjectMapper objectMapper;
+    private final Executor storageTaskExecutor;
+    private final UserRepository userRepository;
+
+    @Value("${storage.delta.min-file-size:8MB}")
+    private DataSize minFileSize;
+
+    @Value("${storage.delta.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${storage.delta.signature-grace:1h}")
+    private Duration signatureGrace;
+
+    @Value("${storage.delta.chunk.min-size:256KB}")
+    private DataSize minChunkSize;
+
+    @Value("${storage.delta.chunk.avg-size:1MB}")
+    private DataSize avgChunkSize;
+
+    @Value("${storage.delta.chunk.max-size:4MB}")
+    private DataSize maxChunkSize;
+
+    /**
+     * Small files are cheaper to upload again than to diff, so only larger ones get a signature on upload.
+     */
+    public boolean tracksSignature(long size) {
+        return size >= minFileSize.toBytes();
+    }
+
+    public ContentChunker.Signature newSignature() {
+        return chunker().newSignature();
+    }
+
+    public void storeSignature(String key, String etag, List<ContentChunker.Chunk> chunks, long size) {
+        FileSignatureDto signature = toDto(etag, size, chunks);
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(signature);
+            minioRepository.putFile(signatureKey(key, etag), new ByteArrayInputStream(json), json.length, "application/json");
+        } catch (IOException | RuntimeException e) {
+            // The signature is recomputed on first request, so losing it only costs a read of the file.
+            log.warn("Failed to store signature of {}", key, e);
+        }
+    }
+
+    /**
+     * Returns the stored signature of the current version, computing it from the stored file when it is missing
+     * (files uploaded before delta support, small files, versions assembled by a delta).
+     */
+    public FileSignatureDto signature(String key, Item item) {
+        String etag = normalizeETag(item.etag());
+        String signatureKey = signatureKey(key, etag);
+        if (minioRepository.exists(signatureKey)) {
+            try (InputStream is = minioRepository.getObject(signatureKey)) {
+                return objectMapper.readValue(is, FileSignatureDto.class);
+            } catch (IOException e) {
+                log.warn("Unreadable signature {}, recomputing", signatureKey, e);
+            }
+        }
+
+        List<ContentChunker.Chunk> chunks;
+        try (InputStream is = minioRepository.getObject(key)) {
+            chunks = chunker().chunk(is);
+        } catch (IOException e) {
+            throw new RuntimeException("Signature error", e);
+        }
+        storeSignature(key, etag, chunks, item.size());
+        return toDto(etag, item.size(), chunks);
+    }
+
+    /**
+     * Assembles the new version of {@code base} at its key. Unchanged ranges of at least {@link #MIN_PART_SIZE}
+     * are copied by the storage; everything else is gathered into temporary parts of about
+     * {@code storage.delta.part-size}, so memory use does not depend on the file size.
+     *
+     * @return the size of the new version
+     */
+    public long apply(String key, Item base, DeltaManifestDto manifest, InputStream data, long dataSize, String contentType) {
+        String baseEtag = normalizeETag(base.etag());
+        if (!baseEtag.equals(normalizeETag(manifest.baseEtag()))) {
+            throw new PreconditionFailedException("File has changed since its signature was read");
+        }
+        long newSize = validate(manifest.segments(), base.size(), dataSize);
+
+        Assembly assembly = new Assembly(key, baseEtag, data);
+        try {
+            for (DeltaManifestDto.Segment segment : manifest.segments()) {
+                if (segment.op() == DeltaManifestDto.Op.COPY) {
+                    assembly.copy(segment.offset(), segment.length());
+                } else {
+                    assembly.data(segment.length());
+                }
+            }
+            assembly.flush();
+            // Ranges read through this node are not guarded by the compose precondition, so check once more.
+            Item current = minioRepository.findObject(key);
+            if (current == null || !baseEtag.equals(normalizeETag(current.etag()))) {
+                throw new PreconditionFailedException("File has changed while the delta was applied");
+            }
+            String etag = minioRepository.compose(key, assembly.parts, contentType);
+            minioRepository.delete(signatureKey(key, baseEtag));
+            CompletableFuture.runAsync(() -> refreshSignature(key, etag, newSize), storageTaskExecutor);
+            return newSize;
+        } catch (IOException e) {
+            throw new RuntimeException("Delta upload failed", e);
+        } finally {
+            if (!assembly.temporary.isEmpty()) minioRepository.deleteAll(assembly.temporary);
+        }
+    }
+
+    /**
+     * Signatures are keyed by version rather than by path, so deletes, overwrites and trash purges leave them
+     * behind. This removes the ones whose version is no longer among the user's files or trash.
+     */
+    @Scheduled(fixedDelayString = "${storage.delta.signature-sweep-interval:86400000}",
+            initialDelayString = "${storage.delta.signature-sweep-interval:86400000}")
+    public void sweepSignatures() {
+        long removed = 0;
+        Long after = 0L;
+        List<Long> userIds;
+        do {
+            userIds = userRepository.findIdsAfter(after, PageRequest.of(0, PAGE_SIZE));
+            if (userIds.isEmpty()) break;
+            for (Long userId : userIds) {
+                try {
+                    removed += sweepSignatures(userId);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to sweep signatures of user {}", userId, e);
+                }
+            }
+            after = userIds.get(userIds.size() - 1);
+        } while (userIds.size() == PAGE_SIZE);
+        if (removed > 0) log.info("Removed {} stale file signatures", removed);
+    }
+
+    private int sweepSignatures(Long userId) {
+        // Signatures written while the files are listed belong to versions the listing may have missed.
+        Instant cutoff = Instant.now().minus(signatureGrace);
+        Map<String, String> stale = new HashMap<>();
+        for (Item item : items("user-" + userId + "-signatures/")) {
+            if (!item.lastModified().toInstant().isBefore(cutoff)) continue;
+            String name = item.objectName();
+            stale.put(name.substring(name.lastIndexOf('/') + 1, name.length() - SIGNATURE_SUFFIX.length()), name);
+        }
+        if (stale.isEmpty()) return 0;
+        // A trashed file keeps its signature, so it can still be patched once restored.
+        for (String root : List.of("user-" + userId + "-files/", "user-" + userId + "-trash/")) {
+            for (Item item : items(root)) {
+                stale.remove(normalizeETag(item.etag()));
+            }
+        }
+        if (!stale.isEmpty()) minioRepository.deleteAll(stale.values());
+        return stale.size();
+    }
+
+    private Iterable<Item> items(String prefix) {
+        Iterator<Result<Item>> results = minioRepository.list(prefix, true).iterator();
+        return () -> new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return results.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                try {
+                    return results.next().get();
+                } catch (Exception e) {
+                    throw new RuntimeException("MinIO list error", e);
+                }
+            }
+        };
+    }
+
+    private long validate(List<DeltaManifestDto.Segment> segments, long baseSize, long dataSize) {
+        if (segments.isEmpty()) throw new MyBadRequestException("Delta has no segments");
+        if (segments.size() > MAX_SEGMENTS) throw new MyBadRequestException("Delta has more than " + MAX_SEGMENTS + " segments");
+        long data = 0;
+        long total = 0;
+        for (DeltaManifestDto.Segment segment : segments) {
+            if (segment.op() == DeltaManifestDto.Op.COPY) {
+                if (segment.offset() > baseSize - segment.length()) {
+                    throw new MyBadRequestException("Copy range " + segment.offset() + "+" + segment.length() + " is outside the file");
+                }
+            } else {
+                data += segment.length();
+            }
+            total += segment.length();
+        }
+        if (data != dataSize) throw new MyBadRequestException("Data part has " + dataSize + " bytes, segments need " + data);
+        if (plannedParts(segments) > MAX_PARTS) {
+            throw new MyBadRequestException("Delta would need more than " + MAX_PARTS + " parts, upload the whole file instead");
+        }
+        return total;
+    }
+
+    /**
+     * The number of compose parts {@link Assembly} makes of the segments, worked out without any I/O. Buffered
+     * bytes are counted as a part every {@code storage.delta.part-size}, which is never fewer than the assembly
+     * writes: it only flushes once a read has taken the buffer past that size.
+     */
+    private long plannedParts(List<DeltaManifestDto.Segment> segments) {
+        long threshold = Math.max(partSize.toBytes(), MIN_PART_SIZE);
+        long parts = 0;
+        long buffered = 0;
+        for (DeltaManifestDto.Segment segment : segments) {
+            long length = segment.length();
+            if (segment.op() == DeltaManifestDto.Op.COPY && length >= MIN_PART_SIZE) {
+                if (buffered > 0 && buffered < MIN_PART_SIZE) {
+                    length -= MIN_PART_SIZE - buffered;
+                    buffered = MIN_PART_SIZE;
+                }
+                if (length >= MIN_PART_SIZE) {
+                    if (buffered > 0) parts++;
+                    buffered = 0;
+                    parts++;
+                    continue;
+                }
+            }
+            buffered += length;
+            parts += buffered / threshold;
+            buffered %= threshold;
+        }
+        return buffered > 0 ? parts + 1 : parts;
+    }
+
+    private void refreshSignature(String key, String etag, long size) {
+        if (!tracksSignature(size)) return;
+        try (InputStream is = minioRepository.getObject(key)) {
+            storeSignature(key, etag, chunker().chunk(is), size);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to compute signature of {}", key, e);
+        }
+    }
+
+    private ContentChunker chunker() {
+        return new ContentChunker((int) minChunkSize.toBytes(), (int) avgChunkSize.toBytes(), (int) maxChunkSize.toBytes());
+    }
+
+    private FileSignatureDto toDto(String etag, long size, List<ContentChunker.Chunk> chunks) {
+        ContentChunker chunker = chunker();
+        return new FileSignatureDto(etag, size, ContentChunker.ALGORITHM,
+                chunker.minSize(), chunker.avgSize(), chunker.maxSize(),
+                chunks.stream().map(chunk -> new FileSignatureDto.Chunk(chunk.offset(), chunk.length(), chunk.sha256())).toList());
+    }
+
+    private static String signatureKey(String key, String etag) {
+        return "user-" + ShardRouter.userIdOf(key) + "-signatures/" + etag + SIGNATURE_SUFFIX;
+    }
+
+    static String normalizeETag(String etag) {
+        return etag == null ? "" : etag.replace("\"", "");
+    }
+
+    /**
+     * Turns the segments into compose parts. Small pieces are collected in a buffer that is written out as a
+     * temporary object once it can stand as a part on its own.
+     */
+    private final class Assembly {
+        private final String key;
+        private final String baseEtag;
+        private final InputStream data;
+        private final String tempPrefix;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final List<MinioRepository.ComposePart> parts = new ArrayList<>();
+        private final List<String> temporary = new ArrayList<>();
+
+        private Assembly(String key, String baseEtag, InputStream data) {
+            this.key = key;
+            this.baseEtag = baseEtag;
+            this.data = data;
+            this.tempPrefix = "user-" + ShardRouter.userIdOf(key) + "-uploads/" + UUID.randomUUID() + "/";
+        }
+
+        void copy(long offset, long length) throws IOException {
+            if (length == 0) return;
+            if (buffer.size() > 0 && buffer.size() < MIN_PART_SIZE && length >= MIN_PART_SIZE) {
+                // Top the buffer up from the start of the range, so both can become parts.
+                long take = MIN_PART_SIZE - buffer.size();
+                read(offset, take);
+                offset += take;
+                length -= take;
+            }
+            if (length >= MIN_PART_SIZE) {
+                flush();
+                parts.add(new MinioRepository.ComposePart(key, offset, length, baseEtag));
+            } else {
+                read(offset, length);
+            }
+        }
+
+        void data(long length) throws IOException {
+            byte[] chunk = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = data.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read == -1) throw new MyBadRequestException("Data part ended early");
+                append(chunk, read);
+                remaining -= read;
+            }
+        }
+
+        void flush() {
+            if (buffer.size() == 0) return;
+            String tempKey = tempPrefix + parts.size();
+            temporary.add(tempKey);
+            minioRepository.putFile(tempKey, new ByteArrayInputStream(buffer.toByteArray()), buffer.size(), "application/octet-stream");
+            parts.add(new MinioRepository.ComposePart(tempKey, null, null, null));
+            buffer.reset();
+        }
+
+        private void read(long offset, long length) throws IOException {
+            try (InputStream is = minioRepository.getObject(key, offset, length)) {
+                byte[] chunk = new byte[64 * 1024];
+                int read;
+                while ((read = is.read(chunk)) != -1) {
+                    append(chunk, read);
+                }
+            }
+        }
+
+        private void append(byte[] bytes, int length) {
+            buffer.write(bytes, 0, length);
+            if (buffer.size() >= Math.max(partSize.toBytes(), MIN_PART_SIZE)) flush();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.securitypractica.service;
+
+import io.minio.messages.Item;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.DirectoryVersion;
+import org.example.securitypractica.repository.DirectoryVersionRepository;
+import org.example.securitypractica.repository.MinioRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Version tokens for directory listings. A directory's counter moves whenever one of its direct children
+ * appears, disappears or changes; a folder that only exists through the new keys has just appeared in its own
+ * parent, so the bump climbs on from there. Moving or deleting a whole folder changes listings all over its
+ * subtree, so those bump a subtree counter of the folder instead, which is part of the token of everything below.
+ */
+@Service
+@RequiredArgsConstructor
+public class DirectoryVersionService {
+
+    // Subtree counters are kept under the folder's path with a leading slash, which no relative path has.
+    private static final String SUBTREE = "/";
+    private static final int MAX_PEEK = 1000;
+
+    private final DirectoryVersionRepository versionRepository;
+    private final MinioRepository minioRepository;
+
+    public String etag(String directory, Long userId) {
+        List<String> paths = new ArrayList<>();
+        paths.add(directory);
+        for (String folder : withAncestors(directory)) paths.add(SUBTREE + folder);
+        long subtrees = 0;
+        long version = 0;
+        // Counters only grow, so the sum moves whenever any subtree above the directory is bumped.
+        for (DirectoryVersion row : versionRepository.findByUserIdAndPathIn(userId, paths)) {
+            if (row.getPath().startsWith(SUBTREE)) subtrees += row.getVersion();
+            else version = row.getVersion();
+        }
+        return "\"" + subtrees + "." + version + "\"";
+    }
+
+    @Order(1)
+    @EventListener
+    @Transactional
+    public void onStorageChange(StorageChangeEvent event) {
+        Set<String> touched = new TreeSet<>();
+        Set<String> written = new HashSet<>();
+        for (StorageChangeEvent.Change change : event.changes()) {
+            touched.add(parentOf(change.path()));
+            if (change.type() == ChangeType.DELETE || change.type() == ChangeType.MOVE) {
+                if (change.isDirectory()) touched.add(SUBTREE + change.path());
+                if (change.type() == ChangeType.DELETE) continue;
+            }
+            String added = change.type() == ChangeType.MOVE ? change.targetPath() : change.path();
+            touched.add(parentOf(added));
+            // A folder that is moved or restored comes back with its subtree.
+            if (added.endsWith("/")) touched.add(SUBTREE + added);
+            written.add(added);
+        }
+
+        // Removals never take a folder away with them: the parent gets a marker back when it runs empty.
+        Set<String> checked = new HashSet<>();
+        for (String path : written) {
+            String folder = parentOf(path);
+            while (!folder.isEmpty() && checked.add(folder) && appeared(folder, written, event.userId())) {
+                folder = parentOf(folder);
+                touched.add(folder);
+            }
+        }
+
+        for (String path : touched) {
+            versionRepository.bump(event.userId(), path);
+        }
+    }
+
+    /**
+     * Whether everything under the folder came from this event, so the folder was not there before it. Anything
+     * that cannot be told from a short listing counts as new, since a needless bump only costs a refetch.
+     */
+    private boolean appeared(String folder, Set<String> written, Long userId) {
+        int expected = 0;
+        for (String path : written) {
+            if (path.startsWith(folder)) expected++;
+        }
+        if (expected >= MAX_PEEK) return true;
+        String root = StorageService.getUserRootPath(userId);
+        for (Item item : minioRepository.peek(root + folder, true, expected + 1)) {
+            String path = item.objectName().substring(root.length());
+            if (!written.contains(path) && !insideWrittenFolder(path, written)) return false;
+        }
+        return true;
+    }
+
+    private static boolean insideWrittenFolder(String path, Set<String> written) {
+        for (String folder = parentOf(path); !folder.isEmpty(); folder = parentOf(folder)) {
+            if (written.contains(folder)) return true;
+        }
+        return false;
+    }
+
+    private static String parentOf(String path) {
+        int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(0, path.lastIndexOf('/', end - 1) + 1);
+    }
+
+    private static List<String> withAncestors(String directory) {
+        List<String> folders = new ArrayList<>();
+        folders.add("");
+        int slash = directory.indexOf('/');
+        while (slash != -1) {
+            folders.add(directory.substring(0, slash + 1));
+            slash = directory.indexOf('/', slash + 1);
+        }
+        return folders;
+    }
+}
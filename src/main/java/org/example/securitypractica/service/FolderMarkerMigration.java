@@ -0,0 +1,100 @@
+package org.example.securitypractica.service;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.MinioShard;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Removes folder markers written before folders became implicit. A marker is only kept when nothing else
+ * is stored under it, i.e. when it stands for an empty folder. Runs once per bucket in the background.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FolderMarkerMigration implements ApplicationRunner {
+
+    private static final String DONE_KEY = ".migrations/implicit-directories";
+    private static final int BATCH_SIZE = 1000;
+
+    private final MinioRepository minioRepository;
+    private final Executor storageTaskExecutor;
+
+    @Value("${storage.migration.implicit-directories.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        CompletableFuture.runAsync(this::migrate, storageTaskExecutor)
+                .exceptionally(e -> {
+                    log.error("Folder marker migration failed, it will be retried on next start", e);
+                    return null;
+                });
+    }
+
+    public void migrate() {
+        if (minioRepository.exists(DONE_KEY)) return;
+
+        long pruned = 0;
+        for (MinioShard shard : minioRepository.shards()) {
+            pruned += migrate(shard);
+        }
+
+        minioRepository.createFolder(DONE_KEY);
+        log.info("Folder marker migration finished, {} redundant markers removed", pruned);
+    }
+
+    private long migrate(MinioShard shard) {
+        // Keys come back sorted, so everything under a marker directly follows it:
+        // a marker is redundant exactly when the next key starts with it.
+        List<String> redundant = new ArrayList<>(BATCH_SIZE);
+        long pruned = 0;
+        String pendingMarker = null;
+        for (Result<Item> result : minioRepository.list(shard, "user-", true, null)) {
+            String key = getObjectName(result);
+            if (pendingMarker != null && key.startsWith(pendingMarker)) {
+                redundant.add(pendingMarker);
+                if (redundant.size() == BATCH_SIZE) {
+                    pruned += prune(shard, redundant);
+                    redundant.clear();
+                }
+            }
+            pendingMarker = key.endsWith("/") ? key : null;
+        }
+        return pruned + prune(shard, redundant);
+    }
+
+    /**
+     * The listing may be minutes old by now, and a marker whose folder was emptied in the meantime is what
+     * keeps that folder, so each one is checked again right before it goes.
+     */
+    private int prune(MinioShard shard, List<String> markers) {
+        List<String> stillRedundant = markers.stream().filter(marker -> hasChildren(shard, marker)).toList();
+        minioRepository.deleteAll(shard, stillRedundant);
+        return stillRedundant.size();
+    }
+
+    private boolean hasChildren(MinioShard shard, String marker) {
+        return minioRepository.list(shard, marker, true, marker).iterator().hasNext();
+    }
+
+    private String getObjectName(Result<Item> result) {
+        try {
+            return result.get().objectName();
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.config.StorageLimitsProperties;
+import org.example.securitypractica.exception.TooManyRequestsException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits archive, recursive delete and move operations. A user may run at most their role's number of them across
+ * the cluster, tracked as expiring leases in Redis; each node additionally runs at most {@code node-heavy-slots}
+ * at once. When a slot frees up it goes to the waiting user with the fewest running operations, and among those
+ * to the one served longest ago, so a user queueing many operations cannot starve the others.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HeavyOperationScheduler {
+
+    private static final String KEY_PREFIX = "storage:heavy:";
+    private static final long RETRY_MILLIS = 200;
+
+    // Drops expired leases, then adds ARGV[2] if fewer than ARGV[1] remain. Returns 1 when the lease was granted.
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local ttl = tonumber(ARGV[3])
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now)
+            if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then return 0 end
+            redis.call('ZADD', KEYS[1], now + ttl, ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local ttl = tonumber(ARGV[2])
+            local renewed = redis.call('ZADD', KEYS[1], 'XX', 'CH', now + ttl, ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            return renewed
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final StorageLimitsProperties properties;
+    private final UserLimits userLimits;
+
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<Long, Integer> runningByUser = new HashMap<>();
+    private final Map<Long, Long> lastServed = new HashMap<>();
+    private final Map<String, Long> leases = new ConcurrentHashMap<>();
+    private int running;
+    private long served;
+
+    private static final class Waiter {
+        final Long userId;
+        final int maxRunning;
+        long retryAt;
+
+        Waiter(Long userId, int maxRunning) {
+            this.userId = userId;
+            this.maxRunning = maxRunning;
+        }
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final Long userId;
+        private final String leaseId;
+        private boolean released;
+
+        private Permit(Long userId, String leaseId) {
+            this.userId = userId;
+            this.leaseId = leaseId;
+        }
+
+        @Override
+        public void close() {
+            if (released || userId == null) return;
+            released = true;
+            release(userId, leaseId);
+        }
+    }
+
+    /**
+     * Blocks until the operation may start. Requests give up after {@code queue-timeout} with 429,
+     * background jobs wait up to {@code background-queue-timeout}.
+     */
+    public Permit acquire(Long userId, boolean interactive) {
+        if (!properties.enabled()) return new Permit(null, null);
+
+        int maxRunning = Math.max(1, userLimits.forUser(userId).maxHeavyOperations());
+        long timeout = (interactive ? properties.queueTimeout() : properties.backgroundQueueTimeout()).toNanos();
+        long deadline = System.nanoTime() + timeout;
+        Waiter waiter = new Waiter(userId, maxRunning);
+
+        synchronized (this) {
+            waiters.add(waiter);
+        }
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (running >= properties.nodeHeavySlots() || next() != waiter) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new TooManyRequestsException("Too many heavy operations in progress, try again later", 5);
+                        }
+                        wait(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), RETRY_MILLIS)));
+                    }
+                    // The slot is held for this waiter while Redis is asked, without blocking everyone else on the lock.
+                    running++;
+                    runningByUser.merge(userId, 1, Integer::sum);
+                }
+
+                String leaseId = UUID.randomUUID().toString();
+                boolean leased = false;
+                try {
+                    leased = tryLease(userId, leaseId, maxRunning);
+                } finally {
+                    synchronized (this) {
+                        if (leased) {
+                            lastServed.put(userId, ++served);
+                        } else {
+                            // The user is at their limit on other nodes; let the next user in line have a go meanwhile.
+                            free(userId);
+                            waiter.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+                        }
+                    }
+                }
+                if (leased) return new Permit(userId, leaseId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a heavy operation slot");
+        } finally {
+            synchronized (this) {
+                waiters.remove(waiter);
+                if (waiters.isEmpty()) lastServed.keySet().retainAll(runningByUser.keySet());
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    @Scheduled(fixedDelayString = "${storage.limits.lease-renew-interval:60000}")
+    public void renewLeases() {
+        String ttl = String.valueOf(properties.leaseTtl().toMillis());
+        leases.forEach((leaseId, userId) -> {
+            try {
+                redisTemplate.execute(RENEW_SCRIPT, List.of(KEY_PREFIX + userId), leaseId, ttl);
+            } catch (DataAccessException e) {
+                log.warn("Failed to renew heavy operation lease of user {}", userId, e);
+            }
+        });
+    }
+
+    private Waiter next() {
+        long now = System.nanoTime();
+        Waiter best = null;
+        for (Waiter candidate : waiters) {
+            int userRunning = runningByUser.getOrDefault(candidate.userId, 0);
+            if (userRunning >= candidate.maxRunning || candidate.retryAt > now) continue;
+            if (best == null || isAhead(candidate, userRunning, best)) best = candidate;
+        }
+        return best;
+    }
+
+    // Waiters are kept in arrival order, so ties keep going to whoever came first.
+    private boolean isAhead(Waiter candidate, int candidateRunning, Waiter best) {
+        int bestRunning = runningByUser.getOrDefault(best.userId, 0);
+        if (candidateRunning != bestRunning) return candidateRunning < bestRunning;
+        return lastServed.getOrDefault(candidate.userId, 0L) < lastServed.getOrDefault(best.userId, 0L);
+    }
+
+    private boolean tryLease(Long userId, String leaseId, int maxRunning) {
+        try {
+            Long granted = redisTemplate.execute(ACQUIRE_SCRIPT, List.of(KEY_PREFIX + userId),
+                    String.valueOf(maxRunning), leaseId, String.valueOf(properties.leaseTtl().toMillis()));
+            if (granted == null || granted == 0) return false;
+            leases.put(leaseId, userId);
+            return true;
+        } catch (DataAccessException e) {
+            // The node-local limits still apply when Redis is unreachable.
+            log.warn("Heavy operation leases unavailable, admitting user {} on local limits only", userId, e);
+            return true;
+        }
+    }
+
+    private void free(Long userId) {
+        running--;
+        runningByUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+        notifyAll();
+    }
+
+    private void release(Long userId, String leaseId) {
+        synchronized (this) {
+            free(userId);
+        }
+        if (leases.remove(leaseId) == null) return;
+        try {
+            redisTemplate.opsForZSet().remove(KEY_PREFIX + userId, leaseId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to release heavy operation lease of user {}; it expires on its own", userId, e);
+        }
+    }
+}
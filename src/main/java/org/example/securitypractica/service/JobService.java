@@ -0,0 +1,249 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.JobDto;
+import org.example.securitypractica.entity.JobStatus;
+import org.example.securitypractica.entity.JobType;
+import org.example.securitypractica.entity.StorageJob;
+import org.example.securitypractica.entity.TrashItem;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.exception.NotFoundException;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.StorageJobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobService {
+
+    private final StorageJobRepository jobRepository;
+    private final StorageService storageService;
+    private final MinioRepository minioRepository;
+    private final ThreadPoolTaskExecutor storageJobExecutor;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<UUID, Future<?>> runningJobs = new ConcurrentHashMap<>();
+
+    @Value("${storage.jobs.workers:4}")
+    private int workers;
+
+    @Value("${storage.jobs.max-per-user:2}")
+    private int maxPerUser;
+
+    @Value("${storage.jobs.stale-after:60s}")
+    private Duration staleAfter;
+
+    @Value("${storage.jobs.retention:24h}")
+    private Duration retention;
+
+    @Value("${storage.jobs.retry-backoff:30s}")
+    private Duration retryBackoff;
+
+    @Value("${storage.jobs.max-retry-backoff:30m}")
+    private Duration maxRetryBackoff;
+
+    public JobDto submitDelete(String path, Long userId) {
+        storageService.checkResourceExists(path, userId);
+        return enqueue(new StorageJob(userId, JobType.DELETE, path, null));
+    }
+
+    public JobDto submitMove(String from, String to, Long userId) {
+        storageService.validateMove(from, to, userId);
+        return enqueue(new StorageJob(userId, JobType.MOVE, from, to));
+    }
+
+    public JobDto submitArchive(String path, Long userId) {
+        storageService.checkResourceExists(path, userId);
+        if (!path.endsWith("/")) throw new MyBadRequestException("Only folders can be archived");
+        return enqueue(new StorageJob(userId, JobType.ARCHIVE, path, null));
+    }
+
+    public JobDto submitTrash(TrashItem item) {
+        return enqueue(new StorageJob(item.getUserId(), JobType.TRASH, item.getOriginalPath(), item.getTrashKey()));
+    }
+
+    public JobDto submitRestore(TrashItem item) {
+        return enqueue(new StorageJob(item.getUserId(), JobType.RESTORE, item.getTrashKey(), item.getOriginalPath()));
+    }
+
+    public JobDto submitPurge(TrashItem item) {
+        return enqueue(new StorageJob(item.getUserId(), JobType.PURGE, item.getTrashKey(), null));
+    }
+
+    public JobDto getJob(UUID id, Long userId) {
+        return toDto(findJob(id, userId));
+    }
+
+    public List<JobDto> listJobs(Long userId) {
+        return jobRepository.findByUserIdOrderByCreatedAtDesc(userId).stream().map(this::toDto).toList();
+    }
+
+    public JobDto cancel(UUID id, Long userId) {
+        // Trash jobs own the state of their trash item; stopping one halfway would leave the item hidden for good.
+        if (findJob(id, userId).getType().isTrashOperation()) {
+            throw new MyBadRequestException("Trash operations cannot be cancelled");
+        }
+        jobRepository.requestCancel(id, Instant.now());
+        Future<?> future = runningJobs.get(id);
+        if (future != null) future.cancel(true);
+        return getJob(id, userId);
+    }
+
+    public InputStream openResult(UUID id, Long userId) {
+        StorageJob job = findJob(id, userId);
+        if (job.getStatus() != JobStatus.COMPLETED || job.getResultKey() == null) {
+            throw new NotFoundException("Job result is not available");
+        }
+        return minioRepository.getObject(job.getResultKey());
+    }
+
+    @Scheduled(fixedDelayString = "${storage.jobs.poll-interval:1000}")
+    public synchronized void dispatch() {
+        runningJobs.values().removeIf(Future::isDone);
+        int free = workers - runningJobs.size();
+        if (free <= 0) return;
+
+        Instant now = Instant.now();
+        Instant staleBefore = now.minus(staleAfter);
+        int abandoned = jobRepository.cancelAbandoned(staleBefore, now);
+        if (abandoned > 0) log.info("Finished {} cancelled jobs abandoned by their node", abandoned);
+        for (StorageJob job : jobRepository.findRunnable(now, staleBefore, maxPerUser, PageRequest.of(0, free * 4))) {
+            if (runningJobs.size() >= workers) break;
+            if (runningJobs.containsKey(job.getId())) continue;
+            // The per-user limit is checked before claiming, so two nodes racing may briefly exceed it by one.
+            if (jobRepository.countActive(job.getUserId(), staleBefore) >= maxPerUser) continue;
+            if (jobRepository.claim(job.getId(), nodeId, Instant.now(), staleBefore) == 0) continue;
+
+            if (job.getStatus() == JobStatus.RUNNING) {
+                log.info("Resuming job {} abandoned by node {} after {} items", job.getId(), job.getOwner(), job.getProcessedItems());
+            }
+            runningJobs.put(job.getId(), storageJobExecutor.submit(() -> run(job)));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.jobs.heartbeat-interval:10000}")
+    public void heartbeat() {
+        List<UUID> ids = List.copyOf(runningJobs.keySet());
+        if (ids.isEmpty()) return;
+        jobRepository.heartbeat(ids, nodeId, Instant.now());
+        for (UUID cancelled : jobRepository.findCancelled(ids)) {
+            Future<?> future = runningJobs.get(cancelled);
+            if (future != null) future.cancel(true);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.jobs.cleanup-interval:3600000}")
+    public void cleanup() {
+        Instant cutoff = Instant.now().minus(retention);
+        for (StorageJob job : jobRepository.findByStatusInAndUpdatedAtBefore(
+                List.of(JobStatus.COMPLETED, JobStatus.FAILED, JobStatus.CANCELLED), cutoff)) {
+            if (job.getResultKey() != null) minioRepository.delete(job.getResultKey());
+            jobRepository.delete(job);
+        }
+    }
+
+    private JobDto enqueue(StorageJob job) {
+        jobRepository.save(job);
+        dispatch();
+        return toDto(job);
+    }
+
+    private void run(StorageJob job) {
+        try {
+            String resultKey = execute(job);
+            jobRepository.finish(job.getId(), nodeId, JobStatus.COMPLETED, null, resultKey, Instant.now());
+        } catch (CancellationException e) {
+            jobRepository.finish(job.getId(), nodeId, JobStatus.CANCELLED, null, null, Instant.now());
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted() || !jobRepository.findCancelled(List.of(job.getId())).isEmpty()) {
+                jobRepository.finish(job.getId(), nodeId, JobStatus.CANCELLED, null, null, Instant.now());
+            } else if (job.getType().isTrashOperation()) {
+                // A trash job owns the state of its trash item, so giving up would leave the item stuck for good.
+                Duration backoff = backoff(job.getAttempts());
+                log.warn("Job {} failed, retrying in {}", job.getId(), backoff, e);
+                jobRepository.retry(job.getId(), nodeId, truncate(e.getMessage()), Instant.now().plus(backoff), Instant.now());
+            } else {
+                log.error("Job {} failed", job.getId(), e);
+                jobRepository.finish(job.getId(), nodeId, JobStatus.FAILED, truncate(e.getMessage()), null, Instant.now());
+            }
+        } finally {
+            runningJobs.remove(job.getId());
+        }
+    }
+
+    private String execute(StorageJob job) {
+        OperationProgress progress = new JobProgress(job);
+        switch (job.getType()) {
+            case DELETE -> storageService.deleteResource(job.getSourcePath(), job.getUserId(), progress);
+            case MOVE -> storageService.move(job.getSourcePath(), job.getTargetPath(), job.getUserId(), progress);
+            case ARCHIVE -> {
+                String resultKey = "user-" + job.getUserId() + "-jobs/" + job.getId() + ".zip";
+                storageService.archiveResource(job.getSourcePath(), job.getUserId(), resultKey);
+                return resultKey;
+            }
+            case TRASH -> storageService.completeTrash(job.getSourcePath(), job.getTargetPath(), job.getUserId(), progress);
+            case RESTORE -> storageService.completeRestore(job.getSourcePath(), job.getTargetPath(), job.getUserId(), progress);
+            case PURGE -> storageService.purgeTrash(job.getSourcePath(), job.getUserId(), progress);
+        }
+        return null;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration backoff = retryBackoff.multipliedBy(1L << Math.min(attempts, 16));
+        return backoff.compareTo(maxRetryBackoff) > 0 ? maxRetryBackoff : backoff;
+    }
+
+    private StorageJob findJob(UUID id, Long userId) {
+        return jobRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new NotFoundException("Job not found"));
+    }
+
+    private JobDto toDto(StorageJob job) {
+        return new JobDto(job.getId(), job.getType(), job.getStatus(), job.getSourcePath(), job.getTargetPath(),
+                job.getProcessedItems(), job.getError(), job.getCreatedAt(), job.getUpdatedAt());
+    }
+
+    private String truncate(String message) {
+        if (message == null) return "Unknown error";
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private final class JobProgress implements OperationProgress {
+        private final UUID jobId;
+        private final String resumeAfter;
+        private final long alreadyProcessed;
+
+        private JobProgress(StorageJob job) {
+            this.jobId = job.getId();
+            this.resumeAfter = job.getCheckpoint();
+            this.alreadyProcessed = job.getProcessedItems();
+        }
+
+        @Override
+        public String resumeAfter() {
+            return resumeAfter;
+        }
+
+        @Override
+        public boolean advance(String lastKey, long processed) {
+            if (Thread.currentThread().isInterrupted()) return false;
+            return jobRepository.saveCheckpoint(jobId, nodeId, alreadyProcessed + processed, lastKey, Instant.now()) == 1;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.entity.NamespaceRootState;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.Namespace;
+import org.example.securitypractica.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Switches existing users over to the namespace layout. Each prefix is indexed while it stays writable, then frozen
+ * for a short final pass and served from the namespace; the objects keep their keys, which become their blob keys.
+ * Runs in the background on every start while {@code storage.namespace.enabled} is set; finished prefixes are skipped.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NamespaceMigration implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final Namespace namespace;
+    private final MinioRepository minioRepository;
+    private final UserRepository userRepository;
+    private final Executor storageTaskExecutor;
+
+    @Value("${storage.namespace.migration.grace:15s}")
+    private Duration grace;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!namespace.isEnabled()) return;
+        CompletableFuture.runAsync(this::migrate, storageTaskExecutor)
+                .exceptionally(e -> {
+                    log.error("Namespace migration failed, it will be retried on next start", e);
+                    return null;
+                });
+    }
+
+    public void migrate() {
+        long switched = 0;
+        Long after = 0L;
+        List<Long> userIds;
+        do {
+            userIds = userRepository.findIdsAfter(after, PageRequest.of(0, PAGE_SIZE));
+            if (userIds.isEmpty()) break;
+            switched += migrate(userIds);
+            after = userIds.get(userIds.size() - 1);
+        } while (userIds.size() == PAGE_SIZE);
+        if (switched > 0) log.info("Namespace migration finished, {} prefixes switched over", switched);
+    }
+
+    private int migrate(List<Long> userIds) {
+        List<String> frozen = new ArrayList<>();
+        try {
+            for (Long userId : userIds) {
+                for (String root : List.of("user-" + userId + "-files/", "user-" + userId + "-trash/")) {
+                    NamespaceRootState state = namespace.startMigration(root);
+                    if (state == NamespaceRootState.READY) continue;
+                    if (state == NamespaceRootState.MIGRATING) {
+                        reconcile(root);
+                        if (!namespace.transition(root, NamespaceRootState.MIGRATING, NamespaceRootState.FROZEN)) continue;
+                    }
+                    frozen.add(root);
+                }
+            }
+            if (frozen.isEmpty()) return 0;
+            // Writes that started before the freeze, or on a node still caching the old state, land before the last pass.
+            Thread.sleep(grace.toMillis());
+            int switched = 0;
+            while (!frozen.isEmpty()) {
+                String root = frozen.get(0);
+                reconcile(root);
+                if (namespace.transition(root, NamespaceRootState.FROZEN, NamespaceRootState.READY)) switched++;
+                frozen.remove(0);
+            }
+            return switched;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Namespace migration interrupted", e);
+        } finally {
+            // Prefixes that did not make it are writable again until the next attempt.
+            for (String root : frozen) {
+                namespace.transition(root, NamespaceRootState.FROZEN, NamespaceRootState.MIGRATING);
+            }
+        }
+    }
+
+    private void reconcile(String root) {
+        long changed = namespace.reconcile(root, minioRepository.listStored(root, true, null));
+        if (changed > 0) log.info("Indexed {} changes under {}", changed, root);
+    }
+}
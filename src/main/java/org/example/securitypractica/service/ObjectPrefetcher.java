@@ -0,0 +1,90 @@
+package org.example.securitypractica.service;
+
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Opens objects a few positions ahead of the one being written, so the round trip of the next GET overlaps
+ * with streaming the current one. Objects up to the buffer size are read into memory in the background,
+ * larger ones only have their request started, which keeps memory bounded by window × buffer size.
+ */
+@Slf4j
+final class ObjectPrefetcher implements AutoCloseable {
+
+    private final List<Item> items;
+    private final Function<String, InputStream> opener;
+    private final Executor executor;
+    private final int window;
+    private final long bufferBytes;
+    private final Deque<CompletableFuture<InputStream>> pending = new ArrayDeque<>();
+    private int scheduled;
+
+    ObjectPrefetcher(List<Item> items, Function<String, InputStream> opener, Executor executor, int window, long bufferBytes) {
+        this.items = items;
+        this.opener = opener;
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * @return the content of the next item, in list order; the caller closes it
+     */
+    InputStream next() throws IOException {
+        while (scheduled < items.size() && pending.size() < window) {
+            Item item = items.get(scheduled++);
+            pending.add(CompletableFuture.supplyAsync(() -> fetch(item), executor));
+        }
+        CompletableFuture<InputStream> next = pending.poll();
+        if (next == null) throw new NoSuchElementException();
+        try {
+            return next.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw e;
+        }
+    }
+
+    private InputStream fetch(Item item) {
+        InputStream is = opener.apply(item.objectName());
+        if (item.size() > bufferBytes) return is;
+        try (is) {
+            return new ByteArrayInputStream(is.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Releases objects fetched ahead but never consumed, e.g. when the client went away mid-archive.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<InputStream> unused;
+        while ((unused = pending.poll()) != null) {
+            unused.thenAccept(ObjectPrefetcher::closeQuietly);
+        }
+    }
+
+    private static void closeQuietly(InputStream is) {
+        try {
+            is.close();
+        } catch (IOException e) {
+            log.debug("Failed to close prefetched object", e);
+        }
+    }
+}
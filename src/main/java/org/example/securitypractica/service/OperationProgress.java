@@ -0,0 +1,27 @@
+package org.example.securitypractica.service;
+
+/**
+ * Checkpoint hook for long-running storage operations. Keys are processed in listing order,
+ * so the last processed key is enough to resume an interrupted operation.
+ */
+public interface OperationProgress {
+
+    OperationProgress NONE = new OperationProgress() {
+        @Override
+        public String resumeAfter() {
+            return null;
+        }
+
+        @Override
+        public boolean advance(String lastKey, long processed) {
+            return true;
+        }
+    };
+
+    String resumeAfter();
+
+    /**
+     * @return {@code false} if the operation has been cancelled and must stop
+     */
+    boolean advance(String lastKey, long processed);
+}
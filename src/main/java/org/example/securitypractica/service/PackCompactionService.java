@@ -0,0 +1,135 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.entity.Pack;
+import org.example.securitypractica.entity.PackedObject;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.PackIndex;
+import org.example.securitypractica.repository.PackRepository;
+import org.example.securitypractica.repository.PackedObjectRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Reclaims the space of deleted packed files. Packs that are mostly dead have their live files copied into a new
+ * pack per user; packs nobody references any more are retired and, a grace period later, deleted.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PackCompactionService {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final PackRepository packRepository;
+    private final PackedObjectRepository packedObjectRepository;
+    private final PackIndex packIndex;
+    private final MinioRepository minioRepository;
+
+    @Value("${storage.pack.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.pack.compaction.grace:10m}")
+    private Duration grace;
+
+    @Value("${storage.pack.compaction.min-live-ratio:0.5}")
+    private double minLiveRatio;
+
+    @Scheduled(fixedDelayString = "${storage.pack.compaction-interval:600000}")
+    public void compact() {
+        if (!enabled) return;
+        Instant now = Instant.now();
+        Instant cutoff = now.minus(grace);
+        rewriteSparse(now, cutoff);
+        packRepository.retireUnused(now, cutoff);
+        deleteRetired(cutoff);
+    }
+
+    private void rewriteSparse(Instant now, Instant cutoff) {
+        Map<Long, List<Pack>> byUser = new LinkedHashMap<>();
+        for (Pack pack : packRepository.findSparse(cutoff, minLiveRatio, now, PageRequest.of(0, PAGE_SIZE))) {
+            // The claim keeps other nodes off the pack until it has been rewritten or the claim runs out.
+            if (packRepository.claim(pack.getPackKey(), now, now.plus(grace)) == 1) {
+                byUser.computeIfAbsent(pack.getUserId(), id -> new ArrayList<>()).add(pack);
+            }
+        }
+        byUser.forEach((userId, packs) -> {
+            try {
+                rewrite(userId, packs);
+            } catch (RuntimeException | IOException e) {
+                log.warn("Compaction of {} packs of user {} failed", packs.size(), userId, e);
+            }
+        });
+    }
+
+    private void rewrite(Long userId, List<Pack> packs) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        List<PackIndex.Move> moves = new ArrayList<>();
+        for (Pack pack : packs) {
+            List<PackedObject> entries = packedObjectRepository.findByPackKeyOrderByPackOffset(pack.getPackKey());
+            if (entries.isEmpty()) continue;
+            if (buffer.size() > 0 && buffer.size() + pack.getLiveBytes() > packIndex.targetSize()) {
+                write(userId, buffer, moves);
+            }
+            // Copies share a range, so each range is carried over once and every entry on it follows.
+            Map<Long, Long> copied = new HashMap<>();
+            long position = 0;
+            try (InputStream in = minioRepository.getObject(pack.getPackKey())) {
+                for (PackedObject entry : entries) {
+                    Long to = copied.get(entry.getPackOffset());
+                    if (to == null) {
+                        in.skipNBytes(entry.getPackOffset() - position);
+                        to = (long) buffer.size();
+                        buffer.write(in.readNBytes((int) entry.getLength()));
+                        position = entry.getPackOffset() + entry.getLength();
+                        copied.put(entry.getPackOffset(), to);
+                    }
+                    moves.add(new PackIndex.Move(entry.getObjectKey(), pack.getPackKey(), entry.getPackOffset(), to, entry.getLength()));
+                }
+            }
+        }
+        if (buffer.size() > 0) write(userId, buffer, moves);
+    }
+
+    private void write(Long userId, ByteArrayOutputStream buffer, List<PackIndex.Move> moves) {
+        byte[] content = buffer.toByteArray();
+        String packKey = minioRepository.putPack(userId, new ByteArrayInputStream(content), content.length);
+        packIndex.relocate(packKey, moves);
+        log.info("Compacted {} packed files of user {} into {}", moves.size(), userId, packKey);
+        buffer.reset();
+        moves.clear();
+    }
+
+    private void deleteRetired(Instant cutoff) {
+        int deleted = 0;
+        List<Pack> retired;
+        do {
+            retired = packRepository.findByRetiredAtBefore(cutoff, PageRequest.of(0, PAGE_SIZE));
+            int page = 0;
+            for (Pack pack : retired) {
+                // The row goes first: once it is gone the pack can no longer be referenced again.
+                if (packRepository.deleteRetired(pack.getPackKey()) == 0) continue;
+                page++;
+                try {
+                    minioRepository.delete(pack.getPackKey());
+                } catch (RuntimeException e) {
+                    log.warn("Failed to delete retired pack {}", pack.getPackKey(), e);
+                }
+            }
+            deleted += page;
+            if (page == 0) break;
+        } while (retired.size() == PAGE_SIZE);
+        if (deleted > 0) log.info("Deleted {} retired packs", deleted);
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.securitypractica.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.repository.TrashItemRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The original paths of a user's trash items that are still being moved out or back in; they are hidden and
+ * locked meanwhile. Nearly every request checks them, so they are cached per user. A trash transition drops the
+ * entry on every node through Redis; the TTL bounds how long a lost message can leave an entry stale.
+ */
+@Slf4j
+@Component
+public class PendingTrashPaths implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "storage:trash:pending";
+
+    private final TrashItemRepository trashItemRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public PendingTrashPaths(TrashItemRepository trashItemRepository, StringRedisTemplate redisTemplate,
+                             @Value("${storage.trash.pending-cache.enabled:true}") boolean enabled,
+                             @Value("${storage.trash.pending-cache.ttl:30s}") Duration ttl,
+                             @Value("${storage.trash.pending-cache.max-entries:10000}") int maxEntries) {
+        this.trashItemRepository = trashItemRepository;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    private record Entry(List<String> paths, long expiresAt) {
+    }
+
+    public List<String> get(Long userId) {
+        if (!enabled) return trashItemRepository.findPendingPaths(userId);
+        Entry cached = entries.get(userId);
+        long now = System.nanoTime();
+        if (cached != null && now < cached.expiresAt()) return cached.paths();
+
+        long generation = invalidations.get();
+        List<String> paths = List.copyOf(trashItemRepository.findPendingPaths(userId));
+        // An invalidation that arrived during the query may concern this very user, so the result is not kept.
+        if (invalidations.get() == generation) {
+            if (entries.size() >= maxEntries) entries.values().removeIf(entry -> entry.expiresAt() <= now);
+            if (entries.size() < maxEntries) entries.put(userId, new Entry(paths, now + ttl.toNanos()));
+        }
+        return paths;
+    }
+
+    /**
+     * Called after every change that adds or removes a pending item of the user.
+     */
+    public void invalidate(Long userId) {
+        evict(userId);
+        if (!enabled) return;
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, userId.toString());
+        } catch (DataAccessException e) {
+            log.warn("Failed to publish pending trash invalidation for user {}, other nodes catch up within {}", userId, ttl, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evict(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void evict(Long userId) {
+        invalidations.incrementAndGet();
+        entries.remove(userId);
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.securitypractica.service;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.RebalanceDto;
+import org.example.securitypractica.dto.ShardDto;
+import org.example.securitypractica.entity.UserShard;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.MinioShard;
+import org.example.securitypractica.repository.MinioShards;
+import org.example.securitypractica.repository.ShardRouter;
+import org.example.securitypractica.repository.UserShardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves users whose data is not on their consistent-hash shard, typically after shards were added.
+ * A move copies everything while the user keeps working, then freezes writes for a short catch-up copy,
+ * switches the assignment and finally removes the old copy once every node has picked up the switch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ShardRebalanceService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final MinioRepository minioRepository;
+    private final MinioShards shards;
+    private final ShardRouter shardRouter;
+    private final UserShardRepository userShardRepository;
+    private final Executor storageTaskExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Must exceed storage.shards.assignment-ttl so that every node sees the freeze and the switch in time.
+    @Value("${storage.shards.rebalance.grace:15s}")
+    private Duration grace;
+
+    public List<ShardDto> status() {
+        Map<String, long[]> counts = new HashMap<>();
+        for (Object[] row : userShardRepository.countByShard()) {
+            counts.put((String) row[0], new long[]{(Long) row[1], (Long) row[2]});
+        }
+        return shards.all().stream()
+                .map(shard -> {
+                    long[] count = counts.getOrDefault(shard.name(), new long[2]);
+                    return new ShardDto(shard.name(), shard.endpoint(), shard.bucket(), count[0], count[1]);
+                })
+                .toList();
+    }
+
+    public RebalanceDto rebalance() {
+        if (!running.compareAndSet(false, true)) return new RebalanceDto(false, List.of());
+        try {
+            registerLegacyUsers();
+            List<UserShard> misplaced = userShardRepository.findAll().stream()
+                    .filter(row -> row.getTargetShard() == null)
+                    .filter(row -> !row.getShard().equals(shardRouter.ringShardFor(row.getUserId())))
+                    .toList();
+
+            Thread.ofPlatform().name("shard-rebalance").daemon().start(() -> {
+                try {
+                    for (UserShard row : misplaced) {
+                        moveUser(row.getUserId(), shardRouter.ringShardFor(row.getUserId()));
+                    }
+                    log.info("Shard rebalance finished, {} users moved", misplaced.size());
+                } catch (Exception e) {
+                    log.error("Shard rebalance stopped", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return new RebalanceDto(true, misplaced.stream().map(UserShard::getUserId).toList());
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public void moveUser(Long userId, String targetName) {
+        UserShard row = userShardRepository.findById(userId).orElseThrow();
+        MinioShard source = shards.get(row.getShard());
+        MinioShard target = shards.get(targetName);
+        if (userShardRepository.startMigration(userId, targetName, Instant.now()) == 0) return;
+
+        String prefix = "user-" + userId + "-";
+        try {
+            log.info("Moving user {} from shard {} to {}", userId, source.name(), target.name());
+            Map<String, String> copied = copyChanged(source, target, prefix, Map.of());
+
+            userShardRepository.freeze(userId, Instant.now());
+            shardRouter.invalidate(userId);
+            pause();
+
+            Map<String, String> current = copyChanged(source, target, prefix, copied);
+            List<String> removedMeanwhile = copied.keySet().stream().filter(key -> !current.containsKey(key)).toList();
+            minioRepository.deleteAll(target, removedMeanwhile);
+
+            userShardRepository.completeMigration(userId, Instant.now());
+            shardRouter.invalidate(userId);
+        } catch (RuntimeException e) {
+            userShardRepository.abortMigration(userId, Instant.now());
+            shardRouter.invalidate(userId);
+            throw e;
+        }
+
+        // Nodes that still route reads to the old shard keep working until their cached assignment expires.
+        pause();
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        for (Result<Item> result : minioRepository.list(source, prefix, true, null)) {
+            batch.add(getItem(result).objectName());
+            if (batch.size() == BATCH_SIZE) {
+                minioRepository.deleteAll(source, batch);
+                batch.clear();
+            }
+        }
+        minioRepository.deleteAll(source, batch);
+        log.info("User {} now lives on shard {}", userId, target.name());
+    }
+
+    /**
+     * Copies every object whose ETag differs from what was copied before and returns the ETags now present.
+     */
+    private Map<String, String> copyChanged(MinioShard source, MinioShard target, String prefix, Map<String, String> copied) {
+        Map<String, String> present = new HashMap<>();
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        for (Result<Item> result : minioRepository.list(source, prefix, true, null)) {
+            Item item = getItem(result);
+            present.put(item.objectName(), item.etag());
+            if (item.etag().equals(copied.get(item.objectName()))) continue;
+            batch.add(item.objectName());
+            if (batch.size() == BATCH_SIZE) {
+                copyBatch(source, target, batch);
+            }
+        }
+        copyBatch(source, target, batch);
+        return present;
+    }
+
+    private void copyBatch(MinioShard source, MinioShard target, List<String> batch) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+        for (String key : batch) {
+            futures.add(CompletableFuture.runAsync(() -> minioRepository.copy(source, key, target, key), storageTaskExecutor));
+        }
+        batch.clear();
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Users who only have data on the default shard from before sharding get an explicit assignment there,
+     * so the rebalancer can see and move them.
+     */
+    private void registerLegacyUsers() {
+        if (!shards.isSharded()) return;
+        MinioShard legacy = shards.defaultShard();
+        Set<Long> userIds = new TreeSet<>();
+        for (Result<Item> result : minioRepository.list(legacy, "user-", false, null)) {
+            Long userId = ShardRouter.userIdOf(getItem(result).objectName());
+            if (userId != null) userIds.add(userId);
+        }
+        Instant now = Instant.now();
+        for (Long userId : userIds) {
+            userShardRepository.insertIfAbsent(userId, legacy.name(), now);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(grace.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Shard move interrupted", e);
+        }
+    }
+
+    private Item getItem(Result<Item> result) {
+        try {
+            return result.get();
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.securitypractica.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.example.securitypractica.entity.ChangeType;
+
+import java.util.List;
+
+/**
+ * Published by {@link StorageService} after a mutation has been applied to storage. Paths are relative
+ * to the user's root; folder paths end with a slash.
+ */
+public record StorageChangeEvent(Long userId, List<Change> changes) {
+
+    public record Change(ChangeType type, String path, String targetPath, Long size) {
+
+        @JsonIgnore
+        public boolean isDirectory() {
+            return path.endsWith("/");
+        }
+    }
+
+    public static StorageChangeEvent of(Long userId, ChangeType type, String path, String targetPath, Long size) {
+        return new StorageChangeEvent(userId, List.of(new Change(type, path, targetPath, size)));
+    }
+}
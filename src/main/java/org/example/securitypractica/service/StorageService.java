@@ -1,41 +1,100 @@
 package org.example.securitypractica.service;
 
+import io.micrometer.observation.annotation.Observed;
 import io.minio.Result;
 import io.minio.messages.Item;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.ArchiveFormat;
+import org.example.securitypractica.dto.DeltaManifestDto;
+import org.example.securitypractica.dto.DirectoryTreeDto;
+import org.example.securitypractica.dto.FileSignatureDto;
 import org.example.securitypractica.dto.ResourceDto;
 import org.example.securitypractica.dto.ResourceType;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.TrashItem;
+import org.example.securitypractica.entity.TrashStatus;
 import org.example.securitypractica.exception.FileAlreadyExistsException;
 import org.example.securitypractica.exception.InvalidPathException;
 import org.example.securitypractica.exception.MyBadRequestException;
 import org.example.securitypractica.exception.NotFoundException;
 import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.ShardRouter;
+import org.example.securitypractica.repository.TrashItemRepository;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Slf4j
 @Service
+@Observed(name = "storage.service")
 @RequiredArgsConstructor
 public class StorageService {
 
+    private static final int BATCH_SIZE = 1000;
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
+
     private final MinioRepository minioRepository;
     private final ZipService zipService;
+    private final TarService tarService;
+    private final Executor storageTaskExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DirectoryVersionService directoryVersionService;
+    private final BandwidthLimiter bandwidthLimiter;
+    private final HeavyOperationScheduler heavyOperations;
+    private final TrashItemRepository trashItemRepository;
+    private final PendingTrashPaths pendingTrashPaths;
+    private final ZipExtractor zipExtractor;
+    private final DeltaService deltaService;
+
+    @Value("${storage.tree.max-depth:10}")
+    private int maxTreeDepth;
+
+    @Value("${storage.tree.max-nodes:5000}")
+    private int maxTreeNodes;
+
+    @Value("${storage.trash.purge.deletes-per-second:500}")
+    private int purgeDeletesPerSecond;
 
-    @Value("${minio.bucket-name}")
-    private String bucketName;
+    @Value("${storage.extract.concurrency:16}")
+    private int extractConcurrency;
 
-    private String getUserRootPath(Long userId) {
+    @Value("${storage.download.max-selection:1000}")
+    private int maxSelection;
+
+    // Only background jobs report progress, so NONE means someone is waiting on the HTTP response.
+    private static boolean isInteractive(OperationProgress progress) {
+        return progress == OperationProgress.NONE;
+    }
+
+    static String getUserRootPath(Long userId) {
         return "user-" + userId + "-files/";
     }
 
+    private String getUserTrashPath(Long userId) {
+        return "user-" + userId + "-trash/";
+    }
+
     public ResourceDto getResource(String path, Long userId) {
         String normalized = normalizePath(path);
         String root = getUserRootPath(userId);
@@ -44,18 +103,29 @@ public class StorageService {
         if (normalized.isEmpty()) {
             return new ResourceDto("", "root", null, ResourceType.DIRECTORY);
         }
+        List<String> pending = pendingTrashPaths.get(userId);
+        if (isHidden(normalized, pending) || isHidden(normalizeDirectoryPath(normalized), pending)) {
+            throw new NotFoundException("Resource not found: " + path);
+        }
 
         if (fullPath.endsWith("/")) {
             if (minioRepository.exists(fullPath)) {
                 return mapToDto(normalized, null, ResourceType.DIRECTORY);
             }
         } else {
-            var metadata = minioRepository.getMetadata(fullPath);
-            if (metadata != null) {
-                return mapToDto(normalized, metadata.size(), ResourceType.FILE);
+            // One shallow listing shows both the file "name" and the folder "name/" unless siblings
+            // like "name.txt" sort between them; only then a second lookup is needed.
+            List<Item> candidates = minioRepository.peek(fullPath, false, 2);
+            for (Item item : candidates) {
+                if (item.objectName().equals(fullPath)) {
+                    return mapToDto(normalized, item.size(), ResourceType.FILE);
+                }
+                if (item.objectName().equals(fullPath + "/")) {
+                    return mapToDto(normalized + "/", null, ResourceType.DIRECTORY);
+                }
             }
 
-            if (minioRepository.exists(fullPath + "/")) {
+            if (candidates.size() == 2 && minioRepository.exists(fullPath + "/")) {
                 return mapToDto(normalized + "/", null, ResourceType.DIRECTORY);
             }
         }
@@ -67,11 +137,13 @@ public class StorageService {
         String normalized = normalizeDirectoryPath(path);
         String fullPath = getUserRootPath(userId) + normalized;
 
+        ensureNotPending(normalized, userId);
         if (minioRepository.exists(fullPath)) {
             throw new FileAlreadyExistsException("Directory already exists");
         }
         validateParentExists(normalized, userId);
         minioRepository.createFolder(fullPath);
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.CREATE, normalized, null, null));
 
         return mapToDto(normalized, null, ResourceType.DIRECTORY);
     }
@@ -80,108 +152,633 @@ public class StorageService {
         String normalizedPath = normalizeDirectoryPath(path);
         validateParentExists(normalizedPath, userId);
         String rootPath = getUserRootPath(userId);
-        List<ResourceDto> results = new ArrayList<>();
 
+        Map<String, MultipartFile> uploads = new LinkedHashMap<>();
         for (MultipartFile file : files) {
             String originalFilename = file.getOriginalFilename();
             if (originalFilename == null || originalFilename.isBlank()) continue;
 
-            securityCheck(originalFilename);
-            String fullPath = rootPath + normalizedPath + originalFilename;
+            String relativePath = normalizePath(originalFilename.replace('\\', '/'));
+            if (relativePath.isEmpty() || relativePath.endsWith("/")) {
+                throw new InvalidPathException("Invalid file name: " + originalFilename);
+            }
+            if (uploads.putIfAbsent(normalizedPath + relativePath, file) != null) {
+                throw new MyBadRequestException("Duplicate file in upload: " + relativePath);
+            }
+        }
 
-            if (minioRepository.exists(fullPath)) {
-                throw new FileAlreadyExistsException("File already exists: " + originalFilename);
+        List<String> pending = pendingTrashPaths.get(userId);
+        uploads.keySet().forEach(relPath -> ensureNotPending(relPath, pending));
+
+        runConcurrently(uploads.keySet(), relPath -> {
+            if (minioRepository.exists(rootPath + relPath)) {
+                throw new FileAlreadyExistsException("File already exists: " + relPath.substring(normalizedPath.length()));
             }
+        });
 
-            try {
-                minioRepository.putFile(fullPath, file.getInputStream(), file.getSize(), file.getContentType());
-                results.add(mapToDto(normalizedPath + originalFilename, file.getSize(), ResourceType.FILE));
-            } catch (Exception e) {
-                throw new RuntimeException("Upload failed", e);
+        // Small files travel together as packs of about storage.pack.target-size; the rest are written one by one.
+        List<Runnable> writes = new ArrayList<>();
+        List<MinioRepository.PackedFile> pack = new ArrayList<>();
+        long packSize = 0;
+        for (Map.Entry<String, MultipartFile> entry : uploads.entrySet()) {
+            MultipartFile file = entry.getValue();
+            String key = rootPath + entry.getKey();
+            if (!minioRepository.isPackable(key, file.getSize())) {
+                writes.add(() -> uploadFile(key, file, userId));
+                continue;
+            }
+            if (packSize + file.getSize() > minioRepository.packTargetSize() && !pack.isEmpty()) {
+                List<MinioRepository.PackedFile> full = pack;
+                writes.add(() -> minioRepository.putPacked(full));
+                pack = new ArrayList<>();
+                packSize = 0;
+            }
+            pack.add(new MinioRepository.PackedFile(key, () -> bandwidthLimiter.limitUpload(file.getInputStream(), userId),
+                    file.getSize(), file.getContentType()));
+            packSize += file.getSize();
+        }
+        if (!pack.isEmpty()) {
+            List<MinioRepository.PackedFile> last = pack;
+            writes.add(() -> minioRepository.putPacked(last));
+        }
+        runConcurrently(writes, Runnable::run);
+
+        // Folders are implied by the uploaded keys; a marker is only kept while a folder is empty.
+        if (!normalizedPath.isEmpty() && minioRepository.findObject(rootPath + normalizedPath) != null) {
+            minioRepository.delete(rootPath + normalizedPath);
+        }
+
+        List<ResourceDto> results = new ArrayList<>();
+        List<StorageChangeEvent.Change> changes = new ArrayList<>();
+        uploads.forEach((relPath, file) -> {
+            results.add(mapToDto(relPath, file.getSize(), ResourceType.FILE));
+            changes.add(new StorageChangeEvent.Change(ChangeType.UPLOAD, relPath, null, file.getSize()));
+        });
+        eventPublisher.publishEvent(new StorageChangeEvent(userId, changes));
+        return results;
+    }
+
+    private void uploadFile(String key, MultipartFile file, Long userId) {
+        ContentChunker.Signature signature = deltaService.tracksSignature(file.getSize()) ? deltaService.newSignature() : null;
+        try (InputStream limited = bandwidthLimiter.limitUpload(file.getInputStream(), userId);
+             InputStream is = signature == null ? limited : signature.tee(limited)) {
+            String etag = minioRepository.putFile(key, is, file.getSize(), file.getContentType());
+            if (signature != null && signature.size() == file.getSize()) {
+                deltaService.storeSignature(key, etag, signature.finish(), file.getSize());
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
         }
+    }
+
+    /**
+     * Unpacks a ZIP archive into the folder while it is read: each entry is written as soon as it has been inflated,
+     * up to {@code storage.extract.concurrency} at a time, and folders that stay empty get their markers in one batch
+     * at the end. Entries written before a failure are kept.
+     */
+    public List<ResourceDto> extractArchive(String path, MultipartFile archive, Long userId) {
+        String normalizedPath = normalizeDirectoryPath(path);
+        validateParentExists(normalizedPath, userId);
+        String rootPath = getUserRootPath(userId);
+        List<String> pending = pendingTrashPaths.get(userId);
+        ensureNotPending(normalizedPath, pending);
+
+        Map<String, Long> files = new LinkedHashMap<>();
+        Set<String> directories = new LinkedHashSet<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(extractConcurrency);
+        // Small entries are collected into packs; each pack is written once the entries in it are known to be new.
+        List<ZipExtractor.ExtractedFile> packed = new ArrayList<>();
+        List<CompletableFuture<Void>> packedChecks = new ArrayList<>();
+        Runnable flushPack = () -> {
+            List<ZipExtractor.ExtractedFile> batch = List.copyOf(packed);
+            CompletableFuture<Void> checked = CompletableFuture.allOf(packedChecks.toArray(new CompletableFuture[0]));
+            packed.clear();
+            packedChecks.clear();
+            writes.add(checked.thenRunAsync(() -> minioRepository.putPacked(batch.stream()
+                            .map(file -> new MinioRepository.PackedFile(rootPath + normalizedPath + file.path(), file::open,
+                                    file.size(), contentTypeOf(file.path())))
+                            .toList()), storageTaskExecutor)
+                    .whenComplete((result, error) -> {
+                        batch.forEach(ZipExtractor.ExtractedFile::discard);
+                        inFlight.release();
+                        if (error != null) failure.compareAndSet(null, error);
+                    }));
+        };
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, true);
+             InputStream is = bandwidthLimiter.limitUpload(archive.getInputStream(), userId)) {
+            zipExtractor.extract(is, new ZipExtractor.EntryHandler() {
+                private long packedSize;
+
+                @Override
+                public void directory(String directory) {
+                    directories.add(normalizedPath + directory);
+                }
+
+                @Override
+                public void file(ZipExtractor.ExtractedFile file) {
+                    String relPath = normalizedPath + file.path();
+                    boolean packable = minioRepository.isPackable(rootPath + relPath, file.size());
+                    try {
+                        if (failure.get() != null) throw unwrap(failure.get());
+                        if (files.putIfAbsent(relPath, file.size()) != null) {
+                            throw new MyBadRequestException("Duplicate entry in archive: " + file.path());
+                        }
+                        ensureNotPending(relPath, pending);
+                        if (packable && !packed.isEmpty() && packedSize + file.size() > minioRepository.packTargetSize()) {
+                            inFlight.acquire();
+                            flushPack.run();
+                            packedSize = 0;
+                        }
+                        inFlight.acquire();
+                    } catch (InterruptedException e) {
+                        file.discard();
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Extraction interrupted");
+                    } catch (RuntimeException e) {
+                        file.discard();
+                        throw e;
+                    }
+                    if (packable) {
+                        packed.add(file);
+                        packedSize += file.size();
+                        packedChecks.add(CompletableFuture.runAsync(() -> ensureExtractedIsNew(file, rootPath + relPath), storageTaskExecutor)
+                                .whenComplete((result, error) -> {
+                                    inFlight.release();
+                                    if (error != null) failure.compareAndSet(null, error);
+                                }));
+                        writes.add(packedChecks.get(packedChecks.size() - 1));
+                        return;
+                    }
+                    writes.add(CompletableFuture.runAsync(() -> writeExtracted(file, rootPath + relPath), storageTaskExecutor)
+                            .whenComplete((result, error) -> {
+                                inFlight.release();
+                                if (error != null) failure.compareAndSet(null, error);
+                            }));
+                }
+            });
+            if (!packed.isEmpty()) {
+                inFlight.acquireUninterruptibly();
+                flushPack.run();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
+        } finally {
+            // Nothing may still be writing into the folder once the request has returned, whatever the outcome.
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+            packed.forEach(ZipExtractor.ExtractedFile::discard);
+        }
+        awaitAll(writes);
+
+        // Folders are implied by the files below them; only those left empty need a marker.
+        Set<String> implied = new HashSet<>();
+        files.keySet().forEach(file -> addParents(file, implied));
+        List<String> emptyDirectories = directories.stream().filter(directory -> !implied.contains(directory)).toList();
+        List<String> created = Collections.synchronizedList(new ArrayList<>());
+        runConcurrently(emptyDirectories, directory -> {
+            if (!minioRepository.exists(rootPath + directory)) {
+                minioRepository.createFolder(rootPath + directory);
+                created.add(directory);
+            }
+        });
+        if (!normalizedPath.isEmpty() && (!files.isEmpty() || !created.isEmpty())) {
+            minioRepository.delete(rootPath + normalizedPath);
+        }
+
+        List<ResourceDto> results = new ArrayList<>();
+        List<StorageChangeEvent.Change> changes = new ArrayList<>();
+        files.forEach((relPath, size) -> {
+            results.add(mapToDto(relPath, size, ResourceType.FILE));
+            changes.add(new StorageChangeEvent.Change(ChangeType.UPLOAD, relPath, null, size));
+        });
+        emptyDirectories.stream().filter(created::contains).forEach(directory -> {
+            results.add(mapToDto(directory, null, ResourceType.DIRECTORY));
+            changes.add(new StorageChangeEvent.Change(ChangeType.CREATE, directory, null, null));
+        });
+        if (!changes.isEmpty()) eventPublisher.publishEvent(new StorageChangeEvent(userId, changes));
         return results;
     }
 
+    private void writeExtracted(ZipExtractor.ExtractedFile file, String fullPath) {
+        try (InputStream is = file.open()) {
+            ensureExtractedIsNew(file, fullPath);
+            minioRepository.putFile(fullPath, is, file.size(), contentTypeOf(file.path()));
+        } catch (IOException e) {
+            throw new RuntimeException("Extraction failed", e);
+        } finally {
+            file.discard();
+        }
+    }
+
+    private void addParents(String path, Set<String> folders) {
+        int slash = path.indexOf('/');
+        while (slash != -1) {
+            folders.add(path.substring(0, slash + 1));
+            slash = path.indexOf('/', slash + 1);
+        }
+    }
+
+    public String getDirectoryETag(String path, Long userId) {
+        return directoryVersionService.etag(normalizeDirectoryPath(path), userId);
+    }
+
     public List<ResourceDto> listItems(String path, Long userId) {
         String normalized = normalizeDirectoryPath(path);
         String fullPath = getUserRootPath(userId) + normalized;
 
-        if (!normalized.isEmpty() && !minioRepository.exists(fullPath)) {
-            throw new NotFoundException("Directory not found");
-        }
+        List<String> pending = pendingTrashPaths.get(userId);
+        if (isHidden(normalized, pending)) throw new NotFoundException("Directory not found");
 
         List<ResourceDto> dtos = new ArrayList<>();
+        boolean found = normalized.isEmpty();
         var results = minioRepository.list(fullPath, false);
         for (Result<Item> result : results) {
             try {
                 Item item = result.get();
+                found = true;
                 if (item.objectName().equals(fullPath)) continue;
+                if (isHidden(item.objectName().substring(getUserRootPath(userId).length()), pending)) continue;
                 dtos.add(mapToResourceDto(item, userId));
             } catch (Exception e) {
                 log.error("Error while getting listItems for user {} ", userId, e);
                 throw new RuntimeException("ListItems error");
             }
         }
+
+        // Nothing under the prefix, not even a marker, means the folder does not exist.
+        if (!found) throw new NotFoundException("Directory not found");
         return dtos;
     }
 
+    public DirectoryTreeDto getTree(String path, int depth, Long userId) {
+        if (depth < 1 || depth > maxTreeDepth) {
+            throw new MyBadRequestException("Depth must be between 1 and " + maxTreeDepth);
+        }
+        String normalized = normalizeDirectoryPath(path);
+        String root = getUserRootPath(userId);
+        String fullPath = root + normalized;
+
+        List<String> pending = pendingTrashPaths.get(userId);
+        if (isHidden(normalized, pending)) throw new NotFoundException("Directory not found");
+
+        TreeNode tree = new TreeNode(normalized, null);
+        boolean found = normalized.isEmpty();
+        int nodes = 0;
+        boolean truncated = false;
+        for (Result<Item> result : minioRepository.list(fullPath, true)) {
+            Item item = getItem(result);
+            found = true;
+            String relPath = item.objectName().substring(fullPath.length());
+            if (isHidden(normalized + relPath, pending)) continue;
+
+            // Every key contributes its folders down to the requested depth, plus itself if it is a file within reach.
+            TreeNode node = tree;
+            int level = 0;
+            int start = 0;
+            int slash = relPath.indexOf('/');
+            while (slash != -1 && level < depth) {
+                String folder = normalized + relPath.substring(0, slash + 1);
+                TreeNode child = node.children.get(folder);
+                if (child == null) {
+                    if (nodes++ >= maxTreeNodes) {
+                        truncated = true;
+                        break;
+                    }
+                    child = new TreeNode(folder, null);
+                    node.children.put(folder, child);
+                }
+                node = child;
+                level++;
+                start = slash + 1;
+                slash = relPath.indexOf('/', start);
+            }
+            if (truncated) break;
+
+            if (slash == -1 && start < relPath.length() && level < depth) {
+                if (nodes++ >= maxTreeNodes) {
+                    truncated = true;
+                    break;
+                }
+                String file = normalized + relPath;
+                node.children.put(file, new TreeNode(file, item.size()));
+            }
+        }
+
+        if (!found) throw new NotFoundException("Directory not found");
+
+        DirectoryTreeDto dto = toTreeDto(tree, 0, depth);
+        return new DirectoryTreeDto(dto.path(), dto.name(), null, ResourceType.DIRECTORY, dto.children(), truncated);
+    }
+
+    private DirectoryTreeDto toTreeDto(TreeNode node, int level, int depth) {
+        ResourceDto resource = node.path.isEmpty()
+                ? new ResourceDto("", "", null, ResourceType.DIRECTORY)
+                : mapToDto(node.path, node.size, node.size == null ? ResourceType.DIRECTORY : ResourceType.FILE);
+        List<DirectoryTreeDto> children = null;
+        if (resource.type() == ResourceType.DIRECTORY && level < depth) {
+            children = new ArrayList<>(node.children.size());
+            for (TreeNode child : node.children.values()) {
+                children.add(toTreeDto(child, level + 1, depth));
+            }
+        }
+        return new DirectoryTreeDto(resource.path(), resource.name(), resource.size(), resource.type(), children, null);
+    }
+
+    private record TreeNode(String path, Long size, Map<String, TreeNode> children) {
+        TreeNode(String path, Long size) {
+            this(path, size, new LinkedHashMap<>());
+        }
+    }
+
     public void deleteResource(String path, Long userId) {
+        deleteResource(path, userId, OperationProgress.NONE);
+    }
+
+    public void deleteResource(String path, Long userId, OperationProgress progress) {
         String normalized = normalizePath(path);
         String fullPath = getUserRootPath(userId) + normalized;
 
-        if (!minioRepository.exists(fullPath)) throw new NotFoundException("Not found");
-
-        if (fullPath.endsWith("/")) {
-            var items = minioRepository.list(fullPath, true);
+        // A job was checked when it was submitted; rerun after a crash, it may already have removed everything.
+        if (isInteractive(progress) && !minioRepository.exists(fullPath)) throw new NotFoundException("Not found");
 
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
+        if (!fullPath.endsWith("/")) {
+            minioRepository.delete(fullPath);
+            keepParentFolder(normalized, userId);
+            eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.DELETE, normalized, null, null));
+            return;
+        }
 
-            for (Result<Item> result : items) {
-                futures.add(CompletableFuture.runAsync(() -> {
-                    try {
-                        String objectName = result.get().objectName();
-                        minioRepository.delete(objectName);
-                    } catch (Exception e) {
-                        log.error("Failed to delete object: " + e.getMessage());
-                    }
-                }));
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, isInteractive(progress))) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            long processed = 0;
+            for (Result<Item> result : minioRepository.list(fullPath, true, progress.resumeAfter())) {
+                batch.add(getObjectName(result));
+                if (batch.size() == BATCH_SIZE) {
+                    processed = deleteBatch(batch, processed, progress);
+                }
             }
+            deleteBatch(batch, processed, progress);
         }
-        minioRepository.delete(fullPath);
+        keepParentFolder(normalized, userId);
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.DELETE, normalized, null, null));
     }
 
     public void move(String from, String to, Long userId) {
+        move(from, to, userId, OperationProgress.NONE);
+    }
+
+    public void move(String from, String to, Long userId, OperationProgress progress) {
         String root = getUserRootPath(userId);
-        String fullFrom = root + normalizePath(from);
-        String fullTo = root + normalizePath(to);
+        String normalizedFrom = normalizePath(from);
+        String normalizedTo = normalizePath(to);
+        String fullFrom = root + normalizedFrom;
+        String fullTo = root + normalizedTo;
 
-        if (!minioRepository.exists(fullFrom)) throw new NotFoundException("Source not found");
-        if (minioRepository.exists(fullTo)) throw new FileAlreadyExistsException("Target exists");
+        // A job was checked when it was submitted; rerun after a crash, it may already have moved some or all of it.
+        if (isInteractive(progress)) validateMove(from, to, userId);
 
-        var items = minioRepository.list(fullFrom, true);
-        for (Result<Item> result : items) {
+        if (!fullFrom.endsWith("/")) {
+            if (isInteractive(progress) || minioRepository.exists(fullFrom)) {
+                moveFile(fullFrom, fullTo);
+            }
+            keepParentFolder(normalizedFrom, userId);
+            eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.MOVE, normalizedFrom, normalizedTo, null));
+            return;
+        }
+
+        relocate(fullFrom, fullTo, userId, progress);
+        keepParentFolder(normalizedFrom, userId);
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.MOVE, normalizedFrom, normalizedTo, null));
+    }
+
+    /**
+     * Takes a resource out of the user's files right away. A file is moved into the trash on the spot;
+     * a folder is only recorded as {@link TrashStatus#MOVING}, which hides it, and its objects are moved
+     * by a {@link org.example.securitypractica.entity.JobType#TRASH} job.
+     */
+    public TrashItem moveToTrash(String path, Long userId) {
+        String normalized = normalizePath(path);
+        if (normalized.isEmpty()) throw new MyBadRequestException("Root folder cannot be deleted");
+        ResourceDto resource = getResource(normalized, userId);
+        boolean directory = resource.type() == ResourceType.DIRECTORY;
+        if (directory) normalized = normalizeDirectoryPath(normalized);
+        ensureNotPending(normalized, userId);
+
+        // The item is recorded before anything moves, so a file never sits in the trash without a row pointing at it.
+        TrashItem item = new TrashItem(userId, normalized, resource.size(), TrashStatus.MOVING);
+        trashItemRepository.save(item);
+        pendingTrashPaths.invalidate(userId);
+        if (!directory) {
             try {
-                String oldKey = result.get().objectName();
-                String newKey = fullTo + oldKey.substring(fullFrom.length());
-                minioRepository.copy(oldKey, newKey);
-                minioRepository.delete(oldKey);
-            } catch (Exception e) {
-                throw new RuntimeException("Move error", e);
+                moveFile(getUserRootPath(userId) + normalized, getUserTrashPath(userId) + item.getTrashKey());
+            } catch (RuntimeException e) {
+                trashItemRepository.deleteByTrashKey(userId, item.getTrashKey());
+                pendingTrashPaths.invalidate(userId);
+                throw e;
             }
+            trashItemRepository.transition(userId, item.getTrashKey(), TrashStatus.MOVING, TrashStatus.TRASHED, Instant.now());
+            item.setStatus(TrashStatus.TRASHED);
+            pendingTrashPaths.invalidate(userId);
+            keepParentFolder(normalized, userId);
+        }
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.DELETE, normalized, null, null));
+        return item;
+    }
+
+    public void completeTrash(String originalPath, String trashKey, Long userId, OperationProgress progress) {
+        relocate(getUserRootPath(userId) + originalPath, getUserTrashPath(userId) + trashKey, userId, progress);
+        keepParentFolder(originalPath, userId);
+        trashItemRepository.transition(userId, trashKey, TrashStatus.MOVING, TrashStatus.TRASHED, Instant.now());
+        pendingTrashPaths.invalidate(userId);
+    }
+
+    /**
+     * Puts a trashed file back at once; a folder is marked {@link TrashStatus#RESTORING} and
+     * {@code false} is returned so the caller can hand the move to a background job.
+     */
+    public boolean restoreFromTrash(TrashItem item) {
+        Long userId = item.getUserId();
+        String originalPath = item.getOriginalPath();
+        if (item.getStatus() != TrashStatus.TRASHED) {
+            throw new MyBadRequestException("Item cannot be restored while " + item.getStatus());
+        }
+        ensureNotPending(originalPath, userId);
+        String fullPath = getUserRootPath(userId) + originalPath;
+        if (minioRepository.exists(fullPath)) throw new FileAlreadyExistsException("Target exists: " + originalPath);
+
+        // Claimed first, so a purge cannot remove the file while it is on its way back.
+        if (trashItemRepository.transition(userId, item.getTrashKey(), TrashStatus.TRASHED, TrashStatus.RESTORING,
+                Instant.now()) == 0) {
+            throw new MyBadRequestException("Item is already being restored or purged");
+        }
+        pendingTrashPaths.invalidate(userId);
+        if (item.isDirectory()) return false;
+
+        try {
+            moveFile(getUserTrashPath(userId) + item.getTrashKey(), fullPath);
+        } catch (RuntimeException e) {
+            trashItemRepository.transition(userId, item.getTrashKey(), TrashStatus.RESTORING, TrashStatus.TRASHED, Instant.now());
+            pendingTrashPaths.invalidate(userId);
+            throw e;
+        }
+        trashItemRepository.deleteByTrashKey(userId, item.getTrashKey());
+        pendingTrashPaths.invalidate(userId);
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.CREATE, originalPath, null, item.getSize()));
+        return true;
+    }
+
+    public void completeRestore(String trashKey, String originalPath, Long userId, OperationProgress progress) {
+        relocate(getUserTrashPath(userId) + trashKey, getUserRootPath(userId) + originalPath, userId, progress);
+        trashItemRepository.deleteByTrashKey(userId, trashKey);
+        pendingTrashPaths.invalidate(userId);
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.CREATE, originalPath, null, null));
+    }
+
+    /**
+     * Removes a trashed item for good. Deletes are paced to {@code storage.trash.purge.deletes-per-second}
+     * and run under a background permit, so purging never crowds out the user's own requests.
+     */
+    public void purgeTrash(String trashKey, Long userId, OperationProgress progress) {
+        int batchSize = Math.min(BATCH_SIZE, purgeDeletesPerSecond);
+        long batchNanos = TimeUnit.SECONDS.toNanos(batchSize) / purgeDeletesPerSecond;
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, false)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            long processed = 0;
+            long started = System.nanoTime();
+            for (Result<Item> result : minioRepository.list(getUserTrashPath(userId) + trashKey, true, progress.resumeAfter())) {
+                batch.add(getObjectName(result));
+                if (batch.size() == batchSize) {
+                    processed = deleteBatch(batch, processed, progress);
+                    pace(started, batchNanos);
+                    started = System.nanoTime();
+                }
+            }
+            deleteBatch(batch, processed, progress);
+        }
+        trashItemRepository.deleteByTrashKey(userId, trashKey);
+    }
+
+    private static void pace(long startedNanos, long minNanos) {
+        long remaining = minNanos - (System.nanoTime() - startedNanos);
+        if (remaining <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Operation cancelled");
+        }
+    }
+
+    private void relocate(String fullFrom, String fullTo, Long userId, OperationProgress progress) {
+        // With the namespace layout the whole folder is renamed at once; a resumed job carries on copying.
+        if (progress.resumeAfter() == null && minioRepository.rename(fullFrom, fullTo)) return;
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, isInteractive(progress))) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            long processed = 0;
+            for (Result<Item> result : minioRepository.list(fullFrom, true, progress.resumeAfter())) {
+                batch.add(getObjectName(result));
+                if (batch.size() == BATCH_SIZE) {
+                    processed = moveBatch(batch, fullFrom, fullTo, processed, progress);
+                }
+            }
+            moveBatch(batch, fullFrom, fullTo, processed, progress);
+        }
+    }
+
+    public void validateMove(String from, String to, Long userId) {
+        String root = getUserRootPath(userId);
+        String normalizedFrom = normalizePath(from);
+        String normalizedTo = normalizePath(to);
+        List<String> pending = pendingTrashPaths.get(userId);
+        ensureNotPending(normalizedFrom, pending);
+        ensureNotPending(normalizedTo, pending);
+        ensureNotIntoItself(root + normalizedFrom, root + normalizedTo);
+        if (!minioRepository.exists(root + normalizedFrom)) throw new NotFoundException("Source not found");
+        if (minioRepository.exists(root + normalizedTo)) throw new FileAlreadyExistsException("Target exists");
+    }
+
+    private void moveFile(String fullFrom, String fullTo) {
+        if (!minioRepository.rename(fullFrom, fullTo)) {
+            minioRepository.copy(fullFrom, fullTo);
+            minioRepository.delete(fullFrom);
+        }
+    }
+
+    private static void ensureNotIntoItself(String fullFrom, String fullTo) {
+        if (fullFrom.endsWith("/") && fullTo.startsWith(fullFrom)) {
+            throw new MyBadRequestException("Folder cannot be moved into itself");
+        }
+    }
+
+    /**
+     * Removing the last entry of a folder would make the implicit folder disappear, so it gets a marker back.
+     */
+    private void keepParentFolder(String path, Long userId) {
+        String parent = getParentPath(path);
+        if (parent.isEmpty()) return;
+        String fullParent = getUserRootPath(userId) + parent;
+        if (!minioRepository.exists(fullParent)) minioRepository.createFolder(fullParent);
+    }
+
+    private long deleteBatch(List<String> batch, long processed, OperationProgress progress) {
+        if (batch.isEmpty()) return processed;
+        minioRepository.deleteAll(batch);
+        return advance(batch, processed, progress);
+    }
+
+    private long moveBatch(List<String> batch, String fullFrom, String fullTo, long processed, OperationProgress progress) {
+        if (batch.isEmpty()) return processed;
+        runConcurrently(batch, oldKey -> minioRepository.copy(oldKey, fullTo + oldKey.substring(fullFrom.length())));
+        minioRepository.deleteAll(batch);
+        return advance(batch, processed, progress);
+    }
+
+    private long advance(List<String> batch, long processed, OperationProgress progress) {
+        long total = processed + batch.size();
+        String lastKey = batch.get(batch.size() - 1);
+        batch.clear();
+        if (!progress.advance(lastKey, total)) {
+            throw new CancellationException("Operation cancelled");
+        }
+        return total;
+    }
+
+    private String getObjectName(Result<Item> result) {
+        return getItem(result).objectName();
+    }
+
+    private Item getItem(Result<Item> result) {
+        try {
+            return result.get();
+        } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
         }
     }
 
     public List<ResourceDto> search(String query, Long userId) {
         if (query == null || query.isBlank()) throw new MyBadRequestException("Empty query");
         String root = getUserRootPath(userId);
+        String needle = query.toLowerCase();
         List<ResourceDto> found = new ArrayList<>();
+        Set<String> seenFolders = new HashSet<>();
+        List<String> pending = pendingTrashPaths.get(userId);
         var items = minioRepository.list(root, true);
         for (Result<Item> result : items) {
             try {
                 Item item = result.get();
-                if (getFileNameFromPath(item.objectName()).toLowerCase().contains(query.toLowerCase())) {
+                String relPath = item.objectName().substring(root.length());
+                if (isHidden(relPath, pending)) continue;
+                // Folders have no objects of their own, so they are found through the keys below them.
+                int slash = relPath.indexOf('/');
+                while (slash != -1) {
+                    String folder = relPath.substring(0, slash + 1);
+                    if (seenFolders.add(folder) && getFileNameFromPath(folder).toLowerCase().contains(needle)) {
+                        found.add(mapToDto(folder, null, ResourceType.DIRECTORY));
+                    }
+                    slash = relPath.indexOf('/', slash + 1);
+                }
+                if (!relPath.endsWith("/") && getFileNameFromPath(relPath).toLowerCase().contains(needle)) {
                     found.add(mapToResourceDto(item, userId));
                 }
             } catch (Exception e) {
@@ -194,19 +791,195 @@ public class StorageService {
 
     public void downloadResource(String path, Long userId, OutputStream outputStream) {
         String fullPath = getUserRootPath(userId) + normalizePath(path);
+        OutputStream limited = bandwidthLimiter.limitDownload(outputStream, userId);
         if (fullPath.endsWith("/")) {
-            zipService.archiveFolder(bucketName, fullPath, outputStream);
+            ZipService.ArchivePlan plan = planFolderArchive(path, userId);
+            try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, true)) {
+                zipService.archiveFolder(plan, limited);
+            }
         } else {
             try (InputStream is = minioRepository.getObject(fullPath)) {
-                is.transferTo(outputStream);
+                is.transferTo(limited);
             } catch (Exception e) {
                 throw new RuntimeException("Download error", e);
             }
         }
     }
 
+    public ZipService.ArchivePlan planFolderArchive(String path, Long userId) {
+        List<String> pending = pendingTrashPaths.get(userId);
+        return zipService.plan(visibleFolder(path, userId, pending), hiddenKeys(userId, pending));
+    }
+
+    public ZipService.ArchivePlan snapshotFolder(String path, Long userId) {
+        List<String> pending = pendingTrashPaths.get(userId);
+        return zipService.snapshot(visibleFolder(path, userId, pending), hiddenKeys(userId, pending));
+    }
+
+    public ZipService.ArchivePlan planSelectionArchive(List<String> paths, Long userId) {
+        List<String> pending = pendingTrashPaths.get(userId);
+        List<String> selection = normalizeSelection(paths, pending);
+        return zipService.planSelection(getUserRootPath(userId) + selectionParent(selection), toKeys(selection, userId),
+                hiddenKeys(userId, pending));
+    }
+
+    public ZipService.ArchivePlan snapshotSelection(List<String> paths, Long userId) {
+        List<String> pending = pendingTrashPaths.get(userId);
+        List<String> selection = normalizeSelection(paths, pending);
+        return zipService.snapshotSelection(getUserRootPath(userId) + selectionParent(selection), toKeys(selection, userId),
+                hiddenKeys(userId, pending));
+    }
+
+    private String visibleFolder(String path, Long userId, List<String> pending) {
+        String normalized = normalizeDirectoryPath(path);
+        if (isHidden(normalized, pending)) throw new NotFoundException("Directory not found");
+        return getUserRootPath(userId) + normalized;
+    }
+
+    private Predicate<String> hiddenKeys(Long userId, List<String> pending) {
+        int rootLength = getUserRootPath(userId).length();
+        return key -> isHidden(key.substring(rootLength), pending);
+    }
+
+    /**
+     * Sorted, with anything inside another selected folder (or selected twice) dropped.
+     */
+    private List<String> normalizeSelection(List<String> paths, List<String> pending) {
+        if (paths == null || paths.isEmpty()) throw new MyBadRequestException("Nothing selected for download");
+        if (paths.size() > maxSelection) throw new MyBadRequestException("At most " + maxSelection + " resources can be downloaded at once");
+        Set<String> sorted = new TreeSet<>();
+        paths.forEach(path -> sorted.add(normalizePath(path)));
+
+        List<String> selection = new ArrayList<>();
+        String folder = null;
+        for (String path : sorted) {
+            // A folder sorts directly before everything inside it, so only the last kept folder can cover a path.
+            if (folder != null && path.startsWith(folder)) continue;
+            if (isHidden(path, pending)) throw new NotFoundException("Resource not found");
+            selection.add(path);
+            if (path.isEmpty() || path.endsWith("/")) folder = path;
+        }
+        return selection;
+    }
+
+    /**
+     * The deepest folder containing the whole selection; archive entries are named relative to it.
+     */
+    private String selectionParent(List<String> selection) {
+        String parent = getParentPath(selection.get(0));
+        for (String path : selection) {
+            while (!path.startsWith(parent)) parent = getParentPath(parent);
+        }
+        return parent;
+    }
+
+    private List<String> toKeys(List<String> selection, Long userId) {
+        String rootPath = getUserRootPath(userId);
+        return selection.stream().map(path -> rootPath + path).toList();
+    }
+
+    public void downloadFolderArchive(ZipService.ArchivePlan plan, OutputStream outputStream) {
+        downloadFolderArchive(plan, ArchiveFormat.ZIP, outputStream);
+    }
+
+    public void downloadFolderArchive(ZipService.ArchivePlan plan, ArchiveFormat format, OutputStream outputStream) {
+        Long userId = ShardRouter.userIdOf(plan.sourcePath());
+        OutputStream limited = bandwidthLimiter.limitDownload(outputStream, userId);
+        if (format == ArchiveFormat.ZIP && plan.isCached()) {
+            zipService.archiveFolder(plan, limited);
+            return;
+        }
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, true)) {
+            if (format == ArchiveFormat.ZIP) {
+                zipService.archiveFolder(plan, limited);
+            } else {
+                tarService.archiveFolder(plan, format, limited);
+            }
+        }
+    }
+
+    public long tarContentLength(ZipService.ArchivePlan plan) {
+        return tarService.contentLength(plan);
+    }
+
+    public void downloadTarRange(ZipService.ArchivePlan plan, long offset, long length, OutputStream outputStream) {
+        Long userId = ShardRouter.userIdOf(plan.sourcePath());
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, true)) {
+            tarService.archiveRange(plan, offset, length, bandwidthLimiter.limitDownload(outputStream, userId));
+        }
+    }
+
+    public void downloadCachedArchive(ZipService.ArchivePlan plan, long offset, long length, OutputStream outputStream) {
+        Long userId = ShardRouter.userIdOf(plan.sourcePath());
+        zipService.writeCached(plan, offset, length, bandwidthLimiter.limitDownload(outputStream, userId));
+    }
+
+    public void archiveResource(String path, Long userId, String targetKey) {
+        ZipService.ArchivePlan plan = planFolderArchive(path, userId);
+        if (plan.isCached()) {
+            minioRepository.copy(plan.cacheKey(), targetKey);
+            return;
+        }
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, false);
+             PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE);
+             PipedOutputStream out = new PipedOutputStream(in)) {
+            // A dedicated thread: the pooled executor may run tasks on the caller, which would deadlock on the pipe.
+            CompletableFuture<Void> upload = CompletableFuture.runAsync(
+                    () -> minioRepository.putStream(targetKey, in, "application/zip"),
+                    task -> Thread.ofPlatform().name("archive-upload").daemon().start(task));
+            try {
+                zipService.archiveFolder(plan, out);
+            } catch (RuntimeException e) {
+                // Closing the reading side makes the pending upload fail instead of storing a truncated archive.
+                in.close();
+                throw e;
+            }
+            out.close();
+            upload.join();
+        } catch (IOException e) {
+            throw new RuntimeException("Archive error", e);
+        }
+    }
+
+    public FileSignatureDto getFileSignature(String path, Long userId) {
+        String normalized = normalizePath(path);
+        String key = getUserRootPath(userId) + normalized;
+        Item item = findVisibleFile(normalized, key, userId);
+        return deltaService.signature(key, item);
+    }
+
+    /**
+     * Writes a new version of an existing file from a delta against its current version; see {@link DeltaService}.
+     */
+    public ResourceDto applyDelta(String path, DeltaManifestDto manifest, MultipartFile data, Long userId) {
+        String normalized = normalizePath(path);
+        String key = getUserRootPath(userId) + normalized;
+        Item base = findVisibleFile(normalized, key, userId);
+        long dataSize = data == null ? 0 : data.getSize();
+        String contentType = MediaTypeFactory.getMediaType(normalized).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+
+        long size;
+        try (HeavyOperationScheduler.Permit permit = heavyOperations.acquire(userId, true);
+             InputStream is = bandwidthLimiter.limitUpload(data == null ? InputStream.nullInputStream() : data.getInputStream(), userId)) {
+            size = deltaService.apply(key, base, manifest, is, dataSize, contentType);
+        } catch (IOException e) {
+            throw new RuntimeException("Delta upload failed", e);
+        }
+        eventPublisher.publishEvent(StorageChangeEvent.of(userId, ChangeType.UPLOAD, normalized, null, size));
+        return mapToDto(normalized, size, ResourceType.FILE);
+    }
+
+    private Item findVisibleFile(String normalized, String key, Long userId) {
+        if (normalized.isEmpty() || normalized.endsWith("/")) throw new InvalidPathException("Path must point to a file");
+        Item item = isHidden(normalized, pendingTrashPaths.get(userId)) ? null : minioRepository.findObject(key);
+        if (item == null) throw new NotFoundException("Resource not found: " + normalized);
+        return item;
+    }
+
     public void checkResourceExists(String path, Long userId) {
-        if (!minioRepository.exists(getUserRootPath(userId) + normalizePath(path))) {
+        String normalized = normalizePath(path);
+        if (isHidden(normalized, pendingTrashPaths.get(userId))
+                || !minioRepository.exists(getUserRootPath(userId) + normalized)) {
             throw new NotFoundException("Resource not found");
         }
     }
@@ -227,6 +1000,36 @@ public class StorageService {
         if (path.contains("..")) throw new InvalidPathException("Security violation");
     }
 
+    /**
+     * Paths in the middle of a move to or from the trash, and everything below them, are invisible to the user.
+     */
+    private static boolean isHidden(String relPath, List<String> pending) {
+        for (String pendingPath : pending) {
+            if (pendingPath.endsWith("/") ? relPath.startsWith(pendingPath) : relPath.equals(pendingPath)) return true;
+        }
+        return false;
+    }
+
+    private void ensureNotPending(String relPath, Long userId) {
+        ensureNotPending(relPath, pendingTrashPaths.get(userId));
+    }
+
+    private static void ensureNotPending(String relPath, List<String> pending) {
+        for (String pendingPath : pending) {
+            if (isHidden(relPath, List.of(pendingPath)) || (relPath.endsWith("/") && pendingPath.startsWith(relPath))) {
+                throw new FileAlreadyExistsException("Resource is being moved to or from the trash: " + pendingPath);
+            }
+        }
+    }
+
+    private void ensureExtractedIsNew(ZipExtractor.ExtractedFile file, String fullPath) {
+        if (minioRepository.exists(fullPath)) throw new FileAlreadyExistsException("File already exists: " + file.path());
+    }
+
+    private static String contentTypeOf(String path) {
+        return MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
     private void validateParentExists(String path, Long userId) {
         String parent = getParentPath(path);
         if (!parent.isEmpty() && !minioRepository.exists(getUserRootPath(userId) + parent)) {
@@ -234,6 +1037,27 @@ public class StorageService {
         }
     }
 
+    private <T> void runConcurrently(Collection<T> items, Consumer<T> action) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> action.accept(item), storageTaskExecutor));
+        }
+        awaitAll(futures);
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+    }
+
     private String getParentPath(String path) {
         String t = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
         int last = t.lastIndexOf("/");
@@ -0,0 +1,186 @@
+package org.example.securitypractica.service;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.example.securitypractica.dto.ArchiveFormat;
+import org.example.securitypractica.repository.MinioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@RequiredArgsConstructor
+public class TarService {
+
+    private static final int RECORD_SIZE = TarConstants.DEFAULT_RCDSIZE;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ZEROS = new byte[RECORD_SIZE];
+
+    private final MinioRepository minioRepository;
+
+    @Value("${storage.tar.zstd-level:3}")
+    private int zstdLevel;
+
+    @Value("${storage.tar.zstd-workers:0}")
+    private int zstdWorkers;
+
+    public void archiveFolder(ZipService.ArchivePlan plan, ArchiveFormat format, OutputStream outputStream) {
+        try (OutputStream compressed = compress(format, CloseShieldOutputStream.wrap(outputStream));
+             TarArchiveOutputStream tar = openTarStream(compressed)) {
+            for (Item item : plan.items()) {
+                String entryName = item.objectName().substring(plan.sourcePath().length());
+                if (entryName.isEmpty()) continue;
+
+                TarArchiveEntry entry = entry(entryName, item);
+                tar.putArchiveEntry(entry);
+                if (!entry.isDirectory()) {
+                    try (InputStream is = minioRepository.getObject(item.objectName())) {
+                        is.transferTo(tar);
+                    }
+                }
+                tar.closeArchiveEntry();
+            }
+            tar.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating tar archive: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes bytes {@code [start, start + length)} of the uncompressed TAR stream {@link #archiveFolder} produces.
+     * The layout follows from names and sizes alone, so entries before the range are skipped without being read
+     * and each file in it is read from the first byte needed.
+     */
+    public void archiveRange(ZipService.ArchivePlan plan, long start, long length, OutputStream outputStream) {
+        long end = start + length;
+        long position = 0;
+        try {
+            for (Item item : plan.items()) {
+                if (position >= end) break;
+                String entryName = item.objectName().substring(plan.sourcePath().length());
+                if (entryName.isEmpty()) continue;
+                long size = entryName.endsWith("/") ? 0 : item.size();
+                long entryLength = entryLength(entryName, size);
+                if (position + entryLength <= start) {
+                    position += entryLength;
+                    continue;
+                }
+
+                byte[] header = header(entryName, item);
+                writeSlice(header, header.length, position, start, end, outputStream);
+                position += header.length;
+                long from = Math.max(start, position) - position;
+                long to = Math.min(end, position + size) - position;
+                if (to > from) {
+                    try (InputStream is = minioRepository.getObject(item.objectName(), from, to - from)) {
+                        if (is.transferTo(outputStream) != to - from) {
+                            throw new IOException(item.objectName() + " changed while being archived");
+                        }
+                    }
+                }
+                position += size;
+                position = writeZeros(padToRecord(size) - size, position, start, end, outputStream);
+            }
+            writeZeros(archiveLength(0), position, start, end, outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while creating tar archive: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Exact size of the uncompressed TAR stream produced by {@link #archiveFolder}, known before any byte is written.
+     */
+    public long contentLength(ZipService.ArchivePlan plan) {
+        long entries = 0;
+        for (Item item : plan.items()) {
+            String entryName = item.objectName().substring(plan.sourcePath().length());
+            if (entryName.isEmpty()) continue;
+            entries += entryLength(entryName, entryName.endsWith("/") ? 0 : item.size());
+        }
+        return archiveLength(entries);
+    }
+
+    private static TarArchiveEntry entry(String entryName, Item item) {
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        entry.setModTime(Date.from(item.lastModified().toInstant()));
+        if (!entry.isDirectory()) entry.setSize(item.size());
+        return entry;
+    }
+
+    /**
+     * The header records of an entry, including a GNU long-name entry, exactly as {@link #archiveFolder} writes them.
+     */
+    private static byte[] header(String entryName, Item item) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(2 * RECORD_SIZE);
+        TarArchiveOutputStream tar = openTarStream(buffer);
+        tar.putArchiveEntry(entry(entryName, item));
+        tar.flush();
+        return buffer.toByteArray();
+    }
+
+    private static void writeSlice(byte[] bytes, long count, long position, long start, long end, OutputStream out)
+            throws IOException {
+        long from = Math.max(start, position) - position;
+        long to = Math.min(end, position + count) - position;
+        if (to > from) out.write(bytes, (int) from, (int) (to - from));
+    }
+
+    private static long writeZeros(long count, long position, long start, long end, OutputStream out) throws IOException {
+        for (long written = 0; written < count; written += RECORD_SIZE) {
+            long chunk = Math.min(RECORD_SIZE, count - written);
+            writeSlice(ZEROS, chunk, position + written, start, end, out);
+        }
+        return position + count;
+    }
+
+    static TarArchiveOutputStream openTarStream(OutputStream outputStream) {
+        // One record per block: no trailing block padding, so the length formula does not depend on library defaults.
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(outputStream, RECORD_SIZE, StandardCharsets.UTF_8.name());
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+        return tar;
+    }
+
+    static long entryLength(String entryName, long size) {
+        long length = RECORD_SIZE + padToRecord(size);
+        // Names that do not fit the 100 byte header field are written as a GNU long-name entry first.
+        int nameLength = entryName.getBytes(StandardCharsets.UTF_8).length;
+        if (nameLength >= TarConstants.NAMELEN) {
+            length += RECORD_SIZE + padToRecord(nameLength + 1);
+        }
+        return length;
+    }
+
+    static long archiveLength(long entriesLength) {
+        return entriesLength + 2L * RECORD_SIZE;
+    }
+
+    private static long padToRecord(long size) {
+        return (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    private OutputStream compress(ArchiveFormat format, OutputStream outputStream) throws IOException {
+        return switch (format) {
+            case TAR -> outputStream;
+            case TAR_GZ -> new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE);
+            case TAR_ZST -> {
+                ZstdOutputStream zstd = new ZstdOutputStream(outputStream, zstdLevel);
+                zstd.setWorkers(zstdWorkers > 0 ? zstdWorkers : Runtime.getRuntime().availableProcessors());
+                yield zstd;
+            }
+            case ZIP -> throw new IllegalArgumentException("ZIP archives are built by ZipService");
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.securitypractica.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Set;
+
+/**
+ * Extracts plain text from text, PDF and office documents (the Tika parser modules on the classpath).
+ * Output is capped, so a huge document contributes its beginning to the index instead of exhausting memory.
+ */
+@Slf4j
+@Component
+public class TextExtractor {
+
+    private final TikaConfig tikaConfig = TikaConfig.getDefaultConfig();
+    private final AutoDetectParser parser = new AutoDetectParser(tikaConfig);
+    private final Set<MediaType> supportedTypes = parser.getSupportedTypes(new ParseContext());
+
+    @Value("${storage.search.max-chars:1000000}")
+    private int maxChars;
+
+    /**
+     * Decides by file name alone, so objects that cannot yield text (images, video, archives) are never downloaded.
+     */
+    public boolean supports(String fileName) {
+        MediaTypeRegistry registry = tikaConfig.getMediaTypeRegistry();
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        MediaType type;
+        try {
+            // Without a stream the detection is by name only and reads nothing.
+            type = tikaConfig.getMimeRepository().detect(null, metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        while (type != null) {
+            if (supportedTypes.contains(type)) return true;
+            type = registry.getSupertype(type);
+        }
+        return false;
+    }
+
+    /**
+     * @return the document text, or {@code null} when there is none or the document cannot be parsed
+     */
+    public String extract(InputStream content, String fileName) {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        BodyContentHandler handler = new BodyContentHandler(maxChars);
+        try {
+            parser.parse(content, handler, metadata, new ParseContext());
+        } catch (SAXException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) return unreadable(fileName, e);
+        } catch (TikaException | IOException e) {
+            return unreadable(fileName, e);
+        }
+        String text = handler.toString().strip();
+        return text.isEmpty() ? null : text;
+    }
+
+    private String unreadable(String fileName, Exception e) {
+        log.debug("Cannot extract text from {}: {}", fileName, e.getMessage());
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.dto.ResourceDto;
+import org.example.securitypractica.dto.ResourceType;
+import org.example.securitypractica.dto.TrashItemDto;
+import org.example.securitypractica.entity.TrashItem;
+import org.example.securitypractica.entity.TrashStatus;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.exception.NotFoundException;
+import org.example.securitypractica.repository.TrashItemRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Deleting moves resources into a per-user trash ({@code user-<id>-trash/}); the space is reclaimed later
+ * by PURGE jobs, either on request or once an item has outlived the retention period.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrashService {
+
+    private static final int PURGE_PAGE_SIZE = 100;
+
+    private final StorageService storageService;
+    private final JobService jobService;
+    private final TrashItemRepository trashItemRepository;
+
+    @Value("${storage.trash.retention:30d}")
+    private Duration retention;
+
+    public TrashItemDto moveToTrash(String path, Long userId) {
+        TrashItem item = storageService.moveToTrash(path, userId);
+        if (item.getStatus() == TrashStatus.MOVING) jobService.submitTrash(item);
+        return toDto(item);
+    }
+
+    public List<TrashItemDto> list(Long userId) {
+        return trashItemRepository.findByUserIdOrderByDeletedAtDesc(userId).stream().map(this::toDto).toList();
+    }
+
+    public ResourceDto restore(UUID id, Long userId) {
+        TrashItem item = findItem(id, userId);
+        if (!storageService.restoreFromTrash(item)) jobService.submitRestore(item);
+        return toResourceDto(item);
+    }
+
+    public void purge(UUID id, Long userId) {
+        TrashItem item = findItem(id, userId);
+        if (!schedulePurge(item)) throw new MyBadRequestException("Item cannot be purged while " + item.getStatus());
+    }
+
+    public void emptyTrash(Long userId) {
+        trashItemRepository.findByUserIdAndStatus(userId, TrashStatus.TRASHED).forEach(this::schedulePurge);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.trash.purge-interval:600000}")
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        int scheduled = 0;
+        List<TrashItem> expired;
+        do {
+            // Scheduled items leave the TRASHED state, so the first page always holds the ones still waiting.
+            expired = trashItemRepository.findByStatusAndDeletedAtBefore(TrashStatus.TRASHED, cutoff, PageRequest.of(0, PURGE_PAGE_SIZE));
+            for (TrashItem item : expired) {
+                if (schedulePurge(item)) scheduled++;
+            }
+        } while (expired.size() == PURGE_PAGE_SIZE);
+        if (scheduled > 0) log.info("Scheduled purge of {} expired trash items", scheduled);
+    }
+
+    private boolean schedulePurge(TrashItem item) {
+        // The state change is the claim, so two nodes sweeping the same item enqueue a single purge.
+        if (trashItemRepository.transition(item.getUserId(), item.getTrashKey(),
+                TrashStatus.TRASHED, TrashStatus.PURGING, Instant.now()) == 0) {
+            return false;
+        }
+        jobService.submitPurge(item);
+        return true;
+    }
+
+    private TrashItem findItem(UUID id, Long userId) {
+        return trashItemRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new NotFoundException("Trash item not found"));
+    }
+
+    private TrashItemDto toDto(TrashItem item) {
+        ResourceDto resource = toResourceDto(item);
+        return new TrashItemDto(item.getId(), resource.path(), resource.name(), resource.size(), resource.type(),
+                item.getStatus(), item.getDeletedAt(), item.getDeletedAt().plus(retention));
+    }
+
+    private ResourceDto toResourceDto(TrashItem item) {
+        String path = item.getOriginalPath();
+        String trimmed = item.isDirectory() ? path.substring(0, path.length() - 1) : path;
+        int slash = trimmed.lastIndexOf('/');
+        return new ResourceDto(path.substring(0, slash + 1), trimmed.substring(slash + 1), item.getSize(),
+                item.isDirectory() ? ResourceType.DIRECTORY : ResourceType.FILE);
+    }
+}
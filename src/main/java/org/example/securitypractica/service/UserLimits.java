@@ -0,0 +1,58 @@
+package org.example.securitypractica.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.securitypractica.config.StorageLimitsProperties;
+import org.example.securitypractica.entity.User;
+import org.example.securitypractica.repository.UserRepository;
+import org.example.securitypractica.security.SessionUser;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the limits of a user from their role. Requests carry the role in the session principal; background work
+ * such as jobs looks it up once a minute from the database.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserLimits {
+
+    private static final long ROLE_CACHE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final StorageLimitsProperties properties;
+    private final UserRepository userRepository;
+    private final Map<Long, CachedRoles> roles = new ConcurrentHashMap<>();
+
+    private record CachedRoles(List<String> roles, long expiresAt) {
+    }
+
+    public StorageLimitsProperties.RoleLimits forUser(Long userId) {
+        Map<String, StorageLimitsProperties.RoleLimits> configured = properties.roles();
+        if (configured != null) {
+            for (String role : rolesOf(userId)) {
+                StorageLimitsProperties.RoleLimits limits = configured.get(role);
+                if (limits != null) return limits;
+            }
+        }
+        return properties.defaults();
+    }
+
+    private List<String> rolesOf(Long userId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof SessionUser user && userId.equals(user.id())) {
+            return user.roles();
+        }
+
+        CachedRoles cached = roles.get(userId);
+        if (cached != null && System.nanoTime() < cached.expiresAt()) return cached.roles();
+
+        List<String> loaded = userRepository.findById(userId).map(User::getRole).map(List::of).orElse(List.of());
+        roles.put(userId, new CachedRoles(loaded, System.nanoTime() + ROLE_CACHE_NANOS));
+        return loaded;
+    }
+}
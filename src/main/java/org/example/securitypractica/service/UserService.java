@@ -3,8 +3,12 @@ package org.example.securitypractica.service;
 import lombok.RequiredArgsConstructor;
 import org.example.securitypractica.entity.User;
 import org.example.securitypractica.repository.UserRepository;
+import org.example.securitypractica.security.SessionUser;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
+import java.security.Principal;
+
 @Service
 @RequiredArgsConstructor
 public class UserService {
@@ -15,5 +19,12 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
     }
 
+    public Long getUserId(Principal principal) {
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof SessionUser sessionUser) {
+            return sessionUser.id();
+        }
+        return findByUsername(principal.getName()).getId();
+    }
 
 }
\ No newline at end of file
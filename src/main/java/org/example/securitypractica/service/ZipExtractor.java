@@ -0,0 +1,224 @@
+package org.example.securitypractica.service;
+
+import org.example.securitypractica.exception.InvalidPathException;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads a ZIP archive from a stream one entry at a time. Entry names that would leave the target folder are rejected,
+ * and sizes are counted while inflating rather than taken from the headers, which a zip bomb can fake.
+ * Each file is buffered (in memory or, above the threshold, in a temporary file) so the caller can write it
+ * concurrently while the next entry is read.
+ */
+@Component
+public class ZipExtractor {
+
+    private static final int MIN_RATIO_CHECK_BYTES = 1024 * 1024;
+
+    @Value("${storage.extract.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${storage.extract.max-total-size:1GB}")
+    private DataSize maxTotalSize;
+
+    @Value("${storage.extract.max-entry-size:100MB}")
+    private DataSize maxEntrySize;
+
+    @Value("${storage.extract.max-compression-ratio:100}")
+    private int maxCompressionRatio;
+
+    @Value("${storage.extract.memory-threshold:1MB}")
+    private DataSize memoryThreshold;
+
+    public interface EntryHandler {
+        void directory(String path);
+
+        void file(ExtractedFile file);
+    }
+
+    public void extract(InputStream archive, EntryHandler handler) {
+        CountingInputStream compressed = new CountingInputStream(archive);
+        int entries = 0;
+        try (ZipInputStream zis = new ZipInputStream(compressed)) {
+            InflationGuard inflated = new InflationGuard(zis, compressed);
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (++entries > maxEntries) {
+                    throw new MyBadRequestException("Archive has more than " + maxEntries + " entries");
+                }
+                String path = safePath(entry.getName());
+                if (path == null) continue;
+                if (entry.isDirectory()) {
+                    handler.directory(path + "/");
+                    continue;
+                }
+                handler.file(ExtractedFile.buffer(path, inflated, memoryThreshold.toBytes(), maxEntrySize.toBytes()));
+            }
+        } catch (ZipException e) {
+            throw new MyBadRequestException("Invalid ZIP archive: " + e.getMessage());
+        } catch (IOException e) {
+            throw new RuntimeException("Archive read error", e);
+        }
+        if (entries == 0) throw new MyBadRequestException("Archive is empty or not a ZIP file");
+    }
+
+    /**
+     * @return the entry name as a relative path, or {@code null} for entries that are skipped
+     */
+    static String safePath(String name) {
+        String path = name.replace('\\', '/');
+        if (path.startsWith("/") || (path.length() > 1 && path.charAt(1) == ':')) {
+            throw new InvalidPathException("Unsafe archive entry: " + name);
+        }
+        StringBuilder normalized = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) throw new InvalidPathException("Unsafe archive entry: " + name);
+            if (!normalized.isEmpty()) normalized.append('/');
+            normalized.append(segment);
+        }
+        // Resource forks added by the macOS archiver are metadata, not content.
+        if (normalized.isEmpty() || normalized.toString().startsWith("__MACOSX")) return null;
+        return normalized.toString();
+    }
+
+    public static final class ExtractedFile {
+        private final String path;
+        private final long size;
+        private final byte[] content;
+        private final Path spill;
+
+        private ExtractedFile(String path, long size, byte[] content, Path spill) {
+            this.path = path;
+            this.size = size;
+            this.content = content;
+            this.spill = spill;
+        }
+
+        static ExtractedFile buffer(String path, InputStream entry, long memoryThreshold, long maxSize) throws IOException {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            long size = 0;
+            int read;
+            while (size <= memoryThreshold && (read = entry.read(chunk)) != -1) {
+                memory.write(chunk, 0, read);
+                size += read;
+            }
+            if (size > maxSize) throw new MyBadRequestException("Archive entry " + path + " exceeds " + DataSize.ofBytes(maxSize));
+            if (size <= memoryThreshold) return new ExtractedFile(path, size, memory.toByteArray(), null);
+
+            Path spill = Files.createTempFile("extract-", ".part");
+            try (OutputStream out = Files.newOutputStream(spill)) {
+                memory.writeTo(out);
+                while ((read = entry.read(chunk)) != -1) {
+                    size += read;
+                    if (size > maxSize) throw new MyBadRequestException("Archive entry " + path + " exceeds " + DataSize.ofBytes(maxSize));
+                    out.write(chunk, 0, read);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(spill);
+                throw e;
+            }
+            return new ExtractedFile(path, size, null, spill);
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public InputStream open() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(spill);
+        }
+
+        public void discard() {
+            if (spill == null) return;
+            try {
+                Files.deleteIfExists(spill);
+            } catch (IOException ignored) {
+                // The temporary directory is cleaned up eventually anyway.
+            }
+        }
+    }
+
+    /**
+     * Checks the running totals on every read, so a bomb is stopped after at most one buffer of excess output.
+     */
+    private final class InflationGuard extends FilterInputStream {
+        private final CountingInputStream compressed;
+        private long inflated;
+
+        private InflationGuard(InputStream in, CountingInputStream compressed) {
+            super(in);
+            this.compressed = compressed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n <= 0) return n;
+            inflated += n;
+            if (inflated > maxTotalSize.toBytes()) {
+                throw new MyBadRequestException("Archive expands to more than " + maxTotalSize);
+            }
+            if (inflated > MIN_RATIO_CHECK_BYTES && inflated > compressed.count() * maxCompressionRatio) {
+                throw new MyBadRequestException("Archive compression ratio exceeds " + maxCompressionRatio);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // The entry stream belongs to the ZipInputStream; closing it here would end the archive early.
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
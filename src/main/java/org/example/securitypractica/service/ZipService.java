@@ -1,63 +1,367 @@
 package org.example.securitypractica.service;
 
-import io.minio.GetObjectArgs;
-import io.minio.ListObjectsArgs;
-import io.minio.MinioClient;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.annotation.Observed;
 import io.minio.Result;
 import io.minio.messages.Item;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.securitypractica.exception.NotFoundException;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.tracing.StorageStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+@Slf4j
 @Service
+@Observed(name = "storage.zip")
 @RequiredArgsConstructor
 public class ZipService {
 
-    private final MinioClient minioClient;
+    private static final String CACHE_PREFIX = "zip-cache/";
+    // Cache keys scored by their last use, so eviction drops the archives nobody has asked for the longest.
+    private static final String ACCESS_KEY = "storage:zip-cache:access";
 
-    public void archiveFolder(String bucketName, String sourcePath, OutputStream outputStream) {
-        ZipOutputStream zos = new ZipOutputStream(outputStream);
+    private final MinioRepository minioRepository;
+    private final Executor storageTaskExecutor;
+    private final ObservationRegistry observationRegistry;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${storage.zip-cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.zip-cache.max-bytes:10737418240}")
+    private long cacheMaxBytes;
+
+    @Value("${storage.zip-cache.max-archive-bytes:2147483648}")
+    private long maxArchiveBytes;
+
+    @Value("${storage.zip.prefetch-window:8}")
+    private int prefetchWindow;
+
+    @Value("${storage.zip.prefetch-buffer:1MB}")
+    private DataSize prefetchBuffer;
+
+    /**
+     * Listing of a folder taken once per download. The fingerprint covers every key, size, ETag and modification
+     * time (TAR headers carry it), so any change inside the folder produces a different cache key and validator.
+     */
+    public record ArchivePlan(String sourcePath, List<Item> items, String fingerprint, Long cachedSize) {
+
+        public boolean isCached() {
+            return cachedSize != null;
+        }
+
+        public String cacheKey() {
+            return CACHE_PREFIX + fingerprint + ".zip";
+        }
+    }
+
+    public ArchivePlan plan(String sourcePath, Predicate<String> hidden) {
+        return withCache(snapshot(sourcePath, hidden));
+    }
+
+    public ArchivePlan planSelection(String sourcePath, List<String> keys, Predicate<String> hidden) {
+        return withCache(snapshotSelection(sourcePath, keys, hidden));
+    }
+
+    private ArchivePlan withCache(ArchivePlan snapshot) {
+        if (!cacheEnabled) return snapshot;
+
+        Item cached = minioRepository.findObject(snapshot.cacheKey());
+        if (cached == null) return snapshot;
+        StorageStats.cacheHit(observationRegistry);
+        touch(snapshot.cacheKey());
+        return new ArchivePlan(snapshot.sourcePath(), snapshot.items(), snapshot.fingerprint(), cached.size());
+    }
+
+    /**
+     * @param hidden keys left out of the archive, such as those of a subfolder on its way to the trash
+     */
+    public ArchivePlan snapshot(String sourcePath, Predicate<String> hidden) {
+        List<Item> items = new ArrayList<>();
+        for (Result<Item> result : minioRepository.list(sourcePath, true)) {
+            Item item = getItem(result);
+            if (!item.isDir() && !hidden.test(item.objectName())) items.add(item);
+        }
+        return toPlan(sourcePath, items);
+    }
+
+    /**
+     * Snapshot of several files and folder prefixes below {@code sourcePath}, listed in parallel.
+     * Keys reached through more than one selection are archived once.
+     */
+    public ArchivePlan snapshotSelection(String sourcePath, List<String> keys, Predicate<String> hidden) {
+        List<CompletableFuture<List<Item>>> listings = keys.stream()
+                .map(key -> CompletableFuture.supplyAsync(() -> listSelected(key, hidden), storageTaskExecutor))
+                .toList();
+        Map<String, Item> items = new TreeMap<>();
         try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket(bucketName)
-                            .prefix(sourcePath)
-                            .recursive(true)
-                            .build()
-            );
-
-            boolean hasEntries = false;
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                if (item.isDir()) continue;
-
-                hasEntries = true;
-                String entryName = item.objectName().substring(sourcePath.length());
-                ZipEntry zipEntry = new ZipEntry(entryName);
-                zos.putNextEntry(zipEntry);
-
-                try (InputStream is = minioClient.getObject(
-                        GetObjectArgs.builder()
-                                .bucket(bucketName)
-                                .object(item.objectName())
-                                .build())) {
+            for (CompletableFuture<List<Item>> listing : listings) {
+                listing.join().forEach(item -> items.putIfAbsent(item.objectName(), item));
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return toPlan(sourcePath, new ArrayList<>(items.values()));
+    }
+
+    private List<Item> listSelected(String key, Predicate<String> hidden) {
+        if (!key.endsWith("/")) {
+            Item item = minioRepository.findObject(key);
+            if (item == null) throw new NotFoundException("Resource not found");
+            return List.of(item);
+        }
+        List<Item> items = new ArrayList<>();
+        for (Result<Item> result : minioRepository.list(key, true)) {
+            Item item = getItem(result);
+            if (!item.isDir() && !hidden.test(item.objectName())) items.add(item);
+        }
+        if (items.isEmpty()) throw new NotFoundException("Resource not found");
+        return items;
+    }
+
+    private ArchivePlan toPlan(String sourcePath, List<Item> items) {
+        if (items.isEmpty()) {
+            throw new RuntimeException("Folder is empty, nothing to archive");
+        }
+
+        MessageDigest digest = sha256();
+        // Entry names are relative to the source path, so the same objects archived from another folder differ.
+        digest.update((sourcePath + '\n').getBytes(StandardCharsets.UTF_8));
+        for (Item item : items) {
+            digest.update((item.objectName() + '\0' + item.size() + '\0' + item.etag() + '\0'
+                    + item.lastModified().toInstant() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return new ArchivePlan(sourcePath, items, HexFormat.of().formatHex(digest.digest()), null);
+    }
+
+    public void archiveFolder(ArchivePlan plan, OutputStream outputStream) {
+        if (plan.isCached()) {
+            writeCached(plan, 0, plan.cachedSize(), outputStream);
+            return;
+        }
+
+        List<Item> entries = plan.items().stream()
+                .filter(item -> item.objectName().length() > plan.sourcePath().length())
+                .toList();
+        CachingOutputStream cachingStream = cacheEnabled ? CachingOutputStream.open(outputStream, maxArchiveBytes) : null;
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(entries, minioRepository::getObject,
+                storageTaskExecutor, prefetchWindow, prefetchBuffer.toBytes())) {
+            ZipOutputStream zos = new ZipOutputStream(cachingStream != null ? cachingStream : outputStream);
+            for (Item item : entries) {
+                zos.putNextEntry(new ZipEntry(item.objectName().substring(plan.sourcePath().length())));
+                try (InputStream is = prefetcher.next()) {
                     is.transferTo(zos);
                 }
                 zos.closeEntry();
             }
+            zos.finish();
+            zos.flush();
+        } catch (Exception e) {
+            if (cachingStream != null) cachingStream.discard();
+            throw new RuntimeException("Error while creating zip archive: " + e.getMessage(), e);
+        }
+
+        if (cachingStream != null) {
+            CompletableFuture.runAsync(() -> store(plan, cachingStream), storageTaskExecutor);
+        }
+    }
+
+    public void writeCached(ArchivePlan plan, long offset, long length, OutputStream outputStream) {
+        try (InputStream is = minioRepository.getObject(plan.cacheKey(), offset, length)) {
+            is.transferTo(outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while streaming cached archive", e);
+        }
+    }
 
-            if (!hasEntries) {
-                throw new RuntimeException("Folder is empty, nothing to archive");
+    private void store(ArchivePlan plan, CachingOutputStream cachingStream) {
+        try {
+            Path file = cachingStream.complete();
+            if (file == null) return;
+            try (InputStream is = Files.newInputStream(file)) {
+                minioRepository.putFile(plan.cacheKey(), is, Files.size(file), "application/zip");
             }
+            touch(plan.cacheKey());
+            evict();
+        } catch (Exception e) {
+            log.warn("Failed to cache archive {}", plan.fingerprint(), e);
+        } finally {
+            cachingStream.discard();
+        }
+    }
 
-            zos.finish();
+    private synchronized void evict() {
+        List<Item> entries = new ArrayList<>();
+        long total = 0;
+        for (Result<Item> result : minioRepository.list(CACHE_PREFIX, true)) {
+            Item item = getItem(result);
+            entries.add(item);
+            total += item.size();
+        }
+        if (total <= cacheMaxBytes) return;
+
+        Map<String, Long> accessed = accessTimes();
+        entries.sort(Comparator.comparing(item -> accessed.getOrDefault(item.objectName(),
+                item.lastModified().toInstant().toEpochMilli())));
+        List<String> evicted = new ArrayList<>();
+        for (Item item : entries) {
+            if (total <= cacheMaxBytes) break;
+            evicted.add(item.objectName());
+            total -= item.size();
+        }
+        minioRepository.deleteAll(evicted);
+        forget(evicted);
+        log.info("Evicted {} cached archives", evicted.size());
+    }
+
+    private void touch(String cacheKey) {
+        try {
+            redisTemplate.opsForZSet().add(ACCESS_KEY, cacheKey, System.currentTimeMillis());
+        } catch (DataAccessException e) {
+            log.debug("Failed to record use of cached archive {}", cacheKey, e);
+        }
+    }
+
+    /**
+     * Last use of each cached archive; without Redis the archives are evicted oldest first.
+     */
+    private Map<String, Long> accessTimes() {
+        Map<String, Long> accessed = new HashMap<>();
+        try {
+            Set<ZSetOperations.TypedTuple<String>> scores = redisTemplate.opsForZSet().rangeWithScores(ACCESS_KEY, 0, -1);
+            if (scores != null) {
+                scores.forEach(score -> accessed.put(score.getValue(), score.getScore().longValue()));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to read cached archive use, evicting oldest first", e);
+        }
+        return accessed;
+    }
+
+    private void forget(List<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) return;
+        try {
+            redisTemplate.opsForZSet().remove(ACCESS_KEY, cacheKeys.toArray());
+        } catch (DataAccessException e) {
+            log.debug("Failed to drop use of evicted archives", e);
+        }
+    }
+
+    private Item getItem(Result<Item> result) {
+        try {
+            return result.get();
         } catch (Exception e) {
+            throw new RuntimeException("MinIO list error", e);
+        }
+    }
 
-            throw new RuntimeException("Error while creating zip archive: " + e.getMessage(), e);
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies everything written to the client into a temporary file, giving up (but still serving the client)
+     * once the archive grows beyond the cacheable size.
+     */
+    private static final class CachingOutputStream extends FilterOutputStream {
+        private final long limit;
+        private Path file;
+        private OutputStream copy;
+        private long written;
+
+        private CachingOutputStream(OutputStream out, long limit, Path file) throws IOException {
+            super(out);
+            this.limit = limit;
+            this.file = file;
+            this.copy = Files.newOutputStream(file);
+        }
+
+        static CachingOutputStream open(OutputStream out, long limit) {
+            try {
+                return new CachingOutputStream(out, limit, Files.createTempFile("zip-cache-", ".zip"));
+            } catch (IOException e) {
+                log.warn("Archive caching disabled: cannot create temporary file", e);
+                return null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (copy == null) return;
+            written += len;
+            try {
+                if (written > limit) {
+                    discard();
+                } else {
+                    copy.write(b, off, len);
+                }
+            } catch (IOException e) {
+                discard();
+            }
+        }
+
+        Path complete() throws IOException {
+            if (copy == null) return null;
+            copy.close();
+            copy = null;
+            return file;
+        }
+
+        void discard() {
+            try {
+                if (copy != null) copy.close();
+                if (file != null) Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to remove temporary archive {}", file, e);
+            }
+            copy = null;
+            file = null;
         }
     }
-}
\ No newline at end of file
+}
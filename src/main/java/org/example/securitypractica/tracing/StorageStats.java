@@ -0,0 +1,68 @@
+package org.example.securitypractica.tracing;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.ObservationView;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage work done on behalf of one request (or scheduled task), kept on its outermost observation so that
+ * every thread the request's context was propagated to adds to the same counters.
+ * {@link StorageStatsObservationFilter} turns them into attributes of the request span.
+ */
+public final class StorageStats {
+
+    static final String MINIO_CALLS = "storage.minio.calls";
+    static final String MINIO_BYTES = "storage.minio.bytes";
+    static final String CACHE_HITS = "storage.cache.hits";
+
+    private final AtomicLong minioCalls = new AtomicLong();
+    private final AtomicLong minioBytes = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * @return the counters of the request running on this thread, or {@code null} outside of any observation
+     */
+    public static StorageStats current(ObservationRegistry registry) {
+        Observation observation = registry.getCurrentObservation();
+        if (observation == null || observation.isNoop()) return null;
+
+        Observation.Context context = observation.getContext();
+        ObservationView parent = context.getParentObservation();
+        while (parent instanceof Observation parentObservation) {
+            context = parentObservation.getContext();
+            parent = context.getParentObservation();
+        }
+        return context.computeIfAbsent(StorageStats.class, key -> new StorageStats());
+    }
+
+    public static void cacheHit(ObservationRegistry registry) {
+        StorageStats stats = current(registry);
+        if (stats != null) stats.cacheHits.incrementAndGet();
+    }
+
+    static StorageStats of(Observation.Context context) {
+        return context.get(StorageStats.class);
+    }
+
+    public void minioCall() {
+        minioCalls.incrementAndGet();
+    }
+
+    public void minioBytes(long bytes) {
+        if (bytes > 0) minioBytes.addAndGet(bytes);
+    }
+
+    long minioCalls() {
+        return minioCalls.get();
+    }
+
+    long minioBytes() {
+        return minioBytes.get();
+    }
+
+    long cacheHits() {
+        return cacheHits.get();
+    }
+}
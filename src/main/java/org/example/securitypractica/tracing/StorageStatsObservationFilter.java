@@ -0,0 +1,23 @@
+package org.example.securitypractica.tracing;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationFilter;
+
+/**
+ * Copies the request's {@link StorageStats} onto the outermost observation when it stops. They are added as
+ * high-cardinality values, so they end up on the span but not as metric tags.
+ */
+public class StorageStatsObservationFilter implements ObservationFilter {
+
+    @Override
+    public Observation.Context map(Observation.Context context) {
+        if (context.getParentObservation() != null) return context;
+        StorageStats stats = StorageStats.of(context);
+        if (stats == null) return context;
+
+        return context.addHighCardinalityKeyValue(KeyValue.of(StorageStats.MINIO_CALLS, String.valueOf(stats.minioCalls())))
+                .addHighCardinalityKeyValue(KeyValue.of(StorageStats.MINIO_BYTES, String.valueOf(stats.minioBytes())))
+                .addHighCardinalityKeyValue(KeyValue.of(StorageStats.CACHE_HITS, String.valueOf(stats.cacheHits())));
+    }
+}
@@ -0,0 +1,20 @@
+CREATE TABLE storage_jobs (
+    id UUID PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    type VARCHAR(32) NOT NULL,
+    status VARCHAR(32) NOT NULL,
+    source_path VARCHAR(1024) NOT NULL,
+    target_path VARCHAR(1024),
+    processed_items BIGINT NOT NULL DEFAULT 0,
+    checkpoint VARCHAR(1024),
+    result_key VARCHAR(1024),
+    error VARCHAR(1024),
+    owner VARCHAR(255),
+    cancel_requested BOOLEAN NOT NULL DEFAULT FALSE,
+    heartbeat_at TIMESTAMP WITH TIME ZONE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_storage_jobs_status ON storage_jobs (status, created_at);
+CREATE INDEX idx_storage_jobs_user ON storage_jobs (user_id, created_at);
@@ -0,0 +1,20 @@
+CREATE TABLE storage_changes (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    seq BIGINT NOT NULL,
+    type VARCHAR(32) NOT NULL,
+    path VARCHAR(1024) NOT NULL,
+    target_path VARCHAR(1024),
+    size BIGINT,
+    directory BOOLEAN NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT uq_storage_changes_user_seq UNIQUE (user_id, seq)
+);
+
+CREATE INDEX idx_storage_changes_created ON storage_changes (created_at);
+
+CREATE TABLE storage_change_cursors (
+    user_id BIGINT PRIMARY KEY,
+    last_seq BIGINT NOT NULL,
+    compacted_seq BIGINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,6 @@
+CREATE TABLE directory_versions (
+    user_id BIGINT NOT NULL,
+    path VARCHAR(1024) NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (user_id, path)
+);
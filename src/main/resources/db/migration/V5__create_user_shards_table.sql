@@ -0,0 +1,9 @@
+CREATE TABLE user_shards (
+    user_id BIGINT PRIMARY KEY,
+    shard VARCHAR(64) NOT NULL,
+    target_shard VARCHAR(64),
+    frozen BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_user_shards_shard ON user_shards (shard);
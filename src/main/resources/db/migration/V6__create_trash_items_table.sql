@@ -0,0 +1,18 @@
+CREATE TABLE trash_items (
+    id UUID PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    original_path VARCHAR(1024) NOT NULL,
+    trash_key VARCHAR(1024) NOT NULL,
+    size BIGINT,
+    status VARCHAR(32) NOT NULL,
+    deleted_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_trash_items_user ON trash_items (user_id, deleted_at);
+CREATE INDEX idx_trash_items_pending ON trash_items (user_id) WHERE status IN ('MOVING', 'RESTORING');
+CREATE INDEX idx_trash_items_expiry ON trash_items (deleted_at) WHERE status = 'TRASHED';
+
+-- Trash jobs own the state of their item, so a failed one is retried with a backoff instead of being given up.
+ALTER TABLE storage_jobs ADD COLUMN attempts INT NOT NULL DEFAULT 0;
+ALTER TABLE storage_jobs ADD COLUMN not_before TIMESTAMP WITH TIME ZONE;
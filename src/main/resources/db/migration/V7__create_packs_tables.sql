@@ -0,0 +1,25 @@
+CREATE TABLE packs (
+    pack_key VARCHAR(255) PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    size BIGINT NOT NULL,
+    live_bytes BIGINT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    retired_at TIMESTAMP WITH TIME ZONE,
+    claimed_until TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX idx_packs_created ON packs (created_at) WHERE retired_at IS NULL;
+CREATE INDEX idx_packs_retired ON packs (retired_at) WHERE retired_at IS NOT NULL;
+
+-- Keys are compared byte by byte, like S3 does, so listings of both can be merged in one pass.
+CREATE TABLE packed_objects (
+    object_key VARCHAR(1024) COLLATE "C" PRIMARY KEY,
+    pack_key VARCHAR(255) NOT NULL REFERENCES packs (pack_key),
+    pack_offset BIGINT NOT NULL,
+    length BIGINT NOT NULL,
+    etag VARCHAR(64) NOT NULL,
+    content_type VARCHAR(255),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_packed_objects_pack ON packed_objects (pack_key);
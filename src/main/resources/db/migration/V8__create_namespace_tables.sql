@@ -0,0 +1,20 @@
+-- Paths of the namespace layout: a tree of names pointing at immutable blobs, so renaming a folder is one update.
+-- Top-level nodes (user-<id>-files/, user-<id>-trash/) have parent_id 0. Folder names end with '/'.
+CREATE TABLE namespace_nodes (
+    id BIGSERIAL PRIMARY KEY,
+    parent_id BIGINT NOT NULL,
+    name VARCHAR(1024) COLLATE "C" NOT NULL,
+    blob_key VARCHAR(1024) COLLATE "C",
+    size BIGINT NOT NULL,
+    etag VARCHAR(64),
+    marker BOOLEAN NOT NULL,
+    modified_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT uq_namespace_nodes_child UNIQUE (parent_id, name)
+);
+
+CREATE TABLE namespace_roots (
+    name VARCHAR(255) PRIMARY KEY,
+    node_id BIGINT NOT NULL,
+    state VARCHAR(32) NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
@@ -0,0 +1,94 @@
+package org.example.securitypractica;
+
+import org.example.securitypractica.dto.ContentSearchDto;
+import org.example.securitypractica.dto.ContentSearchHitDto;
+import org.example.securitypractica.service.ContentIndexService;
+import org.example.securitypractica.service.StorageService;
+import org.example.securitypractica.service.TrashService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"storage.search.content.enabled=true", "storage.search.refresh-interval=100"})
+@Testcontainers
+class ContentSearchTests {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private ContentIndexService contentIndexService;
+
+    @Test
+    void uploadedDocumentsAreFoundByContentAndFollowMovesAndDeletes() throws InterruptedException {
+        Long userId = 4701L;
+        storageService.uploadFiles("", List.of(
+                text("contracts/lease.txt", "The tenant pays the rent before the fifth day of each month."),
+                text("contracts/notes.txt", "Call the landlord about the heating."),
+                new MockMultipartFile("files", "photos/tenant.jpg", "image/jpeg", new byte[]{1, 2, 3})), userId);
+
+        ContentSearchDto found = awaitSearch("tenant rent", userId, result -> result.total() == 1);
+        ContentSearchHitDto hit = found.hits().get(0);
+        assertThat(hit.path()).isEqualTo("contracts/");
+        assertThat(hit.name()).isEqualTo("lease.txt");
+        assertThat(hit.highlight()).contains("<b>tenant</b>");
+
+        storageService.move("contracts/", "archive/contracts/", userId);
+        awaitSearch("tenant rent", userId, result -> result.total() == 1 && result.hits().get(0).path().equals("archive/contracts/"));
+
+        trashService.moveToTrash("archive/", userId);
+        awaitSearch("tenant rent", userId, result -> result.total() == 0);
+        assertThat(contentIndexService.search("landlord", 0, 20, 4702L).total()).isZero();
+    }
+
+    private ContentSearchDto awaitSearch(String query, Long userId, Predicate<ContentSearchDto> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        ContentSearchDto result = contentIndexService.search(query, 0, 20, userId);
+        while (!condition.test(result) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            result = contentIndexService.search(query, 0, 20, userId);
+        }
+        assertThat(condition.test(result)).as(result.toString()).isTrue();
+        return result;
+    }
+
+    private static MockMultipartFile text(String name, String content) {
+        return new MockMultipartFile("files", name, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,10 +3,28 @@ package org.example.securitypractica;
 
 import io.minio.*;
 import io.minio.messages.Item;
+import org.example.securitypractica.dto.ChangeDto;
+import org.example.securitypractica.dto.ChangesDto;
+import org.example.securitypractica.dto.DeltaManifestDto;
+import org.example.securitypractica.dto.DirectoryTreeDto;
+import org.example.securitypractica.dto.FileSignatureDto;
+import org.example.securitypractica.dto.JobDto;
 import org.example.securitypractica.dto.ResourceDto;
 import org.example.securitypractica.dto.ResourceType;
+import org.example.securitypractica.dto.TrashItemDto;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.JobStatus;
+import org.example.securitypractica.entity.TrashStatus;
+import org.example.securitypractica.exception.FileAlreadyExistsException;
 import org.example.securitypractica.exception.NotFoundException;
+import org.example.securitypractica.exception.PreconditionFailedException;
+import org.example.securitypractica.service.ChangeFeedService;
+import org.example.securitypractica.service.ContentChunker;
+import org.example.securitypractica.service.FolderMarkerMigration;
+import org.example.securitypractica.service.JobService;
 import org.example.securitypractica.service.StorageService;
+import org.example.securitypractica.service.TrashService;
+import org.example.securitypractica.service.ZipService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,15 +34,29 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.testcontainers.containers.MinIOContainer;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 
 @ActiveProfiles("test")
 @SpringBootTest
@@ -52,6 +84,18 @@ class SecurityPracticaApplicationTests {
     @Autowired
     private StorageService storageService;
 
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private FolderMarkerMigration folderMarkerMigration;
+
+    @Autowired
+    private ChangeFeedService changeFeedService;
+
     @Autowired
     private MinioClient minioClient;
 
@@ -233,6 +277,223 @@ class SecurityPracticaApplicationTests {
         ).isInstanceOf(NotFoundException.class);
     }
 
+    @Test
+    void testUploadFolderWithRelativePaths() {
+        Long userId = 999L;
+        byte[] content = "class Main {}".getBytes();
+
+        MockMultipartFile mainFile = new MockMultipartFile("files", "project/src/Main.java", "text/plain", content);
+        MockMultipartFile readme = new MockMultipartFile("files", "project/README.md", "text/plain", content);
+
+        List<ResourceDto> uploaded = storageService.uploadFiles("", List.of(mainFile, readme), userId);
+
+        assertThat(uploaded).hasSize(2);
+        assertThat(storageService.getResource("project/src/", userId).type()).isEqualTo(ResourceType.DIRECTORY);
+        assertThat(storageService.listItems("project/", userId))
+                .extracting(ResourceDto::name)
+                .containsExactlyInAnyOrder("src", "README.md");
+
+        ResourceDto file = storageService.getResource("project/src/Main.java", userId);
+        assertThat(file.path()).isEqualTo("project/src/");
+        assertThat(file.size()).isEqualTo((long) content.length);
+    }
+
+    @Test
+    void testGetResourceResolvesFileAndFolderWithSimilarNames() {
+        Long userId = 999L;
+        MockMultipartFile file = new MockMultipartFile("files", "lookup/report", "text/plain", "report".getBytes());
+        MockMultipartFile sibling = new MockMultipartFile("files", "lookup/docs.txt", "text/plain", "d".getBytes());
+        MockMultipartFile spaced = new MockMultipartFile("files", "lookup/docs v2", "text/plain", "d".getBytes());
+        MockMultipartFile nested = new MockMultipartFile("files", "lookup/docs/a.txt", "text/plain", "a".getBytes());
+        storageService.uploadFiles("", List.of(file, sibling, spaced, nested), userId);
+
+        ResourceDto report = storageService.getResource("lookup/report", userId);
+        assertThat(report.type()).isEqualTo(ResourceType.FILE);
+        assertThat(report.size()).isEqualTo(6L);
+
+        ResourceDto docs = storageService.getResource("lookup/docs", userId);
+        assertThat(docs.type()).isEqualTo(ResourceType.DIRECTORY);
+        assertThat(docs.name()).isEqualTo("docs");
+
+        assertThatThrownBy(() -> storageService.getResource("lookup/doc", userId))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void testFoldersAreImpliedByTheirContent() {
+        Long userId = 999L;
+        storageService.createDirectory("albums/", userId);
+        MockMultipartFile photo = new MockMultipartFile("files", "summer/photo.jpg", "image/jpeg", "jpg".getBytes());
+        storageService.uploadFiles("albums/", List.of(photo), userId);
+
+        assertThat(objectExists("user-999-files/albums/")).isFalse();
+        assertThat(objectExists("user-999-files/albums/summer/")).isFalse();
+        assertThat(storageService.getResource("albums/summer/", userId).type()).isEqualTo(ResourceType.DIRECTORY);
+        assertThat(storageService.search("summ", userId))
+                .extracting(ResourceDto::name, ResourceDto::type)
+                .containsExactly(tuple("summer", ResourceType.DIRECTORY));
+
+        storageService.deleteResource("albums/summer/photo.jpg", userId);
+
+        assertThat(storageService.listItems("albums/summer/", userId)).isEmpty();
+        assertThat(objectExists("user-999-files/albums/summer/")).isTrue();
+    }
+
+    @Test
+    void testDirectoryTreeStopsAtRequestedDepth() {
+        Long userId = 999L;
+        MockMultipartFile top = new MockMultipartFile("files", "tree/top.txt", "text/plain", "t".getBytes());
+        MockMultipartFile nested = new MockMultipartFile("files", "tree/a/b/deep.txt", "text/plain", "d".getBytes());
+        storageService.uploadFiles("", List.of(top, nested), userId);
+        storageService.createDirectory("tree/empty/", userId);
+
+        DirectoryTreeDto tree = storageService.getTree("tree/", 2, userId);
+
+        assertThat(tree.truncated()).isFalse();
+        assertThat(tree.children())
+                .extracting(DirectoryTreeDto::name)
+                .containsExactlyInAnyOrder("top.txt", "a", "empty");
+        DirectoryTreeDto a = tree.children().stream().filter(node -> node.name().equals("a")).findFirst().orElseThrow();
+        assertThat(a.children()).extracting(DirectoryTreeDto::name).containsExactly("b");
+        assertThat(a.children().get(0).children()).isNull();
+
+        assertThatThrownBy(() -> storageService.getTree("missing/", 2, userId))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void testChangeFeedRecordsMutationsInOrder() throws InterruptedException {
+        Long userId = 4242L;
+        long start = changeFeedService.getChanges(userId, 0).sequence();
+
+        DeferredResult<ChangesDto> parked = changeFeedService.poll(userId, start, Duration.ofSeconds(10));
+        assertThat(parked.hasResult()).isFalse();
+
+        storageService.createDirectory("sync/", userId);
+        MockMultipartFile file = new MockMultipartFile("files", "a.txt", "text/plain", "abc".getBytes());
+        storageService.uploadFiles("sync/", List.of(file), userId);
+        storageService.move("sync/a.txt", "sync/b.txt", userId);
+        storageService.deleteResource("sync/b.txt", userId);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!parked.hasResult() && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        assertThat(parked.hasResult()).isTrue();
+
+        ChangesDto changes = changeFeedService.getChanges(userId, start);
+        assertThat(changes.changes())
+                .extracting(ChangeDto::type, ChangeDto::path, ChangeDto::targetPath)
+                .containsExactly(
+                        tuple(ChangeType.CREATE, "sync/", null),
+                        tuple(ChangeType.UPLOAD, "sync/a.txt", null),
+                        tuple(ChangeType.MOVE, "sync/a.txt", "sync/b.txt"),
+                        tuple(ChangeType.DELETE, "sync/b.txt", null));
+        assertThat(changes.sequence()).isEqualTo(start + 4);
+        assertThat(changeFeedService.getChanges(userId, changes.sequence()).changes()).isEmpty();
+    }
+
+    @Test
+    void testDirectoryETagChangesOnlyWithContent() {
+        Long userId = 999L;
+        storageService.createDirectory("photos/", userId);
+        storageService.createDirectory("notes/", userId);
+
+        String photos = storageService.getDirectoryETag("photos/", userId);
+        String notes = storageService.getDirectoryETag("notes/", userId);
+        assertThat(storageService.getDirectoryETag("photos", userId)).isEqualTo(photos);
+
+        MockMultipartFile file = new MockMultipartFile("files", "cat.jpg", "image/jpeg", "jpg".getBytes());
+        storageService.uploadFiles("photos/", List.of(file), userId);
+
+        assertThat(storageService.getDirectoryETag("photos/", userId)).isNotEqualTo(photos);
+        assertThat(storageService.getDirectoryETag("notes/", userId)).isEqualTo(notes);
+
+        storageService.deleteResource("photos/", userId);
+        assertThat(storageService.getDirectoryETag("notes/", userId)).isNotEqualTo(notes);
+    }
+
+    @Test
+    void testFolderMarkerMigrationKeepsOnlyEmptyFolders() throws Exception {
+        putObject("user-999-files/legacy/", new byte[0]);
+        putObject("user-999-files/legacy/a.txt", "a".getBytes());
+        putObject("user-999-files/legacy/empty/", new byte[0]);
+
+        folderMarkerMigration.migrate();
+
+        assertThat(objectExists("user-999-files/legacy/")).isFalse();
+        assertThat(objectExists("user-999-files/legacy/empty/")).isTrue();
+        assertThat(storageService.listItems("legacy/", 999L))
+                .extracting(ResourceDto::name)
+                .containsExactlyInAnyOrder("a.txt", "empty");
+    }
+
+    private void putObject(String key, byte[] content) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(key)
+                .stream(new ByteArrayInputStream(content), content.length, -1)
+                .build());
+    }
+
+    private boolean objectExists(String key) {
+        try {
+            minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(key).build());
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Test
+    void testBackgroundDeleteJob() throws InterruptedException {
+        Long userId = 999L;
+        MockMultipartFile first = new MockMultipartFile("files", "archive/a.txt", "text/plain", "a".getBytes());
+        MockMultipartFile second = new MockMultipartFile("files", "archive/nested/b.txt", "text/plain", "b".getBytes());
+        storageService.uploadFiles("", List.of(first, second), userId);
+
+        JobDto job = jobService.submitDelete("archive/", userId);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!job.status().isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            job = jobService.getJob(job.id(), userId);
+        }
+
+        assertThat(job.status()).isEqualTo(JobStatus.COMPLETED);
+        assertThat(job.processedItems()).isPositive();
+        assertThatThrownBy(() ->
+                storageService.getResource("archive/a.txt", userId)
+        ).isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void testFolderArchiveIsCachedUntilContentChanges() throws InterruptedException {
+        Long userId = 999L;
+        MockMultipartFile first = new MockMultipartFile("files", "release/app.txt", "text/plain", "v1".getBytes());
+        storageService.uploadFiles("", List.of(first), userId);
+
+        ByteArrayOutputStream built = new ByteArrayOutputStream();
+        storageService.downloadResource("release/", userId, built);
+
+        ZipService.ArchivePlan plan = storageService.planFolderArchive("release/", userId);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!plan.isCached() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            plan = storageService.planFolderArchive("release/", userId);
+        }
+        assertThat(plan.isCached()).isTrue();
+
+        ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        storageService.downloadCachedArchive(plan, 0, plan.cachedSize(), cached);
+        assertThat(cached.toByteArray()).isEqualTo(built.toByteArray());
+
+        MockMultipartFile second = new MockMultipartFile("files", "release/notes.txt", "text/plain", "v2".getBytes());
+        storageService.uploadFiles("", List.of(second), userId);
+
+        ZipService.ArchivePlan changed = storageService.planFolderArchive("release/", userId);
+        assertThat(changed.fingerprint()).isNotEqualTo(plan.fingerprint());
+        assertThat(changed.isCached()).isFalse();
+    }
+
     @Test
     void testSearch() {
         Long userId = 999L;
@@ -253,6 +514,162 @@ class SecurityPracticaApplicationTests {
         assertThat(results.get(0).name()).isEqualTo("filename.txt");
     }
 
+    @Test
+    void testDeletedFileGoesToTrashAndCanBeRestored() {
+        Long userId = 4401L;
+        MockMultipartFile file = new MockMultipartFile("files", "notes/todo.txt", "text/plain", "milk".getBytes());
+        storageService.uploadFiles("", List.of(file), userId);
+
+        trashService.moveToTrash("notes/todo.txt", userId);
+
+        assertThat(storageService.listItems("notes/", userId)).isEmpty();
+        assertThatThrownBy(() -> storageService.getResource("notes/todo.txt", userId))
+                .isInstanceOf(NotFoundException.class);
+        List<TrashItemDto> trash = trashService.list(userId);
+        assertThat(trash)
+                .extracting(TrashItemDto::path, TrashItemDto::name, TrashItemDto::size, TrashItemDto::status)
+                .containsExactly(tuple("notes/", "todo.txt", 4L, TrashStatus.TRASHED));
+
+        trashService.restore(trash.get(0).id(), userId);
+
+        assertThat(storageService.getResource("notes/todo.txt", userId).size()).isEqualTo(4L);
+        assertThat(trashService.list(userId)).isEmpty();
+    }
+
+    @Test
+    void testDeletedFolderIsHiddenAtOnceAndPurgedInBackground() throws InterruptedException {
+        Long userId = 4402L;
+        MockMultipartFile first = new MockMultipartFile("files", "old/a.txt", "text/plain", "a".getBytes());
+        MockMultipartFile second = new MockMultipartFile("files", "old/nested/b.txt", "text/plain", "b".getBytes());
+        MockMultipartFile kept = new MockMultipartFile("files", "kept.txt", "text/plain", "k".getBytes());
+        storageService.uploadFiles("", List.of(first, second, kept), userId);
+
+        TrashItemDto trashed = trashService.moveToTrash("old", userId);
+
+        assertThat(trashed.type()).isEqualTo(ResourceType.DIRECTORY);
+        assertThat(storageService.listItems("", userId)).extracting(ResourceDto::name).containsExactly("kept.txt");
+        assertThat(storageService.search("b.txt", userId)).isEmpty();
+        assertThatThrownBy(() -> storageService.createDirectory("old/", userId))
+                .isInstanceOf(FileAlreadyExistsException.class);
+
+        awaitTrash(userId, items -> items.size() == 1 && items.get(0).status() == TrashStatus.TRASHED);
+        assertThat(objectExists("user-4402-files/old/a.txt")).isFalse();
+        assertThat(objectExists("user-4402-trash/" + trashed.id() + "/old/nested/b.txt")).isTrue();
+
+        trashService.emptyTrash(userId);
+
+        awaitTrash(userId, List::isEmpty);
+        assertThat(objectExists("user-4402-trash/" + trashed.id() + "/old/nested/b.txt")).isFalse();
+        assertThat(storageService.getResource("kept.txt", userId).type()).isEqualTo(ResourceType.FILE);
+    }
+
+    @Test
+    void testUploadedZipIsExtractedIntoFolder() throws Exception {
+        Long userId = 4501L;
+        storageService.createDirectory("unpacked/", userId);
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(zipped)) {
+            for (String name : List.of("readme.txt", "src/main.txt", "src/nested/util.txt")) {
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(("content of " + name).getBytes());
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("empty/"));
+            zos.closeEntry();
+        }
+        MockMultipartFile archive = new MockMultipartFile("files", "project.zip", "application/zip", zipped.toByteArray());
+
+        List<ResourceDto> created = storageService.extractArchive("unpacked/", archive, userId);
+
+        assertThat(created).extracting(ResourceDto::name)
+                .containsExactlyInAnyOrder("readme.txt", "main.txt", "util.txt", "empty");
+        assertThat(storageService.listItems("unpacked/", userId)).extracting(ResourceDto::name)
+                .containsExactlyInAnyOrder("readme.txt", "src", "empty");
+        assertThat(storageService.getResource("unpacked/src/nested/util.txt", userId).size())
+                .isEqualTo((long) "content of src/nested/util.txt".length());
+        assertThat(objectExists("user-4501-files/unpacked/empty/")).isTrue();
+        assertThat(objectExists("user-4501-files/unpacked/")).isFalse();
+
+        assertThatThrownBy(() -> storageService.extractArchive("unpacked/", archive, userId))
+                .isInstanceOf(FileAlreadyExistsException.class);
+    }
+
+    @Test
+    void testSelectionDownloadsAsOneArchiveWithoutDuplicates() throws Exception {
+        Long userId = 4601L;
+        MockMultipartFile report = new MockMultipartFile("files", "work/report.txt", "text/plain", "report".getBytes());
+        MockMultipartFile photo = new MockMultipartFile("files", "work/photos/cat.jpg", "image/jpeg", "cat".getBytes());
+        MockMultipartFile draft = new MockMultipartFile("files", "work/drafts/plan.txt", "text/plain", "plan".getBytes());
+        MockMultipartFile other = new MockMultipartFile("files", "work/other.txt", "text/plain", "other".getBytes());
+        storageService.uploadFiles("", List.of(report, photo, draft, other), userId);
+
+        ZipService.ArchivePlan plan = storageService.planSelectionArchive(
+                List.of("work/report.txt", "work/photos/", "work/photos/cat.jpg", "/work/drafts/", "work/report.txt"), userId);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        storageService.downloadFolderArchive(plan, archive);
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.add(entry.getName() + "=" + new String(zis.readAllBytes()));
+            }
+        }
+        assertThat(entries).containsExactly("drafts/plan.txt=plan", "photos/cat.jpg=cat", "report.txt=report");
+
+        assertThatThrownBy(() -> storageService.planSelectionArchive(List.of("work/report.txt", "work/missing.txt"), userId))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void testDeltaUploadRewritesOnlyChangedBlocks() throws Exception {
+        Long userId = 4801L;
+        byte[] original = new byte[12 * 1024 * 1024];
+        new Random(48).nextBytes(original);
+        storageService.uploadFiles("", List.of(new MockMultipartFile("files", "disk.img", "application/octet-stream", original)), userId);
+
+        FileSignatureDto signature = storageService.getFileSignature("disk.img", userId);
+        assertThat(signature.size()).isEqualTo(original.length);
+        assertThat(signature.chunks()).hasSizeGreaterThan(1);
+
+        byte[] modified = original.clone();
+        Arrays.fill(modified, 6_000_000, 6_000_100, (byte) 7);
+        Map<String, FileSignatureDto.Chunk> known = new HashMap<>();
+        signature.chunks().forEach(chunk -> known.putIfAbsent(chunk.sha256(), chunk));
+        ContentChunker chunker = new ContentChunker(signature.minChunkSize(), signature.avgChunkSize(), signature.maxChunkSize());
+        List<DeltaManifestDto.Segment> segments = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (ContentChunker.Chunk chunk : chunker.chunk(new ByteArrayInputStream(modified))) {
+            FileSignatureDto.Chunk base = known.get(chunk.sha256());
+            if (base != null) {
+                segments.add(new DeltaManifestDto.Segment(DeltaManifestDto.Op.COPY, base.offset(), base.length()));
+            } else {
+                segments.add(new DeltaManifestDto.Segment(DeltaManifestDto.Op.DATA, 0, chunk.length()));
+                data.write(modified, (int) chunk.offset(), chunk.length());
+            }
+        }
+        assertThat(data.size()).isLessThan(original.length / 2);
+
+        DeltaManifestDto manifest = new DeltaManifestDto(signature.etag(), segments);
+        ResourceDto updated = storageService.applyDelta("disk.img", manifest,
+                new MockMultipartFile("data", "data", "application/octet-stream", data.toByteArray()), userId);
+
+        assertThat(updated.size()).isEqualTo(modified.length);
+        ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+        storageService.downloadResource("disk.img", userId, downloaded);
+        assertThat(downloaded.toByteArray()).isEqualTo(modified);
+        assertThat(storageService.getFileSignature("disk.img", userId).etag()).isNotEqualTo(signature.etag());
 
+        assertThatThrownBy(() -> storageService.applyDelta("disk.img", manifest,
+                new MockMultipartFile("data", "data", "application/octet-stream", data.toByteArray()), userId))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
 
-}
\ No newline at end of file
+    private void awaitTrash(Long userId, Predicate<List<TrashItemDto>> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.test(trashService.list(userId)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.test(trashService.list(userId))).isTrue();
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.securitypractica.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinioHttpMetricsTests {
+
+    private HttpServer server;
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void callsOverThePerHostLimitWaitInTheDispatcher() throws Exception {
+        OkHttpClient client = client(1);
+
+        CountDownLatch done = new CountDownLatch(2);
+        enqueue(client, done);
+        enqueue(client, done);
+        assertThat(registry.get("minio.http.dispatcher.calls").tag("state", "queued").gauge().value()).isEqualTo(1);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Timer queueWait = registry.get("minio.http.queue.wait").timer();
+        assertThat(queueWait.count()).isEqualTo(2);
+        assertThat(queueWait.max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(250);
+        assertThat(registry.get("minio.http.requests").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void sequentialCallsReusePooledConnections() throws Exception {
+        OkHttpClient client = client(64);
+
+        for (int i = 0; i < 3; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            enqueue(client, done);
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(registry.get("minio.http.connections.acquired").tag("reused", "false").counter().count()).isEqualTo(1);
+        assertThat(registry.get("minio.http.connections.acquired").tag("reused", "true").counter().count()).isEqualTo(2);
+        assertThat(registry.get("minio.http.pool.connection.count").tag("state", "idle").gauge().value()).isEqualTo(1);
+    }
+
+    private OkHttpClient client(int maxRequestsPerHost) {
+        MinioProperties properties = new MinioProperties(null, null, null, null, List.of(),
+                new MinioProperties.Http(8, Duration.ofMinutes(1), 64, maxRequestsPerHost, false),
+                new MinioProperties.Timeouts(Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5)));
+        return new MinioConfig().minioHttpClient(properties, registry, ObservationRegistry.NOOP);
+    }
+
+    // MinioClient sends its requests asynchronously, so the tests do the same.
+    private void enqueue(OkHttpClient client, CountDownLatch done) {
+        Request request = new Request.Builder().url("http://127.0.0.1:" + server.getAddress().getPort() + "/bucket").build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                done.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                done.countDown();
+            }
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.securitypractica.config;
+
+import org.example.securitypractica.entity.User;
+import org.example.securitypractica.security.SessionUser;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the session attribute read on every authenticated request: the old JDK-serialized context
+ * with the full entity principal against the JSON context with {@link SessionUser}.
+ */
+class SessionSerializationTests {
+
+    // Read from Redis on every authenticated request; the legacy context was over 1 KB.
+    private static final int MAX_CONTEXT_BYTES = 640;
+
+    private final RedisSerializer<Object> jsonSerializer = new RedisConfig().springSessionDefaultRedisSerializer();
+    private final RedisSerializer<Object> jdkSerializer = new JdkSerializationRedisSerializer();
+
+    @Test
+    void slimJsonSessionRoundTrips() {
+        SessionUser sessionUser = new SessionUser(42L, "alice-user", List.of("ROLE_USER"));
+        SecurityContext context = new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated(sessionUser, null, sessionUser.authorities()));
+
+        SecurityContext restored = (SecurityContext) jsonSerializer.deserialize(jsonSerializer.serialize(context));
+
+        assertThat(restored.getAuthentication().getPrincipal()).isEqualTo(sessionUser);
+        assertThat(restored.getAuthentication().getName()).isEqualTo("alice-user");
+        assertThat(restored.getAuthentication().getAuthorities())
+                .extracting(Object::toString)
+                .containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void unreadableLegacyAttributeIsDropped() {
+        byte[] legacy = jdkSerializer.serialize(legacyContext());
+
+        assertThat(jsonSerializer.deserialize(legacy)).isNull();
+    }
+
+    @Test
+    void slimContextStaysWithinItsPayloadBudget() {
+        byte[] legacy = jdkSerializer.serialize(legacyContext());
+        SessionUser sessionUser = new SessionUser(42L, "alice-user", List.of("ROLE_USER"));
+        byte[] slim = jsonSerializer.serialize(new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated(sessionUser, null, sessionUser.authorities())));
+
+        assertThat(slim.length).isLessThanOrEqualTo(MAX_CONTEXT_BYTES).isLessThan(legacy.length);
+        assertThat(new String(slim)).doesNotContain("$2a$");
+    }
+
+    private SecurityContext legacyContext() {
+        User user = new User("ROLE_USER", "alice-user", new BCryptPasswordEncoder(4).encode("password"));
+        user.setId(42L);
+        return new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.securitypractica.performance;
+
+import org.example.securitypractica.performance.MinioCallCounter.S3Op;
+import org.example.securitypractica.security.SessionUser;
+import org.example.securitypractica.service.StorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.web.multipart.MultipartFile;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Fixes how many S3 requests each endpoint may send. A change that adds a lookup to a hot path fails here
+ * instead of showing up as latency in production.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+@Testcontainers
+@Import(MinioCallCounterConfig.class)
+class MinioCallBudgetTests {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MinioCallCounter counter;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Test
+    void directoryListingCostsOneListAndNoStat() throws Exception {
+        SessionUser user = seed(4301L, "docs/", 50);
+
+        MinioCallCounter.Snapshot calls = measure(get("/api/directory").param("path", "docs/"), user);
+
+        assertThat(calls.count(S3Op.LIST)).as(calls.toString()).isEqualTo(1);
+        assertThat(calls.total()).as(calls.toString()).isEqualTo(1);
+    }
+
+    @Test
+    void unchangedDirectoryCostsNoRequests() throws Exception {
+        SessionUser user = seed(4302L, "docs/", 5);
+        String etag = mockMvc.perform(get("/api/directory").param("path", "docs/").with(as(user)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        counter.reset();
+        mockMvc.perform(get("/api/directory").param("path", "docs/").header(HttpHeaders.IF_NONE_MATCH, etag).with(as(user)))
+                .andExpect(status().isNotModified());
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.total()).as(calls.toString()).isZero();
+    }
+
+    @Test
+    void resourceInfoCostsOneList() throws Exception {
+        SessionUser user = seed(4303L, "docs/", 5);
+
+        MinioCallCounter.Snapshot calls = measure(get("/api/resource").param("path", "docs/file-3.txt"), user);
+
+        assertThat(calls.count(S3Op.LIST)).as(calls.toString()).isEqualTo(1);
+        assertThat(calls.total()).as(calls.toString()).isEqualTo(1);
+    }
+
+    @Test
+    void fileDownloadCostsOneLookupAndOneGet() throws Exception {
+        SessionUser user = seed(4304L, "docs/", 5);
+
+        counter.reset();
+        MvcResult started = mockMvc.perform(get("/api/resource/download").param("path", "docs/file-2.txt").with(as(user)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(started.getResponse().getContentAsString()).isEqualTo("content of file-2.txt");
+        assertThat(calls.count(S3Op.LIST)).as(calls.toString()).isEqualTo(1);
+        assertThat(calls.count(S3Op.GET)).as(calls.toString()).isEqualTo(1);
+        assertThat(calls.count(S3Op.STAT)).as(calls.toString()).isZero();
+    }
+
+    @Test
+    void searchCostsOneListPerThousandKeys() throws Exception {
+        SessionUser user = seed(4305L, "bulk/", 1_001);
+
+        MinioCallCounter.Snapshot calls = measure(get("/api/resource/search").param("query", "file-1000"), user);
+
+        assertThat(calls.count(S3Op.LIST)).as(calls.toString()).isEqualTo(2);
+        assertThat(calls.total()).as(calls.toString()).isEqualTo(2);
+    }
+
+    @Test
+    void uploadCostsOneLookupAndOnePutPerFile() throws Exception {
+        SessionUser user = seed(4306L, "docs/", 1);
+        MockHttpServletRequestBuilder upload = multipart("/api/resource/upload")
+                .file(file("new-1.txt"))
+                .file(file("new-2.txt"))
+                .file(file("new-3.txt"))
+                .param("path", "docs/");
+
+        counter.reset();
+        mockMvc.perform(upload.with(as(user))).andExpect(status().isCreated());
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.count(S3Op.LIST)).as(calls.toString()).isLessThanOrEqualTo(3 + 1);
+        assertThat(calls.count(S3Op.PUT)).as(calls.toString()).isEqualTo(3);
+        assertThat(calls.count(S3Op.DELETE)).as(calls.toString()).isLessThanOrEqualTo(1);
+        assertThat(calls.count(S3Op.STAT)).as(calls.toString()).isZero();
+    }
+
+    private MinioCallCounter.Snapshot measure(MockHttpServletRequestBuilder request, SessionUser user) throws Exception {
+        counter.reset();
+        mockMvc.perform(request.with(as(user))).andExpect(status().isOk());
+        return counter.snapshot();
+    }
+
+    private SessionUser seed(Long userId, String folder, int files) {
+        List<MultipartFile> uploads = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            uploads.add(file("file-" + i + ".txt"));
+        }
+        storageService.uploadFiles(folder, uploads, userId);
+        return new SessionUser(userId, "budget-" + userId, List.of("ROLE_USER"));
+    }
+
+    private static MockMultipartFile file(String name) {
+        return new MockMultipartFile("files", name, "text/plain", ("content of " + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RequestPostProcessor as(SessionUser user) {
+        return authentication(UsernamePasswordAuthenticationToken.authenticated(user, null, user.authorities()));
+    }
+}
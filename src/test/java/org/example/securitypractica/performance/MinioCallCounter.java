@@ -0,0 +1,92 @@
+package org.example.securitypractica.performance;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.example.securitypractica.repository.MinioRepository;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tallies the S3 requests sent by the MinIO HTTP client, and the {@link MinioRepository} methods that caused them.
+ * Counting on the wire also catches lazily fetched listing pages and hedged duplicates.
+ */
+public class MinioCallCounter implements Interceptor, MethodInterceptor {
+
+    public enum S3Op { LIST, STAT, GET, PUT, COPY, DELETE, OTHER }
+
+    private final Map<S3Op, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> repositoryCalls = new ConcurrentHashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        requests.computeIfAbsent(classify(chain.request()), op -> new LongAdder()).increment();
+        return chain.proceed(chain.request());
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        repositoryCalls.computeIfAbsent(invocation.getMethod().getName(), name -> new LongAdder()).increment();
+        return invocation.proceed();
+    }
+
+    public void reset() {
+        requests.clear();
+        repositoryCalls.clear();
+    }
+
+    public Snapshot snapshot() {
+        Map<S3Op, Long> ops = new EnumMap<>(S3Op.class);
+        requests.forEach((op, count) -> ops.put(op, count.sum()));
+        Map<String, Long> calls = new TreeMap<>();
+        repositoryCalls.forEach((method, count) -> calls.put(method, count.sum()));
+        return new Snapshot(ops, calls);
+    }
+
+    static S3Op classify(Request request) {
+        HttpUrl url = request.url();
+        // Path-style addressing: the first segment is the bucket, anything after it is the object key.
+        boolean objectLevel = url.pathSegments().size() > 1 && !url.pathSegments().get(1).isEmpty();
+        return switch (request.method()) {
+            case "HEAD" -> objectLevel ? S3Op.STAT : S3Op.OTHER;
+            case "GET" -> {
+                if (objectLevel) yield S3Op.GET;
+                yield url.queryParameterNames().contains("location") ? S3Op.OTHER : S3Op.LIST;
+            }
+            case "PUT" -> {
+                if (!objectLevel) yield S3Op.OTHER;
+                yield request.header("x-amz-copy-source") != null ? S3Op.COPY : S3Op.PUT;
+            }
+            case "DELETE" -> S3Op.DELETE;
+            case "POST" -> url.queryParameterNames().contains("delete") ? S3Op.DELETE : S3Op.OTHER;
+            default -> S3Op.OTHER;
+        };
+    }
+
+    public record Snapshot(Map<S3Op, Long> requests, Map<String, Long> repositoryCalls) {
+
+        public long count(S3Op op) {
+            return requests.getOrDefault(op, 0L);
+        }
+
+        public long total() {
+            return requests.entrySet().stream()
+                    .filter(entry -> entry.getKey() != S3Op.OTHER)
+                    .mapToLong(Map.Entry::getValue)
+                    .sum();
+        }
+
+        @Override
+        public String toString() {
+            return "S3 requests " + requests + " from repository calls " + repositoryCalls;
+        }
+    }
+}
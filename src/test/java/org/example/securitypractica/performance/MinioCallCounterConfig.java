@@ -0,0 +1,45 @@
+package org.example.securitypractica.performance;
+
+import okhttp3.OkHttpClient;
+import org.example.securitypractica.repository.MinioRepository;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Puts a {@link MinioCallCounter} in front of the shared MinIO HTTP client and around {@link MinioRepository}.
+ * Bean overriding is disabled, so the beans are wrapped after initialization instead of replaced.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class MinioCallCounterConfig {
+
+    @Bean
+    static MinioCallCounter minioCallCounter() {
+        return new MinioCallCounter();
+    }
+
+    @Bean
+    static BeanPostProcessor minioCallCountingPostProcessor(MinioCallCounter counter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof OkHttpClient client && beanName.equals("minioHttpClient")) {
+                    return client.newBuilder().addInterceptor(counter).build();
+                }
+                if (bean instanceof MinioRepository) {
+                    if (bean instanceof Advised advised) {
+                        advised.addAdvice(0, counter);
+                        return bean;
+                    }
+                    ProxyFactory proxyFactory = new ProxyFactory(bean);
+                    proxyFactory.setProxyTargetClass(true);
+                    proxyFactory.addAdvice(counter);
+                    return proxyFactory.getProxy();
+                }
+                return bean;
+            }
+        };
+    }
+}
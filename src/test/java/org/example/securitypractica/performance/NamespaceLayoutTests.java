@@ -0,0 +1,161 @@
+package org.example.securitypractica.performance;
+
+import org.example.securitypractica.dto.ResourceDto;
+import org.example.securitypractica.entity.NamespaceRootState;
+import org.example.securitypractica.entity.User;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.performance.MinioCallCounter.S3Op;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.NamespaceRootRepository;
+import org.example.securitypractica.repository.ShardRouter;
+import org.example.securitypractica.repository.UserRepository;
+import org.example.securitypractica.service.NamespaceMigration;
+import org.example.securitypractica.service.StorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.multipart.MultipartFile;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The namespace layout: folder moves and listings without S3 requests, and the migration of existing objects.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"storage.namespace.enabled=true", "storage.namespace.migration.grace=0s"})
+@Testcontainers
+@Import(MinioCallCounterConfig.class)
+class NamespaceLayoutTests {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private MinioCallCounter counter;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private MinioRepository minioRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NamespaceRootRepository namespaceRootRepository;
+
+    @Autowired
+    private NamespaceMigration namespaceMigration;
+
+    @Test
+    void movingAFolderIsOneMetadataUpdate() {
+        Long userId = 5001L;
+        upload(userId, "docs/", 20);
+        upload(userId, "docs/nested/", 5);
+
+        counter.reset();
+        storageService.move("docs/", "archive/", userId);
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.total()).as(calls.toString()).isZero();
+        assertThat(storageService.listItems("", userId)).extracting(ResourceDto::name).containsExactly("archive");
+        assertThat(storageService.listItems("archive/", userId)).hasSize(21);
+        assertThat(download("archive/nested/file-4.txt", userId)).isEqualTo("content of file-4.txt");
+        assertThatThrownBy(() -> storageService.move("archive/", "archive/nested/archive/", userId))
+                .isInstanceOf(MyBadRequestException.class);
+    }
+
+    @Test
+    void listingsAreServedFromTheNamespace() {
+        Long userId = 5002L;
+        upload(userId, "docs/", 10);
+        storageService.createDirectory("empty/", userId);
+
+        counter.reset();
+        List<ResourceDto> root = storageService.listItems("", userId);
+        List<ResourceDto> docs = storageService.listItems("docs/", userId);
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.total()).as(calls.toString()).isZero();
+        assertThat(root).extracting(ResourceDto::name).containsExactly("docs", "empty");
+        assertThat(docs).extracting(ResourceDto::name).contains("file-0.txt", "file-9.txt");
+
+        storageService.deleteResource("docs/file-0.txt", userId);
+        assertThat(storageService.listItems("docs/", userId)).hasSize(9);
+    }
+
+    @Test
+    void migrationIndexesExistingObjectsAndSwitchesTheUserOver() {
+        Long userId = userRepository.save(new User("ROLE_USER", "namespace-migration", "password")).getId();
+        String root = "user-" + userId + "-files/";
+        store(root + "docs/a.txt", "first");
+        store(root + "docs/b.txt", "second");
+        store(root + "empty/", "");
+
+        namespaceMigration.migrate();
+
+        assertThat(namespaceRootRepository.findById(root).orElseThrow().getState()).isEqualTo(NamespaceRootState.READY);
+        assertThat(storageService.listItems("", userId)).extracting(ResourceDto::name).containsExactly("docs", "empty");
+        assertThat(download("docs/b.txt", userId)).isEqualTo("second");
+
+        counter.reset();
+        storageService.move("docs/", "moved/", userId);
+        assertThat(counter.snapshot().count(S3Op.COPY)).isZero();
+        assertThat(download("moved/a.txt", userId)).isEqualTo("first");
+    }
+
+    private void store(String key, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        minioRepository.putFile(shardRouter.forWrite(key), key, new ByteArrayInputStream(bytes), bytes.length, "text/plain");
+    }
+
+    private void upload(Long userId, String folder, int files) {
+        List<MultipartFile> uploads = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            String name = "file-" + i + ".txt";
+            uploads.add(new MockMultipartFile("files", name, "text/plain", ("content of " + name).getBytes(StandardCharsets.UTF_8)));
+        }
+        storageService.uploadFiles(folder, uploads, userId);
+    }
+
+    private String download(String path, Long userId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storageService.downloadResource(path, userId, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
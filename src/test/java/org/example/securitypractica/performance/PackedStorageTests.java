@@ -0,0 +1,142 @@
+package org.example.securitypractica.performance;
+
+import org.example.securitypractica.dto.ResourceDto;
+import org.example.securitypractica.entity.Pack;
+import org.example.securitypractica.performance.MinioCallCounter.S3Op;
+import org.example.securitypractica.repository.PackRepository;
+import org.example.securitypractica.service.PackCompactionService;
+import org.example.securitypractica.service.StorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.multipart.MultipartFile;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Small files stored in packs: one PUT per upload batch, metadata-only moves, and space reclaimed by compaction.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"storage.pack.enabled=true", "storage.pack.compaction.grace=0s"})
+@Testcontainers
+@Import(MinioCallCounterConfig.class)
+class PackedStorageTests {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private MinioCallCounter counter;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private PackCompactionService compactionService;
+
+    @Autowired
+    private PackRepository packRepository;
+
+    @Test
+    void smallFilesAreUploadedWithOnePutAndReadBackUnchanged() {
+        Long userId = 4901L;
+
+        counter.reset();
+        upload(userId, "docs/", 50);
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.count(S3Op.PUT)).as(calls.toString()).isEqualTo(1);
+        assertThat(packs(userId)).hasSize(1);
+
+        List<ResourceDto> listed = storageService.listItems("docs/", userId);
+        assertThat(listed).hasSize(50);
+        assertThat(listed).extracting(ResourceDto::name).contains("file-0.txt", "file-49.txt");
+        assertThat(storageService.getResource("docs/file-7.txt", userId).size()).isEqualTo("content of file-7.txt".length());
+        assertThat(download("docs/file-7.txt", userId)).isEqualTo("content of file-7.txt");
+        assertThat(storageService.listItems("", userId)).extracting(ResourceDto::name).containsExactly("docs");
+    }
+
+    @Test
+    void movingAFolderOfPackedFilesCopiesNoObjects() {
+        Long userId = 4902L;
+        upload(userId, "docs/", 20);
+
+        counter.reset();
+        storageService.move("docs/", "archive/", userId);
+        MinioCallCounter.Snapshot calls = counter.snapshot();
+
+        assertThat(calls.count(S3Op.COPY)).as(calls.toString()).isZero();
+        assertThat(calls.count(S3Op.PUT)).as(calls.toString()).isZero();
+        assertThat(storageService.listItems("archive/", userId)).hasSize(20);
+        assertThat(download("archive/file-3.txt", userId)).isEqualTo("content of file-3.txt");
+        assertThat(storageService.listItems("", userId)).extracting(ResourceDto::name).containsExactly("archive");
+    }
+
+    @Test
+    void compactionRewritesSparsePacksAndDeletesTheOldOnes() {
+        Long userId = 4903L;
+        upload(userId, "docs/", 10);
+        for (int i = 0; i < 8; i++) {
+            storageService.deleteResource("docs/file-" + i + ".txt", userId);
+        }
+        String original = packs(userId).get(0).getPackKey();
+
+        compactionService.compact();
+        compactionService.compact();
+
+        List<Pack> remaining = packs(userId);
+        assertThat(remaining).hasSize(1);
+        assertThat(remaining.get(0).getPackKey()).isNotEqualTo(original);
+        assertThat(remaining.get(0).getLiveBytes()).isEqualTo(remaining.get(0).getSize());
+        assertThat(download("docs/file-8.txt", userId)).isEqualTo("content of file-8.txt");
+        assertThat(download("docs/file-9.txt", userId)).isEqualTo("content of file-9.txt");
+    }
+
+    private void upload(Long userId, String folder, int files) {
+        List<MultipartFile> uploads = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            String name = "file-" + i + ".txt";
+            uploads.add(new MockMultipartFile("files", name, "text/plain", ("content of " + name).getBytes(StandardCharsets.UTF_8)));
+        }
+        storageService.uploadFiles(folder, uploads, userId);
+    }
+
+    private String download(String path, Long userId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storageService.downloadResource(path, userId, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<Pack> packs(Long userId) {
+        return packRepository.findAll().stream().filter(pack -> pack.getUserId().equals(userId)).toList();
+    }
+}
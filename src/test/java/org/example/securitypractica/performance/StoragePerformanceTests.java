@@ -0,0 +1,211 @@
+package org.example.securitypractica.performance;
+
+import org.example.securitypractica.performance.MinioCallCounter.S3Op;
+import org.example.securitypractica.security.SessionUser;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Throughput and latency percentiles of the hot endpoints at a fixed dataset size. Run with {@code mvn test -Pperformance};
+ * thresholds default to what a developer machine comfortably meets and can be set per run,
+ * e.g. {@code -Dperf.list.p95-ms=80}.
+ */
+@Tag("performance")
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+@Testcontainers
+@Import(MinioCallCounterConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class StoragePerformanceTests {
+
+    private static final int FILES = 2_000;
+    private static final int FILE_BYTES = 16 * 1024;
+    private static final int FILES_PER_UPLOAD = 10;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    private static final SessionUser USER = new SessionUser(4399L, "perf-user", List.of("ROLE_USER"));
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MinioCallCounter counter;
+
+    private final byte[] payload = new byte[FILE_BYTES];
+    private int uploaded;
+
+    @BeforeAll
+    void setUp() {
+        ThreadLocalRandom.current().nextBytes(payload);
+    }
+
+    @Test
+    @Order(1)
+    void upload() throws Exception {
+        // Fills the dataset the other scenarios read, so every upload request is measured exactly once.
+        Stats stats = run("upload", 0, FILES / FILES_PER_UPLOAD, (long) FILES_PER_UPLOAD * FILE_BYTES, () -> {
+            MockMultipartHttpServletRequestBuilder request = multipart("/api/resource/upload");
+            for (int i = 0; i < FILES_PER_UPLOAD; i++) {
+                request.file(new MockMultipartFile("files", "file-" + uploaded++ + ".bin", "application/octet-stream", payload));
+            }
+            mockMvc.perform(request.param("path", "data/").with(asUser())).andExpect(status().isCreated());
+        });
+
+        assertThat(stats.callsPerOp(S3Op.PUT)).isEqualTo(FILES_PER_UPLOAD);
+        stats.assertWithinThresholds(400, 800);
+    }
+
+    @Test
+    @Order(2)
+    void list() throws Exception {
+        Stats stats = run("list", WARMUP, ITERATIONS, 0, () ->
+                mockMvc.perform(get("/api/directory").param("path", "data/").with(asUser())).andExpect(status().isOk()));
+
+        // 2000 keys are two listing pages; the budget suite pins a single page to one request.
+        assertThat(stats.callsPerOp(S3Op.LIST)).isEqualTo(2);
+        assertThat(stats.callsPerOp(S3Op.STAT)).isZero();
+        stats.assertWithinThresholds(300, 600);
+    }
+
+    @Test
+    @Order(3)
+    void search() throws Exception {
+        Stats stats = run("search", WARMUP, ITERATIONS, 0, () ->
+                mockMvc.perform(get("/api/resource/search").param("query", "file-" + ThreadLocalRandom.current().nextInt(FILES))
+                        .with(asUser())).andExpect(status().isOk()));
+
+        assertThat(stats.callsPerOp(S3Op.LIST)).isEqualTo(2);
+        stats.assertWithinThresholds(300, 600);
+    }
+
+    @Test
+    @Order(4)
+    void download() throws Exception {
+        Stats stats = run("download", WARMUP, ITERATIONS, FILE_BYTES, () -> {
+            String path = "data/file-" + ThreadLocalRandom.current().nextInt(FILES) + ".bin";
+            MvcResult started = mockMvc.perform(get("/api/resource/download").param("path", path).with(asUser())).andReturn();
+            mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+        });
+
+        assertThat(stats.callsPerOp(S3Op.GET)).isEqualTo(1);
+        stats.assertWithinThresholds(100, 250);
+    }
+
+    private Stats run(String name, int warmup, int iterations, long bytesPerOp, Operation operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+        counter.reset();
+        long[] samples = new long[iterations];
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long began = System.nanoTime();
+            operation.run();
+            samples[i] = System.nanoTime() - began;
+        }
+        Stats stats = new Stats(name, samples, System.nanoTime() - start, bytesPerOp, counter.snapshot());
+        System.out.println(stats);
+        return stats;
+    }
+
+    private static RequestPostProcessor asUser() {
+        return authentication(UsernamePasswordAuthenticationToken.authenticated(USER, null, USER.authorities()));
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private record Stats(String name, long[] samples, long elapsedNanos, long bytesPerOp, MinioCallCounter.Snapshot calls) {
+
+        Stats {
+            samples = samples.clone();
+            Arrays.sort(samples);
+        }
+
+        double percentileMillis(double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * samples.length);
+            return samples[Math.max(0, rank - 1)] / 1_000_000.0;
+        }
+
+        double opsPerSecond() {
+            return samples.length / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        long callsPerOp(S3Op op) {
+            return Math.round((double) calls.count(op) / samples.length);
+        }
+
+        void assertWithinThresholds(long defaultP95Millis, long defaultP99Millis) {
+            long p95 = Long.getLong("perf." + name + ".p95-ms", defaultP95Millis);
+            long p99 = Long.getLong("perf." + name + ".p99-ms", defaultP99Millis);
+            assertThat(percentileMillis(95)).as("%s p95, %s", name, this).isLessThanOrEqualTo(p95);
+            assertThat(percentileMillis(99)).as("%s p99, %s", name, this).isLessThanOrEqualTo(p99);
+        }
+
+        @Override
+        public String toString() {
+            String throughput = bytesPerOp > 0
+                    ? String.format(" %.1f MB/s", opsPerSecond() * bytesPerOp / (1024 * 1024))
+                    : "";
+            return String.format("%s: %d ops, %.1f ops/s%s, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, %s",
+                    name, samples.length, opsPerSecond(), throughput,
+                    percentileMillis(50), percentileMillis(95), percentileMillis(99), calls);
+        }
+    }
+}
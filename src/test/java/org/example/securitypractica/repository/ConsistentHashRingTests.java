@@ -0,0 +1,55 @@
+package org.example.securitypractica.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTests {
+
+    private static final int USERS = 30_000;
+
+    @Test
+    void spreadsUsersEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            counts.merge(ring.shardFor(userId), 1, Integer::sum);
+        }
+
+        assertThat(counts).containsOnlyKeys("a", "b", "c");
+        counts.values().forEach(count -> assertThat(count).isBetween(USERS / 3 * 7 / 10, USERS / 3 * 13 / 10));
+    }
+
+    @Test
+    void addingAShardOnlyMovesUsersToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (long userId = 1; userId <= USERS; userId++) {
+            String from = before.shardFor(userId);
+            String to = after.shardFor(userId);
+            if (!from.equals(to)) {
+                assertThat(to).isEqualTo("d");
+                moved++;
+            }
+        }
+
+        assertThat(moved).isBetween(USERS / 4 * 7 / 10, USERS / 4 * 13 / 10);
+    }
+
+    @Test
+    void isStableAcrossInstances() {
+        ConsistentHashRing first = new ConsistentHashRing(List.of("a", "b"), 64);
+        ConsistentHashRing second = new ConsistentHashRing(List.of("a", "b"), 64);
+
+        for (long userId = 1; userId <= 1000; userId++) {
+            assertThat(first.shardFor(userId)).isEqualTo(second.shardFor(userId));
+        }
+    }
+}
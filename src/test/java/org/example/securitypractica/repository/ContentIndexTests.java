@@ -0,0 +1,109 @@
+package org.example.securitypractica.repository;
+
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentIndexTests {
+
+    private final ContentIndex index = new ContentIndex(new ByteBuffersDirectory());
+
+    @AfterEach
+    void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void matchesAreHighlightedAndLimitedToTheUser() {
+        index.index(1L, "docs/contract.txt", 120, "The tenant pays the rent before the fifth day of each month.");
+        index.index(1L, "docs/notes.txt", 40, "Buy milk and bread.");
+        index.index(2L, "docs/contract.txt", 120, "The tenant pays the rent in advance.");
+        index.refresh();
+
+        ContentIndex.Page page = index.search(1L, "tenant rent", 0, 10);
+
+        assertThat(page.total()).isEqualTo(1);
+        assertThat(page.hits()).extracting(ContentIndex.Hit::path).containsExactly("docs/contract.txt");
+        assertThat(page.hits().get(0).size()).isEqualTo(120);
+        assertThat(page.hits().get(0).highlight()).contains("<b>tenant</b>", "<b>rent</b>");
+    }
+
+    @Test
+    void highlightedTextIsEscaped() {
+        index.index(1L, "page.html.txt", 10, "<script>alert('tenant')</script>");
+        index.refresh();
+
+        assertThat(index.search(1L, "tenant", 0, 10).hits().get(0).highlight())
+                .doesNotContain("<script>")
+                .contains("<b>tenant</b>");
+    }
+
+    @Test
+    void resultsArePaged() {
+        for (int i = 0; i < 25; i++) {
+            index.index(1L, "reports/report-" + i + ".txt", 10, "quarterly revenue report number " + i);
+        }
+        index.refresh();
+
+        ContentIndex.Page second = index.search(1L, "revenue", 10, 10);
+        ContentIndex.Page last = index.search(1L, "revenue", 20, 10);
+
+        assertThat(second.total()).isEqualTo(25);
+        assertThat(second.hits()).hasSize(10);
+        assertThat(last.hits()).hasSize(5);
+        assertThat(index.search(1L, "revenue", 30, 10).hits()).isEmpty();
+    }
+
+    @Test
+    void movedFolderIsFoundUnderItsNewPath() {
+        index.index(1L, "old/a.txt", 5, "alpha document");
+        index.index(1L, "old/nested/b.txt", 5, "alpha nested document");
+        index.index(1L, "older.txt", 5, "alpha outside");
+
+        index.move(1L, "old/", "archive/old/");
+        index.refresh();
+
+        assertThat(index.search(1L, "alpha", 0, 10).hits()).extracting(ContentIndex.Hit::path)
+                .containsExactlyInAnyOrder("archive/old/a.txt", "archive/old/nested/b.txt", "older.txt");
+    }
+
+    @Test
+    void deletedFolderTakesItsFilesWithIt() {
+        index.index(1L, "tmp/a.txt", 5, "gamma");
+        index.index(1L, "tmp/deep/b.txt", 5, "gamma");
+        index.index(1L, "tmp.txt", 5, "gamma");
+
+        index.delete(1L, "tmp/");
+        index.refresh();
+
+        assertThat(index.search(1L, "gamma", 0, 10).hits()).extracting(ContentIndex.Hit::path).containsExactly("tmp.txt");
+    }
+
+    @Test
+    void fileNamesAreSearchableToo() {
+        index.index(1L, "invoices/invoice-2024.txt", 5, "amount due");
+        index.refresh();
+
+        assertThat(index.search(1L, "invoice", 0, 10).hits()).extracting(ContentIndex.Hit::path)
+                .containsExactly("invoices/invoice-2024.txt");
+    }
+
+    @Test
+    void appliedSequenceSurvivesClearingTheUser() {
+        index.index(1L, "a.txt", 5, "delta");
+        index.markApplied(1L, 7);
+        index.markApplied(2L, 3);
+        index.markApplied(1L, 9);
+
+        index.delete(1L, "");
+        index.refresh();
+
+        assertThat(index.search(1L, "delta", 0, 10).hits()).isEmpty();
+        assertThat(index.applied()).isEqualTo(Map.of(1L, 9L, 2L, 3L));
+    }
+}
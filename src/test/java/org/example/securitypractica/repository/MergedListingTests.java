@@ -0,0 +1,85 @@
+package org.example.securitypractica.repository;
+
+import io.minio.Result;
+import io.minio.messages.Contents;
+import io.minio.messages.Item;
+import org.example.securitypractica.entity.PackedObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MergedListingTests {
+
+    @Test
+    void mergesBothListingsInKeyOrder() throws Exception {
+        List<Item> merged = names(new MergedListing(
+                stored("user-1-files/a.txt", "user-1-files/c.txt"),
+                packed("user-1-files/b.txt", "user-1-files/d.txt")));
+
+        assertThat(merged).extracting(Item::objectName)
+                .containsExactly("user-1-files/a.txt", "user-1-files/b.txt", "user-1-files/c.txt", "user-1-files/d.txt");
+    }
+
+    @Test
+    void listsAFolderHoldingBothKindsOnce() throws Exception {
+        Iterator<Item> packed = List.<Item>of(new Contents("user-1-files/docs/"),
+                new PackIndex.PackedItem(entry("user-1-files/z.txt"))).iterator();
+
+        List<Item> merged = names(new MergedListing(
+                List.of(new Result<Item>(new Contents("user-1-files/docs/"))).iterator(), packed));
+
+        assertThat(merged).extracting(Item::objectName).containsExactly("user-1-files/docs/", "user-1-files/z.txt");
+    }
+
+    @Test
+    void passesListingFailuresThrough() {
+        Iterator<Result<Item>> stored = List.of(new Result<Item>(new IOException("boom"))).iterator();
+        MergedListing merged = new MergedListing(stored, packed("user-1-files/a.txt"));
+
+        assertThat(merged.hasNext()).isTrue();
+        assertThatThrownBy(() -> merged.next().get()).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void comparesKeysByCodePointLikeS3() {
+        assertThat(MergedListing.compareKeys("a/b", "a0")).isNegative();
+        assertThat(MergedListing.compareKeys("Z", "a")).isNegative();
+        assertThat(MergedListing.compareKeys("\uFFFD", "\uD83D\uDE00")).isNegative();
+        assertThat(MergedListing.compareKeys("ab", "ab")).isZero();
+        assertThat(MergedListing.compareKeys("ab", "a")).isPositive();
+    }
+
+    @Test
+    void skipsPastASubfolderWithTheNextGreaterKey() {
+        assertThat(PackIndex.after("user-1-files/docs/")).isEqualTo("user-1-files/docs0");
+        assertThat(PackIndex.likePrefix("user-1-files/50%_off\\")).isEqualTo("user-1-files/50\\%\\_off\\\\%");
+    }
+
+    private static List<Item> names(MergedListing listing) throws Exception {
+        List<Item> items = new ArrayList<>();
+        while (listing.hasNext()) items.add(listing.next().get());
+        return items;
+    }
+
+    private static Iterator<Result<Item>> stored(String... keys) {
+        List<Result<Item>> results = new ArrayList<>();
+        for (String key : keys) results.add(new Result<>(new PackIndex.PackedItem(entry(key))));
+        return results.iterator();
+    }
+
+    private static Iterator<Item> packed(String... keys) {
+        List<Item> items = new ArrayList<>();
+        for (String key : keys) items.add(new PackIndex.PackedItem(entry(key)));
+        return items.iterator();
+    }
+
+    private static PackedObject entry(String key) {
+        return new PackedObject(key, "user-1-packs/p", 0, 1, "d41d8cd98f00b204e9800998ecf8427e", "text/plain");
+    }
+}
@@ -0,0 +1,261 @@
+package org.example.securitypractica.repository;
+
+import com.sun.net.httpserver.HttpServer;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.example.securitypractica.exception.StorageUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs a real {@link MinioClient} against a local S3 stand-in whose responses can be delayed or failed one by one.
+ */
+class MinioCallsTests {
+
+    private LatencyInjectingS3 s3;
+    private ThreadPoolTaskExecutor executor;
+    private MinioShard shard;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3 = new LatencyInjectingS3();
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        MinioClient client = MinioClient.builder()
+                .endpoint("http://127.0.0.1:" + s3.port())
+                .credentials("minioadmin", "minioadmin")
+                .region("us-east-1")
+                .build();
+        shard = new MinioShard("default", "stub", "bucket", client);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3.stop();
+        executor.shutdown();
+    }
+
+    @Test
+    void slowReadIsHedgedWithADuplicate() throws Exception {
+        MinioCalls calls = calls(true, 100);
+        warmUp(calls);
+
+        s3.delayNext(Duration.ofSeconds(3));
+        int before = s3.requests();
+        long hedgesBefore = calls.hedgeCount();
+        long start = System.nanoTime();
+        List<Item> items = calls.read(shard, "list", this::listOne);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(items).extracting(Item::objectName).containsExactly("user-1-files/a.txt");
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(1));
+        assertThat(s3.requests() - before).isEqualTo(2);
+        assertThat(calls.hedgeCount() - hedgesBefore).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesStayWithinTheirBudget() throws Exception {
+        MinioCalls calls = calls(true, 0);
+        warmUp(calls);
+
+        s3.delayNext(Duration.ofMillis(100));
+        int before = s3.requests();
+        calls.read(shard, "list", this::listOne);
+
+        assertThat(s3.requests() - before).isEqualTo(1);
+        assertThat(calls.hedgeCount()).isZero();
+    }
+
+    @Test
+    void stalledReadTimesOutRelativeToObservedLatency() throws Exception {
+        MinioCalls calls = calls(false, 0);
+        warmUp(calls);
+
+        s3.delayNext(Duration.ofSeconds(5));
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> calls.read(shard, "list", this::listOne))
+                .isInstanceOf(StorageUnavailableException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void breakerOpensAfterRepeatedFailuresAndStopsCallingTheBackend() {
+        MinioCalls calls = calls(false, 0);
+        s3.failAll();
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> calls.read(shard, "list", this::listOne))
+                    .isNotInstanceOf(StorageUnavailableException.class);
+        }
+        int before = s3.requests();
+        assertThatThrownBy(() -> calls.read(shard, "list", this::listOne))
+                .isInstanceOf(StorageUnavailableException.class);
+        assertThat(s3.requests()).isEqualTo(before);
+    }
+
+    @Test
+    void listingAfterTheOpenPeriodDoesNotKeepTheBreakerHalfOpen() throws Exception {
+        MinioCalls calls = calls(false, 0, Duration.ofMillis(100));
+        s3.failAll();
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> calls.read(shard, "list", this::listOne))
+                    .isNotInstanceOf(StorageUnavailableException.class);
+        }
+        assertThatThrownBy(() -> calls.checkAvailable(shard)).isInstanceOf(StorageUnavailableException.class);
+
+        Thread.sleep(150);
+        s3.recover();
+        // Lazy listings check the breaker but never report back, so they must not use up the probe.
+        calls.checkAvailable(shard);
+        calls.checkAvailable(shard);
+
+        assertThat(calls.read(shard, "list", this::listOne)).hasSize(1);
+        assertThat(calls.read(shard, "list", this::listOne)).hasSize(1);
+        calls.checkAvailable(shard);
+    }
+
+    @Test
+    void missingObjectsDoNotOpenTheBreaker() {
+        MinioCalls calls = calls(false, 0);
+        s3.missingBucket();
+
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> calls.read(shard, "list", this::listOne))
+                    .isNotInstanceOf(StorageUnavailableException.class);
+        }
+        assertThat(s3.requests()).isEqualTo(5);
+    }
+
+    private MinioCalls calls(boolean hedging, int maxHedgePercent) {
+        return calls(hedging, maxHedgePercent, Duration.ofSeconds(30));
+    }
+
+    private MinioCalls calls(boolean hedging, int maxHedgePercent, Duration openDuration) {
+        return new MinioCalls(executor, hedging, 0.95, maxHedgePercent, 3,
+                Duration.ofMillis(200), Duration.ofSeconds(10), 3, openDuration);
+    }
+
+    private void warmUp(MinioCalls calls) throws Exception {
+        for (int i = 0; i < 40; i++) {
+            calls.read(shard, "list", this::listOne);
+        }
+    }
+
+    private List<Item> listOne() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (Result<Item> result : shard.client().listObjects(ListObjectsArgs.builder()
+                .bucket(shard.bucket()).prefix("user-1-files/").maxKeys(1).build())) {
+            items.add(result.get());
+            break;
+        }
+        return items;
+    }
+
+    /**
+     * Answers every ListObjectsV2 request with one object. Queued delays are applied to requests in arrival order.
+     */
+    private static final class LatencyInjectingS3 {
+        private static final String LISTING = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <ListBucketResult xmlns="http://s3.amazonaws.com/doc/2006-03-01/">
+                <Name>bucket</Name><Prefix>user-1-files/</Prefix><KeyCount>1</KeyCount><MaxKeys>1</MaxKeys>
+                <IsTruncated>false</IsTruncated>
+                <Contents><Key>user-1-files/a.txt</Key><LastModified>2024-01-01T00:00:00.000Z</LastModified>
+                <ETag>"d41d8cd98f00b204e9800998ecf8427e"</ETag><Size>1</Size><StorageClass>STANDARD</StorageClass></Contents>
+                </ListBucketResult>""";
+
+        private static final String NO_SUCH_BUCKET = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <Error><Code>NoSuchBucket</Code><Message>The specified bucket does not exist</Message>
+                <BucketName>bucket</BucketName><Resource>/bucket</Resource><RequestId>1</RequestId><HostId>1</HostId></Error>""";
+
+        private final HttpServer server;
+        private final Queue<Duration> delays = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile int status = 200;
+
+        LatencyInjectingS3() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                requests.incrementAndGet();
+                Duration delay = delays.poll();
+                try {
+                    if (delay != null) Thread.sleep(delay.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int code = status;
+                byte[] body = switch (code) {
+                    case 200 -> LISTING.getBytes(StandardCharsets.UTF_8);
+                    case 404 -> NO_SUCH_BUCKET.getBytes(StandardCharsets.UTF_8);
+                    default -> new byte[0];
+                };
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                try {
+                    exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+                    if (body.length > 0) {
+                        try (OutputStream os = exchange.getResponseBody()) {
+                            os.write(body);
+                        }
+                    }
+                } catch (IOException e) {
+                    // The client gave up on this request, which is what a hedge or timeout is expected to do.
+                } finally {
+                    exchange.close();
+                }
+            });
+            server.start();
+        }
+
+        int port() {
+            return server.getAddress().getPort();
+        }
+
+        int requests() {
+            return requests.get();
+        }
+
+        void delayNext(Duration delay) {
+            delays.add(delay);
+        }
+
+        void failAll() {
+            status = 500;
+        }
+
+        void recover() {
+            status = 200;
+        }
+
+        void missingBucket() {
+            status = 404;
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+}
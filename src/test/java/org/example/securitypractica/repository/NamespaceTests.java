@@ -0,0 +1,25 @@
+package org.example.securitypractica.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class NamespaceTests {
+
+    @Test
+    void splitsAKeyIntoTheRootAndOneNamePerLevel() {
+        assertThat(Namespace.split("user-1-files/a/b/c.txt")).containsExactly("user-1-files/", "a/", "b/", "c.txt");
+        assertThat(Namespace.split("user-1-trash/a/b/")).containsExactly("user-1-trash/", "a/", "b/");
+        assertThat(Namespace.split("user-1-files/")).containsExactly("user-1-files/");
+    }
+
+    @Test
+    void onlyTheUsersFilesAndTrashHaveARoot() {
+        assertThat(Namespace.rootOf("user-12-files/a.txt")).isEqualTo("user-12-files/");
+        assertThat(Namespace.rootOf("user-12-trash/x/")).isEqualTo("user-12-trash/");
+        assertThat(Namespace.rootOf("user-12-blobs/0f3a")).isNull();
+        assertThat(Namespace.rootOf("user-12-files")).isNull();
+        assertThatThrownBy(() -> Namespace.split("user-12-jobs/1.zip")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
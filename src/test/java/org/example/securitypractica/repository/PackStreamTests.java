@@ -0,0 +1,32 @@
+package org.example.securitypractica.repository;
+
+import org.example.securitypractica.entity.PackedObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackStreamTests {
+
+    @Test
+    void emptyFilesAtTheEndAreIndexedWithoutBeingRead() throws IOException {
+        PackStream stream = new PackStream(List.of(file("a.txt", "hello"), file("b.txt", ""), file("c.txt", "")));
+
+        // Like the MinIO client, read exactly the declared size and no further.
+        assertThat(stream.readNBytes(5)).isEqualTo("hello".getBytes(StandardCharsets.UTF_8));
+        List<PackedObject> entries = stream.entries("pack");
+
+        assertThat(entries).extracting(PackedObject::getObjectKey).containsExactly("a.txt", "b.txt", "c.txt");
+        assertThat(entries).extracting(PackedObject::getPackOffset).containsExactly(0L, 5L, 5L);
+        assertThat(entries.get(1).getEtag()).isEqualTo("d41d8cd98f00b204e9800998ecf8427e");
+    }
+
+    private static MinioRepository.PackedFile file(String key, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new MinioRepository.PackedFile(key, new ByteArrayResource(bytes), bytes.length, "text/plain");
+    }
+}
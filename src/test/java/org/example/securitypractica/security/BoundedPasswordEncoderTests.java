@@ -0,0 +1,144 @@
+package org.example.securitypractica.security;
+
+import org.example.securitypractica.exception.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedPasswordEncoderTests {
+
+    private static final int HASHING_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int LOGIN_STORM = 64;
+    private static final int REQUEST_THREADS = 8;
+
+    private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(10);
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private volatile CountDownLatch hashingGate;
+    private ThreadPoolTaskExecutor hashingExecutor;
+    private BoundedPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        hashingExecutor = new ThreadPoolTaskExecutor();
+        hashingExecutor.setCorePoolSize(HASHING_THREADS);
+        hashingExecutor.setMaxPoolSize(HASHING_THREADS);
+        hashingExecutor.setQueueCapacity(QUEUE_CAPACITY);
+        hashingExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        hashingExecutor.initialize();
+        encoder = new BoundedPasswordEncoder(countingEncoder(), hashingExecutor, Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        hashingExecutor.shutdown();
+    }
+
+    @Test
+    void encodesAndMatchesThroughThePool() {
+        String hash = encoder.encode("secret");
+
+        assertThat(encoder.matches("secret", hash)).isTrue();
+        assertThat(encoder.matches("wrong", hash)).isFalse();
+    }
+
+    @Test
+    void rejectsWhenPoolAndQueueAreFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < HASHING_THREADS + QUEUE_CAPACITY; i++) {
+            hashingExecutor.execute(() -> awaitQuietly(release));
+        }
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> encoder.encode("secret"))
+                .isInstanceOf(TooManyRequestsException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofMillis(100));
+
+        release.countDown();
+    }
+
+    @Test
+    void loginStormDoesNotStarveStorageTraffic() throws Exception {
+        String hash = bcrypt.encode("secret");
+        hashingGate = new CountDownLatch(1);
+
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> logins = new ArrayList<>();
+        for (int i = 0; i < LOGIN_STORM; i++) {
+            logins.add(requestThreads.submit(() -> {
+                try {
+                    encoder.matches("secret", hash);
+                    accepted.incrementAndGet();
+                } catch (TooManyRequestsException e) {
+                    rejected.incrementAndGet();
+                }
+            }));
+        }
+        Future<?> storageRequest = requestThreads.submit(() -> {
+        });
+
+        // Hashing is held, so every login that got in still occupies a request thread; the rest must stay free.
+        storageRequest.get(5, TimeUnit.SECONDS);
+
+        hashingGate.countDown();
+        for (Future<?> login : logins) login.get();
+        requestThreads.shutdown();
+
+        assertThat(peak.get()).isLessThanOrEqualTo(HASHING_THREADS);
+        assertThat(rejected.get()).isPositive();
+        assertThat(accepted.get() + rejected.get()).isEqualTo(LOGIN_STORM);
+    }
+
+    private PasswordEncoder countingEncoder() {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return track(() -> bcrypt.encode(rawPassword));
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return track(() -> bcrypt.matches(rawPassword, encodedPassword));
+            }
+        };
+    }
+
+    private <T> T track(Supplier<T> hashing) {
+        peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            if (hashingGate != null) awaitQuietly(hashingGate);
+            return hashing.get();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
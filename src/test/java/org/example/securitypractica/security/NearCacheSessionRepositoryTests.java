@@ -0,0 +1,157 @@
+package org.example.securitypractica.security;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearCacheSessionRepositoryTests {
+
+    @SuppressWarnings("unchecked")
+    private final SessionRepository<Session> delegate = mock(SessionRepository.class);
+    @SuppressWarnings("unchecked")
+    private final RedisOperations<String, Object> sessionRedisOperations = mock(RedisOperations.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final MapSession stored = new MapSession("session-1");
+
+    @BeforeEach
+    void setUp() {
+        stored.setLastAccessedTime(Instant.now());
+        when(delegate.findById("session-1")).thenReturn(stored);
+    }
+
+    @Test
+    void sessionIsServedFromMemoryUntilItsTtlRunsOut() throws InterruptedException {
+        NearCacheSessionRepository repository = repository(Duration.ofMillis(200));
+
+        NearCacheSessionRepository.CachedSession first = repository.findById("session-1");
+        assertThat(repository.findById("session-1")).isSameAs(first);
+        verify(delegate, times(1)).findById("session-1");
+
+        Thread.sleep(300);
+        assertThat(repository.findById("session-1")).isNotSameAs(first);
+        verify(delegate, times(2)).findById("session-1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void touchesAreWrittenBackInOneBatch() {
+        MapSession other = new MapSession("session-2");
+        when(delegate.findById("session-2")).thenReturn(other);
+        RedisOperations<String, Object> pipeline = mock(RedisOperations.class);
+        when(sessionRedisOperations.executePipelined(any(SessionCallback.class))).thenAnswer(invocation ->
+                invocation.<SessionCallback<Object>>getArgument(0).execute(pipeline));
+        NearCacheSessionRepository repository = repository(Duration.ofMinutes(1));
+
+        for (String id : List.of("session-1", "session-2", "session-1")) {
+            NearCacheSessionRepository.CachedSession session = repository.findById(id);
+            session.setLastAccessedTime(Instant.now());
+            repository.save(session);
+        }
+        verify(delegate, never()).save(any());
+
+        repository.flush();
+        verify(sessionRedisOperations, times(1)).executePipelined(any(SessionCallback.class));
+        verify(pipeline, times(2)).execute(any(RedisScript.class), anyList(), any(), any());
+
+        repository.flush();
+        verify(sessionRedisOperations, times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void attributeChangeIsSavedAtOnceAndAnnounced() {
+        NearCacheSessionRepository repository = repository(Duration.ofMinutes(1));
+
+        NearCacheSessionRepository.CachedSession session = repository.findById("session-1");
+        session.setAttribute("folder", "docs/");
+        repository.save(session);
+
+        verify(delegate).save(any());
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(NearCacheSessionRepository.INVALIDATION_CHANNEL), message.capture());
+        assertThat(message.getValue()).endsWith(":session-1");
+
+        // Our own announcement must not evict the session we have just cached.
+        repository.onMessage(new DefaultMessage(new byte[0], message.getValue().getBytes(StandardCharsets.UTF_8)), null);
+        assertThat(repository.findById("session-1")).isSameAs(session);
+
+        repository.save(session);
+        verify(delegate, times(1)).save(any());
+    }
+
+    @Test
+    void invalidationFromAnotherNodeEvictsTheSession() {
+        NearCacheSessionRepository repository = repository(Duration.ofMinutes(1));
+        NearCacheSessionRepository.CachedSession first = repository.findById("session-1");
+
+        repository.onMessage(new DefaultMessage(new byte[0], "other-node:session-1".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(repository.findById("session-1")).isNotSameAs(first);
+        verify(delegate, times(2)).findById("session-1");
+    }
+
+    @Test
+    void changeMadeDuringAnotherRequestsSaveIsNotLost() throws InterruptedException {
+        NearCacheSessionRepository repository = repository(Duration.ofMinutes(1));
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> savedValues = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            // Like the Redis session's delta, a save writes what is there when it starts.
+            savedValues.add(String.valueOf(invocation.<Session>getArgument(0).<Object>getAttribute("b")));
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(delegate).save(any());
+
+        NearCacheSessionRepository.CachedSession session = repository.findById("session-1");
+        Thread first = new Thread(() -> {
+            session.setAttribute("a", "1");
+            repository.save(session);
+        });
+        first.start();
+        assertThat(saving.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The second request changes the session while the first one is saving it, and saves after it.
+        Thread second = new Thread(() -> session.setAttribute("b", "2"));
+        second.start();
+        Thread.sleep(100);
+        release.countDown();
+        first.join();
+        second.join();
+        repository.save(session);
+
+        assertThat(savedValues).last().isEqualTo("2");
+    }
+
+    private NearCacheSessionRepository repository(Duration ttl) {
+        return new NearCacheSessionRepository(delegate, sessionRedisOperations, redisTemplate, ObservationRegistry.NOOP, ttl, 100);
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.securitypractica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.StorageChange;
+import org.example.securitypractica.repository.ChangeCursorRepository;
+import org.example.securitypractica.repository.StorageChangeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChangeFeedServiceTests {
+
+    private final StorageChangeRepository changeRepository = mock(StorageChangeRepository.class);
+    private final ChangeCursorRepository cursorRepository = mock(ChangeCursorRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    // What the mocked Redis holds.
+    private final Map<String, LinkedList<String>> lists = new HashMap<>();
+    private final Set<String> backlogUsers = new HashSet<>();
+    private final List<String> recorded = new ArrayList<>();
+    private ChangeFeedService feed;
+    private long seq;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(cursorRepository.allocate(anyLong(), anyInt())).thenAnswer(invocation -> seq += invocation.<Integer>getArgument(1));
+        when(changeRepository.saveAll(any())).thenAnswer(invocation -> {
+            for (StorageChange change : invocation.<Iterable<StorageChange>>getArgument(0)) recorded.add(change.getPath());
+            return List.of();
+        });
+        fakeRedis();
+        feed = new ChangeFeedService(changeRepository, cursorRepository, transactionTemplate, redisTemplate, new ObjectMapper());
+        ReflectionTestUtils.setField(feed, "maxUnrecorded", 100);
+    }
+
+    @Test
+    void failureToRecordDoesNotFailTheWriteAndIsRetriedInOrder() {
+        when(cursorRepository.allocate(anyLong(), anyInt()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenAnswer(invocation -> seq += invocation.<Integer>getArgument(1));
+
+        feed.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, "a.txt", null, 1L));
+        feed.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, "b.txt", null, 1L));
+        feed.onStorageChange(StorageChangeEvent.of(2L, ChangeType.UPLOAD, "c.txt", null, 1L));
+        assertThat(recorded).containsExactly("c.txt");
+
+        feed.retryUnrecorded();
+        assertThat(recorded).containsExactly("c.txt", "a.txt", "b.txt");
+
+        feed.onStorageChange(StorageChangeEvent.of(1L, ChangeType.DELETE, "a.txt", null, null));
+        assertThat(recorded).containsExactly("c.txt", "a.txt", "b.txt", "a.txt");
+    }
+
+    @Test
+    void backlogLeftByAnotherNodeIsRecorded() {
+        feed.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, "a.txt", null, 1L));
+        lists.computeIfAbsent("storage:changes:unrecorded:2", key -> new LinkedList<>())
+                .add("{\"userId\":2,\"changes\":[{\"type\":\"UPLOAD\",\"path\":\"b.txt\",\"size\":1}]}");
+        backlogUsers.add("2");
+
+        feed.retryUnrecorded();
+
+        assertThat(recorded).containsExactly("a.txt", "b.txt");
+        assertThat(backlogUsers).isEmpty();
+        assertThat(lists.get("storage:changes:unrecorded:2")).isEmpty();
+    }
+
+    @Test
+    void overflowingBacklogSendsFeedReadersToASnapshot() {
+        ReflectionTestUtils.setField(feed, "maxUnrecorded", 2);
+        when(cursorRepository.allocate(anyLong(), anyInt()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenAnswer(invocation -> seq += invocation.<Integer>getArgument(1));
+
+        for (String path : List.of("a.txt", "b.txt", "c.txt", "d.txt")) {
+            feed.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, path, null, 1L));
+        }
+        feed.retryUnrecorded();
+
+        verify(cursorRepository).markLost(1L);
+        assertThat(recorded).containsExactly("d.txt");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fakeRedis() {
+        ListOperations<String, String> listOperations = mock(ListOperations.class);
+        SetOperations<String, String> setOperations = mock(SetOperations.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForList()).thenReturn(listOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(listOperations.rightPush(anyString(), anyString())).thenAnswer(invocation -> {
+            LinkedList<String> list = lists.computeIfAbsent(invocation.getArgument(0), key -> new LinkedList<>());
+            list.add(invocation.getArgument(1));
+            return (long) list.size();
+        });
+        when(listOperations.index(anyString(), eq(0L))).thenAnswer(invocation ->
+                lists.getOrDefault(invocation.<String>getArgument(0), new LinkedList<>()).peekFirst());
+        when(listOperations.leftPop(anyString())).thenAnswer(invocation -> lists.get(invocation.<String>getArgument(0)).pollFirst());
+        when(listOperations.size(anyString())).thenAnswer(invocation ->
+                (long) lists.getOrDefault(invocation.<String>getArgument(0), new LinkedList<>()).size());
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation -> lists.remove(invocation.<String>getArgument(0)) != null);
+        when(setOperations.add(anyString(), any(String[].class))).thenAnswer(invocation -> {
+            backlogUsers.add(invocation.getArgument(1));
+            return 1L;
+        });
+        when(setOperations.remove(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            backlogUsers.remove(invocation.<Object>getArgument(1));
+            return 1L;
+        });
+        when(setOperations.members(anyString())).thenAnswer(invocation -> Set.copyOf(backlogUsers));
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.securitypractica.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentChunkerTests {
+
+    private final ContentChunker chunker = new ContentChunker(2 * 1024, 8 * 1024, 32 * 1024);
+
+    @Test
+    void chunksCoverTheWholeStreamWithinSizeLimits() throws IOException {
+        byte[] content = random(1_000_000, 1);
+
+        List<ContentChunker.Chunk> chunks = chunker.chunk(new ByteArrayInputStream(content));
+
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ContentChunker.Chunk chunk = chunks.get(i);
+            assertThat(chunk.offset()).isEqualTo(offset);
+            assertThat(chunk.length()).isLessThanOrEqualTo(32 * 1024);
+            if (i < chunks.size() - 1) assertThat(chunk.length()).isGreaterThanOrEqualTo(2 * 1024);
+            offset += chunk.length();
+        }
+        assertThat(offset).isEqualTo(content.length);
+        assertThat(chunks.size()).isBetween(1_000_000 / (32 * 1024), 1_000_000 / (2 * 1024));
+    }
+
+    @Test
+    void insertionOnlyChangesNearbyChunks() throws IOException {
+        byte[] original = random(1_000_000, 2);
+        byte[] edited = new byte[original.length + 10];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        System.arraycopy(original, 500_000, edited, 500_010, original.length - 500_000);
+
+        Set<String> before = hashes(chunker.chunk(new ByteArrayInputStream(original)));
+        List<ContentChunker.Chunk> after = chunker.chunk(new ByteArrayInputStream(edited));
+
+        long changed = after.stream().filter(chunk -> !before.contains(chunk.sha256())).count();
+        assertThat(changed).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void teeProducesTheSameChunksAsReadingDirectly() throws IOException {
+        byte[] content = random(300_000, 3);
+        ContentChunker.Signature signature = chunker.newSignature();
+
+        try (InputStream in = signature.tee(new ByteArrayInputStream(content))) {
+            byte[] buffer = new byte[777];
+            while (in.read(buffer) != -1) {
+                in.read();
+            }
+        }
+
+        assertThat(signature.size()).isEqualTo(content.length);
+        assertThat(signature.finish()).isEqualTo(chunker.chunk(new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    void averageSizeMustBeAPowerOfTwo() {
+        assertThatThrownBy(() -> new ContentChunker(1024, 3000, 8192)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Set<String> hashes(List<ContentChunker.Chunk> chunks) {
+        return chunks.stream().map(ContentChunker.Chunk::sha256).collect(Collectors.toSet());
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.securitypractica.service;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.example.securitypractica.entity.ChangeCursor;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.StorageChange;
+import org.example.securitypractica.repository.ChangeCursorRepository;
+import org.example.securitypractica.repository.ContentIndex;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.StorageChangeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContentIndexServiceTests {
+
+    private final ContentIndex contentIndex = new ContentIndex(new ByteBuffersDirectory());
+    private final TextExtractor textExtractor = mock(TextExtractor.class);
+    private final MinioRepository minioRepository = mock(MinioRepository.class);
+    private final StorageChangeRepository changeRepository = mock(StorageChangeRepository.class);
+    private final ChangeCursorRepository cursorRepository = mock(ChangeCursorRepository.class);
+    private ContentIndexService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(textExtractor.supports(anyString())).thenReturn(true);
+        when(textExtractor.extract(any(), anyString())).thenAnswer(invocation ->
+                new String(invocation.<ByteArrayInputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8));
+        when(minioRepository.getObject(anyString())).thenAnswer(invocation ->
+                new ByteArrayInputStream(("tenant agreement " + invocation.getArgument(0)).getBytes(StandardCharsets.UTF_8)));
+        service = new ContentIndexService(contentIndex, textExtractor, minioRepository, changeRepository, cursorRepository,
+                true, DataSize.ofMegabytes(20), Duration.ofMinutes(1), 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.destroy();
+        contentIndex.close();
+    }
+
+    @Test
+    void changesMadeOnAnyNodeAreAppliedInFeedOrder() {
+        cursor(4, 0);
+        feed(0, change(1, ChangeType.UPLOAD, "a.txt", null),
+                change(2, ChangeType.MOVE, "a.txt", "b.txt"),
+                change(3, ChangeType.UPLOAD, "c.txt", null),
+                change(4, ChangeType.DELETE, "c.txt", null));
+
+        service.catchUp(1L);
+        contentIndex.refresh();
+
+        assertThat(paths()).containsExactly("b.txt");
+        assertThat(contentIndex.applied()).isEqualTo(Map.of(1L, 4L));
+    }
+
+    @Test
+    void aFeedCompactedPastTheIndexRebuildsTheUserFromAListing() {
+        contentIndex.index(1L, "deleted-long-ago.txt", 10, "tenant agreement");
+        contentIndex.markApplied(1L, 2);
+        service = new ContentIndexService(contentIndex, textExtractor, minioRepository, changeRepository, cursorRepository,
+                true, DataSize.ofMegabytes(20), Duration.ofMinutes(1), 1, 10);
+        cursor(6, 5);
+        Item kept = mock(Item.class);
+        when(kept.objectName()).thenReturn("user-1-files/kept.txt");
+        when(kept.size()).thenReturn(10L);
+        when(minioRepository.list("user-1-files/", true)).thenReturn(List.of(new Result<>(kept)));
+        feed(5, change(6, ChangeType.UPLOAD, "new.txt", null));
+
+        service.catchUp(1L);
+        contentIndex.refresh();
+
+        assertThat(paths()).containsExactlyInAnyOrder("kept.txt", "new.txt");
+        assertThat(contentIndex.applied()).isEqualTo(Map.of(1L, 6L));
+    }
+
+    private void cursor(long lastSeq, long compactedSeq) {
+        ChangeCursor cursor = new ChangeCursor();
+        cursor.setUserId(1L);
+        cursor.setLastSeq(lastSeq);
+        cursor.setCompactedSeq(compactedSeq);
+        when(cursorRepository.findById(1L)).thenReturn(Optional.of(cursor));
+    }
+
+    private void feed(long since, StorageChange... changes) {
+        when(changeRepository.findByUserIdAndSeqGreaterThanOrderBySeq(eq(1L), eq(since), any())).thenReturn(List.of(changes));
+    }
+
+    private static StorageChange change(long seq, ChangeType type, String path, String targetPath) {
+        StorageChange change = new StorageChange();
+        change.setUserId(1L);
+        change.setSeq(seq);
+        change.setType(type);
+        change.setPath(path);
+        change.setTargetPath(targetPath);
+        change.setSize(type == ChangeType.UPLOAD ? 10L : null);
+        return change;
+    }
+
+    private List<String> paths() {
+        return contentIndex.search(1L, "tenant", 0, 10).hits().stream().map(ContentIndex.Hit::path).toList();
+    }
+}
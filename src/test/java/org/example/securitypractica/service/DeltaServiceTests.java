@@ -0,0 +1,115 @@
+package org.example.securitypractica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.example.securitypractica.dto.DeltaManifestDto;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeltaServiceTests {
+
+    private final MinioRepository minioRepository = mock(MinioRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final DeltaService deltaService = new DeltaService(minioRepository, new ObjectMapper(), Runnable::run, userRepository);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(deltaService, "signatureGrace", Duration.ofHours(1));
+        ReflectionTestUtils.setField(deltaService, "partSize", DataSize.ofMegabytes(8));
+    }
+
+    @Test
+    void copyRangeThatOverflowsIsRejected() {
+        Item base = item("user-1-files/a.bin", "abc", ZonedDateTime.now());
+        when(base.size()).thenReturn(100L);
+        DeltaManifestDto manifest = new DeltaManifestDto("abc",
+                List.of(new DeltaManifestDto.Segment(DeltaManifestDto.Op.COPY, 10, Long.MAX_VALUE)));
+
+        assertThatThrownBy(() -> deltaService.apply("user-1-files/a.bin", base, manifest, InputStream.nullInputStream(), 0, null))
+                .isInstanceOf(MyBadRequestException.class)
+                .hasMessageContaining("outside the file");
+    }
+
+    @Test
+    void emptyDeltaIsRejected() {
+        Item base = item("user-1-files/a.bin", "abc", ZonedDateTime.now());
+        DeltaManifestDto manifest = new DeltaManifestDto("abc", List.of());
+
+        assertThatThrownBy(() -> deltaService.apply("user-1-files/a.bin", base, manifest, InputStream.nullInputStream(), 0, null))
+                .isInstanceOf(MyBadRequestException.class)
+                .hasMessageContaining("no segments");
+    }
+
+    @Test
+    void deltaNeedingMorePartsThanComposeTakesIsRejected() {
+        Item base = item("user-1-files/a.bin", "abc", ZonedDateTime.now());
+        when(base.size()).thenReturn((DeltaService.MAX_PARTS + 1) * DeltaService.MIN_PART_SIZE);
+        List<DeltaManifestDto.Segment> segments = LongStream.rangeClosed(0, DeltaService.MAX_PARTS)
+                .mapToObj(i -> new DeltaManifestDto.Segment(DeltaManifestDto.Op.COPY, i * DeltaService.MIN_PART_SIZE, DeltaService.MIN_PART_SIZE))
+                .toList();
+        DeltaManifestDto manifest = new DeltaManifestDto("abc", segments);
+
+        assertThatThrownBy(() -> deltaService.apply("user-1-files/a.bin", base, manifest, InputStream.nullInputStream(), 0, null))
+                .isInstanceOf(MyBadRequestException.class)
+                .hasMessageContaining("parts");
+        verify(minioRepository, never()).putFile(any(), any(), anyLong(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sweepRemovesOnlySignaturesOfVersionsThatAreGone() {
+        ZonedDateTime old = ZonedDateTime.now().minusDays(1);
+        when(userRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(1L));
+        listing("user-1-signatures/",
+                item("user-1-signatures/live.json", "x", old),
+                item("user-1-signatures/trashed.json", "x", old),
+                item("user-1-signatures/deleted.json", "x", old),
+                item("user-1-signatures/just-written.json", "x", ZonedDateTime.now()));
+        listing("user-1-files/", item("user-1-files/a.bin", "live", old));
+        listing("user-1-trash/", item("user-1-trash/1/b.bin", "trashed", old));
+
+        deltaService.sweepSignatures();
+
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(minioRepository).deleteAll(deleted.capture());
+        assertThat(deleted.getValue()).containsExactly("user-1-signatures/deleted.json");
+    }
+
+    private void listing(String prefix, Item... items) {
+        when(minioRepository.list(prefix, true)).thenReturn(Arrays.stream(items).map(Result::new).toList());
+    }
+
+    private static Item item(String name, String etag, ZonedDateTime lastModified) {
+        Item item = mock(Item.class);
+        when(item.objectName()).thenReturn(name);
+        when(item.etag()).thenReturn("\"" + etag + "\"");
+        when(item.lastModified()).thenReturn(lastModified);
+        when(item.size()).thenReturn(0L);
+        return item;
+    }
+}
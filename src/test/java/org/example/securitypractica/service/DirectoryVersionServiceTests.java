@@ -0,0 +1,95 @@
+package org.example.securitypractica.service;
+
+import io.minio.messages.Item;
+import org.example.securitypractica.entity.ChangeType;
+import org.example.securitypractica.entity.DirectoryVersion;
+import org.example.securitypractica.repository.DirectoryVersionRepository;
+import org.example.securitypractica.repository.MinioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DirectoryVersionServiceTests {
+
+    private final DirectoryVersionRepository versionRepository = mock(DirectoryVersionRepository.class);
+    private final MinioRepository minioRepository = mock(MinioRepository.class);
+    private final DirectoryVersionService service = new DirectoryVersionService(versionRepository, minioRepository);
+    private final Map<String, Long> versions = new TreeMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(versionRepository.bump(anyLong(), anyString())).thenAnswer(invocation -> {
+            versions.merge(invocation.getArgument(1), 1L, Long::sum);
+            return 1;
+        });
+        when(versionRepository.findByUserIdAndPathIn(anyLong(), any())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(1).stream()
+                        .filter(versions::containsKey)
+                        .map(path -> {
+                            DirectoryVersion row = new DirectoryVersion();
+                            row.setUserId(1L);
+                            row.setPath(path);
+                            row.setVersion(versions.get(path));
+                            return row;
+                        })
+                        .toList());
+    }
+
+    @Test
+    void uploadIntoAnExistingFolderOnlyChangesThatFolder() {
+        contents("a/b/", "a/b/old.txt", "a/b/new.txt");
+
+        String parent = service.etag("a/", 1L);
+        service.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, "a/b/new.txt", null, 1L));
+
+        assertThat(versions).containsOnlyKeys("a/b/");
+        assertThat(service.etag("a/", 1L)).isEqualTo(parent);
+    }
+
+    @Test
+    void folderThatAppearsWithTheUploadChangesItsParentsToo() {
+        contents("a/b/", "a/b/new.txt");
+        contents("a/", "a/b/new.txt", "a/other.txt");
+
+        service.onStorageChange(StorageChangeEvent.of(1L, ChangeType.UPLOAD, "a/b/new.txt", null, 1L));
+
+        assertThat(versions).containsOnlyKeys("a/b/", "a/");
+    }
+
+    @Test
+    void movingAFolderChangesItsSubtreeButNotItsSiblings() {
+        String inside = service.etag("a/b/c/", 1L);
+        String sibling = service.etag("a/x/", 1L);
+        contents("d/", "d/b/c/file.txt", "d/y.txt");
+
+        service.onStorageChange(StorageChangeEvent.of(1L, ChangeType.MOVE, "a/b/", "d/b/", null));
+
+        assertThat(service.etag("a/b/c/", 1L)).isNotEqualTo(inside);
+        assertThat(service.etag("a/x/", 1L)).isEqualTo(sibling);
+        assertThat(versions).containsOnlyKeys("a/", "/a/b/", "d/", "/d/b/");
+    }
+
+    private void contents(String folder, String... paths) {
+        List<Item> items = Arrays.stream(paths).map(path -> {
+            Item item = mock(Item.class);
+            when(item.objectName()).thenReturn("user-1-files/" + path);
+            return item;
+        }).toList();
+        when(minioRepository.peek(eq("user-1-files/" + folder), eq(true), anyInt())).thenAnswer(invocation ->
+                items.subList(0, Math.min(items.size(), invocation.<Integer>getArgument(2))));
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.securitypractica.service;
+
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.example.securitypractica.repository.MinioRepository;
+import org.example.securitypractica.repository.MinioShard;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FolderMarkerMigrationTests {
+
+    private final MinioRepository minioRepository = mock(MinioRepository.class);
+    private final MinioShard shard = mock(MinioShard.class);
+    private final FolderMarkerMigration migration = new FolderMarkerMigration(minioRepository, Runnable::run);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void markerOfAFolderEmptiedSinceTheListingIsKept() {
+        when(minioRepository.shards()).thenReturn(List.of(shard));
+        listing("user-", null, "user-1-files/a/", "user-1-files/a/x.txt", "user-1-files/b/", "user-1-files/b/y.txt");
+        // x.txt has been deleted by the time the batch is pruned.
+        listing("user-1-files/a/", "user-1-files/a/");
+        listing("user-1-files/b/", "user-1-files/b/", "user-1-files/b/y.txt");
+
+        migration.migrate();
+
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(minioRepository).deleteAll(eq(shard), deleted.capture());
+        assertThat(deleted.getValue()).containsExactly("user-1-files/b/");
+    }
+
+    private void listing(String prefix, String startAfter, String... keys) {
+        List<Result<Item>> results = Arrays.stream(keys).map(key -> {
+            Item item = mock(Item.class);
+            when(item.objectName()).thenReturn(key);
+            return new Result<>(item);
+        }).toList();
+        when(minioRepository.list(shard, prefix, true, startAfter)).thenReturn(results);
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.securitypractica.service;
+
+import org.example.securitypractica.config.StorageLimitsProperties;
+import org.example.securitypractica.exception.TooManyRequestsException;
+import org.example.securitypractica.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HeavyOperationSchedulerTests {
+
+    @Test
+    void freedSlotGoesToTheUserServedLongestAgo() throws Exception {
+        HeavyOperationScheduler scheduler = scheduler(1, 4, true);
+        HeavyOperationScheduler.Permit first = scheduler.acquire(1L, true);
+
+        List<Long> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        startWaiter(scheduler, 1L, order, done);
+        awaitWaiting(scheduler, 1);
+        startWaiter(scheduler, 1L, order, done);
+        awaitWaiting(scheduler, 2);
+        startWaiter(scheduler, 2L, order, done);
+        awaitWaiting(scheduler, 3);
+
+        first.close();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly(2L, 1L, 1L);
+    }
+
+    @Test
+    void userAtTheirLimitDoesNotBlockOthers() throws Exception {
+        HeavyOperationScheduler scheduler = scheduler(4, 1, true);
+        HeavyOperationScheduler.Permit running = scheduler.acquire(1L, true);
+
+        List<Long> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        startWaiter(scheduler, 1L, order, done);
+        awaitWaiting(scheduler, 1);
+
+        try (HeavyOperationScheduler.Permit other = scheduler.acquire(2L, true)) {
+            assertThat(order).isEmpty();
+        }
+        running.close();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly(1L);
+    }
+
+    @Test
+    void limitReachedOnOtherNodesEndsInTooManyRequests() {
+        HeavyOperationScheduler scheduler = scheduler(4, 1, false);
+
+        assertThatThrownBy(() -> scheduler.acquire(1L, true)).isInstanceOf(TooManyRequestsException.class);
+        assertThat(scheduler.waiting()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void slowLeaseCallDoesNotHoldUpOtherUsers() throws Exception {
+        CountDownLatch leasing = new CountDownLatch(1);
+        CountDownLatch redisAnswers = new CountDownLatch(1);
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), eq(List.of("storage:heavy:1")), any(Object[].class))).thenAnswer(invocation -> {
+            leasing.countDown();
+            redisAnswers.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+        when(redis.execute(any(RedisScript.class), eq(List.of("storage:heavy:2")), any(Object[].class))).thenReturn(1L);
+        HeavyOperationScheduler scheduler = scheduler(2, 1, redis);
+
+        List<Long> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        startWaiter(scheduler, 1L, order, done);
+        assertThat(leasing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        try (HeavyOperationScheduler.Permit other = scheduler.acquire(2L, true)) {
+            assertThat(order).isEmpty();
+        }
+        redisAnswers.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly(1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HeavyOperationScheduler scheduler(int nodeSlots, int perUser, boolean leasesGranted) {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(leasesGranted ? 1L : 0L);
+        return scheduler(nodeSlots, perUser, redis);
+    }
+
+    private HeavyOperationScheduler scheduler(int nodeSlots, int perUser, StringRedisTemplate redis) {
+        when(redis.opsForZSet()).thenReturn(mock(ZSetOperations.class));
+
+        StorageLimitsProperties.RoleLimits limits = new StorageLimitsProperties.RoleLimits(
+                DataSize.ofBytes(0), DataSize.ofBytes(0), DataSize.ofMegabytes(8), perUser);
+        StorageLimitsProperties properties = new StorageLimitsProperties(true, nodeSlots, Duration.ofMillis(500),
+                Duration.ofSeconds(10), Duration.ofMinutes(5), limits, Map.of());
+        UserRepository users = mock(UserRepository.class);
+        when(users.findById(anyLong())).thenReturn(Optional.empty());
+        return new HeavyOperationScheduler(redis, properties, new UserLimits(properties, users));
+    }
+
+    private static void startWaiter(HeavyOperationScheduler scheduler, Long userId, List<Long> order, CountDownLatch done) {
+        Thread.ofPlatform().daemon().start(() -> {
+            try (HeavyOperationScheduler.Permit permit = scheduler.acquire(userId, false)) {
+                order.add(userId);
+            } finally {
+                done.countDown();
+            }
+        });
+    }
+
+    private static void awaitWaiting(HeavyOperationScheduler scheduler, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.waiting() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(scheduler.waiting()).isEqualTo(expected);
+    }
+}
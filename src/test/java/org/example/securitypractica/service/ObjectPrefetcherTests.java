@@ -0,0 +1,117 @@
+package org.example.securitypractica.service;
+
+import io.minio.messages.Item;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ObjectPrefetcherTests {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void objectsAreReturnedInOrderWhileLaterOnesAreFetchedAhead() throws Exception {
+        List<Item> items = items(10, 5);
+        CountDownLatch aheadStarted = new CountDownLatch(4);
+        AtomicInteger opened = new AtomicInteger();
+        Function<String, InputStream> opener = key -> {
+            opened.incrementAndGet();
+            aheadStarted.countDown();
+            return content(key);
+        };
+
+        List<String> read = new ArrayList<>();
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(items, opener, executor, 4, 1024)) {
+            try (InputStream first = prefetcher.next()) {
+                // The first call starts a whole window of requests, not just the one it returns.
+                assertThat(aheadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+                read.add(new String(first.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            for (int i = 1; i < items.size(); i++) {
+                try (InputStream is = prefetcher.next()) {
+                    read.add(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        assertThat(read).containsExactly("obj-0", "obj-1", "obj-2", "obj-3", "obj-4",
+                "obj-5", "obj-6", "obj-7", "obj-8", "obj-9");
+        assertThat(opened).hasValue(10);
+    }
+
+    @Test
+    void objectsFetchedAheadButNotConsumedAreClosed() throws Exception {
+        Set<String> open = ConcurrentHashMap.newKeySet();
+        Function<String, InputStream> opener = key -> {
+            open.add(key);
+            return new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public void close() {
+                    open.remove(key);
+                }
+            };
+        };
+
+        // Larger than the buffer, so the prefetched streams stay open until consumed or released.
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(items(5, 4096), opener, executor, 3, 1024)) {
+            prefetcher.next().close();
+        }
+
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(open).isEmpty();
+    }
+
+    @Test
+    void failedFetchIsReportedWhenItsTurnComes() throws Exception {
+        Function<String, InputStream> opener = key -> {
+            if (key.equals("obj-1")) throw new IllegalStateException("MinIO download error");
+            return content(key);
+        };
+
+        try (ObjectPrefetcher prefetcher = new ObjectPrefetcher(items(3, 5), opener, executor, 2, 1024)) {
+            assertThat(prefetcher.next().readAllBytes()).isEqualTo("obj-0".getBytes(StandardCharsets.UTF_8));
+            assertThatThrownBy(prefetcher::next)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("MinIO download error");
+        }
+    }
+
+    private static List<Item> items(int count, long size) {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Item item = mock(Item.class);
+            when(item.objectName()).thenReturn("obj-" + i);
+            when(item.size()).thenReturn(size);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static InputStream content(String key) {
+        return new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
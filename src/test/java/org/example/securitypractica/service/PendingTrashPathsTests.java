@@ -0,0 +1,58 @@
+package org.example.securitypractica.service;
+
+import org.example.securitypractica.repository.TrashItemRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PendingTrashPathsTests {
+
+    private final TrashItemRepository repository = mock(TrashItemRepository.class);
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+
+    @Test
+    void pathsAreQueriedOncePerUserWhileCached() {
+        PendingTrashPaths pending = new PendingTrashPaths(repository, redis, true, Duration.ofMinutes(1), 100);
+        when(repository.findPendingPaths(1L)).thenReturn(List.of("docs/"));
+
+        assertThat(pending.get(1L)).containsExactly("docs/");
+        assertThat(pending.get(1L)).containsExactly("docs/");
+
+        verify(repository, times(1)).findPendingPaths(1L);
+    }
+
+    @Test
+    void invalidationIsPublishedAndEvictsOnEveryNode() {
+        PendingTrashPaths local = new PendingTrashPaths(repository, redis, true, Duration.ofMinutes(1), 100);
+        PendingTrashPaths remote = new PendingTrashPaths(repository, redis, true, Duration.ofMinutes(1), 100);
+        when(repository.findPendingPaths(1L)).thenReturn(List.of(), List.of(), List.of("docs/"));
+        local.get(1L);
+        remote.get(1L);
+
+        local.invalidate(1L);
+        verify(redis).convertAndSend(PendingTrashPaths.INVALIDATION_CHANNEL, "1");
+        remote.onMessage(new DefaultMessage(PendingTrashPaths.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "1".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(remote.get(1L)).containsExactly("docs/");
+    }
+
+    @Test
+    void expiredEntriesAreQueriedAgain() {
+        PendingTrashPaths pending = new PendingTrashPaths(repository, redis, true, Duration.ZERO, 100);
+        when(repository.findPendingPaths(1L)).thenReturn(List.of(), List.of("docs/"));
+
+        assertThat(pending.get(1L)).isEmpty();
+        assertThat(pending.get(1L)).containsExactly("docs/");
+    }
+}
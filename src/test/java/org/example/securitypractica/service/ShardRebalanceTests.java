@@ -0,0 +1,120 @@
+package org.example.securitypractica.service;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import org.example.securitypractica.repository.MinioShard;
+import org.example.securitypractica.repository.MinioShards;
+import org.example.securitypractica.repository.ShardRouter;
+import org.example.securitypractica.repository.UserShardRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two buckets of one MinIO container stand in for two separate clusters.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@Testcontainers
+class ShardRebalanceTests {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.endpoint", minio::getS3URL);
+        registry.add("minio.access-key", () -> "minioadmin");
+        registry.add("minio.secret-key", () -> "minioadmin");
+        registry.add("minio.shards[0].name", () -> "east");
+        registry.add("minio.shards[0].bucket-name", () -> "shard-east");
+        registry.add("minio.shards[1].name", () -> "west");
+        registry.add("minio.shards[1].bucket-name", () -> "shard-west");
+        registry.add("storage.shards.assignment-ttl", () -> "0s");
+        registry.add("storage.shards.rebalance.grace", () -> "0s");
+
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private ShardRebalanceService rebalanceService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private UserShardRepository userShardRepository;
+
+    @Autowired
+    private MinioShards shards;
+
+    @Test
+    void newUsersAreStoredOnTheirRingShard() {
+        Long userId = 501L;
+        storageService.uploadFiles("", List.of(file("hello.txt")), userId);
+
+        MinioShard expected = shards.get(shardRouter.ringShardFor(userId));
+        assertThat(countObjects(expected, "user-501-")).isEqualTo(1);
+        assertThat(countObjects(other(expected), "user-501-")).isZero();
+    }
+
+    @Test
+    void movedUserKeepsAllFilesOnTheNewShard() {
+        Long userId = 502L;
+        MinioShard ringShard = shards.get(shardRouter.ringShardFor(userId));
+        MinioShard wrongShard = other(ringShard);
+        userShardRepository.insertIfAbsent(userId, wrongShard.name(), Instant.now());
+
+        storageService.uploadFiles("", List.of(file("docs/a.txt"), file("docs/b.txt"), file("top.txt")), userId);
+        storageService.createDirectory("empty/", userId);
+        assertThat(countObjects(wrongShard, "user-502-")).isEqualTo(4);
+
+        rebalanceService.moveUser(userId, ringShard.name());
+
+        assertThat(countObjects(wrongShard, "user-502-")).isZero();
+        assertThat(countObjects(ringShard, "user-502-")).isEqualTo(4);
+        assertThat(storageService.listItems("docs/", userId)).hasSize(2);
+        assertThat(storageService.getResource("empty/", userId).name()).isEqualTo("empty");
+        assertThat(userShardRepository.findById(userId).orElseThrow().getShard()).isEqualTo(ringShard.name());
+    }
+
+    private MinioShard other(MinioShard shard) {
+        return shards.all().stream().filter(candidate -> candidate != shard).findFirst().orElseThrow();
+    }
+
+    private long countObjects(MinioShard shard, String prefix) {
+        MinioClient client = shard.client();
+        long count = 0;
+        for (var ignored : client.listObjects(ListObjectsArgs.builder()
+                .bucket(shard.bucket()).prefix(prefix).recursive(true).build())) {
+            count++;
+        }
+        return count;
+    }
+
+    private static MockMultipartFile file(String name) {
+        return new MockMultipartFile("files", name, "text/plain", name.getBytes());
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.securitypractica.service;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import io.minio.messages.Item;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.example.securitypractica.dto.ArchiveFormat;
+import org.example.securitypractica.repository.MinioRepository;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TarServiceTests {
+
+    @Test
+    void precomputedLengthMatchesWrittenArchive() throws IOException {
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        entries.put("empty.txt", 0);
+        entries.put("one-byte.bin", 1);
+        entries.put("record.bin", 512);
+        entries.put("record-and-a-bit.bin", 513);
+        entries.put("docs/", 0);
+        entries.put("docs/" + "very-long-name-".repeat(8) + ".txt", 1000);
+        entries.put("docs/" + "x".repeat(95), 10);
+        entries.put("docs/отчёт-" + "ж".repeat(50) + ".pdf", 20_000);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long expectedEntries = 0;
+        try (TarArchiveOutputStream tar = TarService.openTarStream(output)) {
+            for (Map.Entry<String, Integer> spec : entries.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(spec.getKey());
+                if (!entry.isDirectory()) entry.setSize(spec.getValue());
+                tar.putArchiveEntry(entry);
+                tar.write(new byte[spec.getValue()]);
+                tar.closeArchiveEntry();
+                expectedEntries += TarService.entryLength(spec.getKey(), spec.getValue());
+            }
+            tar.finish();
+        }
+
+        assertThat(TarService.archiveLength(expectedEntries)).isEqualTo(output.size());
+    }
+
+    @Test
+    void emptyArchiveIsEndOfArchiveMarkerOnly() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = TarService.openTarStream(output)) {
+            tar.finish();
+        }
+
+        assertThat(TarService.archiveLength(0)).isEqualTo(output.size());
+    }
+
+    @Test
+    void everyRangeMatchesTheFullArchive() {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("src/docs/", new byte[0]);
+        files.put("src/docs/" + "very-long-name-".repeat(8) + ".txt", content(1000, 1));
+        files.put("src/docs/record.bin", content(512, 2));
+        files.put("src/empty.txt", new byte[0]);
+        files.put("src/report.pdf", content(3000, 3));
+        MinioRepository minioRepository = mock(MinioRepository.class);
+        List<Item> items = new ArrayList<>();
+        files.forEach((key, bytes) -> {
+            Item item = mock(Item.class);
+            when(item.objectName()).thenReturn(key);
+            when(item.size()).thenReturn((long) bytes.length);
+            when(item.lastModified()).thenReturn(ZonedDateTime.parse("2024-05-01T10:00:00Z"));
+            items.add(item);
+            when(minioRepository.getObject(key)).thenAnswer(invocation -> new ByteArrayInputStream(bytes));
+            when(minioRepository.getObject(eq(key), anyLong(), anyLong())).thenAnswer(invocation ->
+                    new ByteArrayInputStream(bytes, invocation.<Long>getArgument(1).intValue(), invocation.<Long>getArgument(2).intValue()));
+        });
+        TarService tarService = new TarService(minioRepository);
+        ZipService.ArchivePlan plan = new ZipService.ArchivePlan("src/", items, "fingerprint", null);
+
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        tarService.archiveFolder(plan, ArchiveFormat.TAR, full);
+        byte[] archive = full.toByteArray();
+        assertThat(tarService.contentLength(plan)).isEqualTo(archive.length);
+
+        for (long start : new long[]{0, 1, 511, 512, 1000, 2047, 4000, archive.length - 1025L, archive.length - 1L}) {
+            for (long length : new long[]{1, 100, 513, archive.length - start}) {
+                if (start + length > archive.length) continue;
+                ByteArrayOutputStream range = new ByteArrayOutputStream();
+                tarService.archiveRange(plan, start, length, range);
+                assertThat(range.toByteArray()).as("bytes %d+%d", start, length)
+                        .isEqualTo(Arrays.copyOfRange(archive, (int) start, (int) (start + length)));
+            }
+        }
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
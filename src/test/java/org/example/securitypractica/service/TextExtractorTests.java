@@ -0,0 +1,93 @@
+package org.example.securitypractica.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextExtractorTests {
+
+    private final TextExtractor extractor = new TextExtractor();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(extractor, "maxChars", 1000);
+    }
+
+    @Test
+    void documentsAreRecognizedByName() {
+        assertThat(extractor.supports("notes.txt")).isTrue();
+        assertThat(extractor.supports("README.md")).isTrue();
+        assertThat(extractor.supports("report.pdf")).isTrue();
+        assertThat(extractor.supports("letter.docx")).isTrue();
+        assertThat(extractor.supports("budget.xls")).isTrue();
+        assertThat(extractor.supports("slides.odp")).isTrue();
+        assertThat(extractor.supports("photo.jpg")).isFalse();
+        assertThat(extractor.supports("movie.mp4")).isFalse();
+        assertThat(extractor.supports("backup.zip")).isFalse();
+    }
+
+    @Test
+    void plainTextIsExtracted() {
+        String text = extractor.extract(stream("Привет, мир".getBytes(StandardCharsets.UTF_8)), "hello.txt");
+
+        assertThat(text).isEqualTo("Привет, мир");
+    }
+
+    @Test
+    void wordDocumentTextIsExtracted() throws IOException {
+        ByteArrayOutputStream docx = new ByteArrayOutputStream();
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("Quarterly revenue grew");
+            document.write(docx);
+        }
+
+        assertThat(extractor.extract(stream(docx.toByteArray()), "report.docx")).contains("Quarterly revenue grew");
+    }
+
+    @Test
+    void pdfTextIsExtracted() throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 700);
+                content.showText("Signed lease agreement");
+                content.endText();
+            }
+            document.save(pdf);
+        }
+
+        assertThat(extractor.extract(stream(pdf.toByteArray()), "lease.pdf")).contains("Signed lease agreement");
+    }
+
+    @Test
+    void longDocumentIsTruncatedInsteadOfRejected() {
+        String text = extractor.extract(stream("word ".repeat(1000).getBytes(StandardCharsets.UTF_8)), "long.txt");
+
+        assertThat(text).startsWith("word word").hasSizeLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    void brokenDocumentYieldsNothing() {
+        assertThat(extractor.extract(stream("%PDF-1.4\n%%EOF garbage".getBytes(StandardCharsets.UTF_8)), "broken.pdf")).isNull();
+    }
+
+    private static ByteArrayInputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.securitypractica.service;
+
+import org.example.securitypractica.exception.InvalidPathException;
+import org.example.securitypractica.exception.MyBadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipExtractorTests {
+
+    private final ZipExtractor extractor = new ZipExtractor();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(extractor, "maxEntries", 100);
+        ReflectionTestUtils.setField(extractor, "maxTotalSize", DataSize.ofMegabytes(64));
+        ReflectionTestUtils.setField(extractor, "maxEntrySize", DataSize.ofMegabytes(32));
+        ReflectionTestUtils.setField(extractor, "maxCompressionRatio", 100);
+        ReflectionTestUtils.setField(extractor, "memoryThreshold", DataSize.ofKilobytes(4));
+    }
+
+    @Test
+    void entriesAreReadWithNormalizedNames() throws IOException {
+        Map<String, byte[]> archive = new LinkedHashMap<>();
+        archive.put("docs/", new byte[0]);
+        archive.put("./docs//readme.txt", "hello".getBytes());
+        archive.put("docs\\big.bin", randomBytes(10_000));
+        archive.put("__MACOSX/docs/._readme.txt", "fork".getBytes());
+
+        List<String> directories = new ArrayList<>();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        extractor.extract(zip(archive), new ZipExtractor.EntryHandler() {
+            @Override
+            public void directory(String path) {
+                directories.add(path);
+            }
+
+            @Override
+            public void file(ZipExtractor.ExtractedFile file) {
+                try (InputStream is = file.open()) {
+                    files.put(file.path(), is.readAllBytes());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    file.discard();
+                }
+            }
+        });
+
+        assertThat(directories).containsExactly("docs/");
+        assertThat(files.keySet()).containsExactly("docs/readme.txt", "docs/big.bin");
+        assertThat(files.get("docs/big.bin")).isEqualTo(archive.get("docs\\big.bin"));
+    }
+
+    @Test
+    void entriesEscapingTheTargetFolderAreRejected() {
+        assertThatThrownBy(() -> ZipExtractor.safePath("../etc/passwd")).isInstanceOf(InvalidPathException.class);
+        assertThatThrownBy(() -> ZipExtractor.safePath("docs/../../secret")).isInstanceOf(InvalidPathException.class);
+        assertThatThrownBy(() -> ZipExtractor.safePath("/etc/passwd")).isInstanceOf(InvalidPathException.class);
+        assertThatThrownBy(() -> ZipExtractor.safePath("C:\\Windows\\win.ini")).isInstanceOf(InvalidPathException.class);
+        assertThat(ZipExtractor.safePath("a/./b")).isEqualTo("a/b");
+    }
+
+    @Test
+    void highlyCompressedEntryIsStoppedWhileInflating() throws IOException {
+        InputStream bomb = zip(Map.of("zeros.bin", new byte[16 * 1024 * 1024]));
+
+        assertThatThrownBy(() -> extractor.extract(bomb, ignoringHandler()))
+                .isInstanceOf(MyBadRequestException.class)
+                .hasMessageContaining("compression ratio");
+    }
+
+    @Test
+    void tooManyEntriesAreRejected() throws IOException {
+        Map<String, byte[]> archive = new LinkedHashMap<>();
+        for (int i = 0; i <= 100; i++) {
+            archive.put("file-" + i + ".txt", new byte[]{1});
+        }
+
+        assertThatThrownBy(() -> extractor.extract(zip(archive), ignoringHandler()))
+                .isInstanceOf(MyBadRequestException.class)
+                .hasMessageContaining("entries");
+    }
+
+    @Test
+    void streamThatIsNotAnArchiveIsRejected() {
+        assertThatThrownBy(() -> extractor.extract(new ByteArrayInputStream("plain text".getBytes()), ignoringHandler()))
+                .isInstanceOf(MyBadRequestException.class);
+    }
+
+    private static ZipExtractor.EntryHandler ignoringHandler() {
+        return new ZipExtractor.EntryHandler() {
+            @Override
+            public void directory(String path) {
+            }
+
+            @Override
+            public void file(ZipExtractor.ExtractedFile file) {
+                file.discard();
+            }
+        };
+    }
+
+    private static InputStream zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(output)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(entry.getKey()));
+                zos.write(entry.getValue());
+                zos.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.securitypractica.service;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.example.securitypractica.repository.MinioRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ZipServiceTests {
+
+    private final MinioRepository minioRepository = mock(MinioRepository.class);
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final ZipService zipService = new ZipService(minioRepository, Runnable::run, ObservationRegistry.NOOP, redisTemplate);
+
+    @Test
+    void hiddenKeysAreLeftOutOfTheArchive() {
+        listing("user-1-files/docs/",
+                item("user-1-files/docs/a.txt"),
+                item("user-1-files/docs/old/b.txt"),
+                item("user-1-files/docs/oldest.txt"));
+
+        ZipService.ArchivePlan plan = zipService.snapshot("user-1-files/docs/", key -> key.startsWith("user-1-files/docs/old/"));
+
+        assertThat(plan.items()).extracting(Item::objectName)
+                .containsExactly("user-1-files/docs/a.txt", "user-1-files/docs/oldest.txt");
+    }
+
+    @Test
+    void touchingAFileChangesTheFingerprint() {
+        ZonedDateTime modified = ZonedDateTime.now().minusDays(1);
+        listing("user-1-files/docs/", item("user-1-files/docs/a.txt", modified));
+        String before = zipService.snapshot("user-1-files/docs/", key -> false).fingerprint();
+
+        // Same content and ETag, but the TAR header would carry the new time.
+        listing("user-1-files/docs/", item("user-1-files/docs/a.txt", modified.plusHours(1)));
+
+        assertThat(zipService.snapshot("user-1-files/docs/", key -> false).fingerprint()).isNotEqualTo(before);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictionDropsTheArchiveUsedLeastRecently() {
+        ReflectionTestUtils.setField(zipService, "cacheMaxBytes", 20L);
+        ZonedDateTime epoch = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneOffset.UTC);
+        listing("zip-cache/",
+                item("zip-cache/a.zip", epoch.plusSeconds(1)),
+                item("zip-cache/b.zip", epoch.plusSeconds(2)),
+                item("zip-cache/c.zip", epoch.plusSeconds(3)));
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        // The oldest archive was downloaded last; c has never been hit and counts from when it was written.
+        when(zSet.rangeWithScores("storage:zip-cache:access", 0, -1)).thenReturn(Set.of(
+                new DefaultTypedTuple<>("zip-cache/a.zip", 9_000.0),
+                new DefaultTypedTuple<>("zip-cache/b.zip", 2_500.0)));
+
+        ReflectionTestUtils.invokeMethod(zipService, "evict");
+
+        ArgumentCaptor<Collection<String>> evicted = ArgumentCaptor.forClass(Collection.class);
+        verify(minioRepository).deleteAll(evicted.capture());
+        assertThat(evicted.getValue()).containsExactly("zip-cache/b.zip");
+    }
+
+    private void listing(String prefix, Item... items) {
+        when(minioRepository.list(prefix, true)).thenReturn(Arrays.stream(items).map(Result::new).toList());
+    }
+
+    private static Item item(String name) {
+        return item(name, ZonedDateTime.now());
+    }
+
+    private static Item item(String name, ZonedDateTime lastModified) {
+        Item item = mock(Item.class);
+        when(item.objectName()).thenReturn(name);
+        when(item.etag()).thenReturn("\"" + name.hashCode() + "\"");
+        when(item.size()).thenReturn(10L);
+        when(item.lastModified()).thenReturn(lastModified);
+        return item;
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.securitypractica.tracing;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageStatsTests {
+
+    @Test
+    void workOnNestedObservationsAndOtherThreadsEndsUpOnTheRequest() {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(context -> true);
+        registry.observationConfig().observationFilter(new StorageStatsObservationFilter());
+        ObservationThreadLocalAccessor.getInstance().setObservationRegistry(registry);
+
+        Observation request = Observation.start("http.server.requests", registry);
+        Observation service = Observation.createNotStarted("storage.service", registry).parentObservation(request);
+        request.scoped(() -> service.observe(() -> {
+            StorageStats.current(registry).minioCall();
+            StorageStats.cacheHit(registry);
+
+            Runnable fannedOut = ContextSnapshotFactory.builder().build().captureAll().wrap(() -> {
+                StorageStats stats = StorageStats.current(registry);
+                stats.minioCall();
+                stats.minioBytes(1024);
+            });
+            CompletableFuture.runAsync(fannedOut).join();
+        }));
+        request.stop();
+
+        Observation.Context context = request.getContext();
+        assertThat(context.getHighCardinalityKeyValue("storage.minio.calls").getValue()).isEqualTo("2");
+        assertThat(context.getHighCardinalityKeyValue("storage.minio.bytes").getValue()).isEqualTo("1024");
+        assertThat(context.getHighCardinalityKeyValue("storage.cache.hits").getValue()).isEqualTo("1");
+        assertThat(service.getContext().getHighCardinalityKeyValue("storage.minio.calls")).isNull();
+    }
+
+    @Test
+    void nothingIsCountedOutsideOfAnObservation() {
+        assertThat(StorageStats.current(ObservationRegistry.create())).isNull();
+    }
+}